@@ -0,0 +1,44 @@
+/**
+ * KeepaliveController must receive the server heartbeat from the engine.io
+ * handshake — with engine.io-client 6.x the value is not a public field.
+ */
+jest.mock('@react-native-async-storage/async-storage', () => ({
+  getItem: jest.fn(() => Promise.resolve(null)),
+  setItem: jest.fn(() => Promise.resolve()),
+}));
+
+import KeepaliveController, {engineHeartbeatMs} from '../src/services/KeepaliveController';
+
+describe('KeepaliveController engine heartbeat', () => {
+  beforeEach(() => {
+    KeepaliveController.setEngineInterval(0);
+  });
+
+  it('reads the private handshake interval of engine.io-client 6.x', () => {
+    // engine.io-client 6.6.4 Socket after onHandshake(): no public pingInterval
+    const engine = {id: 'abc', _pingInterval: 25000, _pingTimeout: 20000};
+
+    KeepaliveController.setEngine(engine);
+
+    expect(KeepaliveController.getEngineInterval()).toBe(25000);
+    expect(KeepaliveController.getInterval()).toBeLessThanOrEqual(25000);
+  });
+
+  it('prefers a public pingInterval when the engine exposes one', () => {
+    expect(engineHeartbeatMs({pingInterval: 30000, _pingInterval: 25000})).toBe(30000);
+  });
+
+  it('falls back to the server interval when the engine has no value', () => {
+    KeepaliveController.setEngine(undefined);
+
+    expect(typeof KeepaliveController.getEngineInterval()).toBe('number');
+    expect(KeepaliveController.getEngineInterval()).toBeGreaterThan(0);
+  });
+
+  it('stops app pings once the network is proven safe at the engine interval', () => {
+    KeepaliveController.setEngine({_pingInterval: 10000});
+
+    // MIN_INTERVAL_MS (10 s) is not below the engine heartbeat
+    expect(KeepaliveController.shouldAppPing()).toBe(false);
+  });
+});
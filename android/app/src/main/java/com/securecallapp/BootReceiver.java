@@ -3,7 +3,6 @@ package com.securecallapp;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.os.Build;
 import android.util.Log;
 
@@ -33,19 +32,16 @@ public class BootReceiver extends BroadcastReceiver {
             "android.intent.action.QUICKBOOT_POWERON".equals(action) ||
             "com.htc.intent.action.QUICKBOOT_POWERON".equals(action)) {
             
-            // Read credentials from native SharedPreferences (written by NativeStorageModule)
-            SharedPreferences prefs = context.getSharedPreferences(
-                NativeStorageModule.PREFS_NAME,
-                Context.MODE_PRIVATE
-            );
+            // Read credentials from NativeKvStore (written by NativeStorageModule)
+            NativeKvStore store = NativeKvStore.get(context);
 
-            String username = prefs.getString("username", null);
-            String token = prefs.getString("token", null);
-            String fcmToken = prefs.getString("fcm_token", null);
+            String username = store.getString(NativeKvStore.KEY_USERNAME, null);
+            String token = store.getString(NativeKvStore.KEY_TOKEN, null);
+            boolean hasFcmToken = store.contains(NativeKvStore.KEY_FCM_TOKEN);
 
             Log.d(TAG, "username found: " + (username != null));
             Log.d(TAG, "token found: " + (token != null));
-            Log.d(TAG, "fcm_token found: " + (fcmToken != null));
+            Log.d(TAG, "fcm_token found: " + hasFcmToken);
 
             if (username != null && token != null) {
                 Log.d(TAG, "✅ Найдены данные авторизации");
@@ -0,0 +1,196 @@
+package com.securecallapp;
+
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.telecom.Connection;
+import android.telecom.ConnectionRequest;
+import android.telecom.ConnectionService;
+import android.telecom.DisconnectCause;
+import android.telecom.PhoneAccount;
+import android.telecom.PhoneAccountHandle;
+import android.telecom.TelecomManager;
+import android.telecom.VideoProfile;
+import android.util.Log;
+
+import androidx.annotation.RequiresApi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ═══════════════════════════════════════════════════════════
+ * CallConnectionService v1.0 — self-managed звонок через Telecom
+ * ═══════════════════════════════════════════════════════════
+ *
+ * Регистрация звонка в системе (TelecomCallManager.reportIncomingCall →
+ * TelecomManager.addNewIncomingCall) сразу из FCM/SignalingClient, без React:
+ * - система знает о звонке: маршрутизация аудио, Bluetooth-гарнитура
+ *   (ответ/отбой кнопкой), приоритет над другими VoIP-приложениями
+ * - onShowIncomingCallUi → IncomingCallNotifier (self-managed приложение
+ *   показывает UI и рингтон само; системный диалер UI не рисует)
+ * - onAnswer/onReject → TelecomCallManager → событие в JS
+ *   "callConnectionAction" + pending-действие для ещё не загруженного JS
+ *
+ * Если Telecom отказал (onCreateIncomingConnectionFailed) — прежний путь:
+ * уведомление с fullScreenIntent.
+ */
+@RequiresApi(api = Build.VERSION_CODES.O)
+public class CallConnectionService extends ConnectionService {
+    private static final String TAG = "CallConnectionService";
+
+    // callId → соединение (callId "" для звонков без id)
+    private static final Map<String, CallConnection> sConnections = new ConcurrentHashMap<>();
+
+    @Override
+    public Connection onCreateIncomingConnection(PhoneAccountHandle account, ConnectionRequest request) {
+        Bundle extras = incomingExtras(request);
+        String from = extras.getString(TelecomCallManager.EXTRA_FROM, "");
+        boolean isVideo = extras.getBoolean(TelecomCallManager.EXTRA_IS_VIDEO, false);
+        String callId = extras.getString(TelecomCallManager.EXTRA_CALL_ID, "");
+
+        CallConnection connection = new CallConnection(from, isVideo, callId);
+        connection.setConnectionProperties(Connection.PROPERTY_SELF_MANAGED);
+        connection.setAudioModeIsVoip(true);
+        connection.setConnectionCapabilities(Connection.CAPABILITY_MUTE);
+        connection.setAddress(Uri.fromParts(PhoneAccount.SCHEME_SIP, from, null),
+                TelecomManager.PRESENTATION_ALLOWED);
+        connection.setCallerDisplayName(from, TelecomManager.PRESENTATION_ALLOWED);
+        connection.setVideoState(isVideo ? VideoProfile.STATE_BIDIRECTIONAL : VideoProfile.STATE_AUDIO_ONLY);
+        connection.setRinging();
+
+        CallConnection previous = sConnections.put(callId, connection);
+        if (previous != null && previous != connection) {
+            previous.disconnectWith(DisconnectCause.OTHER);
+        }
+
+        Log.d(TAG, "📞 Telecom: входящий от " + from + " (callId=" + callId + ")");
+        return connection;
+    }
+
+    @Override
+    public void onCreateIncomingConnectionFailed(PhoneAccountHandle account, ConnectionRequest request) {
+        Bundle extras = incomingExtras(request);
+        String from = extras.getString(TelecomCallManager.EXTRA_FROM, "");
+        boolean isVideo = extras.getBoolean(TelecomCallManager.EXTRA_IS_VIDEO, false);
+        String callId = extras.getString(TelecomCallManager.EXTRA_CALL_ID, "");
+
+        // Например, идёт звонок в другом приложении — показываем обычное уведомление
+        Log.w(TAG, "⚠️ Telecom отказал во входящем звонке — фолбэк на уведомление");
+        IncomingCallNotifier.get(this).show(from, isVideo, callId.isEmpty() ? null : callId);
+    }
+
+    // ═══════════════════════════════════════════════════════════
+    // ДОСТУП ДЛЯ TelecomCallManager
+    // ═══════════════════════════════════════════════════════════
+
+    /** Завершить звонок (callId == null — все); ringingOnly — только ещё не принятые */
+    static void end(String callId, int cause, boolean ringingOnly) {
+        for (CallConnection connection : snapshot(callId)) {
+            if (ringingOnly && connection.getState() != Connection.STATE_RINGING) continue;
+            connection.disconnectWith(cause);
+        }
+    }
+
+    /** JS перевёл звонок в активный (принят из UI приложения) */
+    static void activateRinging() {
+        for (CallConnection connection : snapshot(null)) {
+            if (connection.getState() == Connection.STATE_RINGING) {
+                connection.setActive();
+                Log.d(TAG, "✅ Telecom: звонок " + connection.callId + " активен");
+            }
+        }
+    }
+
+    static boolean hasConnections() {
+        return !sConnections.isEmpty();
+    }
+
+    private static List<CallConnection> snapshot(String callId) {
+        List<CallConnection> out = new ArrayList<>();
+        if (callId != null) {
+            CallConnection connection = sConnections.get(callId);
+            if (connection != null) out.add(connection);
+        } else {
+            out.addAll(sConnections.values());
+        }
+        return out;
+    }
+
+    private static Bundle incomingExtras(ConnectionRequest request) {
+        Bundle extras = request.getExtras();
+        Bundle incoming = extras != null ? extras.getBundle(TelecomManager.EXTRA_INCOMING_CALL_EXTRAS) : null;
+        if (incoming != null) return incoming;
+        return extras != null ? extras : new Bundle();
+    }
+
+    // ═══════════════════════════════════════════════════════════
+    // CONNECTION
+    // ═══════════════════════════════════════════════════════════
+
+    private final class CallConnection extends Connection {
+        final String from;
+        final boolean isVideo;
+        final String callId;
+
+        CallConnection(String from, boolean isVideo, String callId) {
+            this.from = from;
+            this.isVideo = isVideo;
+            this.callId = callId;
+        }
+
+        @Override
+        public void onShowIncomingCallUi() {
+            // Self-managed: UI и рингтон — наше уведомление с fullScreenIntent
+            IncomingCallNotifier.get(CallConnectionService.this)
+                    .show(from, isVideo, callId.isEmpty() ? null : callId);
+        }
+
+        @Override
+        public void onAnswer() {
+            onAnswer(getVideoState());
+        }
+
+        @Override
+        public void onAnswer(int videoState) {
+            Log.d(TAG, "✅ Telecom: ответ на звонок " + callId);
+            setActive();
+            TelecomCallManager.onCallAction(CallConnectionService.this,
+                    TelecomCallManager.ACTION_ANSWER, from, isVideo, callId);
+        }
+
+        @Override
+        public void onReject() {
+            Log.d(TAG, "❌ Telecom: звонок " + callId + " отклонён");
+            disconnectWith(DisconnectCause.REJECTED);
+            TelecomCallManager.onCallAction(CallConnectionService.this,
+                    TelecomCallManager.ACTION_REJECT, from, isVideo, callId);
+        }
+
+        @Override
+        public void onDisconnect() {
+            Log.d(TAG, "📴 Telecom: звонок " + callId + " завершён системой");
+            disconnectWith(DisconnectCause.LOCAL);
+            TelecomCallManager.onCallAction(CallConnectionService.this,
+                    TelecomCallManager.ACTION_END, from, isVideo, callId);
+        }
+
+        @Override
+        public void onAbort() {
+            disconnectWith(DisconnectCause.OTHER);
+        }
+
+        void disconnectWith(int cause) {
+            if (getState() == Connection.STATE_DISCONNECTED) return;
+            if (getState() == Connection.STATE_RINGING) {
+                IncomingCallNotifier.get(CallConnectionService.this)
+                        .cancel(callId.isEmpty() ? null : callId);
+            }
+            setDisconnected(new DisconnectCause(cause));
+            destroy();
+            sConnections.remove(callId, this);
+        }
+    }
+}
@@ -1,16 +1,12 @@
 package com.securecallapp;
 
-import android.app.NotificationChannel;
 import android.app.NotificationManager;
-import android.app.PendingIntent;
-import android.content.Context;
-import android.content.Intent;
-import android.media.RingtoneManager;
 import android.os.Build;
-import androidx.core.app.NotificationCompat;
+import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.bridge.Promise;   // <--- ДОБАВЛЕННЫЙ ИМПОРТ
 import android.util.Log;
 
@@ -21,152 +17,84 @@ import android.util.Log;
  * и приходит входящий звонок - некому показать IncomingCallScreen.
  * 
  * Этот модуль показывает full-screen notification которое откроет приложение.
+ * Сборка уведомления — в общем IncomingCallNotifier (тот же путь, что у FCM).
  */
 public class CallNotificationModule extends ReactContextBaseJavaModule {
+    public static final String NAME = "CallNotificationModule";
     private static final String TAG = "CallNotificationModule";
-    // UNIFIED with MyFirebaseMessagingService.CHANNEL_ID_CALLS and AndroidManifest default channel
-    private static final String CHANNEL_ID = "incoming_calls";
-    private static final int NOTIFICATION_ID = 9999;
 
     private final ReactApplicationContext reactContext;
 
     public CallNotificationModule(ReactApplicationContext reactContext) {
         super(reactContext);
         this.reactContext = reactContext;
-        createNotificationChannel();
+        // Канал больше не пересоздаётся при каждой инициализации bridge —
+        // его один раз создаёт IncomingCallNotifier
     }
 
     @Override
     public String getName() {
-        return "CallNotificationModule";
+        return NAME;
     }
 
     /**
-     * Создать notification channel для звонков
+     * Показать full-screen notification о входящем звонке
      */
-    private void createNotificationChannel() {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            NotificationChannel channel = new NotificationChannel(
-                CHANNEL_ID,
-                "Входящие звонки",
-                NotificationManager.IMPORTANCE_HIGH
-            );
-            channel.setDescription("Уведомления о входящих звонках");
-            channel.enableVibration(true);
-            channel.setVibrationPattern(new long[]{0, 300, 200, 300});
-            
-            NotificationManager notificationManager = 
-                reactContext.getSystemService(NotificationManager.class);
-            notificationManager.createNotificationChannel(channel);
-            
-            Log.d(TAG, "✓ Notification channel создан");
-        }
+    @ReactMethod
+    public void showIncomingCallNotification(String from, boolean isVideo, String callId) {
+        Log.d(TAG, "📞 ПОКАЗ NOTIFICATION О ЗВОНКЕ от " + from + " (video=" + isVideo + ", callId=" + callId + ")");
+        IncomingCallNotifier.get(reactContext).show(from, isVideo, callId);
     }
 
     /**
-     * Показать full-screen notification о входящем звонке
+     * Обновить текст уведомления текущего звонка
      */
     @ReactMethod
-    public void showIncomingCallNotification(String from, boolean isVideo, String callId) {
-        Log.d(TAG, "========================================");
-        Log.d(TAG, "📞 ПОКАЗ NOTIFICATION О ЗВОНКЕ");
-        Log.d(TAG, "От: " + from);
-        Log.d(TAG, "Видео: " + isVideo);
-        Log.d(TAG, "CallId: " + callId);
-        Log.d(TAG, "========================================");
-
-        try {
-            // Intent для открытия приложения
-            Intent intent = new Intent(reactContext, MainActivity.class);
-            intent.setAction(Intent.ACTION_MAIN);
-            intent.addCategory(Intent.CATEGORY_LAUNCHER);
-            intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK |
-                          Intent.FLAG_ACTIVITY_CLEAR_TOP |
-                          Intent.FLAG_ACTIVITY_SINGLE_TOP);
-            intent.putExtra("type", "incoming_call");
-            intent.putExtra("from", from);
-            // FIX: MainActivity.handleIntent() reads isVideo via extras.getString("isVideo").
-            // Storing as boolean would return null from getString() → isVideo always false.
-            // Store as String to match MyFirebaseMessagingService behaviour.
-            intent.putExtra("isVideo", String.valueOf(isVideo));
-            if (callId != null && !callId.isEmpty()) {
-                intent.putExtra("callId", callId);
-            }
-
-            PendingIntent pendingIntent = PendingIntent.getActivity(
-                reactContext,
-                0,
-                intent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-            );
-
-            // Full-screen intent для показа поверх экрана блокировки
-            Intent fullScreenIntent = new Intent(reactContext, MainActivity.class);
-            fullScreenIntent.setAction(Intent.ACTION_MAIN);
-            fullScreenIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK |
-                                    Intent.FLAG_ACTIVITY_CLEAR_TOP);
-            fullScreenIntent.putExtra("type", "incoming_call");
-            fullScreenIntent.putExtra("from", from);
-            // FIX: same as above — store as String
-            fullScreenIntent.putExtra("isVideo", String.valueOf(isVideo));
-            if (callId != null && !callId.isEmpty()) {
-                fullScreenIntent.putExtra("callId", callId);
-            }
-
-            PendingIntent fullScreenPendingIntent = PendingIntent.getActivity(
-                reactContext,
-                1,
-                fullScreenIntent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-            );
-
-            // Создать notification
-            NotificationCompat.Builder builder = new NotificationCompat.Builder(
-                reactContext, 
-                CHANNEL_ID
-            )
-                .setSmallIcon(android.R.drawable.ic_menu_call)
-                .setContentTitle(isVideo ? "📹 Видеозвонок" : "📞 Звонок")
-                .setContentText(from + " звонит вам")
-                .setPriority(NotificationCompat.PRIORITY_MAX)
-                .setCategory(NotificationCompat.CATEGORY_CALL)
-                .setAutoCancel(true)
-                .setOngoing(true)
-                .setFullScreenIntent(fullScreenPendingIntent, true)
-                .setContentIntent(pendingIntent)
-                .setVibrate(new long[]{0, 300, 200, 300, 200, 300})
-                .setSound(RingtoneManager.getDefaultUri(RingtoneManager.TYPE_RINGTONE))
-                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC);
+    public void updateIncomingCallNotification(String callId, String text) {
+        IncomingCallNotifier.get(reactContext).update(callId, text);
+    }
 
-            // Показать notification
-            NotificationManager notificationManager = 
-                (NotificationManager) reactContext.getSystemService(Context.NOTIFICATION_SERVICE);
-            notificationManager.notify(NOTIFICATION_ID, builder.build());
+    /**
+     * Отменить notification о звонке.
+     * Синхронный (JSI): вызывается на пути accept/decline — без очереди bridge.
+     * Сам cancel только ставит задачу на поток IncomingCallNotifier.
+     */
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public boolean cancelIncomingCallNotification() {
+        Log.d(TAG, "Отмена notification о звонке");
+        IncomingCallNotifier.get(reactContext).cancel(null);
+        return true;
+    }
 
-            Log.d(TAG, "✓ Notification показан");
+    /**
+     * Чат открыт — убрать уведомление о сообщениях от этого пользователя
+     * и сбросить счётчик склейки
+     */
+    @ReactMethod
+    public void clearMessageNotifications(String from) {
+        MessageNotificationCoalescer.get(reactContext).clear(from);
+    }
 
-        } catch (Exception e) {
-            Log.e(TAG, "❌ Ошибка показа notification: " + e.getMessage());
-            e.printStackTrace();
-        }
+    /**
+     * Счётчики CallPushDeduper: принято / дубли / устаревшие
+     */
+    @ReactMethod
+    public void getCallPushStats(Promise promise) {
+        long[] counters = CallPushDeduper.get(reactContext).getCounters();
+        WritableMap result = Arguments.createMap();
+        result.putDouble("accepted", counters[0]);
+        result.putDouble("duplicates", counters[1]);
+        result.putDouble("stale", counters[2]);
+        promise.resolve(result);
     }
 
     /**
-     * Отменить notification о звонке
+     * Время сервера из pong (rttMs — круговая задержка ping/pong):
+     * CallPushDeduper считает возраст push о звонке по часам сервера
      */
     @ReactMethod
-    public void cancelIncomingCallNotification() {
-        Log.d(TAG, "Отмена notification о звонке");
-        
-        try {
-            NotificationManager notificationManager = 
-                (NotificationManager) reactContext.getSystemService(Context.NOTIFICATION_SERVICE);
-            notificationManager.cancel(NOTIFICATION_ID);
-            
-            Log.d(TAG, "✓ Notification отменен");
-        } catch (Exception e) {
-            Log.e(TAG, "❌ Ошибка отмены notification: " + e.getMessage());
-        }
+    public void reportServerTime(double serverTimeMs, double rttMs) {
+        CallPushDeduper.get(reactContext).onServerTime((long) serverTimeMs, (long) rttMs);
     }
 
     /**
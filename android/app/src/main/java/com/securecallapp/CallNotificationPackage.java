@@ -1,28 +1,41 @@
 package com.securecallapp;
 
-import com.facebook.react.ReactPackage;
+import androidx.annotation.Nullable;
+
+import com.facebook.react.BaseReactPackage;
 import com.facebook.react.bridge.NativeModule;
 import com.facebook.react.bridge.ReactApplicationContext;
-import com.facebook.react.uimanager.ViewManager;
+import com.facebook.react.module.model.ReactModuleInfo;
+import com.facebook.react.module.model.ReactModuleInfoProvider;
 
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.List;
 
 /**
  * Package для CallNotificationModule
+ *
+ * BaseReactPackage: модуль создаётся лениво — при первом обращении из JS
+ * (spec src/specs/NativeCallNotificationModule.js), а не на каждом старте React.
  */
-public class CallNotificationPackage implements ReactPackage {
+public class CallNotificationPackage extends BaseReactPackage {
 
+    @Nullable
     @Override
-    public List<ViewManager> createViewManagers(ReactApplicationContext reactContext) {
-        return Collections.emptyList();
+    public NativeModule getModule(String name, ReactApplicationContext reactContext) {
+        if (CallNotificationModule.NAME.equals(name)) {
+            return new CallNotificationModule(reactContext);
+        }
+        return null;
     }
 
     @Override
-    public List<NativeModule> createNativeModules(ReactApplicationContext reactContext) {
-        List<NativeModule> modules = new ArrayList<>();
-        modules.add(new CallNotificationModule(reactContext));
-        return modules;
+    public ReactModuleInfoProvider getReactModuleInfoProvider() {
+        return () -> Collections.singletonMap(CallNotificationModule.NAME, new ReactModuleInfo(
+                CallNotificationModule.NAME,
+                CallNotificationModule.class.getName(),
+                false, // canOverrideExistingModule
+                false, // needsEagerInit — ленивое создание
+                false, // isCxxModule
+                false  // isTurboModule — Java-модуль через interop, пока newArchEnabled=false
+        ));
     }
 }
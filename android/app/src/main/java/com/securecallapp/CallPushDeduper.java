@@ -0,0 +1,161 @@
+package com.securecallapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ═══════════════════════════════════════════════════════════
+ * CallPushDeduper v1.0 — отсев дублей и устаревших push о звонке
+ * ═══════════════════════════════════════════════════════════
+ *
+ * FCM повторно доставляет high-priority сообщения, а сервер может прислать
+ * wake-up push уже после того, как звонок пришёл по сокету. Каждый дубль
+ * заново запускал wakeScreen(), notify(9999) и IncomingCallTaskService.
+ *
+ * Решение принимается ДО любого WakeLock/старта сервиса:
+ * - DUPLICATE: callId уже видели (LRU на MAX_ENTRIES, сохраняется в NativeKvStore
+ *   и переживает перезапуск процесса)
+ * - STALE: серверный timestamp старше STALE_AFTER_MS (сервер сам снимает
+ *   push_sent-звонок через CALL_TIMEOUT_MS * 2 = 90с). Возраст считается по
+ *   часам сервера: часы устройства + смещение (serverTime из pong / auth_success).
+ *   Смещение ещё не измерено — STALE не применяется: спешащие часы устройства
+ *   иначе отбросили бы каждый настоящий звонок
+ * - ACCEPT: показать звонок
+ *
+ * Счётчики решений доступны JS через CallNotificationModule.getCallPushStats().
+ */
+public final class CallPushDeduper {
+    private static final String TAG = "CallPushDeduper";
+
+    public enum Decision { ACCEPT, DUPLICATE, STALE }
+
+    private static final String KEY_RECENT = "recent_call_ids";
+    // Часы сервера минус часы устройства, мс
+    private static final String KEY_CLOCK_OFFSET = "server_clock_offset_ms";
+    // Смещение перезаписывается, только если изменилось заметнее этого
+    private static final long CLOCK_OFFSET_TOLERANCE_MS = 1000;
+
+    private static final int MAX_ENTRIES = 64;
+    // Синхронно с сервером: socketHandlers.js, CALL_TIMEOUT_MS * 2
+    static final long STALE_AFTER_MS = 90_000;
+
+    private static CallPushDeduper sInstance;
+
+    private final NativeKvStore store;
+    // callId → время первого появления (wall ms); access-order = LRU
+    private final LinkedHashMap<String, Long> recent = new LinkedHashMap<>(MAX_ENTRIES, 0.75f, true);
+
+    private boolean clockOffsetKnown;
+    private long clockOffsetMs;
+
+    private long accepted = 0;
+    private long duplicates = 0;
+    private long stale = 0;
+
+    private CallPushDeduper(Context context) {
+        this.store = NativeKvStore.get(context);
+        this.clockOffsetKnown = store.contains(KEY_CLOCK_OFFSET);
+        this.clockOffsetMs = store.getLong(KEY_CLOCK_OFFSET, 0L);
+        load();
+    }
+
+    public static synchronized CallPushDeduper get(Context context) {
+        if (sInstance == null) {
+            sInstance = new CallPushDeduper(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param serverTimestampMs время отправки с сервера, 0 — неизвестно (сокет)
+     */
+    public synchronized Decision check(String callId, long serverTimestampMs) {
+        long now = System.currentTimeMillis();
+
+        if (serverTimestampMs > 0 && !clockOffsetKnown) {
+            Log.d(TAG, "🕒 Смещение часов сервера неизвестно — возраст push не проверяем");
+        } else if (serverTimestampMs > 0) {
+            long age = now + clockOffsetMs - serverTimestampMs;
+            // Отрицательный age (погрешность смещения) — не stale
+            if (age > STALE_AFTER_MS) {
+                stale++;
+                Log.w(TAG, "⏭️ STALE push: callId=" + callId + " age=" + age + "мс");
+                return Decision.STALE;
+            }
+        }
+
+        if (callId == null || callId.isEmpty()) {
+            // Без callId дедуплицировать нечем — показываем
+            accepted++;
+            return Decision.ACCEPT;
+        }
+
+        if (recent.containsKey(callId)) {
+            recent.get(callId); // обновить порядок LRU
+            duplicates++;
+            Log.w(TAG, "⏭️ DUPLICATE push: callId=" + callId);
+            return Decision.DUPLICATE;
+        }
+
+        recent.put(callId, now);
+        trim();
+        save();
+        accepted++;
+        return Decision.ACCEPT;
+    }
+
+    /**
+     * Время сервера, измеренное сейчас (serverTime из pong / auth_success;
+     * rttMs — круговая задержка, половина её добавляется, 0 — неизвестна)
+     */
+    public synchronized void onServerTime(long serverTimeMs, long rttMs) {
+        if (serverTimeMs <= 0) return;
+        long offset = serverTimeMs + Math.max(0, rttMs) / 2 - System.currentTimeMillis();
+        if (clockOffsetKnown && Math.abs(offset - clockOffsetMs) < CLOCK_OFFSET_TOLERANCE_MS) return;
+
+        clockOffsetKnown = true;
+        clockOffsetMs = offset;
+        store.putLong(KEY_CLOCK_OFFSET, offset);
+        Log.d(TAG, "🕒 Смещение часов сервера: " + offset + "мс");
+    }
+
+    /** {accepted, duplicates, stale} с момента старта процесса */
+    public synchronized long[] getCounters() {
+        return new long[]{accepted, duplicates, stale};
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, Long>> it = recent.entrySet().iterator();
+        while (recent.size() > MAX_ENTRIES && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private void load() {
+        String raw = store.getString(KEY_RECENT, "");
+        if (raw.isEmpty()) return;
+        for (String entry : raw.split(",")) {
+            int sep = entry.lastIndexOf(':');
+            if (sep <= 0) continue;
+            try {
+                recent.put(entry.substring(0, sep), Long.parseLong(entry.substring(sep + 1)));
+            } catch (NumberFormatException ignored) { }
+        }
+        trim();
+    }
+
+    private void save() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Long> e : recent.entrySet()) {
+            if (sb.length() > 0) sb.append(',');
+            sb.append(e.getKey()).append(':').append(e.getValue());
+        }
+        // Запись в mmap-журнал: без fsync и без переписывания файла на пути звонка
+        store.putString(KEY_RECENT, sb.toString());
+    }
+}
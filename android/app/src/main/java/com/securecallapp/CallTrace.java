@@ -0,0 +1,248 @@
+package com.securecallapp;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ═══════════════════════════════════════════════════════════
+ * CallTrace v1.0 — трассировка пути входящего звонка
+ * ═══════════════════════════════════════════════════════════
+ *
+ * Точки пути пишутся в кольцевой буфер фиксированного размера в
+ * memory-mapped файле (files/calltrace.bin). Запись в MappedByteBuffer
+ * попадает в page cache ядра, поэтому переживает смерть процесса.
+ *
+ * Время — SystemClock.elapsedRealtimeNanos(): монотонное и общее для
+ * всех процессов до перезагрузки. Спаны считаются как дельта от первой
+ * точки того же callId.
+ *
+ * Формат:
+ *   header 32 байта: magic, version, capacity, recordSize, long writeSeq
+ *   record 32 байта: long tNanos, long wallMs, int callKey, short point,
+ *                    short reserved, long extra (серверный timestamp push)
+ */
+public final class CallTrace {
+    private static final String TAG = "CallTrace";
+
+    // Точки пути (значения пишутся в файл — не менять порядок, только добавлять)
+    public static final short FCM_RECEIVED = 1;
+    public static final short HANDLE_INCOMING_CALL = 2;
+    public static final short NOTIFY_POSTED = 3;
+    public static final short TASK_CONFIG = 4;
+    public static final short ACTIVITY_HANDLE_INTENT = 5;
+    public static final short EVENT_SENT = 6;
+    public static final short JS_INCOMING_CALL = 7;
+    public static final short SOCKET_INCOMING_CALL = 8;
+    public static final short RINGING_UI_SHOWN = 9;
+    // Прогрев WebRTC во время звонка и путь после ответа (WebRTCService.js)
+    public static final short WARMUP_STARTED = 10;
+    public static final short WARMUP_READY = 11;
+    public static final short CALL_ACCEPTED = 12;
+    public static final short ACCEPT_LOCAL_MEDIA = 13;
+    public static final short ACCEPT_PC_READY = 14;
+    public static final short ANSWER_CREATED = 15;
+    public static final short ICE_CONNECTED = 16;
+
+    private static final String[] POINT_NAMES = {
+            "unknown",
+            "fcm_received",
+            "handle_incoming_call",
+            "notify_posted",
+            "task_config",
+            "activity_handle_intent",
+            "event_sent",
+            "js_incoming_call",
+            "socket_incoming_call",
+            "ringing_ui_shown",
+            "warmup_started",
+            "warmup_ready",
+            "call_accepted",
+            "accept_local_media",
+            "accept_pc_ready",
+            "answer_created",
+            "ice_connected",
+    };
+
+    private static final String FILE_NAME = "calltrace.bin";
+    private static final int MAGIC = 0x43545243; // "CTRC"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 32;
+    private static final int CAPACITY = 4096; // 128 КБ
+
+    private static final int OFF_WRITE_SEQ = 16;
+
+    // Спаны длиннее — мусор (перезагрузка, повторное использование callId)
+    private static final long MAX_SPAN_NANOS = 5 * 60 * 1_000_000_000L;
+
+    private static CallTrace sInstance;
+
+    private final MappedByteBuffer buffer;
+    private long writeSeq;
+
+    private CallTrace(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                || buffer.getInt(8) != CAPACITY || buffer.getInt(12) != RECORD_SIZE) {
+            for (int i = 0; i < buffer.capacity(); i++) buffer.put(i, (byte) 0);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, CAPACITY);
+            buffer.putInt(12, RECORD_SIZE);
+            buffer.putLong(OFF_WRITE_SEQ, 0);
+        }
+        this.writeSeq = buffer.getLong(OFF_WRITE_SEQ);
+    }
+
+    /** null, если файл не удалось открыть — трассировка просто выключена */
+    public static synchronized CallTrace get(Context context) {
+        if (sInstance == null) {
+            File file = new File(context.getApplicationContext().getFilesDir(), FILE_NAME);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                long size = HEADER_SIZE + (long) CAPACITY * RECORD_SIZE;
+                raf.setLength(size);
+                // Маппинг остаётся валидным после закрытия канала
+                MappedByteBuffer mapped = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+                sInstance = new CallTrace(mapped);
+            } catch (Exception e) {
+                Log.e(TAG, "❌ Не удалось открыть " + FILE_NAME + ": " + e.getMessage());
+                return null;
+            }
+        }
+        return sInstance;
+    }
+
+    /** Короткая запись без серверного timestamp */
+    public static void mark(Context context, short point, String callId) {
+        mark(context, point, callId, 0L);
+    }
+
+    public static void mark(Context context, short point, String callId, long extra) {
+        CallTrace trace = get(context);
+        if (trace != null) {
+            trace.record(point, callId, extra);
+        }
+    }
+
+    static short pointFromName(String name) {
+        for (short i = 1; i < POINT_NAMES.length; i++) {
+            if (POINT_NAMES[i].equals(name)) return i;
+        }
+        return 0;
+    }
+
+    private static int callKey(String callId) {
+        return callId == null || callId.isEmpty() ? 0 : callId.hashCode();
+    }
+
+    synchronized void record(short point, String callId, long extra) {
+        int offset = HEADER_SIZE + (int) (writeSeq % CAPACITY) * RECORD_SIZE;
+        buffer.putLong(offset, SystemClock.elapsedRealtimeNanos());
+        buffer.putLong(offset + 8, System.currentTimeMillis());
+        buffer.putInt(offset + 16, callKey(callId));
+        buffer.putShort(offset + 20, point);
+        buffer.putShort(offset + 22, (short) 0);
+        buffer.putLong(offset + 24, extra);
+        writeSeq++;
+        buffer.putLong(OFF_WRITE_SEQ, writeSeq);
+    }
+
+    synchronized void clear() {
+        writeSeq = 0;
+        buffer.putLong(OFF_WRITE_SEQ, 0);
+    }
+
+    /** Сырой буфер (header + records) для выгрузки */
+    synchronized byte[] export() {
+        byte[] out = new byte[buffer.capacity()];
+        ByteBuffer copy = buffer.duplicate();
+        copy.position(0);
+        copy.get(out);
+        return out;
+    }
+
+    /**
+     * Перцентили по точкам: дельта (мс) от первой точки того же callId.
+     * Дополнительно "push_transit" — wallMs(fcm_received) − серверный timestamp.
+     * Возвращает point → {count, p50, p90, p99, max}.
+     */
+    synchronized Map<String, double[]> summarize() {
+        long count = Math.min(writeSeq, CAPACITY);
+        long first = writeSeq - count;
+
+        Map<Integer, long[]> callStart = new HashMap<>();
+        List<long[]> records = new ArrayList<>();
+        for (long seq = first; seq < writeSeq; seq++) {
+            int offset = HEADER_SIZE + (int) (seq % CAPACITY) * RECORD_SIZE;
+            long t = buffer.getLong(offset);
+            long wall = buffer.getLong(offset + 8);
+            int key = buffer.getInt(offset + 16);
+            short point = buffer.getShort(offset + 20);
+            long extra = buffer.getLong(offset + 24);
+            if (key == 0) continue;
+
+            long[] start = callStart.get(key);
+            if (start == null || t < start[0] || t - start[0] > MAX_SPAN_NANOS) {
+                callStart.put(key, new long[]{t});
+            }
+            records.add(new long[]{key, point, t, wall, extra});
+        }
+
+        Map<String, List<Double>> samples = new LinkedHashMap<>();
+        for (long[] r : records) {
+            long start = callStart.get((int) r[0])[0];
+            long delta = r[2] - start;
+            if (delta < 0 || delta > MAX_SPAN_NANOS) continue;
+
+            int point = (int) r[1];
+            String name = point > 0 && point < POINT_NAMES.length ? POINT_NAMES[point] : POINT_NAMES[0];
+            add(samples, name, delta / 1_000_000.0);
+
+            if (point == FCM_RECEIVED && r[4] > 0) {
+                add(samples, "push_transit", (double) (r[3] - r[4]));
+            }
+        }
+
+        Map<String, double[]> result = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Double>> e : samples.entrySet()) {
+            double[] values = new double[e.getValue().size()];
+            for (int i = 0; i < values.length; i++) values[i] = e.getValue().get(i);
+            Arrays.sort(values);
+            result.put(e.getKey(), new double[]{
+                    values.length,
+                    percentile(values, 0.50),
+                    percentile(values, 0.90),
+                    percentile(values, 0.99),
+                    values[values.length - 1],
+            });
+        }
+        return result;
+    }
+
+    private static void add(Map<String, List<Double>> samples, String name, double value) {
+        List<Double> list = samples.get(name);
+        if (list == null) {
+            list = new ArrayList<>();
+            samples.put(name, list);
+        }
+        list.add(value);
+    }
+
+    private static double percentile(double[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
@@ -0,0 +1,85 @@
+package com.securecallapp;
+
+import android.util.Base64;
+import android.util.Log;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.Map;
+
+/**
+ * CallTraceModule — доступ JS к трассировке входящего звонка (CallTrace)
+ *
+ * - mark(point, callId): точка из JS (обработчик incomingCall)
+ * - getSummary(): перцентили p50/p90/p99/max по каждой точке, мс
+ * - exportRaw(): весь кольцевой буфер в base64
+ */
+public class CallTraceModule extends ReactContextBaseJavaModule {
+    public static final String NAME = "CallTrace";
+    private static final String TAG = "CallTraceModule";
+
+    public CallTraceModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @ReactMethod
+    public void mark(String point, String callId) {
+        short id = CallTrace.pointFromName(point);
+        if (id == 0) {
+            Log.w(TAG, "⚠️ Неизвестная точка трассировки: " + point);
+            return;
+        }
+        CallTrace.mark(getReactApplicationContext(), id, callId);
+    }
+
+    @ReactMethod
+    public void getSummary(Promise promise) {
+        CallTrace trace = CallTrace.get(getReactApplicationContext());
+        if (trace == null) {
+            promise.reject("TRACE_UNAVAILABLE", "Буфер трассировки недоступен");
+            return;
+        }
+
+        WritableMap result = Arguments.createMap();
+        for (Map.Entry<String, double[]> e : trace.summarize().entrySet()) {
+            double[] v = e.getValue();
+            WritableMap stats = Arguments.createMap();
+            stats.putInt("count", (int) v[0]);
+            stats.putDouble("p50", v[1]);
+            stats.putDouble("p90", v[2]);
+            stats.putDouble("p99", v[3]);
+            stats.putDouble("max", v[4]);
+            result.putMap(e.getKey(), stats);
+        }
+        promise.resolve(result);
+    }
+
+    @ReactMethod
+    public void exportRaw(Promise promise) {
+        CallTrace trace = CallTrace.get(getReactApplicationContext());
+        if (trace == null) {
+            promise.reject("TRACE_UNAVAILABLE", "Буфер трассировки недоступен");
+            return;
+        }
+        promise.resolve(Base64.encodeToString(trace.export(), Base64.NO_WRAP));
+    }
+
+    @ReactMethod
+    public void clear(Promise promise) {
+        CallTrace trace = CallTrace.get(getReactApplicationContext());
+        if (trace != null) {
+            trace.clear();
+        }
+        promise.resolve(true);
+    }
+}
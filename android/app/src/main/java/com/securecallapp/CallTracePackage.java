@@ -0,0 +1,41 @@
+package com.securecallapp;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.BaseReactPackage;
+import com.facebook.react.bridge.NativeModule;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.module.model.ReactModuleInfo;
+import com.facebook.react.module.model.ReactModuleInfoProvider;
+
+import java.util.Collections;
+
+/**
+ * Package для CallTraceModule
+ *
+ * BaseReactPackage: модуль создаётся лениво — при первом обращении из JS
+ * (spec src/specs/NativeCallTrace.js), а не на каждом старте React.
+ */
+public class CallTracePackage extends BaseReactPackage {
+
+    @Nullable
+    @Override
+    public NativeModule getModule(String name, ReactApplicationContext reactContext) {
+        if (CallTraceModule.NAME.equals(name)) {
+            return new CallTraceModule(reactContext);
+        }
+        return null;
+    }
+
+    @Override
+    public ReactModuleInfoProvider getReactModuleInfoProvider() {
+        return () -> Collections.singletonMap(CallTraceModule.NAME, new ReactModuleInfo(
+                CallTraceModule.NAME,
+                CallTraceModule.class.getName(),
+                false, // canOverrideExistingModule
+                false, // needsEagerInit — ленивое создание
+                false, // isCxxModule
+                false  // isTurboModule — Java-модуль через interop, пока newArchEnabled=false
+        ));
+    }
+}
@@ -7,30 +7,42 @@ import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
-import android.net.wifi.WifiManager;
-import android.net.wifi.WifiManager.WifiLock;
 import android.os.Build;
 import android.os.IBinder;
-import android.os.PowerManager;
 import androidx.core.app.NotificationCompat;
 import android.util.Log;
 
+import java.util.Map;
+
 /**
- * ConnectionForegroundService v2.0 FIX
+ * ConnectionForegroundService v3.0
  *
  * ИСПРАВЛЕНИЯ:
  * - Безопасная обработка WakeLock для Android 15
  * - Timeout на WakeLock (6 часов) для предотвращения утечек
  * - Корректная остановка при onTaskRemoved
+ *
+ * v3.0:
+ * - Нативный SignalingClient держит сессию, пока JS не подключён
+ *   (входящий звонок без FCM → Headless JS)
+ * - ReactRuntimeKeeper: тёплый React-инстанс с keep-warm окном,
+ *   выгрузка при нехватке памяти
+ * - WakeLockScheduler вместо постоянных CPU/Wi-Fi lock: окна вокруг
+ *   heartbeat/reconnect/сигналинга, Wi-Fi low latency — только в звонке
+ * - NetworkMonitor: NetworkCallback → мгновенный reconnect при смене сети
  */
 public class ConnectionForegroundService extends Service {
     private static final String TAG = "ConnectionService";
     private static final String CHANNEL_ID = "SecureCallConnection";
     private static final int NOTIFICATION_ID = 1001;
 
-    private PowerManager.WakeLock cpuWakeLock;
-    private WifiLock wifiLock;
     private boolean isServiceStarted = false;
+    private SignalingClient signalingClient;
+    private NetworkMonitor networkMonitor;
+
+    // JS-сокет авторизован и владеет сессией на сервере
+    private static volatile boolean sJsAttached = false;
+    private static volatile ConnectionForegroundService sInstance;
 
     @Override
     public void onCreate() {
@@ -50,8 +62,22 @@ public class ConnectionForegroundService extends Service {
 
         Notification notification = createNotification();
         startForeground(NOTIFICATION_ID, notification);
-        acquireWakeLocks();
+        // Больше никаких 6-часовых lock: CPU держим только окнами (WakeLockScheduler)
+        WakeLockScheduler.get(this).holdWindow("service start", 15000);
         isServiceStarted = true;
+        sInstance = this;
+
+        signalingClient = new SignalingClient(this);
+        signalingClient.start();
+
+        // Смена default network → мгновенный reconnect (натив + событие в JS)
+        networkMonitor = new NetworkMonitor(this, (handle, isSwitch) -> {
+            SignalingClient client = signalingClient;
+            if (client != null) client.onNetworkChanged(isSwitch);
+        });
+        networkMonitor.start();
+
+        ReactRuntimeKeeper.warm(this, "service start");
 
         Log.d(TAG, "✅ Сервис полностью готов");
         return START_STICKY;
@@ -61,8 +87,19 @@ public class ConnectionForegroundService extends Service {
     public void onDestroy() {
         super.onDestroy();
         Log.d(TAG, "⛔ ConnectionForegroundService ОСТАНОВКА");
-        releaseWakeLocks();
+        WakeLockScheduler.get(this).releaseAll();
         isServiceStarted = false;
+        if (networkMonitor != null) {
+            networkMonitor.stop();
+            networkMonitor = null;
+        }
+        if (signalingClient != null) {
+            signalingClient.shutdown();
+            signalingClient = null;
+        }
+        if (sInstance == this) {
+            sInstance = null;
+        }
     }
 
     @Override
@@ -70,68 +107,6 @@ public class ConnectionForegroundService extends Service {
         return null;
     }
 
-    /**
-     * Получить CPU и WiFi Wake Locks
-     * FIX: Timeout 6 часов для предотвращения утечек на Android 15
-     */
-    private void acquireWakeLocks() {
-        try {
-            // CPU WAKE LOCK с таймаутом
-            PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
-            if (powerManager != null && cpuWakeLock == null) {
-                cpuWakeLock = powerManager.newWakeLock(
-                        PowerManager.PARTIAL_WAKE_LOCK,
-                        "SecureCall::CPULock"
-                );
-                // FIX: Таймаут 6 часов вместо бесконечного
-                cpuWakeLock.acquire(6 * 60 * 60 * 1000L);
-                Log.d(TAG, "✅ CPU WAKE_LOCK активирован (6ч таймаут)");
-            }
-
-            // WiFi WAKE LOCK
-            WifiManager wifiManager = (WifiManager) getApplicationContext()
-                    .getSystemService(Context.WIFI_SERVICE);
-            if (wifiManager != null && wifiLock == null) {
-                // WIFI_MODE_FULL_HIGH_PERF deprecated с API 29, но это единственный
-                // доступный режим для API < 29. На API 29+ используем FULL_LOW_LATENCY.
-                // @SuppressWarnings не работает на выражениях, поэтому подавляем через переменную.
-                @SuppressWarnings("deprecation")
-                int legacyWifiMode = WifiManager.WIFI_MODE_FULL_HIGH_PERF;
-                int wifiMode = Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q
-                    ? WifiManager.WIFI_MODE_FULL_LOW_LATENCY
-                    : legacyWifiMode;
-
-                wifiLock = wifiManager.createWifiLock(
-                    wifiMode,
-                    "SecureCall::WiFiLock"
-                );
-                wifiLock.setReferenceCounted(false);
-                wifiLock.acquire();
-                Log.d(TAG, "✅ WiFi WAKE_LOCK активирован");
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "❌ Ошибка активации WakeLocks: " + e.getMessage());
-        }
-    }
-
-    private void releaseWakeLocks() {
-        try {
-            if (cpuWakeLock != null && cpuWakeLock.isHeld()) {
-                cpuWakeLock.release();
-                cpuWakeLock = null;
-                Log.d(TAG, "✅ CPU WakeLock освобождён");
-            }
-
-            if (wifiLock != null && wifiLock.isHeld()) {
-                wifiLock.release();
-                wifiLock = null;
-                Log.d(TAG, "✅ WiFi WakeLock освобождён");
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "❌ Ошибка освобождения WakeLocks: " + e.getMessage());
-        }
-    }
-
     private void createNotificationChannel() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             NotificationChannel channel = new NotificationChannel(
@@ -188,6 +163,64 @@ public class ConnectionForegroundService extends Service {
         Log.d(TAG, "📞 Запрос на старт ConnectionForegroundService");
     }
 
+    /** Сервис создан в этом процессе (без запроса к ActivityManager) */
+    public static boolean isRunning() {
+        return sInstance != null;
+    }
+
+    public static boolean isJsAttached() {
+        return sJsAttached;
+    }
+
+    /**
+     * JS-сокет авторизовался (attached=true), потерял сессию дольше grace-окна
+     * (detachJsSession) или React-контекст уничтожен (false).
+     * При отсоединении нативный клиент снова поднимает сессию.
+     */
+    public static void setJsAttached(boolean attached) {
+        if (sJsAttached == attached) return;
+        sJsAttached = attached;
+        Log.d(TAG, attached ? "🔗 JS-сессия подключена" : "🔓 JS-сессия отключена");
+
+        if (attached) {
+            // Отклонения, не успевшие уйти по нативному сокету, отправит SocketService
+            for (Map.Entry<String, String> e : SignalingClient.drainPendingRejects().entrySet()) {
+                TelecomCallManager.emitAction(TelecomCallManager.ACTION_REJECT, e.getValue(), false, e.getKey());
+            }
+        }
+
+        ConnectionForegroundService service = sInstance;
+        if (service == null || service.signalingClient == null) return;
+        if (attached) {
+            service.signalingClient.suspend();
+        } else {
+            service.signalingClient.start();
+        }
+    }
+
+    /**
+     * Отклонить звонок без JS (нативный экран звонка, Telecom).
+     * @return false — сессию держит JS, отклонение отправит SocketService
+     */
+    public static boolean rejectCallNatively(Context context, String from, String callId) {
+        if (sJsAttached) return false;
+        SignalingClient.queueReject(from, callId);
+
+        ConnectionForegroundService service = sInstance;
+        if (service != null && service.signalingClient != null) {
+            service.signalingClient.flushPendingRejects();
+        } else {
+            // Сервис не запущен — клиент отправит отклонение после auth_success
+            try {
+                start(context);
+            } catch (Exception e) {
+                Log.e(TAG, "❌ Не удалось запустить сервис для reject_call: " + e.getMessage());
+                return false;
+            }
+        }
+        return true;
+    }
+
     public static void stop(Context context) {
         Intent intent = new Intent(context, ConnectionForegroundService.class);
         context.stopService(intent);
@@ -204,11 +237,17 @@ public class ConnectionForegroundService extends Service {
     public void onLowMemory() {
         super.onLowMemory();
         Log.w(TAG, "⚠️ Низкая память — сервис продолжает работу");
+        ReactRuntimeKeeper.evictIfIdle("onLowMemory");
     }
 
     @Override
     public void onTrimMemory(int level) {
         super.onTrimMemory(level);
         Log.w(TAG, "⚠️ onTrimMemory level=" + level);
+        // Сервис в foreground получает RUNNING_* уровни; выгружаем React,
+        // сессию продолжит держать нативный SignalingClient
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            ReactRuntimeKeeper.evictIfIdle("onTrimMemory " + level);
+        }
     }
 }
\ No newline at end of file
@@ -4,6 +4,9 @@ import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
 import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+import android.telecom.DisconnectCause;
 import android.util.Log;
 
 /**
@@ -12,6 +15,7 @@ import android.util.Log;
  * Позволяет JavaScript коду управлять ConnectionForegroundService
  */
 public class ConnectionServiceModule extends ReactContextBaseJavaModule {
+    public static final String NAME = "ConnectionService";
     private static final String TAG = "ConnectionServiceModule";
     private final ReactApplicationContext reactContext;
 
@@ -22,7 +26,7 @@ public class ConnectionServiceModule extends ReactContextBaseJavaModule {
 
     @Override
     public String getName() {
-        return "ConnectionService";
+        return NAME;
     }
 
     /**
@@ -57,6 +61,120 @@ public class ConnectionServiceModule extends ReactContextBaseJavaModule {
         }
     }
 
+    /**
+     * JS-сокет авторизован — нативный SignalingClient отдаёт ему сессию
+     * Вызывается из SocketService при переходе в AUTHENTICATED
+     */
+    @ReactMethod
+    public void attachJsSession() {
+        ConnectionForegroundService.setJsAttached(true);
+    }
+
+    /**
+     * JS-сокет потерял сессию и не восстановил её за grace-окно — нативный
+     * SignalingClient снова держит сессию (звонки по сокету, а не через FCM)
+     */
+    @ReactMethod
+    public void detachJsSession() {
+        ConnectionForegroundService.setJsAttached(false);
+    }
+
+    /**
+     * Держать CPU короткое окно (reconnect, heartbeat, сигналинг звонка)
+     */
+    @ReactMethod
+    public void holdWakeWindow(String reason, double durationMs) {
+        WakeLockScheduler.get(reactContext).holdWindow(reason, (long) durationMs);
+    }
+
+    /**
+     * Активный звонок: CPU + low-latency Wi-Fi lock до завершения.
+     * Заодно переводит Telecom-соединение входящего звонка в active / disconnected.
+     */
+    @ReactMethod
+    public void setCallActive(boolean active) {
+        WakeLockScheduler.get(reactContext).setCallActive(active);
+        TelecomCallManager.onAppCallActive(active);
+    }
+
+    /**
+     * Звонок отклонён / отменён в JS — снять Telecom-соединение
+     */
+    @ReactMethod
+    public void endTelecomCall(String callId, boolean missed) {
+        TelecomCallManager.endCall(
+                callId != null && !callId.isEmpty() ? callId : null,
+                missed ? DisconnectCause.MISSED : DisconnectCause.REJECTED);
+    }
+
+    /**
+     * Действие из системного UI (ответ/отклонение с гарнитуры), сделанное
+     * до загрузки JS: "answer" | "reject" | null
+     */
+    @ReactMethod
+    public void consumePendingCallAction(String callId, Promise promise) {
+        promise.resolve(TelecomCallManager.consumePendingAction(callId));
+    }
+
+    /**
+     * Учёт времени удержания по режимам (мс) + число окон/звонков
+     */
+    @ReactMethod
+    public void getWakeLockStats(Promise promise) {
+        WakeLockScheduler scheduler = WakeLockScheduler.get(reactContext);
+        long[] stats = scheduler.getStats();
+        WritableMap result = Arguments.createMap();
+        result.putString("mode", scheduler.getMode().name());
+        result.putDouble("noneMs", stats[0]);
+        result.putDouble("windowMs", stats[1]);
+        result.putDouble("callMs", stats[2]);
+        result.putDouble("windowCount", stats[3]);
+        result.putDouble("callCount", stats[4]);
+        promise.resolve(result);
+    }
+
+    /**
+     * Handle текущей default network (0 — нет сети / сервис не запущен)
+     */
+    @ReactMethod
+    public void getNetworkHandle(Promise promise) {
+        promise.resolve((double) NetworkMonitor.getCurrentHandle());
+    }
+
+    /**
+     * Keep-warm окно тёплого React-инстанса (мс, 0 = не прогревать)
+     */
+    @ReactMethod
+    public void setReactKeepWarm(double keepWarmMs, Promise promise) {
+        ReactRuntimeKeeper.setKeepWarmMs(reactContext, (long) keepWarmMs);
+        Log.d(TAG, "🔥 Keep-warm окно: " + (long) keepWarmMs + "мс");
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    public void getReactKeepWarm(Promise promise) {
+        promise.resolve((double) ReactRuntimeKeeper.getKeepWarmMs(reactContext));
+    }
+
+    /**
+     * React-контекст уничтожается — сессию снова держит нативный клиент
+     */
+    @Override
+    public void invalidate() {
+        super.invalidate();
+        Log.d(TAG, "🔓 React-контекст уничтожен — возврат сессии нативному клиенту");
+        ConnectionForegroundService.setJsAttached(false);
+    }
+
+    /**
+     * Синхронная проверка (JSI): сервис создан в этом процессе.
+     * Без binder-вызова ActivityManager — годится для горячего пути.
+     */
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public boolean isRunningSync() {
+        return ConnectionForegroundService.isRunning();
+    }
+
     /**
      * Проверить, запущен ли сервис — реальная проверка через ActivityManager
      */
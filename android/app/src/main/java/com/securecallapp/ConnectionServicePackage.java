@@ -1,28 +1,41 @@
 package com.securecallapp;
 
-import com.facebook.react.ReactPackage;
+import androidx.annotation.Nullable;
+
+import com.facebook.react.BaseReactPackage;
 import com.facebook.react.bridge.NativeModule;
 import com.facebook.react.bridge.ReactApplicationContext;
-import com.facebook.react.uimanager.ViewManager;
+import com.facebook.react.module.model.ReactModuleInfo;
+import com.facebook.react.module.model.ReactModuleInfoProvider;
 
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.List;
 
 /**
  * ConnectionServicePackage - регистрация ConnectionServiceModule
+ *
+ * BaseReactPackage: модуль создаётся лениво — при первом обращении из JS
+ * (spec src/specs/NativeConnectionService.js), а не на каждом старте React.
  */
-public class ConnectionServicePackage implements ReactPackage {
+public class ConnectionServicePackage extends BaseReactPackage {
 
+    @Nullable
     @Override
-    public List<NativeModule> createNativeModules(ReactApplicationContext reactContext) {
-        List<NativeModule> modules = new ArrayList<>();
-        modules.add(new ConnectionServiceModule(reactContext));
-        return modules;
+    public NativeModule getModule(String name, ReactApplicationContext reactContext) {
+        if (ConnectionServiceModule.NAME.equals(name)) {
+            return new ConnectionServiceModule(reactContext);
+        }
+        return null;
     }
 
     @Override
-    public List<ViewManager> createViewManagers(ReactApplicationContext reactContext) {
-        return Collections.emptyList();
+    public ReactModuleInfoProvider getReactModuleInfoProvider() {
+        return () -> Collections.singletonMap(ConnectionServiceModule.NAME, new ReactModuleInfo(
+                ConnectionServiceModule.NAME,
+                ConnectionServiceModule.class.getName(),
+                false, // canOverrideExistingModule
+                false, // needsEagerInit — ленивое создание
+                false, // isCxxModule
+                false  // isTurboModule — Java-модуль через interop, пока newArchEnabled=false
+        ));
     }
 }
@@ -0,0 +1,148 @@
+package com.securecallapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * ═══════════════════════════════════════════════════════════
+ * IceConfigCache v1.0 — ICE/TURN конфигурация вне пути ответа на звонок
+ * ═══════════════════════════════════════════════════════════
+ *
+ * WebRTCService запрашивал /webrtc-config в момент начала звонка и держал
+ * результат только в памяти JS: при ответе из холодного старта ICE-сбор
+ * ждал полный HTTPS round-trip.
+ *
+ * - prefetch() вызывается на push входящего звонка (presentIncomingCall),
+ *   параллельно с Telecom/уведомлением; запрос идёт на потоках OkHttp
+ * - Ответ сервера { iceServers, ttl, expiresAt } хранится в NativeKvStore
+ *   (TURN credentials — putSecret), переживает смерть процесса
+ * - JS читает его синхронно: NativeStorage.getIceConfig()
+ * - Конфиг считается годным, пока до expiresAt больше MIN_REMAINING_MS —
+ *   звонок не должен пережить свои TURN credentials
+ */
+public final class IceConfigCache {
+    private static final String TAG = "IceConfigCache";
+
+    private static final String CONFIG_URL = "https://" + BuildConfig.SERVER_HOST + "/webrtc-config";
+
+    // Должен совпадать с ICE_CONFIG_MIN_REMAINING_MS в WebRTCService.js
+    static final long MIN_REMAINING_MS = 60 * 60 * 1000L;
+
+    private static final AtomicBoolean sInFlight = new AtomicBoolean(false);
+    private static volatile OkHttpClient sClient;
+
+    private IceConfigCache() {}
+
+    /**
+     * Сохранённый конфиг (JSON ответа /webrtc-config) или null, если его нет
+     * или он скоро истекает
+     */
+    @Nullable
+    public static String getValid(Context context) {
+        NativeKvStore store = NativeKvStore.get(context);
+        long expiresAt = store.getLong(NativeKvStore.KEY_ICE_CONFIG_EXPIRES_AT, 0L);
+        if (System.currentTimeMillis() + MIN_REMAINING_MS >= expiresAt) return null;
+        return store.getString(NativeKvStore.KEY_ICE_CONFIG, null);
+    }
+
+    public static void store(Context context, String json, long expiresAt) {
+        NativeKvStore store = NativeKvStore.get(context);
+        store.putSecret(NativeKvStore.KEY_ICE_CONFIG, json);
+        store.putLong(NativeKvStore.KEY_ICE_CONFIG_EXPIRES_AT, expiresAt);
+    }
+
+    /**
+     * Загрузить конфиг в фоне, если сохранённый не годится. Не блокирует;
+     * параллельные вызовы (FCM + SignalingClient) схлопываются в один запрос.
+     */
+    public static void prefetch(Context context) {
+        final Context app = context.getApplicationContext();
+        if (getValid(app) != null) {
+            Log.d(TAG, "✅ ICE конфиг в кэше актуален");
+            return;
+        }
+        if (!sInFlight.compareAndSet(false, true)) return;
+
+        final long startedAt = System.currentTimeMillis();
+        Request request = new Request.Builder()
+                .url(CONFIG_URL)
+                .header("Accept", "application/json")
+                .build();
+
+        client().newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                sInFlight.set(false);
+                Log.w(TAG, "⚠️ Не удалось загрузить ICE конфиг: " + e.getMessage());
+            }
+
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                try (ResponseBody body = response.body()) {
+                    if (!response.isSuccessful() || body == null) {
+                        Log.w(TAG, "⚠️ /webrtc-config HTTP " + response.code());
+                        return;
+                    }
+                    String json = body.string();
+                    long expiresAt = parseExpiresAt(json);
+                    if (expiresAt <= System.currentTimeMillis()) {
+                        Log.w(TAG, "⚠️ ICE конфиг без срока действия или уже истёк — не сохраняем");
+                        return;
+                    }
+                    store(app, json, expiresAt);
+                    Log.d(TAG, "✅ ICE конфиг загружен за "
+                            + (System.currentTimeMillis() - startedAt) + " мс, до " + expiresAt);
+                } catch (Exception e) {
+                    Log.w(TAG, "⚠️ Ошибка разбора ICE конфига: " + e.getMessage());
+                } finally {
+                    sInFlight.set(false);
+                }
+            }
+        });
+    }
+
+    /** expiresAt (мс) из ответа; 0 — конфиг непригоден */
+    static long parseExpiresAt(String json) throws org.json.JSONException {
+        JSONObject config = new JSONObject(json);
+        JSONArray servers = config.optJSONArray("iceServers");
+        if (servers == null || servers.length() == 0) return 0L;
+
+        long expiresAt = config.optLong("expiresAt", 0L);
+        if (expiresAt <= 0) {
+            long ttlSec = config.optLong("ttl", 0L);
+            expiresAt = ttlSec > 0 ? System.currentTimeMillis() + ttlSec * 1000L : 0L;
+        }
+        return expiresAt;
+    }
+
+    private static OkHttpClient client() {
+        if (sClient == null) {
+            synchronized (IceConfigCache.class) {
+                if (sClient == null) {
+                    sClient = new OkHttpClient.Builder()
+                            .connectTimeout(5, TimeUnit.SECONDS)
+                            .readTimeout(5, TimeUnit.SECONDS)
+                            .build();
+                }
+            }
+        }
+        return sClient;
+    }
+}
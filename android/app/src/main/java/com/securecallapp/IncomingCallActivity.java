@@ -0,0 +1,265 @@
+package com.securecallapp;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.graphics.drawable.GradientDrawable;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.telecom.DisconnectCause;
+import android.util.Log;
+import android.util.TypedValue;
+import android.view.Gravity;
+import android.view.View;
+import android.view.WindowManager;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * ═══════════════════════════════════════════════════════════
+ * IncomingCallActivity v1.0 — нативный экран звонка до старта React
+ * ═══════════════════════════════════════════════════════════
+ *
+ * Цель fullScreenIntent вместо MainActivity: на убитом процессе экран
+ * блокировки больше не висит чёрным, пока грузятся SoLoader/Hermes/бандл.
+ * Обычные View без XML-инфлейта и без AppCompat — первый кадр за сотни мс.
+ *
+ * - React прогревается параллельно (ReactRuntimeKeeper.warm после первого кадра)
+ * - Принять → callId уходит в MainActivity (intent → событие "incomingCall"),
+ *   а pending-действие "answer" принимает звонок в IncomingCallScreen
+ * - Отклонить → reject_call по нативному SignalingClient, JS не нужен
+ * - Закрывается сам при отмене звонка (IncomingCallNotifier.cancel → dismiss)
+ *   и по таймауту звонка
+ */
+public class IncomingCallActivity extends Activity {
+    private static final String TAG = "IncomingCallActivity";
+
+    private static WeakReference<IncomingCallActivity> sCurrent = new WeakReference<>(null);
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable ringTimeout = () -> {
+        Log.d(TAG, "⏰ Звонок не принят — закрытие экрана");
+        finish();
+    };
+
+    private String from;
+    private boolean isVideo;
+    private String callId;
+    private boolean handled = false;
+
+    private TextView avatarView;
+    private TextView nameView;
+    private TextView typeView;
+
+    /** Звонок отменён / принят в другом месте — закрыть экран (callId == null — любой) */
+    static void dismiss(String callId) {
+        IncomingCallActivity activity = sCurrent.get();
+        if (activity == null) return;
+        activity.runOnUiThread(() -> {
+            if (activity.isFinishing()) return;
+            if (callId != null && activity.callId != null && !callId.equals(activity.callId)) return;
+            activity.finish();
+        });
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        sCurrent = new WeakReference<>(this);
+
+        showOverLockScreen();
+        setContentView(buildContent());
+        bind(getIntent());
+
+        // После первого кадра: отметка трассировки + прогрев React параллельно с рингтоном
+        getWindow().getDecorView().post(() -> {
+            CallTrace.mark(this, CallTrace.RINGING_UI_SHOWN, callId);
+            ReactRuntimeKeeper.warm(this, "incoming_activity");
+        });
+    }
+
+    @Override
+    protected void onNewIntent(Intent intent) {
+        super.onNewIntent(intent);
+        setIntent(intent);
+        handled = false;
+        bind(intent);
+    }
+
+    @Override
+    protected void onDestroy() {
+        handler.removeCallbacks(ringTimeout);
+        if (sCurrent.get() == this) {
+            sCurrent = new WeakReference<>(null);
+        }
+        super.onDestroy();
+    }
+
+    private void bind(Intent intent) {
+        Bundle extras = intent != null ? intent.getExtras() : null;
+        if (extras == null || extras.getString("from") == null) {
+            Log.w(TAG, "⚠️ Нет данных о звонке — закрытие");
+            finish();
+            return;
+        }
+
+        from = extras.getString("from");
+        // IncomingCallNotifier.fillIntent кладёт isVideo строкой
+        isVideo = "true".equals(extras.getString("isVideo"));
+        callId = extras.getString("callId");
+
+        avatarView.setText(initials(from));
+        nameView.setText(from);
+        typeView.setText(isVideo ? "📹 Видеозвонок" : "📞 Аудиозвонок");
+
+        handler.removeCallbacks(ringTimeout);
+        handler.postDelayed(ringTimeout, IncomingCallNotifier.get(this).remainingRingMs(callId));
+        Log.d(TAG, "📞 Экран звонка: " + from + " (callId=" + callId + ")");
+    }
+
+    private void accept() {
+        if (handled) return;
+        handled = true;
+        Log.d(TAG, "✅ Принять: " + callId);
+
+        IncomingCallNotifier.get(this).cancel(callId);
+        TelecomCallManager.onAppCallActive(true);
+        // pending "answer" + MainActivity с extras звонка → событие "incomingCall"
+        TelecomCallManager.onCallAction(this, TelecomCallManager.ACTION_ANSWER, from, isVideo,
+                callId != null ? callId : "");
+        finish();
+    }
+
+    private void decline() {
+        if (handled) return;
+        handled = true;
+        Log.d(TAG, "❌ Отклонить: " + callId);
+
+        IncomingCallNotifier.get(this).cancel(callId);
+        TelecomCallManager.endCall(callId, DisconnectCause.REJECTED);
+        // reject_call по нативному сокету (или через SocketService, если JS держит сессию)
+        TelecomCallManager.onCallAction(this, TelecomCallManager.ACTION_REJECT, from, isVideo,
+                callId != null ? callId : "");
+        finish();
+    }
+
+    private void showOverLockScreen() {
+        // Как в MainActivity: setShowWhenLocked/setTurnScreenOn с O_MR1, флаги окна до него
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+            setShowWhenLocked(true);
+            setTurnScreenOn(true);
+        } else {
+            //noinspection deprecation
+            getWindow().addFlags(
+                    WindowManager.LayoutParams.FLAG_SHOW_WHEN_LOCKED |
+                    WindowManager.LayoutParams.FLAG_TURN_SCREEN_ON
+            );
+        }
+        // Кнопки работают поверх блокировки — keyguard не снимаем
+        getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+    }
+
+    // ═══════════════════════════════════════════════════════════
+    // UI (без XML — никакого инфлейта на холодном старте)
+    // ═══════════════════════════════════════════════════════════
+
+    private View buildContent() {
+        LinearLayout root = new LinearLayout(this);
+        root.setOrientation(LinearLayout.VERTICAL);
+        root.setGravity(Gravity.CENTER_HORIZONTAL);
+        root.setPadding(dp(24), dp(96), dp(24), dp(72));
+        root.setBackground(new GradientDrawable(
+                GradientDrawable.Orientation.TOP_BOTTOM,
+                new int[]{getColor(R.color.colorPrimary), getColor(R.color.colorPrimaryDark)}));
+
+        avatarView = new TextView(this);
+        avatarView.setGravity(Gravity.CENTER);
+        avatarView.setTextColor(Color.WHITE);
+        avatarView.setTextSize(TypedValue.COMPLEX_UNIT_SP, 40);
+        avatarView.setTypeface(Typeface.DEFAULT_BOLD);
+        avatarView.setBackground(circle(0x33FFFFFF));
+        root.addView(avatarView, new LinearLayout.LayoutParams(dp(120), dp(120)));
+
+        nameView = new TextView(this);
+        nameView.setGravity(Gravity.CENTER);
+        nameView.setTextColor(Color.WHITE);
+        nameView.setTextSize(TypedValue.COMPLEX_UNIT_SP, 30);
+        nameView.setTypeface(Typeface.DEFAULT_BOLD);
+        LinearLayout.LayoutParams nameParams = new LinearLayout.LayoutParams(
+                LinearLayout.LayoutParams.MATCH_PARENT, LinearLayout.LayoutParams.WRAP_CONTENT);
+        nameParams.topMargin = dp(24);
+        root.addView(nameView, nameParams);
+
+        typeView = new TextView(this);
+        typeView.setGravity(Gravity.CENTER);
+        typeView.setTextColor(0xCCFFFFFF);
+        typeView.setTextSize(TypedValue.COMPLEX_UNIT_SP, 18);
+        LinearLayout.LayoutParams typeParams = new LinearLayout.LayoutParams(
+                LinearLayout.LayoutParams.MATCH_PARENT, LinearLayout.LayoutParams.WRAP_CONTENT);
+        typeParams.topMargin = dp(8);
+        root.addView(typeView, typeParams);
+
+        View spacer = new View(this);
+        root.addView(spacer, new LinearLayout.LayoutParams(0, 0, 1f));
+
+        LinearLayout buttons = new LinearLayout(this);
+        buttons.setOrientation(LinearLayout.HORIZONTAL);
+        buttons.setGravity(Gravity.CENTER);
+        buttons.addView(callButton("✕", "Отклонить", getColor(R.color.call_reject), v -> decline()),
+                new LinearLayout.LayoutParams(0, LinearLayout.LayoutParams.WRAP_CONTENT, 1f));
+        buttons.addView(callButton("✓", "Принять", getColor(R.color.call_accept), v -> accept()),
+                new LinearLayout.LayoutParams(0, LinearLayout.LayoutParams.WRAP_CONTENT, 1f));
+        root.addView(buttons, new LinearLayout.LayoutParams(
+                LinearLayout.LayoutParams.MATCH_PARENT, LinearLayout.LayoutParams.WRAP_CONTENT));
+
+        return root;
+    }
+
+    private View callButton(String icon, String label, int color, View.OnClickListener listener) {
+        LinearLayout column = new LinearLayout(this);
+        column.setOrientation(LinearLayout.VERTICAL);
+        column.setGravity(Gravity.CENTER_HORIZONTAL);
+
+        TextView button = new TextView(this);
+        button.setText(icon);
+        button.setGravity(Gravity.CENTER);
+        button.setTextColor(Color.WHITE);
+        button.setTextSize(TypedValue.COMPLEX_UNIT_SP, 32);
+        button.setBackground(circle(color));
+        button.setOnClickListener(listener);
+        button.setContentDescription(label);
+        column.addView(button, new LinearLayout.LayoutParams(dp(72), dp(72)));
+
+        TextView caption = new TextView(this);
+        caption.setText(label);
+        caption.setTextColor(Color.WHITE);
+        caption.setTextSize(TypedValue.COMPLEX_UNIT_SP, 14);
+        LinearLayout.LayoutParams captionParams = new LinearLayout.LayoutParams(
+                LinearLayout.LayoutParams.WRAP_CONTENT, LinearLayout.LayoutParams.WRAP_CONTENT);
+        captionParams.topMargin = dp(8);
+        column.addView(caption, captionParams);
+
+        return column;
+    }
+
+    private static GradientDrawable circle(int color) {
+        GradientDrawable drawable = new GradientDrawable();
+        drawable.setShape(GradientDrawable.OVAL);
+        drawable.setColor(color);
+        return drawable;
+    }
+
+    private static String initials(String name) {
+        String trimmed = name.trim();
+        return (trimmed.length() > 2 ? trimmed.substring(0, 2) : trimmed).toUpperCase();
+    }
+
+    private int dp(int value) {
+        return Math.round(value * getResources().getDisplayMetrics().density);
+    }
+}
@@ -0,0 +1,274 @@
+package com.securecallapp;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.media.AudioAttributes;
+import android.media.RingtoneManager;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+
+/**
+ * ═══════════════════════════════════════════════════════════
+ * IncomingCallNotifier v1.0 — единый движок уведомления о звонке
+ * ═══════════════════════════════════════════════════════════
+ *
+ * Раньше MyFirebaseMessagingService и CallNotificationModule строили
+ * одинаковые Intent/PendingIntent/Builder по-своему (и с разными паттернами
+ * вибрации), а модуль пересоздавал канал при каждой инициализации bridge.
+ *
+ * Теперь:
+ * - канал "incoming_calls", URI рингтона и AudioAttributes создаются один раз
+ * - шаблоны Intent кэшируются; PendingIntent и Builder переиспользуются
+ *   для того же callId (update без лишних binder-вызовов)
+ * - сборка и notify() идут на выделенном потоке с высоким приоритетом,
+ *   а не на потоке FCM-callback
+ * - API show / update / cancel по callId
+ *
+ * v1.1: fullScreenIntent → нативный IncomingCallActivity (рисуется до
+ * старта React); contentIntent по-прежнему открывает MainActivity.
+ */
+public final class IncomingCallNotifier {
+    private static final String TAG = "IncomingCallNotifier";
+
+    static final String CHANNEL_ID = "incoming_calls";
+    static final int NOTIFICATION_ID = 9999;
+
+    private static final long[] VIBRATION_PATTERN = {0, 500, 300, 500, 300, 500};
+    // Сервер не прислал ringTimeoutMs — самое длинное окно сервера:
+    // звонок через push (push_sent) звонит CALL_TIMEOUT_MS * 2 = 90 сек
+    static final long DEFAULT_RING_TIMEOUT_MS = 90000;
+    private static final long MIN_RING_TIMEOUT_MS = 5000;
+
+    private static volatile IncomingCallNotifier sInstance;
+
+    private final Context context;
+    private final Handler handler;
+    private final NotificationManager notificationManager;
+
+    // Кэш (только поток нотификатора)
+    private boolean channelReady = false;
+    private Uri ringtoneUri;
+    private AudioAttributes ringtoneAttrs;
+    private Intent contentTemplate;
+    private Intent fullScreenTemplate;
+
+    // Текущий звонок
+    private String currentCallId;
+    private NotificationCompat.Builder currentBuilder;
+
+    // Срок звонка от сервера: уведомление и IncomingCallActivity гаснут вместе с ним
+    private String ringDeadlineCallId;
+    private long ringDeadlineAt;
+
+    private IncomingCallNotifier(Context context) {
+        this.context = context.getApplicationContext();
+        this.notificationManager =
+                (NotificationManager) this.context.getSystemService(Context.NOTIFICATION_SERVICE);
+
+        HandlerThread thread = new HandlerThread("SecureCall-CallNotifier", Process.THREAD_PRIORITY_DISPLAY);
+        thread.start();
+        this.handler = new Handler(thread.getLooper());
+    }
+
+    public static IncomingCallNotifier get(Context context) {
+        if (sInstance == null) {
+            synchronized (IncomingCallNotifier.class) {
+                if (sInstance == null) {
+                    sInstance = new IncomingCallNotifier(context);
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    // ═══════════════════════════════════════════════════════════
+    // ПУБЛИЧНЫЙ API (любой поток)
+    // ═══════════════════════════════════════════════════════════
+
+    /** Показать (или обновить, если тот же callId) уведомление о входящем звонке */
+    public void show(String from, boolean isVideo, String callId) {
+        handler.post(() -> postIncoming(from, isVideo, callId));
+    }
+
+    /** Сколько сервер ещё будет звонить (ringTimeoutMs из push / incoming_call) */
+    public synchronized void setRingTimeout(String callId, long timeoutMs) {
+        ringDeadlineCallId = callId;
+        ringDeadlineAt = System.currentTimeMillis() + timeoutMs;
+    }
+
+    /** Остаток окна звонка; срок неизвестен — DEFAULT_RING_TIMEOUT_MS */
+    synchronized long remainingRingMs(String callId) {
+        if (ringDeadlineAt == 0 || callId == null || !callId.equals(ringDeadlineCallId)) {
+            return DEFAULT_RING_TIMEOUT_MS;
+        }
+        return Math.max(MIN_RING_TIMEOUT_MS, ringDeadlineAt - System.currentTimeMillis());
+    }
+
+    /** Обновить текст уведомления текущего звонка */
+    public void update(String callId, String contentText) {
+        handler.post(() -> {
+            if (currentBuilder == null || !sameCall(callId)) return;
+            currentBuilder.setContentText(contentText).setOnlyAlertOnce(true);
+            notifySafely(currentBuilder.build());
+        });
+    }
+
+    /** Убрать уведомление; callId == null — любой текущий звонок */
+    public void cancel(String callId) {
+        handler.post(() -> {
+            if (callId != null && currentCallId != null && !callId.equals(currentCallId)) {
+                Log.d(TAG, "⏭️ cancel для другого звонка (" + callId + ") — пропуск");
+                return;
+            }
+            if (notificationManager != null) {
+                notificationManager.cancel(NOTIFICATION_ID);
+            }
+            currentCallId = null;
+            currentBuilder = null;
+            IncomingCallActivity.dismiss(callId);
+            Log.d(TAG, "✅ Уведомление о звонке отменено");
+        });
+    }
+
+    /** Создать канал заранее (например, из onCreate сервисов) */
+    public void prepare() {
+        handler.post(this::ensureChannel);
+    }
+
+    // ═══════════════════════════════════════════════════════════
+    // ПОТОК НОТИФИКАТОРА
+    // ═══════════════════════════════════════════════════════════
+
+    private void postIncoming(String from, boolean isVideo, String callId) {
+        ensureChannel();
+
+        if (currentBuilder != null && sameCall(callId) && callId != null) {
+            // Повторная доставка того же звонка — без нового звука/вибрации
+            currentBuilder.setOnlyAlertOnce(true);
+            notifySafely(currentBuilder.build());
+            Log.d(TAG, "♻️ Уведомление для " + callId + " обновлено");
+            return;
+        }
+
+        PendingIntent contentIntent = PendingIntent.getActivity(
+                context,
+                0,
+                fillIntent(contentTemplate(), from, isVideo, callId),
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+        PendingIntent fullScreenIntent = PendingIntent.getActivity(
+                context,
+                1,
+                fillIntent(fullScreenTemplate(), from, isVideo, callId),
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_ID)
+                .setSmallIcon(android.R.drawable.ic_menu_call)
+                .setContentTitle(isVideo ? "📹 Видеозвонок" : "📞 Входящий звонок")
+                .setContentText(from + " звонит вам")
+                .setPriority(NotificationCompat.PRIORITY_MAX)
+                .setCategory(NotificationCompat.CATEGORY_CALL)
+                .setAutoCancel(true)
+                .setOngoing(true)
+                .setFullScreenIntent(fullScreenIntent, true)
+                .setContentIntent(contentIntent)
+                .setVibrate(VIBRATION_PATTERN)
+                .setSound(ringtoneUri)
+                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
+                .setTimeoutAfter(remainingRingMs(callId));
+
+        currentCallId = callId;
+        currentBuilder = builder;
+
+        notifySafely(builder.build());
+        CallTrace.mark(context, CallTrace.NOTIFY_POSTED, callId);
+        Log.d(TAG, "✅ Notification о входящем звонке показан");
+    }
+
+    private void notifySafely(Notification notification) {
+        if (notificationManager == null) return;
+        try {
+            notificationManager.notify(NOTIFICATION_ID, notification);
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Ошибка notify: " + e.getMessage());
+        }
+    }
+
+    private boolean sameCall(String callId) {
+        return callId == null ? currentCallId == null : callId.equals(currentCallId);
+    }
+
+    private void ensureChannel() {
+        if (channelReady) return;
+
+        ringtoneUri = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_RINGTONE);
+        ringtoneAttrs = new AudioAttributes.Builder()
+                .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                .setUsage(AudioAttributes.USAGE_NOTIFICATION_RINGTONE)
+                .build();
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && notificationManager != null
+                && notificationManager.getNotificationChannel(CHANNEL_ID) == null) {
+            // Создаём только если канала нет — importance существующего канала не меняется
+            NotificationChannel channel = new NotificationChannel(
+                    CHANNEL_ID,
+                    "Входящие звонки",
+                    NotificationManager.IMPORTANCE_HIGH
+            );
+            channel.setDescription("Уведомления о входящих звонках");
+            channel.enableVibration(true);
+            channel.setVibrationPattern(VIBRATION_PATTERN);
+            channel.setSound(ringtoneUri, ringtoneAttrs);
+            channel.setLockscreenVisibility(NotificationCompat.VISIBILITY_PUBLIC);
+            channel.setBypassDnd(true);
+            notificationManager.createNotificationChannel(channel);
+            Log.d(TAG, "Channel created: " + CHANNEL_ID);
+        }
+        channelReady = true;
+    }
+
+    private Intent contentTemplate() {
+        if (contentTemplate == null) {
+            contentTemplate = new Intent(context, MainActivity.class);
+            contentTemplate.setAction(Intent.ACTION_MAIN);
+            contentTemplate.addCategory(Intent.CATEGORY_LAUNCHER);
+            contentTemplate.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK |
+                    Intent.FLAG_ACTIVITY_CLEAR_TOP |
+                    Intent.FLAG_ACTIVITY_SINGLE_TOP);
+        }
+        return contentTemplate;
+    }
+
+    private Intent fullScreenTemplate() {
+        if (fullScreenTemplate == null) {
+            // Нативный экран звонка — без ожидания SoLoader/Hermes/бандла
+            fullScreenTemplate = new Intent(context, IncomingCallActivity.class);
+            fullScreenTemplate.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK |
+                    Intent.FLAG_ACTIVITY_SINGLE_TOP);
+        }
+        return fullScreenTemplate;
+    }
+
+    private static Intent fillIntent(Intent template, String from, boolean isVideo, String callId) {
+        Intent intent = new Intent(template);
+        intent.putExtra("type", "incoming_call");
+        intent.putExtra("from", from);
+        // MainActivity.handleIntent() читает isVideo через getString()
+        intent.putExtra("isVideo", String.valueOf(isVideo));
+        if (callId != null && !callId.isEmpty()) {
+            intent.putExtra("callId", callId);
+        }
+        return intent;
+    }
+}
@@ -80,6 +80,14 @@ public class IncomingCallTaskService extends HeadlessJsTaskService {
         data.putString("from", extras.getString("from", ""));
         data.putString("callId", extras.getString("callId", ""));
         data.putBoolean("isVideo", extras.getBoolean("isVideo", false));
+        // Остаток окна звонка — прогрев WebRTC в JS живёт не дольше
+        data.putDouble("ringTimeoutMs",
+                IncomingCallNotifier.get(this).remainingRingMs(extras.getString("callId")));
+
+        CallTrace.mark(this, CallTrace.TASK_CONFIG, extras.getString("callId"));
+
+        // Задача работает в общем (тёплом) React-инстансе — продлеваем keep-warm окно
+        ReactRuntimeKeeper.touch(this);
 
         Log.d(TAG, "Starting IncomingCallTask: from=" + extras.getString("from")
                 + " callId=" + extras.getString("callId"));
@@ -1,6 +1,8 @@
 package com.securecallapp;
 
 import com.facebook.react.ReactActivity;
+import com.facebook.react.ReactInstanceEventListener;
+import com.facebook.react.ReactInstanceManager;
 import com.facebook.react.ReactActivityDelegate;
 import com.facebook.react.defaults.DefaultNewArchitectureEntryPoint;
 import com.facebook.react.defaults.DefaultReactActivityDelegate;
@@ -22,6 +24,7 @@ public class MainActivity extends ReactActivity {
     private boolean pendingCallIsVideo = false;
     private String pendingCallId = null;
     private boolean hasPendingCall = false;
+    private ReactInstanceEventListener pendingCallListener = null;
 
     @Override
     protected String getMainComponentName() {
@@ -43,6 +46,9 @@ public class MainActivity extends ReactActivity {
         // super.onCreate(null) — правильное решение для react-native-screens
         super.onCreate(null);
 
+        // Activity подключилась к общему (возможно уже тёплому) React-инстансу
+        ReactRuntimeKeeper.touch(this);
+
         getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
 
         // ИСПРАВЛЕНО: FLAG_SHOW_WHEN_LOCKED и FLAG_TURN_SCREEN_ON deprecated с API 27.
@@ -121,6 +127,7 @@ public class MainActivity extends ReactActivity {
             boolean isVideo = "true".equals(isVideoStr);
 
             Log.d(TAG, "📞 ВХОДЯЩИЙ ЗВОНОК от: " + from + " (Video: " + isVideo + ", callId: " + callId + ")");
+            CallTrace.mark(this, CallTrace.ACTIVITY_HANDLE_INTENT, callId);
             sendIncomingCallEvent(from, isVideo, callId);
         } else if ("message".equals(type) && from != null) {
             Log.d(TAG, "💬 НОВОЕ СООБЩЕНИЕ от: " + from);
@@ -146,6 +153,7 @@ public class MainActivity extends ReactActivity {
                         .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
                         .emit("incomingCall", params);
 
+                CallTrace.mark(this, CallTrace.EVENT_SENT, callId);
                 Log.d(TAG, "✅ Событие отправлено в JS");
                 hasPendingCall = false;
             } else {
@@ -154,6 +162,7 @@ public class MainActivity extends ReactActivity {
                 pendingCallIsVideo = isVideo;
                 pendingCallId = callId;
                 hasPendingCall = true;
+                flushPendingCallWhenReady();
             }
         } catch (Exception e) {
             Log.e(TAG, "❌ Ошибка отправки: " + e.getMessage());
@@ -164,6 +173,38 @@ public class MainActivity extends ReactActivity {
         }
     }
 
+    /**
+     * Отправить pending-звонок сразу после инициализации React-контекста,
+     * не дожидаясь следующего onResume.
+     */
+    private void flushPendingCallWhenReady() {
+        if (pendingCallListener != null) return;
+
+        final ReactInstanceManager manager = getReactNativeHost().getReactInstanceManager();
+        pendingCallListener = new ReactInstanceEventListener() {
+            @Override
+            public void onReactContextInitialized(ReactContext context) {
+                manager.removeReactInstanceEventListener(this);
+                pendingCallListener = null;
+                if (hasPendingCall && pendingCallFrom != null) {
+                    Log.d(TAG, "✅ ReactContext готов — отправка pending звонка");
+                    sendIncomingCallEvent(pendingCallFrom, pendingCallIsVideo, pendingCallId);
+                }
+            }
+        };
+        manager.addReactInstanceEventListener(pendingCallListener);
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (pendingCallListener != null) {
+            getReactNativeHost().getReactInstanceManager()
+                    .removeReactInstanceEventListener(pendingCallListener);
+            pendingCallListener = null;
+        }
+        super.onDestroy();
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
@@ -35,6 +35,8 @@ public class MainApplication extends Application implements ReactApplication {
                     @SuppressWarnings("UnnecessaryLocalVariable")
                     List<ReactPackage> packages = new PackageList(this).getPackages();
 
+                    // Собственные пакеты — BaseReactPackage: модули создаются лениво,
+                    // при первом обращении из JS, а не при старте инстанса
                     // Регистрация CallNotificationPackage
                     packages.add(new CallNotificationPackage());
 
@@ -44,6 +46,12 @@ public class MainApplication extends Application implements ReactApplication {
                     // Регистрация NativeStoragePackage
                     packages.add(new NativeStoragePackage());
 
+                    // Регистрация CallTracePackage
+                    packages.add(new CallTracePackage());
+
+                    // Регистрация MessageStorePackage
+                    packages.add(new MessageStorePackage());
+
                     return packages;
                 }
 
@@ -0,0 +1,250 @@
+package com.securecallapp;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.media.RingtoneManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.Person;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ═══════════════════════════════════════════════════════════
+ * MessageNotificationCoalescer v1.0 — склейка всплесков сообщений
+ * ═══════════════════════════════════════════════════════════
+ *
+ * Раньше каждый FCM push о сообщении = отдельный NotificationManager.notify().
+ * Пачка из 30 строк или бэклог после reconnect упирались в rate limit системы
+ * (посты молча отбрасываются), а звук/вибрация дёргались на каждый пакет.
+ *
+ * Теперь сообщения копятся в коротком окне на отправителя (WINDOW_MS) и
+ * публикуются одним MessagingStyle-обновлением: последние HISTORY_SIZE строк
+ * + счётчик. Звук/вибрация — один раз за окно. ID уведомления и requestCode
+ * прежние: ("msg_" + from).hashCode().
+ *
+ * Sink подменяется (setSinkForTesting), flushNow() публикует сразу —
+ * можно прогнать синтетический всплеск из 1000 сообщений без таймеров.
+ */
+public final class MessageNotificationCoalescer {
+    private static final String TAG = "MsgCoalescer";
+
+    static final String CHANNEL_ID = "messages";
+
+    static final long WINDOW_MS = 750;
+    static final int HISTORY_SIZE = 7;
+    // Счётчик сбрасывается, если отправитель молчал дольше
+    private static final long STATE_TTL_MS = 30 * 60 * 1000L;
+
+    /** Куда публиковать готовое уведомление */
+    public interface Sink {
+        void post(int notificationId, Notification notification);
+        void cancel(int notificationId);
+    }
+
+    private static final class SenderState {
+        final String from;
+        final ArrayDeque<NotificationCompat.MessagingStyle.Message> history = new ArrayDeque<>();
+        int unreadCount = 0;
+        int pendingInWindow = 0;
+        long lastUpdateRealtime = 0;
+        PendingIntent contentIntent;
+
+        SenderState(String from) {
+            this.from = from;
+        }
+    }
+
+    private static volatile MessageNotificationCoalescer sInstance;
+
+    private final Context context;
+    private final Handler handler;
+    private final Map<String, SenderState> senders = new HashMap<>();
+    private final Person self;
+    private Sink sink;
+
+    // Статистика (поток коалесера)
+    private long submitted = 0;
+    private long posted = 0;
+
+    private MessageNotificationCoalescer(Context context) {
+        this.context = context.getApplicationContext();
+        HandlerThread thread = new HandlerThread("SecureCall-MsgCoalescer");
+        thread.start();
+        this.handler = new Handler(thread.getLooper());
+        this.self = new Person.Builder().setName("Я").build();
+        this.sink = new NotificationManagerSink(this.context);
+    }
+
+    public static MessageNotificationCoalescer get(Context context) {
+        if (sInstance == null) {
+            synchronized (MessageNotificationCoalescer.class) {
+                if (sInstance == null) {
+                    sInstance = new MessageNotificationCoalescer(context);
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    // ═══════════════════════════════════════════════════════════
+    // ПУБЛИЧНЫЙ API (любой поток)
+    // ═══════════════════════════════════════════════════════════
+
+    public void submit(String from, String message, long timestampMs) {
+        handler.post(() -> enqueue(from, message, timestampMs));
+    }
+
+    /** Чат открыт — убрать уведомление и сбросить счётчик */
+    public void clear(String from) {
+        handler.post(() -> {
+            SenderState state = senders.remove(from);
+            if (state != null) {
+                handler.removeCallbacksAndMessages(state);
+            }
+            sink.cancel(notificationId(from));
+        });
+    }
+
+    /** Опубликовать все открытые окна немедленно */
+    public void flushNow() {
+        handler.post(() -> {
+            for (SenderState state : senders.values()) {
+                if (state.pendingInWindow > 0) {
+                    handler.removeCallbacksAndMessages(state);
+                    flush(state);
+                }
+            }
+        });
+    }
+
+    void setSinkForTesting(Sink testSink) {
+        handler.post(() -> sink = testSink);
+    }
+
+    /** {submitted, posted} — для оценки коэффициента склейки */
+    long[] getStats() {
+        return new long[]{submitted, posted};
+    }
+
+    static int notificationId(String from) {
+        return ("msg_" + from).hashCode();
+    }
+
+    // ═══════════════════════════════════════════════════════════
+    // ПОТОК КОАЛЕСЕРА
+    // ═══════════════════════════════════════════════════════════
+
+    private void enqueue(String from, String message, long timestampMs) {
+        submitted++;
+        long now = SystemClock.elapsedRealtime();
+
+        SenderState state = senders.get(from);
+        if (state == null || now - state.lastUpdateRealtime > STATE_TTL_MS) {
+            state = new SenderState(from);
+            senders.put(from, state);
+        }
+
+        Person sender = new Person.Builder().setName(from).build();
+        state.history.addLast(new NotificationCompat.MessagingStyle.Message(message, timestampMs, sender));
+        while (state.history.size() > HISTORY_SIZE) {
+            state.history.removeFirst();
+        }
+        state.unreadCount++;
+        state.lastUpdateRealtime = now;
+
+        // Первое сообщение окна открывает окно; остальные только копятся
+        if (state.pendingInWindow++ == 0) {
+            final SenderState windowState = state;
+            handler.postAtTime(() -> flush(windowState), state, SystemClock.uptimeMillis() + WINDOW_MS);
+        }
+    }
+
+    private void flush(SenderState state) {
+        if (state.pendingInWindow == 0 || senders.get(state.from) != state) return;
+
+        int batch = state.pendingInWindow;
+        state.pendingInWindow = 0;
+
+        NotificationCompat.MessagingStyle style = new NotificationCompat.MessagingStyle(self);
+        for (NotificationCompat.MessagingStyle.Message m : state.history) {
+            style.addMessage(m);
+        }
+
+        String title = state.unreadCount > 1
+                ? state.from + " (" + state.unreadCount + ")"
+                : state.from;
+        style.setConversationTitle(title);
+
+        NotificationCompat.MessagingStyle.Message last = state.history.peekLast();
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_ID)
+                .setSmallIcon(android.R.drawable.ic_dialog_email)
+                .setContentTitle(title)
+                .setContentText(last != null ? last.getText() : "")
+                .setStyle(style)
+                .setNumber(state.unreadCount)
+                .setPriority(NotificationCompat.PRIORITY_HIGH)
+                .setAutoCancel(true)
+                .setContentIntent(contentIntent(state))
+                // Звук/вибрация — один раз на окно (каждый flush = одно окно)
+                .setOnlyAlertOnce(false)
+                .setSound(RingtoneManager.getDefaultUri(RingtoneManager.TYPE_NOTIFICATION))
+                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC);
+
+        sink.post(notificationId(state.from), builder.build());
+        posted++;
+        Log.d(TAG, "✅ " + state.from + ": " + batch + " сообщ. за окно → 1 notify (всего непрочитанных "
+                + state.unreadCount + ")");
+    }
+
+    private PendingIntent contentIntent(SenderState state) {
+        if (state.contentIntent == null) {
+            Intent intent = new Intent(context, MainActivity.class);
+            intent.setAction(Intent.ACTION_MAIN);
+            intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_SINGLE_TOP);
+            intent.putExtra("type", "message");
+            intent.putExtra("from", state.from);
+
+            // Unique requestCode per sender so notifications don't override each other
+            state.contentIntent = PendingIntent.getActivity(
+                    context,
+                    notificationId(state.from),
+                    intent,
+                    PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+            );
+        }
+        return state.contentIntent;
+    }
+
+    private static final class NotificationManagerSink implements Sink {
+        private final NotificationManager notificationManager;
+
+        NotificationManagerSink(Context context) {
+            this.notificationManager =
+                    (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        }
+
+        @Override
+        public void post(int notificationId, Notification notification) {
+            if (notificationManager != null) {
+                notificationManager.notify(notificationId, notification);
+            }
+        }
+
+        @Override
+        public void cancel(int notificationId) {
+            if (notificationManager != null) {
+                notificationManager.cancel(notificationId);
+            }
+        }
+    }
+}
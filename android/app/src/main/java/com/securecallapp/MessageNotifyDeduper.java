@@ -0,0 +1,86 @@
+package com.securecallapp;
+
+import android.content.Context;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * ═══════════════════════════════════════════════════════════
+ * MessageNotifyDeduper v1.0 — одно уведомление на messageId
+ * ═══════════════════════════════════════════════════════════
+ *
+ * При каждой авторизации нативного сокета сервер заново шлёт непрочитанные
+ * (deliverPendingMessages), а то же сообщение могло уже прийти FCM push.
+ * Отсев — по messageId, не по времени: timestamp сообщения ставят часы
+ * отправителя (send_message) или сервера/устройства (FCM), сравнивать их
+ * между отправителями нельзя.
+ *
+ * LRU на MAX_ENTRIES id, сохраняется в NativeKvStore и переживает
+ * перезапуск процесса (как CallPushDeduper).
+ */
+final class MessageNotifyDeduper {
+    private static final String TAG = "MessageNotifyDeduper";
+
+    private static final String KEY_RECENT = "recent_message_ids";
+
+    private static final int MAX_ENTRIES = 128;
+
+    private static MessageNotifyDeduper sInstance;
+
+    private final NativeKvStore store;
+    // Порядок вставки: первым вытесняется самое старое уведомление
+    private final LinkedHashSet<String> recent = new LinkedHashSet<>();
+
+    private MessageNotifyDeduper(Context context) {
+        this.store = NativeKvStore.get(context);
+        load();
+    }
+
+    static synchronized MessageNotifyDeduper get(Context context) {
+        if (sInstance == null) {
+            sInstance = new MessageNotifyDeduper(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * true — уведомление по этому сообщению ещё не показывали (и теперь запомнено).
+     * Без messageId дедуплицировать нечем — показываем.
+     */
+    synchronized boolean markNew(String messageId) {
+        if (messageId == null || messageId.isEmpty()) return true;
+        if (recent.contains(messageId)) {
+            Log.d(TAG, "⏭️ Уже показано: messageId=" + messageId);
+            return false;
+        }
+        recent.add(messageId);
+        trim();
+        save();
+        return true;
+    }
+
+    private void trim() {
+        Iterator<String> it = recent.iterator();
+        while (recent.size() > MAX_ENTRIES && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private void load() {
+        String raw = store.getString(KEY_RECENT, "");
+        if (raw.isEmpty()) return;
+        for (String id : raw.split(",")) {
+            if (!id.isEmpty()) recent.add(id);
+        }
+        trim();
+    }
+
+    private void save() {
+        // Запись в mmap-журнал, без переписывания файла
+        store.putString(KEY_RECENT, TextUtils.join(",", recent));
+    }
+}
@@ -0,0 +1,286 @@
+package com.securecallapp;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableType;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ═══════════════════════════════════════════════════════════
+ * MessageStore v1.0 — локальный кэш сообщений (SQLite)
+ * ═══════════════════════════════════════════════════════════
+ *
+ * ChatScreen/HomeScreen рисуют историю отсюда сразу, без ожидания сервера;
+ * сервер присылает только дельту после курсора (get_messages + sinceTimestamp).
+ *
+ * - messages: PK (owner, message_id) — upsert идемпотентен, повтор дельты безвреден
+ * - sync_state: курсор (owner, peer) → since_timestamp/since_message_id;
+ *   двигается ТОЛЬКО ответом get_messages. Живые new_message/message_sent
+ *   кэшируются, но курсор не трогают: пропущенное офлайн придёт дельтой
+ * - на собеседника хранится не больше MAX_PER_PEER последних сообщений
+ */
+public final class MessageStore extends SQLiteOpenHelper {
+    private static final String TAG = "MessageStore";
+
+    private static final String DB_NAME = "messages.db";
+    private static final int DB_VERSION = 1;
+    private static final int MAX_PER_PEER = 1000;
+
+    private static MessageStore sInstance;
+
+    public static synchronized MessageStore get(Context context) {
+        if (sInstance == null) {
+            sInstance = new MessageStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private MessageStore(Context context) {
+        super(context, DB_NAME, null, DB_VERSION);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE messages ("
+                + "owner TEXT NOT NULL, "
+                + "peer TEXT NOT NULL, "
+                + "message_id TEXT NOT NULL, "
+                + "from_user TEXT NOT NULL, "
+                + "to_user TEXT NOT NULL, "
+                + "body TEXT, "
+                + "type TEXT, "
+                + "timestamp INTEGER NOT NULL, "
+                + "read INTEGER NOT NULL DEFAULT 0, "
+                + "delivered INTEGER NOT NULL DEFAULT 0, "
+                + "media_url TEXT, "
+                + "media_type TEXT, "
+                + "thumbnail_url TEXT, "
+                + "file_name TEXT, "
+                + "file_size INTEGER, "
+                + "PRIMARY KEY (owner, message_id))");
+        db.execSQL("CREATE INDEX idx_messages_conversation ON messages (owner, peer, timestamp DESC)");
+        db.execSQL("CREATE TABLE sync_state ("
+                + "owner TEXT NOT NULL, "
+                + "peer TEXT NOT NULL, "
+                + "since_timestamp INTEGER NOT NULL, "
+                + "since_message_id TEXT, "
+                + "PRIMARY KEY (owner, peer))");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Кэш: проще пересоздать, сервер отдаст полную историю
+        db.execSQL("DROP TABLE IF EXISTS messages");
+        db.execSQL("DROP TABLE IF EXISTS sync_state");
+        onCreate(db);
+    }
+
+    // ═══════════════════════════════════════════════════════════
+    // ЧТЕНИЕ
+    // ═══════════════════════════════════════════════════════════
+
+    /** Последние limit сообщений, новые первыми (порядок FlatList inverted) */
+    WritableArray getMessages(String owner, String peer, int limit) {
+        WritableArray out = Arguments.createArray();
+        try (Cursor c = getReadableDatabase().rawQuery(
+                "SELECT * FROM messages WHERE owner = ? AND peer = ? ORDER BY timestamp DESC LIMIT ?",
+                new String[]{owner, peer, String.valueOf(limit)})) {
+            while (c.moveToNext()) {
+                out.pushMap(readMessage(c));
+            }
+        }
+        return out;
+    }
+
+    WritableMap getSyncCursor(String owner, String peer) {
+        try (Cursor c = getReadableDatabase().rawQuery(
+                "SELECT since_timestamp, since_message_id FROM sync_state WHERE owner = ? AND peer = ?",
+                new String[]{owner, peer})) {
+            if (!c.moveToFirst()) return null;
+            WritableMap cursor = Arguments.createMap();
+            cursor.putDouble("sinceTimestamp", (double) c.getLong(0));
+            if (c.isNull(1)) {
+                cursor.putNull("sinceMessageId");
+            } else {
+                cursor.putString("sinceMessageId", c.getString(1));
+            }
+            return cursor;
+        }
+    }
+
+    /** Последнее сообщение и число непрочитанных по каждому собеседнику */
+    WritableArray getConversations(String owner) {
+        SQLiteDatabase db = getReadableDatabase();
+
+        Map<String, Integer> unread = new HashMap<>();
+        try (Cursor c = db.rawQuery(
+                "SELECT peer, COUNT(*) FROM messages WHERE owner = ? AND from_user = peer AND read = 0 GROUP BY peer",
+                new String[]{owner})) {
+            while (c.moveToNext()) {
+                unread.put(c.getString(0), c.getInt(1));
+            }
+        }
+
+        WritableArray out = Arguments.createArray();
+        try (Cursor c = db.rawQuery(
+                "SELECT m.* FROM messages m "
+                        + "JOIN (SELECT peer, MAX(timestamp) AS ts FROM messages WHERE owner = ? GROUP BY peer) last "
+                        + "ON m.peer = last.peer AND m.timestamp = last.ts "
+                        + "WHERE m.owner = ? GROUP BY m.peer ORDER BY m.timestamp DESC",
+                new String[]{owner, owner})) {
+            while (c.moveToNext()) {
+                WritableMap conversation = Arguments.createMap();
+                String peer = c.getString(c.getColumnIndexOrThrow("peer"));
+                conversation.putString("peer", peer);
+                conversation.putMap("lastMessage", readMessage(c));
+                Integer count = unread.get(peer);
+                conversation.putInt("unread", count != null ? count : 0);
+                out.pushMap(conversation);
+            }
+        }
+        return out;
+    }
+
+    // ═══════════════════════════════════════════════════════════
+    // ЗАПИСЬ
+    // ═══════════════════════════════════════════════════════════
+
+    /**
+     * Ответ get_messages: delta=false — полная история заменяет кэш собеседника.
+     * cursor — новый курсор синхронизации (null — не менять).
+     */
+    int applyHistory(String owner, String peer, ReadableArray messages, boolean delta, ReadableMap cursor) {
+        SQLiteDatabase db = getWritableDatabase();
+        int written = 0;
+        db.beginTransaction();
+        try {
+            if (!delta) {
+                db.delete("messages", "owner = ? AND peer = ?", new String[]{owner, peer});
+            }
+            for (int i = 0; i < messages.size(); i++) {
+                ReadableMap message = messages.getMap(i);
+                if (message != null && upsert(db, owner, peer, message)) written++;
+            }
+            if (cursor != null && cursor.hasKey("sinceTimestamp") && !cursor.isNull("sinceTimestamp")) {
+                ContentValues state = new ContentValues();
+                state.put("owner", owner);
+                state.put("peer", peer);
+                state.put("since_timestamp", (long) cursor.getDouble("sinceTimestamp"));
+                state.put("since_message_id", optString(cursor, "sinceMessageId"));
+                db.insertWithOnConflict("sync_state", null, state, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            trim(db, owner, peer);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        Log.d(TAG, "💾 " + peer + ": " + (delta ? "дельта " : "полная история ") + written + " сообщений");
+        return written;
+    }
+
+    /** Живое сообщение (new_message / message_sent) — без сдвига курсора */
+    void saveMessage(String owner, String peer, ReadableMap message) {
+        upsert(getWritableDatabase(), owner, peer, message);
+    }
+
+    /** Все сообщения fromUser в переписке с peer прочитаны */
+    void markRead(String owner, String peer, String fromUser) {
+        ContentValues values = new ContentValues();
+        values.put("read", 1);
+        values.put("delivered", 1);
+        getWritableDatabase().update("messages", values,
+                "owner = ? AND peer = ? AND from_user = ? AND read = 0",
+                new String[]{owner, peer, fromUser});
+    }
+
+    void markDelivered(String owner, String messageId) {
+        ContentValues values = new ContentValues();
+        values.put("delivered", 1);
+        getWritableDatabase().update("messages", values,
+                "owner = ? AND message_id = ?", new String[]{owner, messageId});
+    }
+
+    private static boolean upsert(SQLiteDatabase db, String owner, String peer, ReadableMap message) {
+        String messageId = optString(message, "messageId");
+        if (messageId == null) return false;
+
+        ContentValues values = new ContentValues();
+        values.put("owner", owner);
+        values.put("peer", peer);
+        values.put("message_id", messageId);
+        values.put("from_user", optString(message, "from"));
+        values.put("to_user", optString(message, "to"));
+        values.put("body", optString(message, "message"));
+        values.put("type", optString(message, "type"));
+        values.put("timestamp", (long) optDouble(message, "timestamp"));
+        values.put("read", optBoolean(message, "read") ? 1 : 0);
+        values.put("delivered", optBoolean(message, "delivered") ? 1 : 0);
+        values.put("media_url", optString(message, "mediaUrl"));
+        values.put("media_type", optString(message, "mediaType"));
+        values.put("thumbnail_url", optString(message, "thumbnailUrl"));
+        values.put("file_name", optString(message, "fileName"));
+        if (message.hasKey("fileSize") && message.getType("fileSize") == ReadableType.Number) {
+            values.put("file_size", (long) message.getDouble("fileSize"));
+        }
+        return db.insertWithOnConflict("messages", null, values, SQLiteDatabase.CONFLICT_REPLACE) != -1;
+    }
+
+    private static void trim(SQLiteDatabase db, String owner, String peer) {
+        db.execSQL("DELETE FROM messages WHERE owner = ? AND peer = ? AND message_id NOT IN "
+                        + "(SELECT message_id FROM messages WHERE owner = ? AND peer = ? "
+                        + "ORDER BY timestamp DESC LIMIT " + MAX_PER_PEER + ")",
+                new Object[]{owner, peer, owner, peer});
+    }
+
+    // ═══════════════════════════════════════════════════════════
+    // ВСПОМОГАТЕЛЬНЫЕ
+    // ═══════════════════════════════════════════════════════════
+
+    private static WritableMap readMessage(Cursor c) {
+        WritableMap m = Arguments.createMap();
+        m.putString("messageId", c.getString(c.getColumnIndexOrThrow("message_id")));
+        m.putString("from", c.getString(c.getColumnIndexOrThrow("from_user")));
+        m.putString("to", c.getString(c.getColumnIndexOrThrow("to_user")));
+        m.putString("message", c.getString(c.getColumnIndexOrThrow("body")));
+        m.putString("type", c.getString(c.getColumnIndexOrThrow("type")));
+        m.putDouble("timestamp", (double) c.getLong(c.getColumnIndexOrThrow("timestamp")));
+        m.putBoolean("read", c.getInt(c.getColumnIndexOrThrow("read")) != 0);
+        m.putBoolean("delivered", c.getInt(c.getColumnIndexOrThrow("delivered")) != 0);
+        m.putString("mediaUrl", c.getString(c.getColumnIndexOrThrow("media_url")));
+        m.putString("mediaType", c.getString(c.getColumnIndexOrThrow("media_type")));
+        m.putString("thumbnailUrl", c.getString(c.getColumnIndexOrThrow("thumbnail_url")));
+        m.putString("fileName", c.getString(c.getColumnIndexOrThrow("file_name")));
+        int sizeIdx = c.getColumnIndexOrThrow("file_size");
+        if (c.isNull(sizeIdx)) {
+            m.putNull("fileSize");
+        } else {
+            m.putDouble("fileSize", (double) c.getLong(sizeIdx));
+        }
+        return m;
+    }
+
+    private static String optString(ReadableMap map, String key) {
+        return map.hasKey(key) && map.getType(key) == ReadableType.String ? map.getString(key) : null;
+    }
+
+    private static double optDouble(ReadableMap map, String key) {
+        return map.hasKey(key) && map.getType(key) == ReadableType.Number ? map.getDouble(key) : 0;
+    }
+
+    private static boolean optBoolean(ReadableMap map, String key) {
+        return map.hasKey(key) && map.getType(key) == ReadableType.Boolean && map.getBoolean(key);
+    }
+}
@@ -0,0 +1,102 @@
+package com.securecallapp;
+
+import android.util.Log;
+
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+
+/**
+ * MessageStoreModule — доступ JS к локальному кэшу сообщений (MessageStore)
+ *
+ * Методы bridge выполняются на потоке нативных модулей — SQLite не
+ * блокирует JS-поток. Обёртка: src/services/MessageStore.js
+ */
+public class MessageStoreModule extends ReactContextBaseJavaModule {
+    public static final String NAME = "MessageStore";
+    private static final String TAG = "MessageStoreModule";
+
+    public MessageStoreModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    private MessageStore store() {
+        return MessageStore.get(getReactApplicationContext());
+    }
+
+    @ReactMethod
+    public void getMessages(String owner, String peer, double limit, Promise promise) {
+        try {
+            promise.resolve(store().getMessages(owner, peer, (int) limit));
+        } catch (Exception e) {
+            Log.e(TAG, "❌ getMessages: " + e.getMessage());
+            promise.reject("STORE_ERROR", e.getMessage(), e);
+        }
+    }
+
+    @ReactMethod
+    public void getSyncCursor(String owner, String peer, Promise promise) {
+        try {
+            promise.resolve(store().getSyncCursor(owner, peer));
+        } catch (Exception e) {
+            Log.e(TAG, "❌ getSyncCursor: " + e.getMessage());
+            promise.reject("STORE_ERROR", e.getMessage(), e);
+        }
+    }
+
+    @ReactMethod
+    public void getConversations(String owner, Promise promise) {
+        try {
+            promise.resolve(store().getConversations(owner));
+        } catch (Exception e) {
+            Log.e(TAG, "❌ getConversations: " + e.getMessage());
+            promise.reject("STORE_ERROR", e.getMessage(), e);
+        }
+    }
+
+    @ReactMethod
+    public void applyHistory(String owner, String peer, ReadableArray messages, boolean delta,
+                             ReadableMap cursor, Promise promise) {
+        try {
+            promise.resolve(store().applyHistory(owner, peer, messages, delta, cursor));
+        } catch (Exception e) {
+            Log.e(TAG, "❌ applyHistory: " + e.getMessage());
+            promise.reject("STORE_ERROR", e.getMessage(), e);
+        }
+    }
+
+    @ReactMethod
+    public void saveMessage(String owner, String peer, ReadableMap message) {
+        try {
+            store().saveMessage(owner, peer, message);
+        } catch (Exception e) {
+            Log.e(TAG, "❌ saveMessage: " + e.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void markRead(String owner, String peer, String fromUser) {
+        try {
+            store().markRead(owner, peer, fromUser);
+        } catch (Exception e) {
+            Log.e(TAG, "❌ markRead: " + e.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void markDelivered(String owner, String messageId) {
+        try {
+            store().markDelivered(owner, messageId);
+        } catch (Exception e) {
+            Log.e(TAG, "❌ markDelivered: " + e.getMessage());
+        }
+    }
+}
@@ -3,9 +3,8 @@ package com.securecallapp;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
+import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
-import android.media.AudioAttributes;
 import android.media.RingtoneManager;
 import android.net.Uri;
 import android.os.Build;
@@ -25,15 +24,17 @@ import java.util.Map;
  * ═══════════════════════════════════════════════════════════
  *
  * ИСПРАВЛЕНИЯ:
- * - Сохранение FCM токена в SharedPreferences для повторной отправки
+ * - Сохранение FCM токена в NativeKvStore для повторной отправки
  * - Правильный notification channel с AudioAttributes для Android 15
  * - Wake экрана при входящем звонке
  * - Уникальные ID для missed call notifications
  * - Улучшенный fullScreenIntent для Android 15
+ * - Уведомление о звонке строит общий IncomingCallNotifier
+ * - Сообщения идут через MessageNotificationCoalescer (rate limit)
+ * - Дубли и устаревшие push о звонке отсекает CallPushDeduper
  */
 public class MyFirebaseMessagingService extends FirebaseMessagingService {
     private static final String TAG = "FCMService";
-    private static final String CHANNEL_ID_CALLS = "incoming_calls";
     private static final String CHANNEL_ID_MESSAGES = "messages";
     private static final String CHANNEL_ID_MISSED = "missed_calls";
 
@@ -46,7 +47,7 @@ public class MyFirebaseMessagingService extends FirebaseMessagingService {
         Log.d(TAG, "========================================");
         Log.d(TAG, "📱 Firebase Messaging Service v2.0 СОЗДАН");
         Log.d(TAG, "========================================");
-        createNotificationChannels();
+        createNotificationChannels(this);
     }
 
     /**
@@ -59,9 +60,8 @@ public class MyFirebaseMessagingService extends FirebaseMessagingService {
         Log.d(TAG, "Токен: " + token);
         Log.d(TAG, "========================================");
 
-        // Сохранить токен в SharedPreferences
-        SharedPreferences prefs = getSharedPreferences("SecureCallPrefs", MODE_PRIVATE);
-        prefs.edit().putString("fcm_token", token).apply();
+        // Сохранить токен в NativeKvStore (общее хранилище с NativeStorageModule)
+        NativeKvStore.get(this).putSecret(NativeKvStore.KEY_FCM_TOKEN, token);
     }
 
     /**
@@ -97,7 +97,20 @@ public class MyFirebaseMessagingService extends FirebaseMessagingService {
         String type = data.get("type");
 
         if ("incoming_call".equals(type)) {
+            long serverTs = parseServerTimestamp(data);
+            CallTrace.mark(this, CallTrace.FCM_RECEIVED, data.get("callId"), serverTs);
+
+            // Дубль / устаревший push — отсекаем ДО wakeScreen и старта сервисов
+            CallPushDeduper.Decision decision = CallPushDeduper.get(this).check(data.get("callId"), serverTs);
+            if (decision != CallPushDeduper.Decision.ACCEPT) {
+                Log.w(TAG, "⏭️ Push о звонке пропущен: " + decision);
+                return;
+            }
             handleIncomingCall(data);
+        } else if ("call_cancelled".equals(type)) {
+            // Звонящий отменил, пока мы были офлайн — убрать «призрачный» звонок
+            Log.d(TAG, "🔴 Звонок отменён: " + data.get("from"));
+            cancelIncomingCall(this);
         } else if ("message".equals(type)) {
             handleNewMessage(data);
         } else if ("missed_call".equals(type)) {
@@ -111,10 +124,22 @@ public class MyFirebaseMessagingService extends FirebaseMessagingService {
      * КРИТИЧНО: Обработка входящего звонка при закрытом приложении
      */
     private void handleIncomingCall(Map<String, String> data) {
-        String from = data.get("from");
-        String isVideoStr = data.get("isVideo");
-        String callId = data.get("callId");
-        boolean isVideo = "true".equals(isVideoStr);
+        presentIncomingCall(
+                this,
+                data.get("from"),
+                "true".equals(data.get("isVideo")),
+                data.get("callId"),
+                parseLongOrZero(data.get("ringTimeoutMs"))
+        );
+    }
+
+    /**
+     * Показать входящий звонок: wake + Telecom (или уведомление с fullScreenIntent) + Headless JS.
+     * Общий путь для FCM push и нативного SignalingClient.
+     * ringTimeoutMs — сколько сервер будет звонить (0 — не прислал)
+     */
+    static void presentIncomingCall(Context context, String from, boolean isVideo, String callId, long ringTimeoutMs) {
+        CallTrace.mark(context, CallTrace.HANDLE_INCOMING_CALL, callId);
 
         Log.d(TAG, "========================================");
         Log.d(TAG, "📞 ВХОДЯЩИЙ ЗВОНОК");
@@ -128,88 +153,37 @@ public class MyFirebaseMessagingService extends FirebaseMessagingService {
             return;
         }
 
-        // WAKE экрана для показа уведомления
-        wakeScreen();
-
-        // Intent для открытия приложения по нажатию на уведомление
-        Intent intent = new Intent(this, MainActivity.class);
-        intent.setAction(Intent.ACTION_MAIN);
-        intent.addCategory(Intent.CATEGORY_LAUNCHER);
-        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK |
-                Intent.FLAG_ACTIVITY_CLEAR_TOP |
-                Intent.FLAG_ACTIVITY_SINGLE_TOP);
-        intent.putExtra("type", "incoming_call");
-        intent.putExtra("from", from);
-        intent.putExtra("isVideo", String.valueOf(isVideo));
-        if (callId != null) {
-            intent.putExtra("callId", callId);
+        if (ringTimeoutMs > 0) {
+            IncomingCallNotifier.get(context).setRingTimeout(callId, ringTimeoutMs);
         }
 
-        PendingIntent pendingIntent = PendingIntent.getActivity(
-                this,
-                0,
-                intent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-        );
-
-        // Full-screen Intent для показа поверх экрана блокировки
-        Intent fullScreenIntent = new Intent(this, MainActivity.class);
-        fullScreenIntent.setAction(Intent.ACTION_MAIN);
-        fullScreenIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK |
-                Intent.FLAG_ACTIVITY_CLEAR_TOP);
-        fullScreenIntent.putExtra("type", "incoming_call");
-        fullScreenIntent.putExtra("from", from);
-        fullScreenIntent.putExtra("isVideo", String.valueOf(isVideo));
-        if (callId != null) {
-            fullScreenIntent.putExtra("callId", callId);
-        }
+        // WAKE экрана для показа уведомления
+        wakeScreen(context);
 
-        PendingIntent fullScreenPendingIntent = PendingIntent.getActivity(
-                this,
-                1,
-                fullScreenIntent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-        );
+        // Тёплый React-инстанс: headless task и MainActivity подхватят готовый контекст
+        ReactRuntimeKeeper.warm(context, "incoming_call");
 
-        // Построить notification
-        String title = isVideo ? "📹 Видеозвонок" : "📞 Входящий звонок";
-        String text = from + " звонит вам";
+        // ICE/TURN конфиг грузится, пока звонит; к ответу WebRTCService возьмёт его синхронно
+        IceConfigCache.prefetch(context);
 
-        NotificationCompat.Builder builder = new NotificationCompat.Builder(this, CHANNEL_ID_CALLS)
-                .setSmallIcon(android.R.drawable.ic_menu_call)
-                .setContentTitle(title)
-                .setContentText(text)
-                .setPriority(NotificationCompat.PRIORITY_MAX)
-                .setCategory(NotificationCompat.CATEGORY_CALL)
-                .setAutoCancel(true)
-                .setOngoing(true)
-                .setFullScreenIntent(fullScreenPendingIntent, true)
-                .setContentIntent(pendingIntent)
-                .setVibrate(new long[]{0, 500, 300, 500, 300, 500})
-                .setSound(RingtoneManager.getDefaultUri(RingtoneManager.TYPE_RINGTONE))
-                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
-                .setTimeoutAfter(30000);
-
-        // Показать notification
-        NotificationManager notificationManager =
-                (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
-
-        if (notificationManager != null) {
-            notificationManager.notify(9999, builder.build());
-            Log.d(TAG, "✅ Notification о входящем звонке показан");
+        // Self-managed Telecom: система знает о звонке (аудио, Bluetooth), UI покажет
+        // CallConnectionService.onShowIncomingCallUi. Telecom недоступен — уведомление напрямую.
+        // Сборка и notify() — на потоке IncomingCallNotifier, не на FCM-callback
+        if (!TelecomCallManager.reportIncomingCall(context, from, isVideo, callId)) {
+            IncomingCallNotifier.get(context).show(from, isVideo, callId);
         }
 
         // Launch Headless JS Task to pre-connect socket in the background
         try {
-            Intent taskIntent = new Intent(this, IncomingCallTaskService.class);
+            Intent taskIntent = new Intent(context, IncomingCallTaskService.class);
             taskIntent.putExtra("from", from);
             taskIntent.putExtra("callId", callId != null ? callId : "");
             taskIntent.putExtra("isVideo", isVideo);
 
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                startForegroundService(taskIntent);
+                context.startForegroundService(taskIntent);
             } else {
-                startService(taskIntent);
+                context.startService(taskIntent);
             }
             Log.d(TAG, "✅ IncomingCallTaskService started");
         } catch (Exception e) {
@@ -217,6 +191,32 @@ public class MyFirebaseMessagingService extends FirebaseMessagingService {
         }
     }
 
+    private static long parseServerTimestampOrNow(Map<String, String> data) {
+        long ts = parseServerTimestamp(data);
+        return ts > 0 ? ts : System.currentTimeMillis();
+    }
+
+    /** Серверное время отправки push (data.timestamp, мс) или 0 */
+    private static long parseServerTimestamp(Map<String, String> data) {
+        return parseLongOrZero(data.get("timestamp"));
+    }
+
+    private static long parseLongOrZero(String value) {
+        try {
+            return value != null ? Long.parseLong(value) : 0L;
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+    /**
+     * Звонок отменён / истёк до ответа — убрать уведомление
+     */
+    static void cancelIncomingCall(Context context) {
+        IncomingCallNotifier.get(context).cancel(null);
+        TelecomCallManager.cancelRinging(null);
+    }
+
     /**
      * Обработка нового сообщения
      */
@@ -231,40 +231,24 @@ public class MyFirebaseMessagingService extends FirebaseMessagingService {
             return;
         }
 
-        Intent intent = new Intent(this, MainActivity.class);
-        intent.setAction(Intent.ACTION_MAIN);
-        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_SINGLE_TOP);
-        intent.putExtra("type", "message");
-        intent.putExtra("from", from);
-
-        // Unique requestCode per sender so notifications don't override each other
-        int requestCode = ("msg_" + from).hashCode();
-        PendingIntent pendingIntent = PendingIntent.getActivity(
-                this,
-                requestCode,
-                intent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-        );
-
-        NotificationCompat.Builder builder = new NotificationCompat.Builder(this, CHANNEL_ID_MESSAGES)
-                .setSmallIcon(android.R.drawable.ic_dialog_email)
-                .setContentTitle(from)
-                .setContentText(message)
-                .setStyle(new NotificationCompat.BigTextStyle().bigText(message))
-                .setPriority(NotificationCompat.PRIORITY_HIGH)
-                .setAutoCancel(true)
-                .setContentIntent(pendingIntent)
-                .setSound(RingtoneManager.getDefaultUri(RingtoneManager.TYPE_NOTIFICATION))
-                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC);
-
-        NotificationManager notificationManager =
-                (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+        presentNewMessage(this, from, message, data.get("messageId"), parseServerTimestampOrNow(data));
+    }
 
-        if (notificationManager != null) {
-            int notificationId = ("msg_" + from).hashCode();
-            notificationManager.notify(notificationId, builder.build());
-            Log.d(TAG, "✅ Notification о сообщении показан");
+    /**
+     * Уведомление о сообщении. Общий путь для FCM push и нативного SignalingClient.
+     *
+     * Повторы (deliverPendingMessages при каждой авторизации сокета, push + сокет)
+     * отсекаются по messageId — MessageNotifyDeduper
+     */
+    static void presentNewMessage(Context context, String from, String message, String messageId, long timestampMs) {
+        if (!MessageNotifyDeduper.get(context).markNew(messageId)) {
+            Log.d(TAG, "💬 Сообщение от " + from + " уже показано — пропускаем");
+            return;
         }
+
+        createNotificationChannels(context);
+        // Всплески склеиваются в одно MessagingStyle-обновление на отправителя
+        MessageNotificationCoalescer.get(context).submit(from, message, timestampMs);
     }
 
     /**
@@ -333,9 +317,9 @@ public class MyFirebaseMessagingService extends FirebaseMessagingService {
      *
      * На Android 10+ ACQUIRE_CAUSES_WAKEUP запрещён для 3rd-party приложений.
      */
-    private void wakeScreen() {
+    private static void wakeScreen(Context context) {
         try {
-            PowerManager pm = (PowerManager) getSystemService(POWER_SERVICE);
+            PowerManager pm = (PowerManager) context.getSystemService(POWER_SERVICE);
             if (pm == null) return;
 
             synchronized (MyFirebaseMessagingService.class) {
@@ -364,9 +348,9 @@ public class MyFirebaseMessagingService extends FirebaseMessagingService {
     //  * and recreate them. This is safe — user-modified settings will be reset, but
     //  * correct importance is more important than preserving old settings.
     //  */
-    private void createNotificationChannels() {
+    private static void createNotificationChannels(Context context) {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            NotificationManager nm = getSystemService(NotificationManager.class);
+            NotificationManager nm = context.getSystemService(NotificationManager.class);
 
             if (nm == null) {
                 Log.e(TAG, "NotificationManager null");
@@ -380,30 +364,10 @@ public class MyFirebaseMessagingService extends FirebaseMessagingService {
             // Correct approach: create only if the channel does not exist yet.
             // If channel importance must change in a future version, use a NEW channel ID.
 
-            Uri ringtoneUri = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_RINGTONE);
             Uri notificationUri = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_NOTIFICATION);
 
-            AudioAttributes ringtoneAttrs = new AudioAttributes.Builder()
-                    .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
-                    .setUsage(AudioAttributes.USAGE_NOTIFICATION_RINGTONE)
-                    .build();
-
-            // Канал для входящих звонков — IMPORTANCE_HIGH
-            if (nm.getNotificationChannel(CHANNEL_ID_CALLS) == null) {
-                NotificationChannel callsChannel = new NotificationChannel(
-                        CHANNEL_ID_CALLS,
-                        "Входящие звонки",
-                        NotificationManager.IMPORTANCE_HIGH
-                );
-                callsChannel.setDescription("Уведомления о входящих звонках");
-                callsChannel.enableVibration(true);
-                callsChannel.setVibrationPattern(new long[]{0, 500, 300, 500, 300, 500});
-                callsChannel.setSound(ringtoneUri, ringtoneAttrs);
-                callsChannel.setLockscreenVisibility(NotificationCompat.VISIBILITY_PUBLIC);
-                callsChannel.setBypassDnd(true);
-                nm.createNotificationChannel(callsChannel);
-                Log.d(TAG, "Channel created: " + CHANNEL_ID_CALLS);
-            }
+            // Канал для входящих звонков создаёт IncomingCallNotifier (один раз на процесс)
+            IncomingCallNotifier.get(context).prepare();
 
             // Канал для сообщений — IMPORTANCE_HIGH
             if (nm.getNotificationChannel(CHANNEL_ID_MESSAGES) == null) {
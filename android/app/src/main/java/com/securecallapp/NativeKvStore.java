@@ -0,0 +1,549 @@
+package com.securecallapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.security.keystore.KeyGenParameterSpec;
+import android.os.SystemClock;
+import android.security.keystore.KeyProperties;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * ═══════════════════════════════════════════════════════════
+ * NativeKvStore v1.0 — mmap key-value хранилище нативного состояния
+ * ═══════════════════════════════════════════════════════════
+ *
+ * Замена SharedPreferences (SecureCallNativePrefs, SecureCallPrefs,
+ * SecureCallCallDedupe): каждый apply() переписывал XML целиком, а первое
+ * чтение в BootReceiver / FCM-сервисе блокировалось на его парсинге.
+ *
+ * Формат файла (noBackupFilesDir/securecall.kv), отображённого в память:
+ *   [magic][version][end][reserved]  — заголовок, 16 байт
+ *   [keyLen][valLen|-1][flags][key][value][crc32] ...  — журнал записей
+ *
+ * - Чтение: из ConcurrentHashMap в памяти, без диска и без блокировок
+ * - Запись: дописать запись в mmap-буфер, затем сдвинуть end в заголовке —
+ *   end и есть точка фиксации; оборванная запись за end игнорируется,
+ *   битая (CRC) при загрузке обрезается
+ * - Компакция: живые записи → securecall.kv.tmp, fsync, rename поверх
+ *   основного файла (атомарно); упавшая компакция оставляет старый файл
+ * - Секреты (putSecret): AES-256-GCM ключом из Android Keystore,
+ *   ключ записи — AAD; расшифровка лениво, при первом чтении
+ *
+ * Первое открытие переносит значения из старых SharedPreferences и удаляет их.
+ *
+ * Файл не открылся (push до первой разблокировки: noBackupFilesDir — CE-хранилище,
+ * а FCM-сервис directBootAware) — неудача не запоминается: открытие повторяется
+ * при следующем обращении, а записи до этого отклоняются (put* → false).
+ */
+public final class NativeKvStore {
+    private static final String TAG = "NativeKvStore";
+
+    public static final String KEY_USERNAME = "username";
+    public static final String KEY_TOKEN = "token";
+    public static final String KEY_FCM_TOKEN = "fcm_token";
+    public static final String KEY_ICE_CONFIG = "ice_config";
+    public static final String KEY_ICE_CONFIG_EXPIRES_AT = "ice_config_expires_at";
+
+    private static final String FILE_NAME = "securecall.kv";
+    private static final String KEY_MIGRATED = "__legacy_prefs_migrated";
+    private static final String[] LEGACY_PREFS = {
+            "SecureCallNativePrefs", "SecureCallPrefs", "SecureCallCallDedupe"
+    };
+
+    private static final int MAGIC = 0x53434B56; // "SCKV"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int END_OFFSET = 8;
+    // keyLen + valLen + flags / crc32
+    private static final int RECORD_OVERHEAD = 4 + 4 + 1 + 4;
+    private static final int FLAG_ENCRYPTED = 1;
+
+    private static final int INITIAL_CAPACITY = 4096;
+    // Компакция, когда журнал больше 16 КБ и мусора больше половины
+    private static final int COMPACT_MIN_BYTES = 16 * 1024;
+
+    // Чтения повторяют открытие не чаще раза в секунду; записи — всегда
+    private static final long REOPEN_READ_INTERVAL_MS = 1000;
+
+    private static final String KEY_ALIAS = "SecureCallKvKey";
+    private static final int GCM_IV_BYTES = 12;
+    private static final int GCM_TAG_BITS = 128;
+
+    private static NativeKvStore sInstance;
+
+    private static final class Entry {
+        final byte[] raw;
+        final boolean encrypted;
+        final int recordSize;
+        volatile String plain;
+
+        Entry(byte[] raw, boolean encrypted, int recordSize) {
+            this.raw = raw;
+            this.encrypted = encrypted;
+            this.recordSize = recordSize;
+        }
+    }
+
+    private final Context appContext;
+    private final File file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean persisted = false;
+    private long lastOpenAttemptMs = 0;
+
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int end = HEADER_SIZE;
+    private int liveBytes = 0;
+    private SecretKey secretKey;
+
+    private NativeKvStore(Context context) {
+        this.appContext = context.getApplicationContext();
+        this.file = new File(appContext.getNoBackupFilesDir(), FILE_NAME);
+        ensureOpen(true);
+    }
+
+    /**
+     * Открыть файл, если он ещё не открыт.
+     * @return true — записи попадают на диск
+     */
+    private synchronized boolean ensureOpen(boolean forWrite) {
+        if (persisted) return true;
+
+        long now = SystemClock.elapsedRealtime();
+        if (!forWrite && lastOpenAttemptMs != 0 && now - lastOpenAttemptMs < REOPEN_READ_INTERVAL_MS) {
+            return false;
+        }
+        lastOpenAttemptMs = now;
+
+        long start = System.nanoTime();
+        try {
+            new File(file.getPath() + ".tmp").delete(); // остаток упавшей компакции
+            open();
+            // Источник истины — файл: в памяти только то, что уже было в нём
+            entries.clear();
+            liveBytes = 0;
+            load();
+        } catch (IOException e) {
+            // Чтения вернут значения по умолчанию — не роняем сервис звонка
+            Log.e(TAG, "❌ Не удалось открыть " + FILE_NAME + " (повтор при следующем обращении): "
+                    + e.getMessage());
+            closeQuietly();
+            return false;
+        }
+        persisted = true;
+
+        // Маркер пишется последним: прерванный перенос повторится при следующем открытии
+        if (!contains(KEY_MIGRATED)) {
+            migrateLegacyPrefs(appContext);
+            putString(KEY_MIGRATED, "1");
+        }
+        Log.d(TAG, "✅ Открыто: " + entries.size() + " ключей, " + end + " байт, "
+                + ((System.nanoTime() - start) / 1000) + " мкс");
+        return true;
+    }
+
+    public static synchronized NativeKvStore get(Context context) {
+        if (sInstance == null) {
+            sInstance = new NativeKvStore(context);
+        }
+        return sInstance;
+    }
+
+    // ═══════════════════════════════════════════════════════════
+    // ЧТЕНИЕ (без диска)
+    // ═══════════════════════════════════════════════════════════
+
+    public String getString(String key, String defValue) {
+        if (!persisted) ensureOpen(false);
+        Entry entry = entries.get(key);
+        if (entry == null) return defValue;
+
+        String plain = entry.plain;
+        if (plain == null) {
+            plain = entry.encrypted
+                    ? decrypt(key, entry.raw)
+                    : new String(entry.raw, StandardCharsets.UTF_8);
+            if (plain == null) return defValue;
+            entry.plain = plain;
+        }
+        return plain;
+    }
+
+    public long getLong(String key, long defValue) {
+        String value = getString(key, null);
+        if (value == null) return defValue;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return defValue;
+        }
+    }
+
+    public boolean contains(String key) {
+        if (!persisted) ensureOpen(false);
+        return entries.containsKey(key);
+    }
+
+    // ═══════════════════════════════════════════════════════════
+    // ЗАПИСЬ (false — файл недоступен, значение не сохранено)
+    // ═══════════════════════════════════════════════════════════
+
+    public synchronized boolean putString(String key, String value) {
+        if (value == null) {
+            return remove(key);
+        }
+        if (!ensureOpen(true)) return false;
+        if (value.equals(getString(key, null)) && !isEncrypted(key)) return true;
+        return append(key, value.getBytes(StandardCharsets.UTF_8), false, value);
+    }
+
+    /** Значение шифруется AES-GCM; без Keystore — сохраняется как обычное */
+    public synchronized boolean putSecret(String key, String value) {
+        if (value == null) {
+            return remove(key);
+        }
+        if (!ensureOpen(true)) return false;
+        if (value.equals(getString(key, null)) && isEncrypted(key)) return true;
+
+        byte[] sealed = encrypt(key, value);
+        if (sealed == null) {
+            Log.w(TAG, "⚠️ Keystore недоступен — " + key + " без шифрования");
+            return append(key, value.getBytes(StandardCharsets.UTF_8), false, value);
+        }
+        return append(key, sealed, true, value);
+    }
+
+    public synchronized boolean putLong(String key, long value) {
+        return putString(key, Long.toString(value));
+    }
+
+    public synchronized boolean remove(String... keys) {
+        if (!ensureOpen(true)) return false;
+        boolean ok = true;
+        for (String key : keys) {
+            Entry previous = entries.get(key);
+            if (previous == null) continue;
+            if (writeRecord(key, null, false) == 0) {
+                ok = false;
+                continue;
+            }
+            entries.remove(key);
+            liveBytes -= previous.recordSize;
+        }
+        maybeCompact();
+        return ok;
+    }
+
+    private boolean isEncrypted(String key) {
+        Entry entry = entries.get(key);
+        return entry != null && entry.encrypted;
+    }
+
+    private boolean append(String key, byte[] value, boolean encrypted, String plain) {
+        int size = writeRecord(key, value, encrypted);
+        if (size == 0) return false;
+        Entry entry = new Entry(value, encrypted, size);
+        entry.plain = plain;
+        Entry previous = entries.put(key, entry);
+        liveBytes += size - (previous != null ? previous.recordSize : 0);
+        maybeCompact();
+        return true;
+    }
+
+    /** @return размер записи в журнале (0 — не записана) */
+    private int writeRecord(String key, byte[] value, boolean encrypted) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int size = RECORD_OVERHEAD + keyBytes.length + (value != null ? value.length : 0);
+        if (buffer == null) return 0;
+
+        try {
+            ensureCapacity(end + size);
+        } catch (IOException e) {
+            Log.e(TAG, "❌ Не удалось расширить файл: " + e.getMessage());
+            return 0;
+        }
+
+        ByteBuffer record = encodeRecord(keyBytes, value, encrypted);
+        buffer.position(end);
+        buffer.put(record);
+        end += size;
+        // Точка фиксации: до этой записи новая запись за end не видна
+        buffer.putInt(END_OFFSET, end);
+        return size;
+    }
+
+    private static ByteBuffer encodeRecord(byte[] keyBytes, byte[] value, boolean encrypted) {
+        int valueLen = value != null ? value.length : -1;
+        int bodyLen = 4 + 4 + 1 + keyBytes.length + Math.max(valueLen, 0);
+        ByteBuffer record = ByteBuffer.allocate(bodyLen + 4);
+        record.putInt(keyBytes.length);
+        record.putInt(valueLen);
+        record.put((byte) (encrypted ? FLAG_ENCRYPTED : 0));
+        record.put(keyBytes);
+        if (value != null) record.put(value);
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, bodyLen);
+        record.putInt((int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    // ═══════════════════════════════════════════════════════════
+    // ФАЙЛ
+    // ═══════════════════════════════════════════════════════════
+
+    private void open() throws IOException {
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+        long length = raf.length();
+        if (length < HEADER_SIZE) {
+            raf.setLength(INITIAL_CAPACITY);
+            length = INITIAL_CAPACITY;
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+    }
+
+    private void load() {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            resetHeader();
+            return;
+        }
+
+        int declaredEnd = buffer.getInt(END_OFFSET);
+        if (declaredEnd < HEADER_SIZE || declaredEnd > buffer.capacity()) {
+            Log.w(TAG, "⚠️ Повреждён заголовок — журнал сброшен");
+            resetHeader();
+            return;
+        }
+
+        int pos = HEADER_SIZE;
+        while (pos < declaredEnd) {
+            int size = readRecord(pos, declaredEnd);
+            if (size <= 0) {
+                Log.w(TAG, "⚠️ Битая запись на " + pos + " — журнал обрезан");
+                break;
+            }
+            pos += size;
+        }
+        end = pos;
+        buffer.putInt(END_OFFSET, end);
+    }
+
+    /** @return размер записи или 0, если запись битая */
+    private int readRecord(int pos, int limit) {
+        if (pos + RECORD_OVERHEAD > limit) return 0;
+        int keyLen = buffer.getInt(pos);
+        int valueLen = buffer.getInt(pos + 4);
+        if (keyLen <= 0 || valueLen < -1) return 0;
+
+        int size = RECORD_OVERHEAD + keyLen + Math.max(valueLen, 0);
+        if (size <= 0 || pos + size > limit) return 0;
+
+        byte[] body = new byte[size - 4];
+        buffer.position(pos);
+        buffer.get(body);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        if ((int) crc.getValue() != buffer.getInt(pos + size - 4)) return 0;
+
+        boolean encrypted = (body[8] & FLAG_ENCRYPTED) != 0;
+        String key = new String(body, 9, keyLen, StandardCharsets.UTF_8);
+        Entry previous;
+        if (valueLen < 0) {
+            previous = entries.remove(key);
+        } else {
+            byte[] value = Arrays.copyOfRange(body, 9 + keyLen, 9 + keyLen + valueLen);
+            previous = entries.put(key, new Entry(value, encrypted, size));
+            liveBytes += size;
+        }
+        if (previous != null) liveBytes -= previous.recordSize;
+        return size;
+    }
+
+    private void resetHeader() {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(END_OFFSET, HEADER_SIZE);
+        buffer.putInt(12, 0);
+        end = HEADER_SIZE;
+        liveBytes = 0;
+        entries.clear();
+    }
+
+    private void ensureCapacity(int required) throws IOException {
+        if (required <= buffer.capacity()) return;
+        int capacity = buffer.capacity();
+        while (capacity < required) capacity *= 2;
+        raf.setLength(capacity);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private void maybeCompact() {
+        if (buffer == null || end < COMPACT_MIN_BYTES || liveBytes * 2 > end - HEADER_SIZE) return;
+
+        File tmp = new File(file.getPath() + ".tmp");
+        int before = end;
+        try {
+            int newEnd = HEADER_SIZE;
+            try (RandomAccessFile out = new RandomAccessFile(tmp, "rw")) {
+                FileChannel tmpChannel = out.getChannel();
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).putInt(0).putInt(0).flip();
+                tmpChannel.write(header, 0);
+
+                for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                    byte[] keyBytes = e.getKey().getBytes(StandardCharsets.UTF_8);
+                    ByteBuffer record = encodeRecord(keyBytes, e.getValue().raw, e.getValue().encrypted);
+                    newEnd += tmpChannel.write(record, newEnd);
+                }
+
+                ByteBuffer endBytes = ByteBuffer.allocate(4);
+                endBytes.putInt(newEnd).flip();
+                tmpChannel.write(endBytes, END_OFFSET);
+                out.setLength(Math.max(INITIAL_CAPACITY, Integer.highestOneBit(newEnd) * 2));
+                tmpChannel.force(true);
+            }
+
+            closeQuietly();
+            if (!tmp.renameTo(file)) {
+                throw new IOException("rename " + tmp.getName() + " не удался");
+            }
+            // Записи в памяти те же — перечитывать журнал не нужно
+            end = newEnd;
+            liveBytes = newEnd - HEADER_SIZE;
+            reopen();
+            Log.d(TAG, "🧹 Компакция: " + before + " → " + end + " байт");
+        } catch (IOException e) {
+            Log.e(TAG, "❌ Компакция не удалась: " + e.getMessage());
+            tmp.delete();
+            if (buffer == null) reopen();
+        }
+    }
+
+    private void reopen() {
+        try {
+            open();
+            persisted = true;
+        } catch (IOException e) {
+            Log.e(TAG, "❌ Не удалось переоткрыть " + FILE_NAME + ": " + e.getMessage());
+            closeQuietly();
+        }
+    }
+
+    private void closeQuietly() {
+        persisted = false;
+        buffer = null;
+        try {
+            if (channel != null) channel.close();
+            if (raf != null) raf.close();
+        } catch (IOException ignored) { }
+        channel = null;
+        raf = null;
+    }
+
+    // ═══════════════════════════════════════════════════════════
+    // МИГРАЦИЯ ИЗ SharedPreferences
+    // ═══════════════════════════════════════════════════════════
+
+    private void migrateLegacyPrefs(Context context) {
+        int migrated = 0;
+        for (String name : LEGACY_PREFS) {
+            SharedPreferences prefs = context.getSharedPreferences(name, Context.MODE_PRIVATE);
+            for (Map.Entry<String, ?> e : prefs.getAll().entrySet()) {
+                String key = e.getKey();
+                Object value = e.getValue();
+                if (value == null || contains(key)) continue;
+                if (KEY_TOKEN.equals(key) || KEY_FCM_TOKEN.equals(key)) {
+                    putSecret(key, String.valueOf(value));
+                } else {
+                    putString(key, String.valueOf(value));
+                }
+                migrated++;
+            }
+            context.deleteSharedPreferences(name);
+        }
+        if (migrated > 0) {
+            Log.d(TAG, "📦 Перенесено из SharedPreferences: " + migrated + " ключей");
+        }
+    }
+
+    // ═══════════════════════════════════════════════════════════
+    // ШИФРОВАНИЕ (Android Keystore, AES-GCM)
+    // ═══════════════════════════════════════════════════════════
+
+    private byte[] encrypt(String key, String value) {
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, secretKey());
+            cipher.updateAAD(key.getBytes(StandardCharsets.UTF_8));
+            byte[] ciphertext = cipher.doFinal(value.getBytes(StandardCharsets.UTF_8));
+            byte[] iv = cipher.getIV();
+
+            byte[] sealed = new byte[iv.length + ciphertext.length];
+            System.arraycopy(iv, 0, sealed, 0, iv.length);
+            System.arraycopy(ciphertext, 0, sealed, iv.length, ciphertext.length);
+            return sealed;
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Шифрование " + key + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private String decrypt(String key, byte[] sealed) {
+        if (sealed.length <= GCM_IV_BYTES) return null;
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, secretKey(),
+                    new GCMParameterSpec(GCM_TAG_BITS, sealed, 0, GCM_IV_BYTES));
+            cipher.updateAAD(key.getBytes(StandardCharsets.UTF_8));
+            byte[] plain = cipher.doFinal(sealed, GCM_IV_BYTES, sealed.length - GCM_IV_BYTES);
+            return new String(plain, StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            // Ключ Keystore потерян (сброс блокировки экрана и т.п.) — значение невосстановимо
+            Log.e(TAG, "❌ Расшифровка " + key + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private synchronized SecretKey secretKey() throws Exception {
+        if (secretKey != null) return secretKey;
+
+        KeyStore keyStore = KeyStore.getInstance("AndroidKeyStore");
+        keyStore.load(null);
+        KeyStore.Entry entry = keyStore.getEntry(KEY_ALIAS, null);
+        if (entry instanceof KeyStore.SecretKeyEntry) {
+            secretKey = ((KeyStore.SecretKeyEntry) entry).getSecretKey();
+            return secretKey;
+        }
+
+        KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, "AndroidKeyStore");
+        generator.init(new KeyGenParameterSpec.Builder(KEY_ALIAS,
+                KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                .setKeySize(256)
+                .build());
+        secretKey = generator.generateKey();
+        return secretKey;
+    }
+}
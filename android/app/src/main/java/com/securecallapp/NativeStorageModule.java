@@ -1,23 +1,25 @@
 package com.securecallapp;
 
-import android.content.SharedPreferences;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
 import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
 import android.util.Log;
 
 /**
- * NativeStorageModule - SharedPreferences storage accessible from both JS and native Java.
+ * NativeStorageModule - native storage accessible from both JS and native Java.
  *
  * AsyncStorage uses SQLite (RKStorage) which is not reliably readable from
  * BroadcastReceivers or Services outside of React Native context.
- * This module duplicates critical credentials into SharedPreferences so that
- * BootReceiver and other native components can read them after device reboot.
+ * This module duplicates critical credentials into NativeKvStore (mmap, token
+ * encrypted) so that BootReceiver and other native components can read them
+ * after device reboot.
  */
 public class NativeStorageModule extends ReactContextBaseJavaModule {
+    public static final String NAME = "NativeStorage";
     private static final String TAG = "NativeStorageModule";
-    public static final String PREFS_NAME = "SecureCallNativePrefs";
 
     public NativeStorageModule(ReactApplicationContext ctx) {
         super(ctx);
@@ -25,19 +27,19 @@ public class NativeStorageModule extends ReactContextBaseJavaModule {
 
     @Override
     public String getName() {
-        return "NativeStorage";
+        return NAME;
     }
 
     @ReactMethod
     public void saveCredentials(String username, String token, Promise promise) {
         try {
-            getReactApplicationContext()
-                .getSharedPreferences(PREFS_NAME, 0)
-                .edit()
-                .putString("username", username)
-                .putString("token", token)
-                .apply();
-            Log.d(TAG, "Credentials saved to SharedPreferences");
+            NativeKvStore store = NativeKvStore.get(getReactApplicationContext());
+            if (!store.putString(NativeKvStore.KEY_USERNAME, username)
+                    || !store.putSecret(NativeKvStore.KEY_TOKEN, token)) {
+                promise.reject("SAVE_ERROR", "NativeKvStore недоступен");
+                return;
+            }
+            Log.d(TAG, "Credentials saved to NativeKvStore");
             promise.resolve(true);
         } catch (Exception e) {
             Log.e(TAG, "Error saving credentials: " + e.getMessage());
@@ -45,15 +47,33 @@ public class NativeStorageModule extends ReactContextBaseJavaModule {
         }
     }
 
+    /**
+     * Синхронное чтение сохранённых credentials ({username, token} или null).
+     * Headless-задачи звонка берут их отсюда, не дожидаясь AsyncStorage (SQLite):
+     * значения уже в памяти NativeKvStore.
+     */
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public WritableMap getCredentials() {
+        NativeKvStore store = NativeKvStore.get(getReactApplicationContext());
+        String username = store.getString(NativeKvStore.KEY_USERNAME, null);
+        String token = store.getString(NativeKvStore.KEY_TOKEN, null);
+        if (username == null || token == null) return null;
+
+        WritableMap result = Arguments.createMap();
+        result.putString("username", username);
+        result.putString("token", token);
+        return result;
+    }
+
     @ReactMethod
     public void saveFcmToken(String fcmToken, Promise promise) {
         try {
-            getReactApplicationContext()
-                .getSharedPreferences(PREFS_NAME, 0)
-                .edit()
-                .putString("fcm_token", fcmToken)
-                .apply();
-            Log.d(TAG, "FCM token saved to SharedPreferences");
+            if (!NativeKvStore.get(getReactApplicationContext())
+                    .putSecret(NativeKvStore.KEY_FCM_TOKEN, fcmToken)) {
+                promise.reject("SAVE_ERROR", "NativeKvStore недоступен");
+                return;
+            }
+            Log.d(TAG, "FCM token saved to NativeKvStore");
             promise.resolve(true);
         } catch (Exception e) {
             Log.e(TAG, "Error saving FCM token: " + e.getMessage());
@@ -61,16 +81,36 @@ public class NativeStorageModule extends ReactContextBaseJavaModule {
         }
     }
 
+    /**
+     * Синхронно: сохранённый ICE/TURN конфиг (JSON /webrtc-config) или null,
+     * если его нет или он скоро истекает (IceConfigCache)
+     */
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public String getIceConfig() {
+        return IceConfigCache.getValid(getReactApplicationContext());
+    }
+
+    /** Конфиг, загруженный из JS, — в то же хранилище, что и нативный prefetch */
+    @ReactMethod
+    public void saveIceConfig(String json, double expiresAt, Promise promise) {
+        try {
+            IceConfigCache.store(getReactApplicationContext(), json, (long) expiresAt);
+            promise.resolve(true);
+        } catch (Exception e) {
+            Log.e(TAG, "Error saving ICE config: " + e.getMessage());
+            promise.reject("SAVE_ERROR", e.getMessage(), e);
+        }
+    }
+
     @ReactMethod
     public void clearCredentials(Promise promise) {
         try {
-            getReactApplicationContext()
-                .getSharedPreferences(PREFS_NAME, 0)
-                .edit()
-                .remove("username")
-                .remove("token")
-                .apply();
-            Log.d(TAG, "Credentials cleared from SharedPreferences");
+            if (!NativeKvStore.get(getReactApplicationContext())
+                    .remove(NativeKvStore.KEY_USERNAME, NativeKvStore.KEY_TOKEN)) {
+                promise.reject("CLEAR_ERROR", "NativeKvStore недоступен");
+                return;
+            }
+            Log.d(TAG, "Credentials cleared from NativeKvStore");
             promise.resolve(true);
         } catch (Exception e) {
             Log.e(TAG, "Error clearing credentials: " + e.getMessage());
@@ -1,28 +1,41 @@
 package com.securecallapp;
 
-import com.facebook.react.ReactPackage;
+import androidx.annotation.Nullable;
+
+import com.facebook.react.BaseReactPackage;
 import com.facebook.react.bridge.NativeModule;
 import com.facebook.react.bridge.ReactApplicationContext;
-import com.facebook.react.uimanager.ViewManager;
+import com.facebook.react.module.model.ReactModuleInfo;
+import com.facebook.react.module.model.ReactModuleInfoProvider;
 
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.List;
 
 /**
  * NativeStoragePackage - registration for NativeStorageModule
+ *
+ * BaseReactPackage: модуль создаётся лениво — при первом обращении из JS
+ * (spec src/specs/NativeStorage.js), а не на каждом старте React.
  */
-public class NativeStoragePackage implements ReactPackage {
+public class NativeStoragePackage extends BaseReactPackage {
 
+    @Nullable
     @Override
-    public List<NativeModule> createNativeModules(ReactApplicationContext reactContext) {
-        List<NativeModule> modules = new ArrayList<>();
-        modules.add(new NativeStorageModule(reactContext));
-        return modules;
+    public NativeModule getModule(String name, ReactApplicationContext reactContext) {
+        if (NativeStorageModule.NAME.equals(name)) {
+            return new NativeStorageModule(reactContext);
+        }
+        return null;
     }
 
     @Override
-    public List<ViewManager> createViewManagers(ReactApplicationContext reactContext) {
-        return Collections.emptyList();
+    public ReactModuleInfoProvider getReactModuleInfoProvider() {
+        return () -> Collections.singletonMap(NativeStorageModule.NAME, new ReactModuleInfo(
+                NativeStorageModule.NAME,
+                NativeStorageModule.class.getName(),
+                false, // canOverrideExistingModule
+                false, // needsEagerInit — ленивое создание
+                false, // isCxxModule
+                false  // isTurboModule — Java-модуль через interop, пока newArchEnabled=false
+        ));
     }
 }
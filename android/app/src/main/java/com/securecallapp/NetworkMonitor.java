@@ -0,0 +1,176 @@
+package com.securecallapp;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.util.Log;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+/**
+ * ═══════════════════════════════════════════════════════════
+ * NetworkMonitor v1.0 — смена сети без ожидания JS-таймеров
+ * ═══════════════════════════════════════════════════════════
+ *
+ * Регистрирует ConnectivityManager.NetworkCallback на default network
+ * (внутри ConnectionForegroundService) и сразу:
+ *  - шлёт в JS событие "networkChanged"
+ *      {event: available|lost|capabilities, networkHandle, transport,
+ *       validated, previousHandle, isSwitch}
+ *    networkHandle — идентичность default network: isSwitch=true только
+ *    при реальной смене сети (Wi-Fi → LTE), а не при «моргании» той же сети;
+ *  - переподключает нативный SignalingClient.
+ */
+public final class NetworkMonitor {
+    private static final String TAG = "NetworkMonitor";
+
+    public static final String EVENT_NAME = "networkChanged";
+
+    /** Колбэк для нативного клиента: новая default network */
+    public interface Listener {
+        void onDefaultNetworkChanged(long networkHandle, boolean isSwitch);
+    }
+
+    private static volatile long sCurrentHandle = 0;
+
+    private final Context context;
+    private final ConnectivityManager connectivityManager;
+    private final Listener listener;
+    private ConnectivityManager.NetworkCallback callback;
+
+    private long lastHandle = 0;
+    private String lastTransport = null;
+    private boolean lastValidated = false;
+
+    public NetworkMonitor(Context context, Listener listener) {
+        this.context = context.getApplicationContext();
+        this.connectivityManager =
+                (ConnectivityManager) this.context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        this.listener = listener;
+    }
+
+    /** Handle текущей default network (0 — нет сети / монитор не запущен) */
+    public static long getCurrentHandle() {
+        return sCurrentHandle;
+    }
+
+    public void start() {
+        if (connectivityManager == null || callback != null) return;
+
+        callback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(Network network) {
+                onDefaultAvailable(network);
+            }
+
+            @Override
+            public void onLost(Network network) {
+                onDefaultLost(network);
+            }
+
+            @Override
+            public void onCapabilitiesChanged(Network network, NetworkCapabilities caps) {
+                onDefaultCapabilities(network, caps);
+            }
+        };
+
+        try {
+            connectivityManager.registerDefaultNetworkCallback(callback);
+            Log.d(TAG, "✅ NetworkCallback зарегистрирован");
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Ошибка регистрации NetworkCallback: " + e.getMessage());
+            callback = null;
+        }
+    }
+
+    public void stop() {
+        if (connectivityManager == null || callback == null) return;
+        try {
+            connectivityManager.unregisterNetworkCallback(callback);
+        } catch (Exception e) {
+            Log.w(TAG, "⚠️ unregisterNetworkCallback: " + e.getMessage());
+        }
+        callback = null;
+        sCurrentHandle = 0;
+    }
+
+    // Колбэки ConnectivityManager приходят на одном системном потоке — синхронизация не нужна
+
+    private void onDefaultAvailable(Network network) {
+        long handle = network.getNetworkHandle();
+        NetworkCapabilities caps = connectivityManager.getNetworkCapabilities(network);
+        String transport = transportOf(caps);
+        boolean validated = isValidated(caps);
+
+        long previous = lastHandle;
+        // previous == 0 — первый колбэк после registerDefaultNetworkCallback:
+        // система сообщает об уже поднятой сети, это не смена
+        boolean initial = previous == 0;
+        boolean isSwitch = !initial && previous != handle;
+        lastHandle = handle;
+        lastTransport = transport;
+        lastValidated = validated;
+        sCurrentHandle = handle;
+
+        Log.d(TAG, "📶 available: handle=" + handle + " " + transport
+                + (initial ? " (исходная сеть)" : isSwitch ? " (СМЕНА СЕТИ)" : ""));
+        emit("available", handle, previous, transport, validated, isSwitch);
+        // Исходная сеть — клиент уже подключается по ней сам, повторный connect() не нужен
+        if (listener != null && !initial) {
+            listener.onDefaultNetworkChanged(handle, isSwitch);
+        }
+    }
+
+    private void onDefaultLost(Network network) {
+        long handle = network.getNetworkHandle();
+        Log.d(TAG, "📵 lost: handle=" + handle);
+        if (handle == sCurrentHandle) {
+            sCurrentHandle = 0;
+        }
+        // lastHandle сохраняем: следующий available сравнит идентичность
+        emit("lost", handle, lastHandle, lastTransport, false, false);
+    }
+
+    private void onDefaultCapabilities(Network network, NetworkCapabilities caps) {
+        long handle = network.getNetworkHandle();
+        if (handle != lastHandle) return;
+
+        String transport = transportOf(caps);
+        boolean validated = isValidated(caps);
+        // Шлём только значимые изменения — колбэк срабатывает на каждое изменение сигнала
+        if (validated == lastValidated && transport.equals(lastTransport)) return;
+
+        lastTransport = transport;
+        lastValidated = validated;
+        Log.d(TAG, "📶 capabilities: handle=" + handle + " " + transport + " validated=" + validated);
+        emit("capabilities", handle, handle, transport, validated, false);
+    }
+
+    private void emit(String event, long handle, long previous, String transport,
+                      boolean validated, boolean isSwitch) {
+        WritableMap params = Arguments.createMap();
+        params.putString("event", event);
+        // double: long не передаётся через bridge; handle укладывается в 53 бита
+        params.putDouble("networkHandle", (double) handle);
+        params.putDouble("previousHandle", (double) previous);
+        params.putString("transport", transport != null ? transport : "unknown");
+        params.putBoolean("validated", validated);
+        params.putBoolean("isSwitch", isSwitch);
+        ReactRuntimeKeeper.emitToJs(EVENT_NAME, params);
+    }
+
+    private static boolean isValidated(NetworkCapabilities caps) {
+        return caps != null && caps.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+    }
+
+    private static String transportOf(NetworkCapabilities caps) {
+        if (caps == null) return "unknown";
+        if (caps.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) return "wifi";
+        if (caps.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)) return "cellular";
+        if (caps.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET)) return "ethernet";
+        if (caps.hasTransport(NetworkCapabilities.TRANSPORT_VPN)) return "vpn";
+        return "other";
+    }
+}
@@ -0,0 +1,179 @@
+package com.securecallapp;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.facebook.react.ReactApplication;
+import com.facebook.react.ReactInstanceEventListener;
+import com.facebook.react.ReactInstanceManager;
+import com.facebook.react.ReactNativeHost;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.common.LifecycleState;
+import com.facebook.react.jstasks.HeadlessJsTaskConfig;
+import com.facebook.react.jstasks.HeadlessJsTaskContext;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+
+/**
+ * ═══════════════════════════════════════════════════════════
+ * ReactRuntimeKeeper v1.0 — один «тёплый» React-инстанс
+ * ═══════════════════════════════════════════════════════════
+ *
+ * ConnectionForegroundService заранее поднимает ReactInstanceManager
+ * (Hermes + bundle + нативные модули) и запускает RuntimeWarmupTask,
+ * который подключает SocketService. IncomingCallTaskService и MainActivity
+ * используют тот же ReactNativeHost, поэтому просто подхватывают готовый
+ * контекст — без повторной загрузки bundle на пути «звонок → ответ».
+ *
+ * Keep-warm окно (react_keep_warm_ms в NativeKvStore, 0 = выключено):
+ * если за окно не было звонков/открытий UI, инстанс выгружается и сессию
+ * снова держит нативный SignalingClient. Под давлением памяти
+ * (onTrimMemory) выгружаем сразу — но только если нет Activity и активных задач.
+ *
+ * Все методы выполняются на главном потоке.
+ */
+public final class ReactRuntimeKeeper {
+    private static final String TAG = "ReactRuntimeKeeper";
+
+    static final String PREF_KEEP_WARM_MS = "react_keep_warm_ms";
+    static final long DEFAULT_KEEP_WARM_MS = 10 * 60 * 1000L;
+
+    private static final String WARMUP_TASK = "RuntimeWarmupTask";
+    private static final long WARMUP_TASK_TIMEOUT_MS = 20000;
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+    private static Context sAppContext;
+    private static boolean sListenerAdded = false;
+
+    private static final Runnable sKeepWarmExpired = () -> evictIfIdle("keep-warm окно истекло");
+
+    private ReactRuntimeKeeper() { }
+
+    /** Поднять React-контекст в фоне (если ещё не поднят) и продлить окно */
+    public static void warm(Context context, String reason) {
+        sAppContext = context.getApplicationContext();
+        sMainHandler.post(() -> {
+            long keepWarmMs = getKeepWarmMs(sAppContext);
+            if (keepWarmMs <= 0) {
+                Log.d(TAG, "⏸️ Прогрев отключён (keep-warm = 0)");
+                return;
+            }
+
+            ReactInstanceManager manager = getInstanceManager();
+            if (manager == null) return;
+
+            if (!sListenerAdded) {
+                manager.addReactInstanceEventListener(new ReactInstanceEventListener() {
+                    @Override
+                    public void onReactContextInitialized(ReactContext reactContext) {
+                        Log.d(TAG, "✅ React-контекст готов — запуск " + WARMUP_TASK);
+                        startWarmupTask(reactContext);
+                    }
+                });
+                sListenerAdded = true;
+            }
+
+            if (!manager.hasStartedCreatingInitialContext()) {
+                Log.d(TAG, "🔥 Прогрев React (" + reason + ")");
+                manager.createReactContextInBackground();
+            }
+            touch(sAppContext);
+        });
+    }
+
+    /** Продлить keep-warm окно (звонок, открытие UI) */
+    public static void touch(Context context) {
+        sAppContext = context.getApplicationContext();
+        sMainHandler.post(() -> {
+            sMainHandler.removeCallbacks(sKeepWarmExpired);
+            long keepWarmMs = getKeepWarmMs(sAppContext);
+            if (keepWarmMs > 0) {
+                sMainHandler.postDelayed(sKeepWarmExpired, keepWarmMs);
+            }
+        });
+    }
+
+    /** Выгрузить React, если нет UI и фоновых JS-задач */
+    public static void evictIfIdle(String reason) {
+        sMainHandler.post(() -> {
+            if (sAppContext == null) return;
+            ReactNativeHost host = getHost();
+            if (host == null || !host.hasInstance()) return;
+
+            ReactInstanceManager manager = host.getReactInstanceManager();
+            if (manager.getLifecycleState() != LifecycleState.BEFORE_CREATE) {
+                Log.d(TAG, "⏭️ Есть Activity — React не выгружаем (" + reason + ")");
+                return;
+            }
+
+            ReactContext reactContext = manager.getCurrentReactContext();
+            if (reactContext != null && HeadlessJsTaskContext.getInstance(reactContext).hasActiveTasks()) {
+                Log.d(TAG, "⏭️ Активная JS-задача — откладываем выгрузку (" + reason + ")");
+                touch(sAppContext);
+                return;
+            }
+
+            Log.w(TAG, "🧹 Выгрузка React-инстанса: " + reason);
+            sMainHandler.removeCallbacks(sKeepWarmExpired);
+            sListenerAdded = false;
+            // clear() уничтожает контекст → ConnectionServiceModule.invalidate()
+            // → SignalingClient снова держит сессию
+            host.clear();
+        });
+    }
+
+    /** Отправить событие в JS, если React-контекст жив (иначе молча пропустить) */
+    public static void emitToJs(String eventName, WritableMap params) {
+        try {
+            ReactNativeHost host = getHost();
+            if (host == null || !host.hasInstance()) return;
+            ReactContext reactContext = host.getReactInstanceManager().getCurrentReactContext();
+            if (reactContext != null && reactContext.hasActiveReactInstance()) {
+                reactContext
+                        .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                        .emit(eventName, params);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "⚠️ emitToJs(" + eventName + "): " + e.getMessage());
+        }
+    }
+
+    static long getKeepWarmMs(Context context) {
+        return NativeKvStore.get(context).getLong(PREF_KEEP_WARM_MS, DEFAULT_KEEP_WARM_MS);
+    }
+
+    static void setKeepWarmMs(Context context, long keepWarmMs) {
+        NativeKvStore.get(context).putLong(PREF_KEEP_WARM_MS, Math.max(0, keepWarmMs));
+        touch(context);
+    }
+
+    private static void startWarmupTask(ReactContext reactContext) {
+        try {
+            HeadlessJsTaskContext.getInstance(reactContext).startTask(
+                    new HeadlessJsTaskConfig(
+                            WARMUP_TASK,
+                            Arguments.createMap(),
+                            WARMUP_TASK_TIMEOUT_MS,
+                            false // UI на экране — SocketService подключает сам экран
+                    )
+            );
+        } catch (IllegalStateException e) {
+            Log.d(TAG, "⏭️ Приложение на переднем плане — " + WARMUP_TASK + " не нужен");
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Не удалось запустить " + WARMUP_TASK + ": " + e.getMessage());
+        }
+    }
+
+    private static ReactNativeHost getHost() {
+        if (!(sAppContext instanceof ReactApplication)) return null;
+        return ((ReactApplication) sAppContext).getReactNativeHost();
+    }
+
+    private static ReactInstanceManager getInstanceManager() {
+        ReactNativeHost host = getHost();
+        return host != null ? host.getReactInstanceManager() : null;
+    }
+}
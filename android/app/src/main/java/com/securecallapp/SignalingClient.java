@@ -0,0 +1,428 @@
+package com.securecallapp;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+
+/**
+ * ═══════════════════════════════════════════════════════════
+ * SignalingClient v1.0 — нативный Socket.IO клиент
+ * ═══════════════════════════════════════════════════════════
+ *
+ * Живёт внутри ConnectionForegroundService и держит сессию на сервере,
+ * пока React/Hermes не запущен (холодный процесс, убитый JS-контекст).
+ * Входящий звонок приходит прямо по сокету — без FCM → Headless JS.
+ * Сервер считает пользователя online и не шлёт push о сообщениях —
+ * new_message показывается тем же уведомлением, что и с FCM.
+ *
+ * Протокол: Engine.IO v4 + Socket.IO v5 поверх WebSocket (OkHttp):
+ *   сервер "0{...}"  → клиент "40"          (open → connect namespace)
+ *   сервер "2"       → клиент "3"           (ping/pong)
+ *   "42[event,data]"                        (события)
+ *
+ * ПЕРЕДАЧА СЕССИИ В JS:
+ * Когда SocketService авторизуется, сервер (disconnectPreviousSession) шлёт
+ * нам force_disconnect — мы уходим в режим ожидания БЕЗ переподключения.
+ * Сами сокет не закрываем: иначе disconnect-обработчик сервера завершит
+ * текущий звонок, который ещё звонит. Нативный клиент снова поднимается,
+ * когда React-контекст уничтожен (ConnectionServiceModule.invalidate).
+ */
+public class SignalingClient {
+    private static final String TAG = "SignalingClient";
+
+    private static final String SERVER_URL =
+            "wss://" + BuildConfig.SERVER_HOST + "/socket.io/?EIO=4&transport=websocket";
+
+    private static final long MIN_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 30000;
+
+    private enum State { IDLE, CONNECTING, CONNECTED, AUTHENTICATED, SUSPENDED }
+
+    // callId → from: отклонения с нативного экрана звонка, ждущие авторизованной сессии
+    private static final Map<String, String> sPendingRejects = new LinkedHashMap<>();
+
+    private final Context context;
+    private final OkHttpClient httpClient;
+    private final HandlerThread thread;
+    private final Handler handler;
+
+    private WebSocket webSocket;
+    private State state = State.IDLE;
+    private long backoffMs = MIN_BACKOFF_MS;
+    private long pingDeadlineMs = 45000;
+    private boolean started = false;
+
+    private final Runnable reconnectRunnable = this::connect;
+    private final Runnable pingWatchdog = () -> {
+        Log.w(TAG, "⚠️ Нет ping от сервера — переподключение");
+        dropAndReconnect();
+    };
+
+    public SignalingClient(Context context) {
+        this.context = context.getApplicationContext();
+        this.httpClient = new OkHttpClient.Builder()
+                .connectTimeout(10, TimeUnit.SECONDS)
+                .readTimeout(0, TimeUnit.MILLISECONDS)
+                .build();
+        this.thread = new HandlerThread("SecureCall-Signaling");
+        this.thread.start();
+        this.handler = new Handler(thread.getLooper());
+    }
+
+    // ═══════════════════════════════════════════════════════════
+    // ПУБЛИЧНЫЙ API (любой поток)
+    // ═══════════════════════════════════════════════════════════
+
+    /** Запустить клиент, если JS-сессия не активна */
+    public void start() {
+        handler.post(() -> {
+            started = true;
+            if (ConnectionForegroundService.isJsAttached()) {
+                Log.d(TAG, "⏸️ JS-сессия активна — нативный клиент ждёт");
+                state = State.SUSPENDED;
+                return;
+            }
+            if (state == State.IDLE || state == State.SUSPENDED) {
+                backoffMs = MIN_BACKOFF_MS;
+                connect();
+            }
+        });
+    }
+
+    /** JS авторизовался и забрал сессию — не переподключаемся */
+    public void suspend() {
+        handler.post(() -> {
+            Log.d(TAG, "⏸️ Передача сессии в JS");
+            handler.removeCallbacks(reconnectRunnable);
+            handler.removeCallbacks(pingWatchdog);
+            state = State.SUSPENDED;
+        });
+    }
+
+    /**
+     * Новая default network: переподключиться сразу, со сброшенным backoff.
+     * «Моргание» той же сети при живой сессии игнорируем.
+     */
+    public void onNetworkChanged(boolean isSwitch) {
+        handler.post(() -> {
+            if (!started || state == State.SUSPENDED || ConnectionForegroundService.isJsAttached()) return;
+            // Та же сеть вернулась: живое или уже идущее подключение не рвём
+            if (!isSwitch && (state == State.AUTHENTICATED || state == State.CONNECTING
+                    || state == State.CONNECTED)) return;
+
+            Log.d(TAG, "📶 Смена сети — немедленное переподключение");
+            handler.removeCallbacks(reconnectRunnable);
+            backoffMs = MIN_BACKOFF_MS;
+            connect();
+        });
+    }
+
+    /** Отклонить звонок без JS: уйдёт сразу или после auth_success (flushPendingRejects) */
+    public static void queueReject(String from, String callId) {
+        synchronized (sPendingRejects) {
+            sPendingRejects.put(callId != null ? callId : "", from);
+        }
+    }
+
+    /** Забрать неотправленные отклонения (сессию забрал JS) */
+    public static Map<String, String> drainPendingRejects() {
+        synchronized (sPendingRejects) {
+            Map<String, String> out = new LinkedHashMap<>(sPendingRejects);
+            sPendingRejects.clear();
+            return out;
+        }
+    }
+
+    public void flushPendingRejects() {
+        handler.post(this::sendPendingRejects);
+    }
+
+    /** Полная остановка вместе с сервисом */
+    public void shutdown() {
+        handler.post(() -> {
+            started = false;
+            handler.removeCallbacksAndMessages(null);
+            closeSocket(1000, "service stopped");
+            state = State.IDLE;
+            thread.quitSafely();
+        });
+        Log.d(TAG, "⛔ SignalingClient остановлен");
+    }
+
+    // ═══════════════════════════════════════════════════════════
+    // СОЕДИНЕНИЕ (поток SecureCall-Signaling)
+    // ═══════════════════════════════════════════════════════════
+
+    private void connect() {
+        if (!started || ConnectionForegroundService.isJsAttached()) return;
+
+        String[] credentials = readCredentials();
+        if (credentials == null) {
+            Log.w(TAG, "⚠️ Нет сохранённых учётных данных — нативный клиент не подключается");
+            state = State.IDLE;
+            return;
+        }
+
+        closeSocket(1000, "reconnect");
+        state = State.CONNECTING;
+        WakeLockScheduler.get(context).holdWindow("native connect", 15000);
+        Log.d(TAG, "🔌 Подключение к серверу...");
+
+        Request request = new Request.Builder().url(SERVER_URL).build();
+        webSocket = httpClient.newWebSocket(request, new Listener());
+    }
+
+    private void dropAndReconnect() {
+        closeSocket(4000, "drop");
+        if (state == State.SUSPENDED || !started) return;
+        state = State.IDLE;
+        scheduleReconnect();
+    }
+
+    private void scheduleReconnect() {
+        handler.removeCallbacks(reconnectRunnable);
+        Log.d(TAG, "🔄 Переподключение через " + backoffMs + "мс");
+        handler.postDelayed(reconnectRunnable, backoffMs);
+        backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+    }
+
+    private void closeSocket(int code, String reason) {
+        handler.removeCallbacks(pingWatchdog);
+        if (webSocket != null) {
+            try { webSocket.close(code, reason); } catch (Exception ignored) { }
+            webSocket = null;
+        }
+    }
+
+    private void armPingWatchdog() {
+        handler.removeCallbacks(pingWatchdog);
+        handler.postDelayed(pingWatchdog, pingDeadlineMs);
+    }
+
+    private String[] readCredentials() {
+        NativeKvStore store = NativeKvStore.get(context);
+        String username = store.getString(NativeKvStore.KEY_USERNAME, null);
+        String token = store.getString(NativeKvStore.KEY_TOKEN, null);
+        if (username == null || token == null) return null;
+        return new String[]{username, token};
+    }
+
+    private void sendPendingRejects() {
+        if (state != State.AUTHENTICATED) return;
+        for (Map.Entry<String, String> e : drainPendingRejects().entrySet()) {
+            try {
+                JSONObject payload = new JSONObject();
+                payload.put("from", e.getValue());
+                if (!e.getKey().isEmpty()) payload.put("callId", e.getKey());
+                emit("reject_call", payload);
+                Log.d(TAG, "📤 reject_call → " + e.getValue() + " (callId=" + e.getKey() + ")");
+            } catch (Exception ex) {
+                Log.e(TAG, "❌ reject_call: " + ex.getMessage());
+            }
+        }
+    }
+
+    private void emit(String event, JSONObject payload) {
+        if (webSocket == null) return;
+        JSONArray packet = new JSONArray();
+        packet.put(event);
+        packet.put(payload);
+        webSocket.send("42" + packet);
+    }
+
+    // ═══════════════════════════════════════════════════════════
+    // РАЗБОР ПАКЕТОВ
+    // ═══════════════════════════════════════════════════════════
+
+    private void onPacket(WebSocket ws, String text) {
+        if (ws != webSocket || text.isEmpty()) return;
+
+        char type = text.charAt(0);
+        switch (type) {
+            case '0': // Engine.IO open
+                try {
+                    JSONObject open = new JSONObject(text.substring(1));
+                    pingDeadlineMs = open.optLong("pingInterval", 25000) + open.optLong("pingTimeout", 20000);
+                } catch (Exception e) {
+                    Log.w(TAG, "⚠️ Не удалось разобрать open-пакет: " + e.getMessage());
+                }
+                armPingWatchdog();
+                ws.send("40");
+                break;
+            case '2': // Engine.IO ping
+                WakeLockScheduler.get(context).holdWindow("heartbeat", 2000);
+                ws.send("3");
+                armPingWatchdog();
+                break;
+            case '1': // Engine.IO close
+                dropAndReconnect();
+                break;
+            case '4': // Socket.IO packet
+                onSocketIoPacket(text.substring(1));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void onSocketIoPacket(String packet) {
+        if (packet.isEmpty()) return;
+
+        char type = packet.charAt(0);
+        if (type == '0') {
+            // Namespace connected → авторизация токеном
+            state = State.CONNECTED;
+            String[] credentials = readCredentials();
+            if (credentials == null) {
+                dropAndReconnect();
+                return;
+            }
+            try {
+                JSONObject auth = new JSONObject();
+                auth.put("username", credentials[0]);
+                auth.put("token", credentials[1]);
+                // Сервер пометит force_disconnect JS-сокета reason=native_standby:
+                // JS заберёт сессию обратно, а не выйдет из аккаунта
+                auth.put("features", new JSONArray().put("native_standby"));
+                emit("auth_token", auth);
+            } catch (Exception e) {
+                Log.e(TAG, "❌ Ошибка формирования auth_token: " + e.getMessage());
+            }
+        } else if (type == '1' || type == '4') {
+            // Namespace disconnect / connect_error
+            Log.w(TAG, "⚠️ Socket.IO отключил namespace: " + packet);
+            dropAndReconnect();
+        } else if (type == '2') {
+            try {
+                JSONArray event = new JSONArray(packet.substring(1));
+                onEvent(event.getString(0), event.optJSONObject(1));
+            } catch (Exception e) {
+                Log.w(TAG, "⚠️ Не удалось разобрать событие: " + e.getMessage());
+            }
+        }
+    }
+
+    private void onEvent(String event, JSONObject data) {
+        switch (event) {
+            case "auth_success":
+                state = State.AUTHENTICATED;
+                backoffMs = MIN_BACKOFF_MS;
+                Log.d(TAG, "✅ Нативная сессия авторизована");
+                if (data != null) {
+                    CallPushDeduper.get(context).onServerTime(data.optLong("serverTime", 0L), 0L);
+                }
+                sendPendingRejects();
+                break;
+            case "auth_error":
+                Log.e(TAG, "❌ auth_error: " + (data != null ? data.optString("message") : ""));
+                started = false;
+                closeSocket(1000, "auth_error");
+                state = State.IDLE;
+                break;
+            case "incoming_call":
+                if (data == null) return;
+                Log.d(TAG, "📞 incoming_call по нативному сокету от " + data.optString("from"));
+                CallTrace.mark(context, CallTrace.SOCKET_INCOMING_CALL, data.optString("callId", null));
+                WakeLockScheduler.get(context).holdWindow("incoming_call", 10000);
+                // Запоминаем callId: поздний wake-up push того же звонка будет отброшен
+                if (CallPushDeduper.get(context).check(data.optString("callId", null), 0L)
+                        != CallPushDeduper.Decision.ACCEPT) {
+                    return;
+                }
+                MyFirebaseMessagingService.presentIncomingCall(
+                        context,
+                        data.optString("from", null),
+                        data.optBoolean("isVideo", false),
+                        data.optString("callId", null),
+                        data.optLong("ringTimeoutMs", 0L)
+                );
+                break;
+            case "call_cancelled":
+            case "call_timeout":
+                MyFirebaseMessagingService.cancelIncomingCall(context);
+                break;
+            case "new_message":
+                if (data == null || data.optString("from").isEmpty()) return;
+                String text = data.optString("message", "");
+                if (text.isEmpty()) {
+                    text = "video".equals(data.optString("mediaType")) ? "Видео" : "Фото";
+                }
+                Log.d(TAG, "💬 new_message по нативному сокету от " + data.optString("from"));
+                MyFirebaseMessagingService.presentNewMessage(
+                        context,
+                        data.optString("from", null),
+                        text,
+                        data.optString("messageId", null),
+                        parseTimestamp(data.opt("timestamp"))
+                );
+                break;
+            case "force_disconnect":
+                // Сессию забрал JS (или вход с другого устройства) — сервер сам закроет сокет
+                Log.d(TAG, "⏸️ force_disconnect — нативный клиент уходит в ожидание");
+                handler.removeCallbacks(reconnectRunnable);
+                handler.removeCallbacks(pingWatchdog);
+                state = State.SUSPENDED;
+                break;
+            default:
+                break;
+        }
+    }
+
+    /** timestamp сообщения: ISO-строка (Date из MongoDB) или мс; иначе — сейчас */
+    private static long parseTimestamp(Object value) {
+        if (value instanceof Number) return ((Number) value).longValue();
+        if (value instanceof String) {
+            SimpleDateFormat iso = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+            iso.setTimeZone(TimeZone.getTimeZone("UTC"));
+            try {
+                return iso.parse((String) value).getTime();
+            } catch (ParseException ignored) { }
+        }
+        return System.currentTimeMillis();
+    }
+
+    private class Listener extends WebSocketListener {
+        @Override
+        public void onMessage(WebSocket ws, String text) {
+            handler.post(() -> onPacket(ws, text));
+        }
+
+        @Override
+        public void onClosed(WebSocket ws, int code, String reason) {
+            handler.post(() -> {
+                if (ws != webSocket) return;
+                Log.d(TAG, "🔌 Сокет закрыт: " + code + " " + reason);
+                webSocket = null;
+                dropAndReconnect();
+            });
+        }
+
+        @Override
+        public void onFailure(WebSocket ws, Throwable t, Response response) {
+            handler.post(() -> {
+                if (ws != webSocket) return;
+                Log.w(TAG, "❌ Ошибка сокета: " + t.getMessage());
+                webSocket = null;
+                dropAndReconnect();
+            });
+        }
+    }
+}
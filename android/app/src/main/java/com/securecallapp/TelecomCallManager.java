@@ -0,0 +1,195 @@
+package com.securecallapp;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Bundle;
+import android.telecom.DisconnectCause;
+import android.telecom.PhoneAccount;
+import android.telecom.PhoneAccountHandle;
+import android.telecom.TelecomManager;
+import android.util.Log;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ═══════════════════════════════════════════════════════════
+ * TelecomCallManager v1.0 — PhoneAccount + мост Telecom ↔ JS
+ * ═══════════════════════════════════════════════════════════
+ *
+ * - registerPhoneAccount: self-managed PhoneAccount (один раз за процесс)
+ * - reportIncomingCall: addNewIncomingCall; false → вызывающий показывает
+ *   уведомление сам (API < 26, Telecom недоступен, звонок не разрешён)
+ * - onCallAction: ответ/отклонение из системы (Bluetooth, часы) или с
+ *   нативного IncomingCallActivity → событие "callConnectionAction" в JS;
+ *   если JS ещё не загружен — действие ждёт в pending до
+ *   consumePendingAction(callId), а отклонение уходит по нативному сокету
+ */
+public final class TelecomCallManager {
+    private static final String TAG = "TelecomCallManager";
+
+    static final String EXTRA_FROM = "from";
+    static final String EXTRA_IS_VIDEO = "isVideo";
+    static final String EXTRA_CALL_ID = "callId";
+
+    public static final String EVENT_NAME = "callConnectionAction";
+    static final String ACTION_ANSWER = "answer";
+    static final String ACTION_REJECT = "reject";
+    static final String ACTION_END = "end";
+
+    private static final String ACCOUNT_ID = "SecureCallSelfManaged";
+
+    private static volatile boolean sAccountRegistered = false;
+    private static final Map<String, String> sPendingActions = new ConcurrentHashMap<>();
+
+    private TelecomCallManager() { }
+
+    public static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.O;
+    }
+
+    public static synchronized void registerPhoneAccount(Context context) {
+        if (sAccountRegistered || !isSupported()) return;
+        TelecomManager telecom = telecom(context);
+        if (telecom == null) return;
+
+        try {
+            PhoneAccount account = PhoneAccount.builder(accountHandle(context), "SecureCall")
+                    .setCapabilities(PhoneAccount.CAPABILITY_SELF_MANAGED
+                            | PhoneAccount.CAPABILITY_VIDEO_CALLING
+                            | PhoneAccount.CAPABILITY_SUPPORTS_VIDEO_CALLING)
+                    .setSupportedUriSchemes(Collections.singletonList(PhoneAccount.SCHEME_SIP))
+                    .build();
+            telecom.registerPhoneAccount(account);
+            sAccountRegistered = true;
+            Log.d(TAG, "✅ PhoneAccount зарегистрирован");
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Ошибка регистрации PhoneAccount: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Сообщить системе о входящем звонке.
+     * @return true — Telecom принял запрос, UI покажет CallConnectionService
+     */
+    public static boolean reportIncomingCall(Context context, String from, boolean isVideo, String callId) {
+        if (!isSupported()) return false;
+        registerPhoneAccount(context);
+        if (!sAccountRegistered) return false;
+
+        TelecomManager telecom = telecom(context);
+        if (telecom == null) return false;
+
+        PhoneAccountHandle handle = accountHandle(context);
+        try {
+            if (!telecom.isIncomingCallPermitted(handle)) {
+                Log.w(TAG, "⚠️ Telecom: входящий звонок сейчас не разрешён");
+                return false;
+            }
+
+            Bundle callExtras = new Bundle();
+            callExtras.putString(EXTRA_FROM, from);
+            callExtras.putBoolean(EXTRA_IS_VIDEO, isVideo);
+            callExtras.putString(EXTRA_CALL_ID, callId != null ? callId : "");
+
+            Bundle extras = new Bundle();
+            extras.putBundle(TelecomManager.EXTRA_INCOMING_CALL_EXTRAS, callExtras);
+            telecom.addNewIncomingCall(handle, extras);
+            Log.d(TAG, "📞 addNewIncomingCall: " + from);
+            return true;
+        } catch (Exception e) {
+            // SecurityException: аккаунт отключён пользователем / нет MANAGE_OWN_CALLS
+            Log.e(TAG, "❌ addNewIncomingCall: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /** Звонящий отменил / таймаут: снять звонящие соединения как пропущенные */
+    public static void cancelRinging(String callId) {
+        if (!isSupported()) return;
+        CallConnectionService.end(callId, DisconnectCause.MISSED, true);
+    }
+
+    /** Завершить звонок из JS (callId == null — все) */
+    public static void endCall(String callId, int cause) {
+        if (!isSupported()) return;
+        if (callId != null) {
+            sPendingActions.remove(callId);
+        } else {
+            sPendingActions.clear();
+        }
+        CallConnectionService.end(callId, cause, false);
+    }
+
+    /** Звонок принят/завершён в UI приложения (CallScreen → setCallActive) */
+    public static void onAppCallActive(boolean active) {
+        if (!isSupported() || !CallConnectionService.hasConnections()) return;
+        if (active) {
+            CallConnectionService.activateRinging();
+        } else {
+            endCall(null, DisconnectCause.LOCAL);
+        }
+    }
+
+    /** Забрать действие, сделанное в системном UI до загрузки JS */
+    public static String consumePendingAction(String callId) {
+        return sPendingActions.remove(callId != null ? callId : "");
+    }
+
+    static void onCallAction(Context context, String action, String from, boolean isVideo, String callId) {
+        if (callId == null) callId = "";
+        if (ACTION_END.equals(action)) {
+            sPendingActions.remove(callId);
+        } else {
+            sPendingActions.put(callId, action);
+        }
+
+        emitAction(action, from, isVideo, callId);
+
+        if (ACTION_REJECT.equals(action)) {
+            // Без JS — reject_call по нативному сокету; иначе отправит SocketService
+            ConnectionForegroundService.rejectCallNatively(context, from, callId);
+        } else if (ACTION_ANSWER.equals(action)) {
+            // Ответ с гарнитуры/часов — поднять UI звонка
+            Intent intent = new Intent(context, MainActivity.class);
+            intent.setAction(Intent.ACTION_MAIN);
+            intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_SINGLE_TOP);
+            intent.putExtra("type", "incoming_call");
+            intent.putExtra("from", from);
+            intent.putExtra("isVideo", String.valueOf(isVideo));
+            if (!callId.isEmpty()) {
+                intent.putExtra("callId", callId);
+            }
+            try {
+                context.startActivity(intent);
+            } catch (Exception e) {
+                Log.w(TAG, "⚠️ Не удалось открыть MainActivity: " + e.getMessage());
+            }
+        }
+    }
+
+    static void emitAction(String action, String from, boolean isVideo, String callId) {
+        WritableMap params = Arguments.createMap();
+        params.putString("action", action);
+        params.putString("from", from);
+        params.putBoolean("isVideo", isVideo);
+        params.putString("callId", callId);
+        ReactRuntimeKeeper.emitToJs(EVENT_NAME, params);
+    }
+
+    private static PhoneAccountHandle accountHandle(Context context) {
+        return new PhoneAccountHandle(
+                new ComponentName(context.getApplicationContext(), CallConnectionService.class),
+                ACCOUNT_ID);
+    }
+
+    private static TelecomManager telecom(Context context) {
+        return (TelecomManager) context.getApplicationContext().getSystemService(Context.TELECOM_SERVICE);
+    }
+}
@@ -0,0 +1,199 @@
+package com.securecallapp;
+
+import android.content.Context;
+import android.net.wifi.WifiManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * ═══════════════════════════════════════════════════════════
+ * WakeLockScheduler v1.0 — wake lock только по делу
+ * ═══════════════════════════════════════════════════════════
+ *
+ * Раньше ConnectionForegroundService держал PARTIAL_WAKE_LOCK на 6 часов
+ * и WIFI_MODE_FULL_LOW_LATENCY всё время, пока пользователь залогинен —
+ * главная жалоба на батарею.
+ *
+ * Режимы:
+ *   NONE   — ничего не держим; сокет + FCM-фолбэк будят устройство сами
+ *   WINDOW — CPU lock на короткое окно (heartbeat, reconnect, сигналинг звонка)
+ *   CALL   — CPU lock + low-latency Wi-Fi lock на время активного звонка
+ *
+ * Время в каждом режиме накапливается (getStats) — доступно из JS через
+ * ConnectionServiceModule.getWakeLockStats().
+ */
+public final class WakeLockScheduler {
+    private static final String TAG = "WakeLockScheduler";
+
+    public enum Mode { NONE, WINDOW, CALL }
+
+    // Страховочный таймаут для CALL — если JS не сообщил о завершении звонка
+    private static final long CALL_SAFETY_TIMEOUT_MS = 4 * 60 * 60 * 1000L;
+    private static final long MAX_WINDOW_MS = 60_000;
+
+    private static WakeLockScheduler sInstance;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final PowerManager.WakeLock cpuLock;
+    private final WifiManager.WifiLock wifiLock;
+
+    private Mode mode = Mode.NONE;
+    private long modeSince = SystemClock.elapsedRealtime();
+    private long windowEnd = 0;
+    private final long[] heldMs = new long[Mode.values().length];
+    private long windowCount = 0;
+    private long callCount = 0;
+
+    private final Runnable windowExpired = this::onWindowExpired;
+
+    private WakeLockScheduler(Context context) {
+        Context app = context.getApplicationContext();
+
+        PowerManager pm = (PowerManager) app.getSystemService(Context.POWER_SERVICE);
+        cpuLock = pm != null ? pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "SecureCall::CPULock") : null;
+        if (cpuLock != null) cpuLock.setReferenceCounted(false);
+
+        WifiManager wm = (WifiManager) app.getSystemService(Context.WIFI_SERVICE);
+        if (wm != null) {
+            // WIFI_MODE_FULL_HIGH_PERF deprecated с API 29, но это единственный
+            // доступный режим для API < 29. На API 29+ используем FULL_LOW_LATENCY.
+            @SuppressWarnings("deprecation")
+            int legacyWifiMode = WifiManager.WIFI_MODE_FULL_HIGH_PERF;
+            int wifiMode = Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q
+                    ? WifiManager.WIFI_MODE_FULL_LOW_LATENCY
+                    : legacyWifiMode;
+            wifiLock = wm.createWifiLock(wifiMode, "SecureCall::WiFiLock");
+            wifiLock.setReferenceCounted(false);
+        } else {
+            wifiLock = null;
+        }
+    }
+
+    public static synchronized WakeLockScheduler get(Context context) {
+        if (sInstance == null) {
+            sInstance = new WakeLockScheduler(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Держать CPU durationMs (окна сливаются). Во время звонка — no-op.
+     */
+    public synchronized void holdWindow(String reason, long durationMs) {
+        if (cpuLock == null) return;
+        long duration = Math.min(Math.max(durationMs, 0), MAX_WINDOW_MS);
+        long now = SystemClock.elapsedRealtime();
+        windowCount++;
+
+        if (mode == Mode.CALL) return;
+
+        long end = Math.max(windowEnd, now + duration);
+        if (end != windowEnd) {
+            windowEnd = end;
+            try {
+                cpuLock.acquire(end - now);
+            } catch (Exception e) {
+                Log.e(TAG, "❌ Ошибка CPU lock: " + e.getMessage());
+                return;
+            }
+            handler.removeCallbacks(windowExpired);
+            handler.postDelayed(windowExpired, end - now);
+        }
+        if (mode != Mode.WINDOW) {
+            Log.d(TAG, "⏱️ WINDOW (" + reason + ", " + duration + "мс)");
+        }
+        setMode(Mode.WINDOW);
+    }
+
+    /** Активный звонок: CPU + low-latency Wi-Fi; по завершении — обратно в NONE/WINDOW */
+    public synchronized void setCallActive(boolean active) {
+        if (active) {
+            if (mode == Mode.CALL) return;
+            callCount++;
+            try {
+                if (cpuLock != null) cpuLock.acquire(CALL_SAFETY_TIMEOUT_MS);
+                if (wifiLock != null && !wifiLock.isHeld()) wifiLock.acquire();
+            } catch (Exception e) {
+                Log.e(TAG, "❌ Ошибка захвата lock для звонка: " + e.getMessage());
+            }
+            handler.removeCallbacks(windowExpired);
+            Log.d(TAG, "📞 CALL — CPU + Wi-Fi low latency");
+            setMode(Mode.CALL);
+        } else {
+            if (mode != Mode.CALL) return;
+            releaseWifi();
+            long remaining = windowEnd - SystemClock.elapsedRealtime();
+            if (remaining > 0) {
+                // Окно сигналинга ещё не истекло — досиживаем его
+                if (cpuLock != null) cpuLock.acquire(remaining);
+                handler.postDelayed(windowExpired, remaining);
+                setMode(Mode.WINDOW);
+            } else {
+                releaseCpu();
+                setMode(Mode.NONE);
+            }
+            Log.d(TAG, "📴 Звонок завершён — режим " + mode);
+        }
+    }
+
+    /** Всё отпустить (остановка сервиса) */
+    public synchronized void releaseAll() {
+        handler.removeCallbacks(windowExpired);
+        windowEnd = 0;
+        releaseWifi();
+        releaseCpu();
+        setMode(Mode.NONE);
+    }
+
+    /**
+     * {noneMs, windowMs, callMs, windowCount, callCount} — текущий режим
+     * учтён до момента вызова.
+     */
+    public synchronized long[] getStats() {
+        long[] out = new long[heldMs.length + 2];
+        System.arraycopy(heldMs, 0, out, 0, heldMs.length);
+        out[mode.ordinal()] += SystemClock.elapsedRealtime() - modeSince;
+        out[heldMs.length] = windowCount;
+        out[heldMs.length + 1] = callCount;
+        return out;
+    }
+
+    public synchronized Mode getMode() {
+        return mode;
+    }
+
+    private synchronized void onWindowExpired() {
+        if (mode != Mode.WINDOW) return;
+        if (SystemClock.elapsedRealtime() < windowEnd) return;
+        releaseCpu();
+        setMode(Mode.NONE);
+    }
+
+    private void setMode(Mode next) {
+        if (next == mode) return;
+        long now = SystemClock.elapsedRealtime();
+        heldMs[mode.ordinal()] += now - modeSince;
+        modeSince = now;
+        mode = next;
+    }
+
+    private void releaseCpu() {
+        try {
+            if (cpuLock != null && cpuLock.isHeld()) cpuLock.release();
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Ошибка освобождения CPU lock: " + e.getMessage());
+        }
+    }
+
+    private void releaseWifi() {
+        try {
+            if (wifiLock != null && wifiLock.isHeld()) wifiLock.release();
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Ошибка освобождения Wi-Fi lock: " + e.getMessage());
+        }
+    }
+}
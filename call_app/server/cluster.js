@@ -0,0 +1,96 @@
+// cluster.js - v8.7 (multi-core entry point)
+//
+//   npm run start:cluster            — воркеров по числу ядер
+//   CLUSTER_WORKERS=4 npm run start:cluster
+//
+// Primary не обрабатывает запросы: слушает порт, раздаёт соединения воркерам
+// (sticky по engine.io sid), пересылает события Socket.IO между ними и держит
+// общее состояние маршрутизации (если не задан REDIS_URL).
+// Каждый воркер — обычный server.js.
+
+require('dotenv').config();
+const cluster = require('cluster');
+const net = require('net');
+const os = require('os');
+
+const { createStateStore, serveStateStore } = require('./state');
+const { setupAdapterPrimary } = require('./services/clusterAdapter');
+const { setupStickyPrimary } = require('./services/stickyRouter');
+
+const PORT = process.env.PORT || 3000;
+const WORKERS = parseInt(process.env.CLUSTER_WORKERS) ||
+  (typeof os.availableParallelism === 'function' ? os.availableParallelism() : os.cpus().length);
+const RESTART_DELAY_MS = 1000;
+
+let shuttingDown = false;
+
+function fork() {
+  // Число воркеров — для пулов на процесс (PasswordPool делит ядра между воркерами)
+  return cluster.fork({ SECURECALL_CLUSTER_WORKER: '1', SECURECALL_CLUSTER_WORKERS: String(WORKERS) });
+}
+
+async function startPrimary() {
+  // advanced — Buffer первого пакета и бинарные события адаптера без JSON
+  cluster.setupPrimary({ serialization: 'advanced' });
+
+  if (!process.env.REDIS_URL) {
+    const store = createStateStore();
+    await store.connect();
+    serveStateStore(cluster, store);
+  }
+  setupAdapterPrimary(cluster);
+
+  const balancer = net.createServer();
+  setupStickyPrimary(cluster, balancer);
+
+  cluster.on('exit', (worker, code, signal) => {
+    if (shuttingDown) return;
+    console.error(`[Cluster] ❌ Воркер ${worker.process.pid} завершился (code=${code}, signal=${signal}) — перезапуск`);
+    setTimeout(fork, RESTART_DELAY_MS);
+  });
+
+  for (let i = 0; i < WORKERS; i++) {
+    fork();
+  }
+
+  balancer.listen(PORT, () => {
+    console.log('╔═══════════════════════════════════╗');
+    console.log('║  🚀 SecureCall Cluster v8.7      ║');
+    console.log('╠═══════════════════════════════════╣');
+    console.log(`║  Порт: ${PORT}                     ║`);
+    console.log(`║  Воркеров: ${WORKERS}                     ║`);
+    console.log(`║  Состояние: ${process.env.REDIS_URL ? 'Redis' : 'primary (IPC)'}        ║`);
+    console.log('╚═══════════════════════════════════╝');
+  });
+
+  const shutdown = (signal) => {
+    if (shuttingDown) return;
+    shuttingDown = true;
+    console.log(`🛑 ${signal} - остановка кластера...`);
+
+    balancer.close();
+    const exitWhenDone = () => {
+      if (Object.keys(cluster.workers).length === 0) {
+        console.log('✅ Кластер остановлен');
+        process.exit(0);
+      }
+    };
+    cluster.on('exit', exitWhenDone);
+    for (const worker of Object.values(cluster.workers)) {
+      if (worker) worker.process.kill(signal);
+    }
+    exitWhenDone();
+  };
+
+  process.on('SIGTERM', () => shutdown('SIGTERM'));
+  process.on('SIGINT', () => shutdown('SIGINT'));
+}
+
+if (cluster.isPrimary) {
+  startPrimary().catch((error) => {
+    console.error('❌ КРИТИЧЕСКАЯ ОШИБКА ЗАПУСКА КЛАСТЕРА:', error);
+    process.exit(1);
+  });
+} else {
+  require('./server');
+}
@@ -52,9 +52,11 @@ async function createIndexes() {
     
     const User = require('../models/User');
     const Message = require('../models/Message');
+    const Conversation = require('../models/Conversation');
     
     await User.createIndexes();
     await Message.createIndexes();
+    await Conversation.createIndexes();
     
     console.log('[MongoDB] ✅ Индексы созданы');
   } catch (error) {
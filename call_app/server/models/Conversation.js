@@ -0,0 +1,269 @@
+// models/Conversation.js - v8.6 (incremental conversation summaries)
+const mongoose = require('mongoose');
+
+/**
+ * ═══════════════════════════════════════════════════════════
+ * Conversation Model v8.6 - СВОДКА ПЕРЕПИСОК ДЛЯ ГЛАВНОГО ЭКРАНА
+ * ═══════════════════════════════════════════════════════════
+ *
+ * Один документ на пару (user, peer): превью последнего сообщения и
+ * число непрочитанных. Обновляется атомарно ($set/$inc) в путях
+ * send_message, mark_read и пропущенного звонка, поэтому главный экран
+ * читает O(переписок) одним индексным запросом вместо агрегации по всем
+ * сообщениям (getLastMessagesPerUser / getUnreadCount).
+ *
+ * Первичное заполнение: npm run backfill:conversations
+ */
+
+const PREVIEW_LENGTH = 200;
+
+const ConversationSchema = new mongoose.Schema({
+  user: {
+    type: String,
+    required: true,
+    trim: true,
+  },
+  peer: {
+    type: String,
+    required: true,
+    trim: true,
+  },
+  lastMessage: {
+    messageId: { type: String, default: null },
+    from: { type: String, default: null },
+    message: { type: String, default: '' },
+    type: { type: String, default: 'text' },
+    mediaType: { type: String, default: null },
+    timestamp: { type: Date, default: null },
+  },
+  unread: {
+    type: Number,
+    default: 0,
+    min: 0,
+  },
+}, {
+  timestamps: true,
+});
+
+// ═══════════════════════════════════════════════════════════
+// ИНДЕКСЫ
+// ═══════════════════════════════════════════════════════════
+
+ConversationSchema.index({ user: 1, peer: 1 }, { unique: true });
+ConversationSchema.index({ user: 1, 'lastMessage.timestamp': -1 });
+
+// ═══════════════════════════════════════════════════════════
+// СТАТИЧЕСКИЕ МЕТОДЫ
+// ═══════════════════════════════════════════════════════════
+
+function toPreview(msg) {
+  return {
+    messageId: msg.messageId,
+    from: msg.from,
+    message: (msg.message || '').substring(0, PREVIEW_LENGTH),
+    type: msg.type || 'text',
+    mediaType: msg.mediaType || null,
+    timestamp: msg.timestamp || new Date(),
+  };
+}
+
+/**
+ * Новое сообщение: превью у обеих сторон, +1 непрочитанное у получателя.
+ * Превью не откатывается назад, если сообщения записаны не по порядку.
+ */
+ConversationSchema.statics.recordMessage = async function(msg) {
+  try {
+    if (!msg || !msg.from || !msg.to) {
+      console.error('[Conversation] recordMessage: отсутствуют from или to');
+      return null;
+    }
+
+    const preview = toPreview(msg);
+    const newer = { $or: [
+      { 'lastMessage.timestamp': null },
+      { 'lastMessage.timestamp': { $lte: preview.timestamp } },
+    ] };
+
+    const sides = [
+      { user: msg.from, peer: msg.to, unread: 0 },
+      { user: msg.to, peer: msg.from, unread: msg.read ? 0 : 1 },
+    ];
+
+    const ops = [];
+    sides.forEach(({ user, peer, unread }) => {
+      // Счётчик — всегда; превью — только если сообщение не старее текущего
+      ops.push({
+        updateOne: {
+          filter: { user, peer },
+          update: { $inc: { unread }, $setOnInsert: { lastMessage: preview } },
+          upsert: true,
+        },
+      });
+      ops.push({
+        updateOne: {
+          filter: { user, peer, ...newer },
+          update: { $set: { lastMessage: preview } },
+        },
+      });
+    });
+
+    return await this.bulkWrite(ops, { ordered: true });
+  } catch (error) {
+    console.error('[Conversation] recordMessage ошибка:', error);
+    return null;
+  }
+};
+
+/**
+ * user прочитал сообщения от peer. all — прочитано всё (mark_read без messageId)
+ */
+ConversationSchema.statics.markRead = async function(user, peer, count, all = false) {
+  try {
+    if (!user || !peer) {
+      console.error('[Conversation] markRead: отсутствуют user или peer');
+      return null;
+    }
+
+    if (all) {
+      return await this.updateOne({ user, peer }, { $set: { unread: 0 } }).exec();
+    }
+    if (!count) return null;
+
+    const result = await this.updateOne({ user, peer }, { $inc: { unread: -count } }).exec();
+    // Счётчик мог разойтись (сообщения до backfill) — не уходим в минус
+    await this.updateOne({ user, peer, unread: { $lt: 0 } }, { $set: { unread: 0 } }).exec();
+    return result;
+  } catch (error) {
+    console.error('[Conversation] markRead ошибка:', error);
+    return null;
+  }
+};
+
+/**
+ * Переписки пользователя, свежие первыми
+ */
+ConversationSchema.statics.getForUser = async function(user, limit = 200) {
+  try {
+    if (!user) {
+      console.error('[Conversation] getForUser: отсутствует user');
+      return [];
+    }
+
+    const conversations = await this.find(
+      { user },
+      { _id: 0, peer: 1, lastMessage: 1, unread: 1 }
+    )
+      .sort({ 'lastMessage.timestamp': -1 })
+      .limit(Math.min(limit, 500))
+      .lean()
+      .exec();
+
+    return conversations || [];
+  } catch (error) {
+    console.error('[Conversation] getForUser ошибка:', error);
+    return [];
+  }
+};
+
+/**
+ * Непрочитанные по собеседникам { peer: count } — замена Message.getUnreadCount
+ */
+ConversationSchema.statics.getUnreadCount = async function(user) {
+  try {
+    if (!user) {
+      console.error('[Conversation] getUnreadCount: отсутствует user');
+      return {};
+    }
+
+    const rows = await this.find(
+      { user, unread: { $gt: 0 } },
+      { _id: 0, peer: 1, unread: 1 }
+    ).lean().exec();
+
+    const result = {};
+    (rows || []).forEach((row) => {
+      result[row.peer] = row.unread;
+    });
+    return result;
+  } catch (error) {
+    console.error('[Conversation] getUnreadCount ошибка:', error);
+    return {};
+  }
+};
+
+/**
+ * Удалить переписки пользователя (удаление аккаунта)
+ */
+ConversationSchema.statics.deleteForUser = async function(username) {
+  try {
+    const result = await this.deleteMany({
+      $or: [{ user: username }, { peer: username }]
+    }).exec();
+    return result.deletedCount;
+  } catch (error) {
+    console.error('[Conversation] deleteForUser ошибка:', error);
+    return 0;
+  }
+};
+
+/**
+ * Пересчитать сводки из коллекции сообщений (backfill / ремонт счётчиков).
+ * Агрегация по всем сообщениям — только для разового запуска, не для запросов.
+ */
+ConversationSchema.statics.rebuildFromMessages = async function(Message, { batchSize = 500 } = {}) {
+  const cursor = Message.aggregate([
+    {
+      $project: {
+        pairs: [
+          { user: '$from', peer: '$to', unread: { $literal: 0 } },
+          { user: '$to', peer: '$from', unread: { $cond: ['$read', 0, 1] } },
+        ],
+        messageId: 1,
+        from: 1,
+        message: 1,
+        type: 1,
+        mediaType: 1,
+        timestamp: 1,
+      }
+    },
+    { $unwind: '$pairs' },
+    { $sort: { timestamp: -1 } },
+    {
+      $group: {
+        _id: { user: '$pairs.user', peer: '$pairs.peer' },
+        unread: { $sum: '$pairs.unread' },
+        last: { $first: '$$ROOT' },
+      }
+    },
+  ]).allowDiskUse(true).cursor({ batchSize });
+
+  let ops = [];
+  let total = 0;
+  for await (const row of cursor) {
+    ops.push({
+      updateOne: {
+        filter: { user: row._id.user, peer: row._id.peer },
+        update: { $set: { lastMessage: toPreview(row.last), unread: row.unread } },
+        upsert: true,
+      },
+    });
+    if (ops.length >= batchSize) {
+      await this.bulkWrite(ops, { ordered: false });
+      total += ops.length;
+      ops = [];
+    }
+  }
+  if (ops.length > 0) {
+    await this.bulkWrite(ops, { ordered: false });
+    total += ops.length;
+  }
+  return total;
+};
+
+// ═══════════════════════════════════════════════════════════
+// ЭКСПОРТ
+// ═══════════════════════════════════════════════════════════
+
+const Conversation = mongoose.model('Conversation', ConversationSchema);
+
+module.exports = Conversation;
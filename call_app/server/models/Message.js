@@ -1,4 +1,4 @@
-// models/Message.js - v7.3 (media support + read receipts)
+// models/Message.js - v8.5 (media support + read receipts + delta sync + keyset pages)
 const mongoose = require('mongoose');
 
 /**
@@ -90,41 +90,164 @@ const MessageSchema = new mongoose.Schema({
 // СОСТАВНЫЕ ИНДЕКСЫ ДЛЯ БЫСТРОГО ПОИСКА
 // ═══════════════════════════════════════════════════════════
 
-MessageSchema.index({ from: 1, to: 1, timestamp: -1 });
+// [v8.5] messageId в конце — тай-брейкер keyset-пагинации (getHistoryPage);
+// префикс { from, to, timestamp } обслуживает прежние запросы
+MessageSchema.index({ from: 1, to: 1, timestamp: -1, messageId: -1 });
 MessageSchema.index({ to: 1, read: 1, timestamp: -1 });
 MessageSchema.index({ messageId: 1 }, { unique: true });
 MessageSchema.index({ type: 1, timestamp: -1 });
+// [v8.4] Дельта-синхронизация: новые сообщения и смена read/delivered по updatedAt
+MessageSchema.index({ from: 1, to: 1, updatedAt: 1 });
+// [v8.12] Досылка превью по mediaUrl (attachThumbnail)
+MessageSchema.index({ mediaUrl: 1 }, { partialFilterExpression: { type: 'media' } });
 
 // ═══════════════════════════════════════════════════════════
 // СТАТИЧЕСКИЕ МЕТОДЫ
 // ═══════════════════════════════════════════════════════════
 
 /**
- * Получение истории сообщений между двумя пользователями
+ * [v8.5] Поля, которые нужны клиенту для отрисовки чата (lean + проекция:
+ * без _id/__v/createdAt/updatedAt/readAt/deliveredAt)
+ */
+const HISTORY_PROJECTION = {
+  _id: 0,
+  messageId: 1,
+  from: 1,
+  to: 1,
+  message: 1,
+  timestamp: 1,
+  read: 1,
+  delivered: 1,
+  type: 1,
+  mediaUrl: 1,
+  mediaType: 1,
+  thumbnailUrl: 1,
+  fileName: 1,
+  fileSize: 1,
+};
+
+/**
+ * Получение истории сообщений между двумя пользователями (последние limit)
  */
 MessageSchema.statics.getHistory = async function(user1, user2, limit = 100) {
+  const page = await this.getHistoryPage(user1, user2, { limit });
+  return page.messages;
+};
+
+/**
+ * [v8.5] Keyset-пагинация истории: страница сообщений старше before.
+ *
+ * Курсор before = { timestamp, messageId } последнего (самого старого)
+ * сообщения предыдущей страницы; messageId разрешает равные timestamp.
+ * Каждая ветка $or — диапазон по индексу { from, to, timestamp, messageId },
+ * поэтому стоимость запроса O(limit) при любой длине переписки.
+ *
+ * @returns {{ messages, nextCursor }} nextCursor === null — старше ничего нет
+ */
+MessageSchema.statics.getHistoryPage = async function(user1, user2, { before = null, limit = 50 } = {}) {
   try {
     // Валидация входных данных
     if (!user1 || !user2) {
-      console.error('[Message] getHistory: отсутствуют user1 или user2');
-      return [];
+      console.error('[Message] getHistoryPage: отсутствуют user1 или user2');
+      return { messages: [], nextCursor: null };
     }
 
-    const messages = await this.find({
+    const pageSize = Math.max(1, Math.min(limit, 500)); // Макс 500 сообщений
+    const pairs = [
+      { from: user1, to: user2 },
+      { from: user2, to: user1 },
+    ];
+
+    let branches = pairs;
+    if (before && before.timestamp) {
+      const beforeDate = new Date(before.timestamp);
+      if (isNaN(beforeDate.getTime())) {
+        return { messages: [], nextCursor: null };
+      }
+      branches = [];
+      pairs.forEach((pair) => {
+        branches.push({ ...pair, timestamp: { $lt: beforeDate } });
+        if (before.messageId) {
+          branches.push({ ...pair, timestamp: beforeDate, messageId: { $lt: before.messageId } });
+        }
+      });
+    }
+
+    const messages = await this.find({ $or: branches }, HISTORY_PROJECTION)
+      .sort({ timestamp: -1, messageId: -1 })
+      .limit(pageSize + 1) // +1 — признак следующей страницы
+      .lean()
+      .exec();
+
+    const hasMore = messages.length > pageSize;
+    if (hasMore) messages.length = pageSize;
+
+    const oldest = messages[messages.length - 1];
+    const nextCursor = hasMore && oldest
+      ? { timestamp: oldest.timestamp.getTime(), messageId: oldest.messageId }
+      : null;
+
+    return { messages, nextCursor };
+  } catch (error) {
+    console.error('[Message] getHistoryPage ошибка:', error);
+    return { messages: [], nextCursor: null };
+  }
+};
+
+/**
+ * [v8.4] Дельта истории для клиентского кэша.
+ *
+ * updatedAt меняется и при создании, и при markAsRead/markAsDelivered,
+ * поэтому один запрос по курсору возвращает и новые сообщения, и смену
+ * статуса прочтения старых. Курсор — (updatedAt, messageId) последнего
+ * документа; граничный документ с тем же updatedAt отбрасывается по messageId.
+ *
+ * @returns {{ messages, cursor, overflow }} overflow — изменений больше limit,
+ *          клиенту нужна полная история
+ */
+MessageSchema.statics.getHistorySince = async function(user1, user2, since, limit = 100) {
+  try {
+    if (!user1 || !user2 || !since || !since.sinceTimestamp) {
+      return { messages: [], cursor: null, overflow: true };
+    }
+
+    const sinceDate = new Date(since.sinceTimestamp);
+    if (isNaN(sinceDate.getTime())) {
+      return { messages: [], cursor: null, overflow: true };
+    }
+
+    const cap = Math.min(limit, 500);
+    const changed = await this.find({
       $or: [
         { from: user1, to: user2 },
         { from: user2, to: user1 }
-      ]
+      ],
+      updatedAt: { $gte: sinceDate },
     })
-      .sort({ timestamp: -1 })
-      .limit(Math.min(limit, 500)) // Макс 500 сообщений
+      .select({ ...HISTORY_PROJECTION, updatedAt: 1 })
+      .sort({ updatedAt: 1 })
+      .limit(cap + 2) // +граничный документ, +признак переполнения
       .lean()
       .exec();
 
-    return messages || [];
+    const messages = (changed || []).filter(
+      (msg) => !(since.sinceMessageId && msg.messageId === since.sinceMessageId
+        && msg.updatedAt.getTime() === sinceDate.getTime())
+    );
+
+    if (messages.length > cap) {
+      return { messages: [], cursor: null, overflow: true };
+    }
+
+    const last = messages[messages.length - 1];
+    const cursor = last
+      ? { sinceTimestamp: last.updatedAt.getTime(), sinceMessageId: last.messageId }
+      : { sinceTimestamp: sinceDate.getTime(), sinceMessageId: since.sinceMessageId || null };
+
+    return { messages, cursor, overflow: false };
   } catch (error) {
-    console.error('[Message] getHistory ошибка:', error);
-    return [];
+    console.error('[Message] getHistorySince ошибка:', error);
+    return { messages: [], cursor: null, overflow: true };
   }
 };
 
@@ -258,6 +381,36 @@ MessageSchema.statics.markAsDelivered = async function(messageId) {
   }
 };
 
+/**
+ * [v8.12] Превью готово уже после отправки: проставить thumbnailUrl сообщениям
+ * с этим mediaUrl, у которых его нет. updatedAt сдвигается — дельта-синхронизация
+ * (getHistorySince) донесёт превью до клиентского кэша.
+ *
+ * @returns {Array<{messageId, from, to}>} обновлённые сообщения
+ */
+MessageSchema.statics.attachThumbnail = async function(mediaUrl, thumbnailUrl) {
+  try {
+    if (!mediaUrl || !thumbnailUrl) return [];
+
+    const filter = { type: 'media', mediaUrl, thumbnailUrl: null };
+    const pending = await this.find(filter)
+      .select({ _id: 0, messageId: 1, from: 1, to: 1 })
+      .lean()
+      .exec();
+    if (pending.length === 0) return [];
+
+    await this.updateMany(
+      { ...filter, messageId: { $in: pending.map((msg) => msg.messageId) } },
+      { $set: { thumbnailUrl } }
+    ).exec();
+
+    return pending;
+  } catch (error) {
+    console.error('[Message] attachThumbnail ошибка:', error);
+    return [];
+  }
+};
+
 /**
  * Создание системного сообщения
  */
@@ -1,7 +1,8 @@
 // models/User.js - ВЕРСИЯ v8.0.0
 const mongoose = require('mongoose');
-const bcrypt = require('bcrypt');
 const crypto = require('crypto');
+const userCache = require('../services/userCache');
+const passwordPool = require('../services/passwordPool');
 
 /**
  * ═══════════════════════════════════════════════════════════
@@ -94,14 +95,14 @@ UserSchema.index({ isAdmin: 1 });
 UserSchema.index({ isBanned: 1 });
 
 // Middleware для хеширования пароля перед сохранением
+// [v8.10] bcrypt в пуле потоков; переполнение очереди → error.code = 'POOL_SATURATED'
 UserSchema.pre('save', async function(next) {
   if (!this.isModified('password')) {
     return next();
   }
   
   try {
-    const salt = await bcrypt.genSalt(10);
-    this.password = await bcrypt.hash(this.password, salt);
+    this.password = await passwordPool.hash(this.password, 10);
     next();
   } catch (error) {
     next(error);
@@ -111,7 +112,7 @@ UserSchema.pre('save', async function(next) {
 // Метод для проверки пароля
 UserSchema.methods.comparePassword = async function(candidatePassword) {
   try {
-    return await bcrypt.compare(candidatePassword, this.password);
+    return await passwordPool.compare(candidatePassword, this.password);
   } catch (error) {
     throw error;
   }
@@ -163,6 +164,51 @@ UserSchema.statics.findByToken = async function(username, token) {
   return user;
 };
 
+// ═══════════════════════════════════════════════════════════
+// [v8.9] КЭШ ЗАПИСЕЙ (services/userCache.js) ДЛЯ ГОРЯЧИХ ПУТЕЙ СОКЕТОВ
+// ═══════════════════════════════════════════════════════════
+
+const CACHE_FIELDS = 'username token fcmToken platform isAdmin isBanned banReason';
+
+/**
+ * Запись пользователя { username, fcmToken, platform, isAdmin, isBanned,
+ * banReason } — из памяти или одним lean-запросом. null — не найден.
+ */
+UserSchema.statics.getCached = async function(username) {
+  if (!username) return null;
+
+  const cached = userCache.get(username);
+  if (cached) return cached;
+
+  const user = await this.findOne({ username }).select(CACHE_FIELDS).lean();
+  return user ? userCache.set(user) : null;
+};
+
+/**
+ * findByToken через кэш: при совпадении хэша токена — без запроса к БД.
+ * Промах или несовпадение (токен сменился) — проверка в БД, как раньше.
+ */
+UserSchema.statics.findByTokenCached = async function(username, token) {
+  const cached = userCache.get(username);
+  if (cached && userCache.matchesToken(cached, token)) {
+    return { ...cached, token };
+  }
+
+  const user = await this.findOne({ username, token }).select(CACHE_FIELDS).lean();
+  if (!user) {
+    throw new Error('Недействительный токен');
+  }
+  return { ...userCache.set(user), token };
+};
+
+UserSchema.statics.invalidateCache = function(username) {
+  userCache.invalidate(username);
+};
+
+UserSchema.statics.cacheStats = function() {
+  return userCache.getStats();
+};
+
 // Статический метод для получения всех пользователей (онлайн и оффлайн)
 UserSchema.statics.getAllUsers = async function(excludeUsername = null, includeOffline = true) {
   const query = includeOffline ? {} : { isOnline: true };
@@ -192,7 +238,7 @@ UserSchema.statics.setOnlineStatus = async function(username, isOnline) {
 
 // Статический метод для обновления FCM токена
 UserSchema.statics.updateFCMToken = async function(username, fcmToken, platform) {
-  return await this.findOneAndUpdate(
+  const user = await this.findOneAndUpdate(
     { username },
     { 
       fcmToken,
@@ -201,6 +247,22 @@ UserSchema.statics.updateFCMToken = async function(username, fcmToken, platform)
     },
     { new: true }
   );
+  // [v8.9] Другие воркеры сбрасывают запись, здесь — сразу свежая
+  userCache.invalidate(username);
+  if (user) userCache.set(user);
+  return user;
+};
+
+// [v8.8] Сбросить токен, который FCM считает незарегистрированным
+// (по значению токена: он мог перейти к другому пользователю после переустановки)
+UserSchema.statics.clearFCMToken = async function(fcmToken) {
+  if (!fcmToken) return null;
+  const result = await this.updateMany(
+    { fcmToken },
+    { fcmToken: null, updatedAt: new Date() }
+  );
+  userCache.invalidateFCMToken(fcmToken);
+  return result;
 };
 
 // ═══════════════════════════════════════════════════════════
@@ -211,7 +273,7 @@ UserSchema.statics.updateFCMToken = async function(username, fcmToken, platform)
  * Забанить пользователя
  */
 UserSchema.statics.banUser = async function(username, reason, bannedBy) {
-  return await this.findOneAndUpdate(
+  const user = await this.findOneAndUpdate(
     { username },
     {
       isBanned: true,
@@ -222,13 +284,16 @@ UserSchema.statics.banUser = async function(username, reason, bannedBy) {
     },
     { new: true }
   );
+  // [v8.9] Статус бана читается из кэша в auth_token — сбросить после записи
+  userCache.invalidate(username);
+  return user;
 };
 
 /**
  * Разбанить пользователя
  */
 UserSchema.statics.unbanUser = async function(username) {
-  return await this.findOneAndUpdate(
+  const user = await this.findOneAndUpdate(
     { username },
     {
       isBanned: false,
@@ -239,6 +304,9 @@ UserSchema.statics.unbanUser = async function(username) {
     },
     { new: true }
   );
+  // [v8.9] Как в banUser — сброс кэша после записи
+  userCache.invalidate(username);
+  return user;
 };
 
 /**
@@ -0,0 +1,29 @@
+// scripts/backfillConversations.js - v8.6
+// Первичное заполнение коллекции Conversation из существующих сообщений.
+//
+//   npm run backfill:conversations
+//
+// Идемпотентно: сводки пересчитываются целиком ($set), повторный запуск
+// чинит разошедшиеся счётчики непрочитанных.
+
+require('dotenv').config();
+const { connectDatabase, disconnectDatabase } = require('../config/database');
+const Message = require('../models/Message');
+const Conversation = require('../models/Conversation');
+
+async function main() {
+  const startedAt = Date.now();
+  await connectDatabase();
+
+  console.log('[Backfill] Пересчёт сводок переписок...');
+  const total = await Conversation.rebuildFromMessages(Message);
+
+  console.log(`[Backfill] ✅ Обновлено сводок: ${total} за ${Date.now() - startedAt} мс`);
+}
+
+main()
+  .catch((error) => {
+    console.error('[Backfill] ❌ Ошибка:', error);
+    process.exitCode = 1;
+  })
+  .finally(() => disconnectDatabase());
@@ -0,0 +1,115 @@
+// scripts/benchPasswordPool.js - v8.10
+// Задержка event loop и общего libuv threadpool под потоком логинов,
+// bcrypt без пула и через passwordPool.
+//
+//   npm run bench:password
+//   BENCH_LOGINS=400 BENCH_CONCURRENCY=100 BENCH_ROUNDS=10 npm run bench:password
+//
+// Режимы:
+//   sync   — bcrypt.compareSync в главном потоке (худший случай)
+//   inline — bcrypt.compare как в User.js до v8.10 (общий libuv threadpool)
+//   pool   — passwordPool.compare (отдельные worker_threads)
+//
+// Параллельно с логинами меряются:
+//   loop   — monitorEventLoopDelay (задержка таймеров/сокетов)
+//   libuv  — время fs.stat + zlib.gzip (то, что делят с bcrypt
+//            загрузки файлов, compression и dns.lookup)
+
+const fs = require('fs');
+const zlib = require('zlib');
+const bcrypt = require('bcrypt');
+const { monitorEventLoopDelay, performance } = require('perf_hooks');
+const { PasswordPool } = require('../services/passwordPool');
+
+const LOGINS = parseInt(process.env.BENCH_LOGINS) || 200;
+const CONCURRENCY = parseInt(process.env.BENCH_CONCURRENCY) || 50;
+const ROUNDS = parseInt(process.env.BENCH_ROUNDS) || 10;
+const PROBE_INTERVAL_MS = 20;
+const PROBE_PAYLOAD = Buffer.alloc(16 * 1024, 'a');
+
+function percentile(sorted, p) {
+  if (sorted.length === 0) return 0;
+  return sorted[Math.min(sorted.length - 1, Math.floor(sorted.length * p))];
+}
+
+function libuvProbe() {
+  const started = performance.now();
+  return new Promise((resolve) => {
+    fs.stat(__filename, () => {
+      zlib.gzip(PROBE_PAYLOAD, () => resolve(performance.now() - started));
+    });
+  });
+}
+
+async function runMode(name, compare) {
+  const probes = [];
+  let probing = true;
+  const probeLoop = (async () => {
+    while (probing) {
+      probes.push(await libuvProbe());
+      await new Promise((resolve) => setTimeout(resolve, PROBE_INTERVAL_MS));
+    }
+  })();
+
+  const histogram = monitorEventLoopDelay({ resolution: 10 });
+  histogram.enable();
+
+  let next = 0;
+  let rejected = 0;
+  const started = performance.now();
+  const worker = async () => {
+    while (next < LOGINS) {
+      next++;
+      try {
+        await compare();
+      } catch (error) {
+        if (error.code !== 'POOL_SATURATED') throw error;
+        rejected++;
+      }
+    }
+  };
+  await Promise.all(Array.from({ length: CONCURRENCY }, worker));
+  const elapsed = performance.now() - started;
+
+  histogram.disable();
+  probing = false;
+  await probeLoop;
+
+  const sortedProbes = probes.sort((a, b) => a - b);
+  return {
+    mode: name,
+    'logins/s': Math.round((LOGINS / elapsed) * 1000),
+    rejected,
+    'loop p50 ms': +(histogram.percentile(50) / 1e6).toFixed(1),
+    'loop p99 ms': +(histogram.percentile(99) / 1e6).toFixed(1),
+    'loop max ms': +(histogram.max / 1e6).toFixed(1),
+    'libuv p50 ms': +percentile(sortedProbes, 0.5).toFixed(1),
+    'libuv p99 ms': +percentile(sortedProbes, 0.99).toFixed(1),
+  };
+}
+
+async function main() {
+  const hash = bcrypt.hashSync('correct horse battery staple', ROUNDS);
+  const password = 'correct horse battery staple';
+  const pool = new PasswordPool({ maxQueue: Math.max(LOGINS, 256) });
+
+  console.log(`[Bench] ${LOGINS} логинов, параллельно ${CONCURRENCY}, cost=${ROUNDS}, ` +
+    `UV_THREADPOOL_SIZE=${process.env.UV_THREADPOOL_SIZE || 4}, пул=${pool.size}`);
+
+  // Прогрев: запуск потоков пула не должен попадать в замер
+  await Promise.all(Array.from({ length: pool.size }, () => pool.compare(password, hash)));
+
+  const results = [];
+  results.push(await runMode('sync', async () => bcrypt.compareSync(password, hash)));
+  results.push(await runMode('inline', () => bcrypt.compare(password, hash)));
+  results.push(await runMode('pool', () => pool.compare(password, hash)));
+
+  console.table(results);
+  console.log('[Bench] Метрики пула:', pool.getMetrics());
+  await pool.close();
+}
+
+main().catch((error) => {
+  console.error('[Bench] ❌', error);
+  process.exit(1);
+});
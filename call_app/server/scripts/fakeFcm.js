@@ -0,0 +1,84 @@
+// scripts/fakeFcm.js - v8.8
+// Локальный фейковый FCM для проверки очереди push без Firebase.
+//
+//   npm run fake:fcm
+//   FCM_FAKE_URL=http://localhost:4010 npm start
+//
+// Поведение по префиксу токена:
+//   unregistered… → messaging/registration-token-not-registered (токен чистится)
+//   invalid…      → messaging/invalid-registration-token
+//   flaky…        → messaging/server-unavailable с вероятностью FAKE_FCM_FAILURE_RATE
+// Задержка ответа — FAKE_FCM_LATENCY_MS. GET /stats — принятые push по типам.
+
+const http = require('http');
+
+const PORT = parseInt(process.env.FAKE_FCM_PORT) || 4010;
+const LATENCY_MS = parseInt(process.env.FAKE_FCM_LATENCY_MS) || 50;
+const FAILURE_RATE = parseFloat(process.env.FAKE_FCM_FAILURE_RATE || '0.3');
+
+const stats = { requests: 0, delivered: 0, failed: 0, byType: {} };
+let nextId = 1;
+
+function deliver(message) {
+  const token = (message && message.token) || '';
+  if (token.startsWith('unregistered')) {
+    return { success: false, error: { code: 'messaging/registration-token-not-registered', message: 'Requested entity was not found.' } };
+  }
+  if (token.startsWith('invalid')) {
+    return { success: false, error: { code: 'messaging/invalid-registration-token', message: 'Invalid registration token' } };
+  }
+  if (token.startsWith('flaky') && Math.random() < FAILURE_RATE) {
+    return { success: false, error: { code: 'messaging/server-unavailable', message: 'Service unavailable' } };
+  }
+
+  const type = (message.data && message.data.type) || 'unknown';
+  stats.byType[type] = (stats.byType[type] || 0) + 1;
+  return { success: true, name: `projects/fake/messages/${nextId++}` };
+}
+
+function count(result) {
+  if (result.success) stats.delivered++;
+  else stats.failed++;
+  return result;
+}
+
+function reply(res, status, body) {
+  res.writeHead(status, { 'Content-Type': 'application/json' });
+  res.end(JSON.stringify(body));
+}
+
+const server = http.createServer((req, res) => {
+  if (req.method === 'GET' && req.url === '/stats') {
+    return reply(res, 200, stats);
+  }
+
+  let raw = '';
+  req.on('data', (chunk) => { raw += chunk; });
+  req.on('end', () => {
+    stats.requests++;
+    let body;
+    try {
+      body = JSON.parse(raw || '{}');
+    } catch (e) {
+      return reply(res, 400, { error: { code: 'messaging/invalid-argument', message: 'bad json' } });
+    }
+
+    setTimeout(() => {
+      if (req.url === '/send') {
+        const result = count(deliver(body.message));
+        return result.success
+          ? reply(res, 200, { name: result.name })
+          : reply(res, result.error.code === 'messaging/server-unavailable' ? 503 : 404, { error: result.error });
+      }
+      if (req.url === '/sendEach') {
+        const responses = (body.messages || []).map((message) => count(deliver(message)));
+        return reply(res, 200, { responses });
+      }
+      reply(res, 404, { error: { code: 'messaging/unknown-error', message: 'not found' } });
+    }, LATENCY_MS);
+  });
+});
+
+server.listen(PORT, () => {
+  console.log(`[FakeFCM] ✅ Слушает http://localhost:${PORT} (задержка ${LATENCY_MS} мс, сбои flaky ${FAILURE_RATE * 100}%)`);
+});
@@ -6,6 +6,8 @@
 // - [FIX] Admin session expiry (1 час TTL)
 // - [NEW] /webrtc-config endpoint с поддержкой TURN серверов (Signal-inspired HMAC credentials)
 // - [SECURITY] Hardened token generation
+// v8.7: состояние маршрутизации — в state/ (память / IPC кластера / Redis),
+//       многоядерный режим — npm run start:cluster (cluster.js)
 require('dotenv').config();
 const crypto = require('crypto');
 const express = require('express');
@@ -20,8 +22,11 @@ const io = require('socket.io')(server, {
   // [FIX v8.1] Reduced from 60000/25000 → detects dead sockets in ~30s instead of ~85s.
   // Android freezes JS thread in background → client can't pong → server must detect stale
   // sockets quickly so FCM fallback activates before incoming calls are missed.
+  // [v8.3] pingInterval 10000 → 25000: NAT keepalive на коротких таймаутах теперь
+  // держит адаптивный клиентский 'ping' (KeepaliveController). Детект мёртвого
+  // сокета ~45с, вдвое меньше engine-пингов на ~20k простаивающих сокетов.
   pingTimeout: parseInt(process.env.WS_PING_TIMEOUT) || 20000,
-  pingInterval: parseInt(process.env.WS_PING_INTERVAL) || 10000,
+  pingInterval: parseInt(process.env.WS_PING_INTERVAL) || 25000,
 });
 
 const cors = require('cors');
@@ -67,17 +72,14 @@ if (!fs.existsSync(mediaDir)) {
   fs.mkdirSync(mediaDir, { recursive: true });
 }
 
-const mediaStorage = multer.diskStorage({
-  destination: (req, file, cb) => cb(null, mediaDir),
-  filename: (req, file, cb) => {
-    const ext = path.extname(file.originalname) || '.jpg';
-    const uniqueName = `${Date.now()}_${Math.random().toString(36).substring(2, 10)}${ext}`;
-    cb(null, uniqueName);
-  }
-});
+// [v8.12] Хранение по sha256 содержимого (дубли не пишутся) + очередь превью
+const { MediaStore } = require('./services/mediaStore');
+const { ThumbnailQueue } = require('./services/thumbnailQueue');
+const mediaStore = new MediaStore(mediaDir);
+const thumbnailQueue = new ThumbnailQueue(mediaStore);
 
 const mediaUpload = multer({
-  storage: mediaStorage,
+  storage: mediaStore,
   limits: { fileSize: 50 * 1024 * 1024 }, // 50 MB
   fileFilter: (req, file, cb) => {
     const allowedTypes = /jpeg|jpg|png|gif|webp|mp4|mov|avi|webm|3gp/;
@@ -93,13 +95,58 @@ const mediaUpload = multer({
 // Метаданные текущего APK (хранятся в JSON файле)
 const apkMetaPath = path.join(uploadsDir, 'apk-meta.json');
 
+// [v8.13] Отдача с ETag/Range и лимитом одновременных загрузок
+const { DownloadLimiter, sendFile, hashFile } = require('./services/downloadServer');
+const apkDownloads = new DownloadLimiter('apk', {
+  maxConcurrent: parseInt(process.env.APK_MAX_CONCURRENT_DOWNLOADS) || 32,
+});
+const mediaDownloads = new DownloadLimiter('media', {
+  maxConcurrent: parseInt(process.env.MEDIA_MAX_CONCURRENT_DOWNLOADS) || 256,
+});
+
+// [v8.13] Метаданные APK в памяти: читаются при старте и после upload/delete
+// (в кластере — по apk_meta_changed), а не на каждый запрос скачивания
+let apkMetaCache = null; // { meta, file: { path, size, mtime, etag, contentType } }
+
 function getApkMeta() {
+  return apkMetaCache ? apkMetaCache.meta : null;
+}
+
+async function loadApkMeta() {
+  let meta = null;
+  try {
+    meta = JSON.parse(await fs.promises.readFile(apkMetaPath, 'utf8'));
+  } catch (e) { /* файла нет — APK не загружен */ }
+
+  if (!meta) {
+    apkMetaCache = null;
+    return null;
+  }
+
+  const filePath = path.join(uploadsDir, meta.filename);
   try {
-    if (fs.existsSync(apkMetaPath)) {
-      return JSON.parse(fs.readFileSync(apkMetaPath, 'utf8'));
+    const stat = await fs.promises.stat(filePath);
+    // sha256 считается один раз (при загрузке или для APK, загруженного до v8.13)
+    if (!meta.sha256 || meta.size !== stat.size) {
+      meta.sha256 = await hashFile(filePath);
+      meta.size = stat.size;
+      saveApkMeta(meta);
     }
-  } catch (e) { /* ignore */ }
-  return null;
+    apkMetaCache = {
+      meta,
+      file: {
+        path: filePath,
+        size: stat.size,
+        mtime: stat.mtime,
+        etag: `"${meta.sha256}"`,
+        contentType: 'application/vnd.android.package-archive',
+      },
+    };
+  } catch (error) {
+    console.error('[APK] ❌ Файл из apk-meta.json недоступен:', error.message);
+    apkMetaCache = null;
+  }
+  return getApkMeta();
 }
 
 function saveApkMeta(meta) {
@@ -119,6 +166,15 @@ const firebaseService = require('./services/firebase');
 // Модели
 const User = require('./models/User');
 const Message = require('./models/Message');
+const Conversation = require('./models/Conversation');
+
+// [v8.7] Общий слой состояния + адаптер событий между воркерами
+const { createStateStore, isClusterWorker } = require('./state');
+const { setupSocketAdapter } = require('./services/clusterAdapter');
+const { setupStickyWorker } = require('./services/stickyRouter');
+
+// [v8.10] bcrypt вне общего libuv threadpool
+const passwordPool = require('./services/passwordPool');
 
 // Middleware
 app.use(helmet({
@@ -129,9 +185,21 @@ app.use(compression());
 app.use(express.json());
 app.use(express.urlencoded({ extended: true }));
 
+// [v8.13] Файлы под хэш-именем (и превью): сильный ETag = хэш, Range, лимит потоков.
+// Остальное (загруженное до v8.12) — express.static ниже.
+app.get('/media/*', async (req, res, next) => {
+  const file = await mediaStore.describe(req.path);
+  if (!file) return next();
+  sendFile(req, res, file, {
+    limiter: mediaDownloads,
+    cacheControl: 'public, max-age=31536000, immutable, no-transform',
+  });
+});
+
 // [v8.2] Статическая раздача медиафайлов
+// [v8.12] Имена по хэшу содержимого не переиспользуются — кэш на год
 app.use('/media', express.static(mediaDir, {
-  maxAge: '30d',
+  maxAge: '365d',
   immutable: true,
 }));
 
@@ -141,15 +209,14 @@ app.use((req, res, next) => {
   next();
 });
 
-// Хранилище активных сессий (в памяти)
-const activeSessions = new Map(); // socketId -> { username, token, isAdmin }
-const onlineUsers = new Map(); // username -> socketId
-const adminSessions = new Map(); // sessionId -> { authenticated: true, username, timestamp }
-
 // ═══════════════════════════════════════════════════════════════════════════════
-// НОВОЕ v7.2: Отслеживание активных звонков
+// [v8.7] Состояние маршрутизации: сессии сокетов (socketId -> { username, token, isAdmin }),
+// онлайн (username -> socketId), звонки (callId -> { from, to, isVideo, timestamp, status }),
+// админ-сессии. Раньше — Map в этом процессе; теперь общий слой для воркеров кластера.
 // ═══════════════════════════════════════════════════════════════════════════════
-const activeCalls = new Map(); // callId -> { from, to, isVideo, timestamp, status, timeoutId }
+const clusterWorker = isClusterWorker();
+const state = createStateStore();
+const ADMIN_SESSION_TTL_MS = 3600000; // 1 час
 
 // [FIX v8.1] Increased from 30s → 45s to allow time for FCM delivery + app startup + socket reconnect.
 // The old 30s was too tight: FCM latency alone can be 5-15s, plus app init + auth.
@@ -178,28 +245,41 @@ console.log('╚═════════════════════
  *   TURN_USERNAME  — статический логин (альтернатива HMAC)
  *   TURN_PASSWORD  — статический пароль (альтернатива HMAC)
  */
-function generateTurnCredentials(username = 'securecall') {
+// [v8.14] Срок жизни выдаваемой ICE-конфигурации (для HMAC — и самих TURN credentials)
+const ICE_CONFIG_TTL_SEC = parseInt(process.env.ICE_CONFIG_TTL_SEC) || 86400; // 24 часа
+
+function generateTurnCredentials(username = 'securecall', ttlSeconds = ICE_CONFIG_TTL_SEC) {
   const secret = process.env.TURN_SECRET;
   if (!secret) return null;
-  const ttlSeconds = 86400; // 24 часа
   const timestamp = Math.floor(Date.now() / 1000) + ttlSeconds;
   const turnUsername = `${timestamp}:${username}`;
   const hmac = crypto.createHmac('sha1', secret);
   hmac.update(turnUsername);
   const credential = hmac.digest('base64');
-  return { username: turnUsername, credential };
+  return { username: turnUsername, credential, expiresAt: timestamp * 1000 };
 }
 
 // =============================================================================
 // WEBRTC CONFIG ENDPOINT (Signal-inspired: server delivers ICE config)
 // =============================================================================
 
-app.get('/webrtc-config', (req, res) => {
+// [v8.14] Конфигурация одна на всех (username 'securecall') — HMAC считается
+// раз в половину TTL, а не на каждый запрос. Клиент получает ttl/expiresAt и
+// хранит конфиг (нативно — с push входящего звонка) до истечения.
+let iceConfigCache = null; // { iceServers, expiresAt, renewAt }
+
+function buildIceConfig() {
+  const now = Date.now();
+  if (iceConfigCache && now < iceConfigCache.renewAt) {
+    return iceConfigCache;
+  }
+
   const iceServers = [
     { urls: 'stun:stun.l.google.com:19302' },
     { urls: 'stun:stun1.l.google.com:19302' },
     { urls: 'stun:stun2.l.google.com:19302' },
   ];
+  let expiresAt = now + ICE_CONFIG_TTL_SEC * 1000;
 
   const turnUrl = process.env.TURN_URL;
   if (turnUrl) {
@@ -212,6 +292,7 @@ app.get('/webrtc-config', (req, res) => {
           username: creds.username,
           credential: creds.credential,
         });
+        expiresAt = creds.expiresAt;
       }
     } else if (process.env.TURN_USERNAME) {
       // Static credentials
@@ -223,7 +304,17 @@ app.get('/webrtc-config', (req, res) => {
     }
   }
 
-  res.json({ iceServers });
+  iceConfigCache = { iceServers, expiresAt, renewAt: now + (expiresAt - now) / 2 };
+  return iceConfigCache;
+}
+
+app.get('/webrtc-config', (req, res) => {
+  const { iceServers, expiresAt } = buildIceConfig();
+  const ttl = Math.max(0, Math.floor((expiresAt - Date.now()) / 1000));
+
+  // private: в ответе TURN credentials — общие кэши их хранить не должны
+  res.set('Cache-Control', `private, max-age=${ttl}`);
+  res.json({ iceServers, ttl, expiresAt });
 });
 
 app.get('/health', async (req, res) => {
@@ -232,9 +323,15 @@ app.get('/health', async (req, res) => {
     status: 'ok',
     version: '7.2.1-FULL',
     timestamp: new Date().toISOString(),
-    online: onlineUsers.size,
-    activeCalls: activeCalls.size,
+    online: await state.countOnlineUsers(),
+    activeCalls: await state.countCalls(),
+    worker: clusterWorker ? process.pid : null,
     firebase: firebaseService.isReady(),
+    push: firebaseService.getStats().queue,
+    userCache: User.cacheStats(),
+    passwordPool: passwordPool.getMetrics(),
+    media: { store: mediaStore.getStats(), thumbnails: thumbnailQueue.getStats() },
+    downloads: { apk: apkDownloads.getStats(), media: mediaDownloads.getStats() },
     database: stats,
   });
 });
@@ -243,9 +340,9 @@ app.get('/stats', async (req, res) => {
   const stats = await getDatabaseStats();
   res.json({
     ...stats,
-    activeSessions: activeSessions.size,
-    onlineUsers: Array.from(onlineUsers.keys()),
-    activeCalls: activeCalls.size,
+    activeSessions: await state.countSessions(),
+    onlineUsers: await state.listOnlineUsers(),
+    activeCalls: await state.countCalls(),
   });
 });
 
@@ -256,6 +353,7 @@ app.get('/stats', async (req, res) => {
 app.get('/', async (req, res) => {
   const stats = await getDatabaseStats();
   const totalUsers = await User.countDocuments();
+  const onlineCount = await state.countOnlineUsers();
   
   res.send(`
     <!DOCTYPE html>
@@ -621,7 +719,7 @@ app.get('/', async (req, res) => {
               
               <div class="stat-item">
                 <div class="stat-icon">👥</div>
-                <div class="stat-value">${onlineUsers.size}</div>
+                <div class="stat-value">${onlineCount}</div>
                 <div class="stat-label">Онлайн</div>
               </div>
               
@@ -1443,14 +1541,10 @@ app.get('/admin', (req, res) => {
 // =============================================================================
 
 // Проверка и валидация admin session (с TTL)
-function isValidAdminSession(sessionId) {
-  if (!adminSessions.has(sessionId)) return false;
-  const session = adminSessions.get(sessionId);
-  if (Date.now() > session.expiresAt) {
-    adminSessions.delete(sessionId);
-    return false;
-  }
-  return true;
+async function isValidAdminSession(sessionId) {
+  if (!sessionId) return false;
+  // Истёкшие сессии стор отбрасывает сам (expiresAt / PX в Redis)
+  return !!(await state.getAdminSession(sessionId));
 }
 
 // Вход в админ панель
@@ -1464,9 +1558,14 @@ app.post('/upload/media', mediaUpload.single('media'), (req, res) => {
     }
 
     const isVideo = req.file.mimetype.startsWith('video/');
-    const mediaUrl = `/media/${req.file.filename}`;
+    const { hash, deduped } = req.file;
+    const mediaUrl = mediaStore.mediaUrlFor(req.file.filename);
+
+    console.log(`[Upload] Медиафайл ${deduped ? 'уже есть' : 'загружен'}: ${req.file.filename} (${(req.file.size / 1024).toFixed(1)} KB)`);
 
-    console.log(`[Upload] Медиафайл загружен: ${req.file.filename} (${(req.file.size / 1024).toFixed(1)} KB)`);
+    // [v8.12] Превью — в фоне; send_message подставит thumbnailUrl, если оно готово,
+    // иначе backfillThumbnail допишет его в уже отправленные сообщения
+    const thumbnailReady = thumbnailQueue.enqueue({ hash, sourcePath: req.file.path, isVideo });
 
     res.json({
       success: true,
@@ -1474,6 +1573,16 @@ app.post('/upload/media', mediaUpload.single('media'), (req, res) => {
       mediaType: isVideo ? 'video' : 'image',
       fileName: req.file.originalname,
       fileSize: req.file.size,
+      hash,
+      deduped,
+    });
+
+    thumbnailReady.then(async (ready) => {
+      if (!ready) return;
+      console.log(`[Upload] 🖼️ Превью готово: ${mediaStore.thumbnailUrlFor(hash)}`);
+      if (socketHandlers) await socketHandlers.backfillThumbnail(mediaUrl);
+    }).catch((error) => {
+      console.error('[Upload] ❌ Досылка превью:', error.message);
     });
   } catch (error) {
     console.error('[Upload] Ошибка:', error);
@@ -1485,7 +1594,7 @@ app.post('/upload/media', mediaUpload.single('media'), (req, res) => {
 // ADMIN API
 // ═══════════════════════════════════════════════════════════════════════════════
 
-app.post('/admin/login', (req, res) => {
+app.post('/admin/login', async (req, res) => {
   const { password } = req.body;
 
   const adminPassword = process.env.ADMIN_PASSWORD || 'Rtex';
@@ -1498,12 +1607,11 @@ app.post('/admin/login', (req, res) => {
 
   // Создаем сессию с TTL 1 час
   const sessionId = generateToken();
-  adminSessions.set(sessionId, {
+  await state.setAdminSession(sessionId, {
     authenticated: true,
     username: 'admin',
     timestamp: Date.now(),
-    expiresAt: Date.now() + 3600000, // 1 час
-  });
+  }, ADMIN_SESSION_TTL_MS);
   
   console.log('[Admin] ✅ Успешный вход в админ панель');
   
@@ -1517,7 +1625,7 @@ app.post('/admin/login', (req, res) => {
 app.get('/admin/users', async (req, res) => {
   const sessionId = req.headers['x-admin-session'];
 
-  if (!isValidAdminSession(sessionId)) {
+  if (!(await isValidAdminSession(sessionId))) {
     return res.json({ success: false, message: 'Не авторизован' });
   }
   
@@ -1541,7 +1649,7 @@ app.get('/admin/users', async (req, res) => {
 app.post('/admin/user/delete', async (req, res) => {
   const sessionId = req.headers['x-admin-session'];
 
-  if (!isValidAdminSession(sessionId)) {
+  if (!(await isValidAdminSession(sessionId))) {
     return res.json({ success: false, message: 'Не авторизован' });
   }
   
@@ -1550,24 +1658,24 @@ app.post('/admin/user/delete', async (req, res) => {
   try {
     // Удалить пользователя
     await User.deleteOne({ username });
+    User.invalidateCache(username);
     
     // Удалить все его сообщения
     await Message.deleteMany({
       $or: [{ from: username }, { to: username }]
     });
+    await Conversation.deleteForUser(username);
     
     // Отключить, если онлайн
-    const socketId = onlineUsers.get(username);
+    const socketId = await state.getUserSocket(username);
     if (socketId) {
-      const socket = io.sockets.sockets.get(socketId);
-      if (socket) {
-        socket.emit('force_disconnect', {
-          message: 'Ваш аккаунт был удален администратором'
-        });
-        socket.disconnect();
-      }
-      onlineUsers.delete(username);
-      activeSessions.delete(socketId);
+      // [v8.7] Через адаптер — сокет может быть на другом воркере
+      io.to(socketId).emit('force_disconnect', {
+        message: 'Ваш аккаунт был удален администратором'
+      });
+      io.in(socketId).disconnectSockets();
+      await state.deleteUserSocket(username, socketId);
+      await state.deleteSession(socketId);
     }
     
     // Уведомить всех
@@ -1586,7 +1694,7 @@ app.post('/admin/user/delete', async (req, res) => {
 app.post('/admin/user/ban', async (req, res) => {
   const sessionId = req.headers['x-admin-session'];
 
-  if (!isValidAdminSession(sessionId)) {
+  if (!(await isValidAdminSession(sessionId))) {
     return res.json({ success: false, message: 'Не авторизован' });
   }
   
@@ -1596,17 +1704,15 @@ app.post('/admin/user/ban', async (req, res) => {
     await User.banUser(username, reason, 'admin');
     
     // Отключить, если онлайн
-    const socketId = onlineUsers.get(username);
+    const socketId = await state.getUserSocket(username);
     if (socketId) {
-      const socket = io.sockets.sockets.get(socketId);
-      if (socket) {
-        socket.emit('force_disconnect', {
-          message: `Вы заблокированы. Причина: ${reason}`
-        });
-        socket.disconnect();
-      }
-      onlineUsers.delete(username);
-      activeSessions.delete(socketId);
+      // [v8.7] Через адаптер — сокет может быть на другом воркере
+      io.to(socketId).emit('force_disconnect', {
+        message: `Вы заблокированы. Причина: ${reason}`
+      });
+      io.in(socketId).disconnectSockets();
+      await state.deleteUserSocket(username, socketId);
+      await state.deleteSession(socketId);
     }
     
     // Уведомить всех
@@ -1625,7 +1731,7 @@ app.post('/admin/user/ban', async (req, res) => {
 app.post('/admin/user/unban', async (req, res) => {
   const sessionId = req.headers['x-admin-session'];
 
-  if (!isValidAdminSession(sessionId)) {
+  if (!(await isValidAdminSession(sessionId))) {
     return res.json({ success: false, message: 'Не авторизован' });
   }
   
@@ -1651,14 +1757,14 @@ app.post('/admin/user/unban', async (req, res) => {
 // =============================================================================
 
 // Загрузка APK (только для авторизованного админа)
-app.post('/admin/apk/upload', (req, res) => {
+app.post('/admin/apk/upload', async (req, res) => {
   const sessionId = req.headers['x-admin-session'];
 
-  if (!isValidAdminSession(sessionId)) {
+  if (!(await isValidAdminSession(sessionId))) {
     return res.status(401).json({ success: false, message: 'Не авторизован' });
   }
 
-  apkUpload.single('apk')(req, res, (err) => {
+  apkUpload.single('apk')(req, res, async (err) => {
     if (err) {
       if (err instanceof multer.MulterError) {
         if (err.code === 'LIMIT_FILE_SIZE') {
@@ -1673,19 +1779,27 @@ app.post('/admin/apk/upload', (req, res) => {
       return res.json({ success: false, message: 'Файл не выбран' });
     }
 
-    const version = req.body.version || '';
-    const meta = {
-      filename: req.file.filename,
-      originalName: req.file.originalname,
-      size: req.file.size,
-      version: version,
-      uploadedAt: new Date().toISOString(),
-    };
-    saveApkMeta(meta);
-
-    console.log(`[Admin] 📦 APK загружен: ${req.file.originalname} (${(req.file.size / 1024 / 1024).toFixed(1)} МБ)`);
-
-    res.json({ success: true, meta });
+    try {
+      const version = req.body.version || '';
+      const meta = {
+        filename: req.file.filename,
+        originalName: req.file.originalname,
+        size: req.file.size,
+        version: version,
+        uploadedAt: new Date().toISOString(),
+        sha256: await hashFile(req.file.path),
+      };
+      saveApkMeta(meta);
+      await loadApkMeta();
+      notifyApkMetaChanged();
+
+      console.log(`[Admin] 📦 APK загружен: ${req.file.originalname} (${(req.file.size / 1024 / 1024).toFixed(1)} МБ)`);
+
+      res.json({ success: true, meta });
+    } catch (error) {
+      console.error('[Admin] ❌ Ошибка сохранения APK:', error);
+      res.json({ success: false, message: 'Ошибка сохранения APK' });
+    }
   });
 });
 
@@ -1699,10 +1813,10 @@ app.get('/admin/apk/info', (req, res) => {
 });
 
 // Удалить текущий APK (только админ)
-app.post('/admin/apk/delete', (req, res) => {
+app.post('/admin/apk/delete', async (req, res) => {
   const sessionId = req.headers['x-admin-session'];
 
-  if (!isValidAdminSession(sessionId)) {
+  if (!(await isValidAdminSession(sessionId))) {
     return res.status(401).json({ success: false, message: 'Не авторизован' });
   }
 
@@ -1716,6 +1830,8 @@ app.post('/admin/apk/delete', (req, res) => {
     fs.unlinkSync(filePath);
   }
   deleteApkMeta();
+  apkMetaCache = null;
+  notifyApkMetaChanged();
 
   console.log('[Admin] 🗑️ APK удален');
 
@@ -1723,34 +1839,47 @@ app.post('/admin/apk/delete', (req, res) => {
 });
 
 // Скачивание APK (публичный доступ)
+// [v8.13] Метаданные из памяти, ETag + If-None-Match, докачка по Range/If-Range
 app.get('/download/app.apk', (req, res) => {
-  const meta = getApkMeta();
-  if (!meta) {
-    return res.status(404).send('APK файл не найден');
-  }
-
-  const filePath = path.join(uploadsDir, meta.filename);
-  if (!fs.existsSync(filePath)) {
+  if (!apkMetaCache) {
     return res.status(404).send('APK файл не найден');
   }
 
-  res.download(filePath, meta.originalName);
+  sendFile(req, res, apkMetaCache.file, {
+    limiter: apkDownloads,
+    downloadName: apkMetaCache.meta.originalName,
+  });
 });
 
+// [v8.13] Остальные воркеры перечитывают apk-meta.json после upload/delete
+let apkMetaBroadcast = false;
+
+function notifyApkMetaChanged() {
+  if (apkMetaBroadcast) {
+    io.serverSideEmit('apk_meta_changed');
+  }
+}
+
 // =============================================================================
 // SOCKET.IO EVENTS (extracted to socketHandlers.js for maintainability)
 // =============================================================================
 
 const { initSocketHandlers } = require('./socketHandlers');
-initSocketHandlers(io, {
-  activeSessions,
-  onlineUsers,
-  activeCalls,
-  CALL_TIMEOUT_MS,
-  User,
-  Message,
-  firebaseService,
-});
+let socketHandlers = null;
+
+function attachSocketHandlers(clustered) {
+  socketHandlers = initSocketHandlers(io, {
+    state,
+    clustered,
+    CALL_TIMEOUT_MS,
+    User,
+    Message,
+    Conversation,
+    firebaseService,
+    mediaStore,
+    thumbnailQueue,
+  });
+}
 
 // generateToken for admin session creation (same algorithm as in socketHandlers.js)
 function generateToken() {
@@ -1779,11 +1908,33 @@ function generateToken() {
 
 async function startServer() {
   try {
+    await state.connect();
     await connectDatabase();
+    // [v8.8] Мёртвые токены из ответов FCM — сразу из БД, без лишних push
+    firebaseService.setInvalidTokenHandler((fcmToken) => User.clearFCMToken(fcmToken));
     await firebaseService.initialize();
-    
+
+    await loadApkMeta();
+
+    const clustered = await setupSocketAdapter(io, { clusterWorker });
+    attachSocketHandlers(clustered);
+
+    if (clustered) {
+      apkMetaBroadcast = true;
+      io.on('apk_meta_changed', () => {
+        loadApkMeta().catch((error) => console.error('[APK] ❌ Перечитывание метаданных:', error.message));
+      });
+    }
+
     const PORT = process.env.PORT || 3000;
-    
+
+    // [v8.7] Воркер кластера порт не слушает — соединения передаёт primary
+    if (clusterWorker) {
+      setupStickyWorker(server, io);
+      console.log(`[Cluster] ✅ Воркер ${process.pid} готов (состояние: ${state.kind})`);
+      return;
+    }
+
     server.listen(PORT, () => {
       console.log('╔═══════════════════════════════════╗');
       console.log('║  🚀 SecureCall Server v7.2.1 FULL║');
@@ -1791,6 +1942,7 @@ async function startServer() {
       console.log(`║  Порт: ${PORT}                     ║`);
       console.log(`║  Firebase: ${firebaseService.isReady() ? '✅ Готов' : '❌ Не готов'}       ║`);
       console.log(`║  Call timeout: ${CALL_TIMEOUT_MS/1000}s           ║`);
+      console.log(`║  Состояние: ${state.kind}              ║`);
       console.log(`║  Админ пароль: Rtex           ║`);
       console.log('╚═══════════════════════════════════╝');
     });
@@ -1802,43 +1954,35 @@ async function startServer() {
 
 startServer();
 
-// Graceful Shutdown
-process.on('SIGTERM', async () => {
-  console.log('🛑 SIGTERM - завершение работы...');
-  
-  // Отменить все таймауты звонков
-  for (const [callId, call] of activeCalls.entries()) {
-    if (call.timeoutId) {
-      clearTimeout(call.timeoutId);
-    }
-  }
-  
-  for (const username of onlineUsers.keys()) {
-    await User.setOnlineStatus(username, false);
-  }
-  
-  server.close(() => {
-    console.log('✅ Сервер остановлен');
-    process.exit(0);
-  });
+// [v8.7] Обработчики сокетов асинхронные (общий стор) — отказ стора/БД
+// в одном событии не должен ронять процесс со всеми соединениями
+process.on('unhandledRejection', (reason) => {
+  console.error('[Server] ❌ Необработанная ошибка промиса:', reason);
 });
 
-process.on('SIGINT', async () => {
-  console.log('🛑 SIGINT - завершение работы...');
-  
-  // Отменить все таймауты звонков
-  for (const [callId, call] of activeCalls.entries()) {
-    if (call.timeoutId) {
-      clearTimeout(call.timeoutId);
+// Graceful Shutdown
+let shuttingDown = false;
+
+async function gracefulShutdown(signal) {
+  if (shuttingDown) return;
+  shuttingDown = true;
+  console.log(`🛑 ${signal} - завершение работы...`);
+
+  // Таймауты звонков и сессии сокетов этого процесса
+  try {
+    if (socketHandlers) {
+      await socketHandlers.shutdown();
     }
+    await state.close();
+  } catch (error) {
+    console.error('❌ Ошибка при завершении:', error.message);
   }
-  
-  for (const username of onlineUsers.keys()) {
-    await User.setOnlineStatus(username, false);
-  }
-  
+
   server.close(() => {
     console.log('✅ Сервер остановлен');
     process.exit(0);
   });
-});
\ No newline at end of file
+}
+
+process.on('SIGTERM', () => gracefulShutdown('SIGTERM'));
+process.on('SIGINT', () => gracefulShutdown('SIGINT'));
@@ -0,0 +1,139 @@
+// services/clusterAdapter.js - v8.7 (Socket.IO events across cluster workers)
+
+/**
+ * ═══════════════════════════════════════════════════════════
+ * Cluster Adapter v8.7 - СОБЫТИЯ SOCKET.IO МЕЖДУ ВОРКЕРАМИ
+ * ═══════════════════════════════════════════════════════════
+ *
+ * io.to(socketId).emit / io.emit / fetchSockets / disconnectSockets /
+ * serverSideEmit доходят до сокетов на других воркерах.
+ *
+ * Основа — ClusterAdapterWithHeartbeat из socket.io-adapter (уже стоит
+ * вместе с socket.io), транспорт — IPC node:cluster через primary:
+ *   воркер → primary: process.send({ source, nsp, message })
+ *   primary → остальные воркеры (ответы — только запросившему по uid)
+ *
+ * Несколько машин: REDIS_URL + @socket.io/redis-adapter (setupSocketAdapter
+ * выберет его сам, если пакет установлен).
+ */
+
+const { ClusterAdapterWithHeartbeat } = require('socket.io-adapter');
+
+const ADAPTER_SOURCE = '_sc_adapter';
+
+class IpcClusterAdapter extends ClusterAdapterWithHeartbeat {
+  constructor(nsp, opts = {}) {
+    super(nsp, opts);
+
+    this.onIpcMessage = (packet) => {
+      if (!packet || packet.source !== ADAPTER_SOURCE || packet.nsp !== this.nsp.name) return;
+
+      if (packet.requesterUid) {
+        if (packet.requesterUid === this.uid) {
+          this.onResponse(packet.response);
+        }
+        return;
+      }
+      this.onMessage(packet.message);
+    };
+    process.on('message', this.onIpcMessage);
+
+    this.init();
+  }
+
+  doPublish(message) {
+    process.send({ source: ADAPTER_SOURCE, nsp: this.nsp.name, message });
+    // Смещения нужны только для connection state recovery — не используется
+    return Promise.resolve('');
+  }
+
+  doPublishResponse(requesterUid, response) {
+    process.send({ source: ADAPTER_SOURCE, nsp: this.nsp.name, requesterUid, response });
+    return Promise.resolve();
+  }
+
+  close() {
+    process.removeListener('message', this.onIpcMessage);
+    return super.close();
+  }
+}
+
+/**
+ * Фабрика для io.adapter(): socket.io создаёт адаптер через new на каждый namespace
+ */
+function createIpcAdapter(opts = {}) {
+  return function (nsp) {
+    return new IpcClusterAdapter(nsp, opts);
+  };
+}
+
+/**
+ * Primary: пересылка сообщений адаптера между воркерами
+ */
+function setupAdapterPrimary(cluster) {
+  const workerByUid = new Map(); // uid адаптера -> worker.id
+
+  cluster.on('message', (worker, packet) => {
+    if (!packet || packet.source !== ADAPTER_SOURCE) return;
+
+    if (packet.requesterUid) {
+      const target = cluster.workers[workerByUid.get(packet.requesterUid)];
+      if (target && target.isConnected()) {
+        target.send(packet);
+      }
+      return;
+    }
+
+    if (packet.message && packet.message.uid) {
+      workerByUid.set(packet.message.uid, worker.id);
+    }
+    for (const other of Object.values(cluster.workers)) {
+      if (other && other.id !== worker.id && other.isConnected()) {
+        other.send(packet);
+      }
+    }
+  });
+
+  cluster.on('exit', (worker) => {
+    for (const [uid, workerId] of workerByUid.entries()) {
+      if (workerId === worker.id) workerByUid.delete(uid);
+    }
+  });
+}
+
+/**
+ * Воркер: подключить адаптер. Возвращает true, если события идут между
+ * процессами (нужно socketHandlers для serverSideEmit).
+ */
+async function setupSocketAdapter(io, { clusterWorker = false } = {}) {
+  if (process.env.REDIS_URL) {
+    let redisAdapter;
+    let redis;
+    try {
+      redisAdapter = require('@socket.io/redis-adapter');
+      redis = require('redis');
+    } catch (error) {
+      redisAdapter = null;
+    }
+
+    if (redisAdapter) {
+      const pubClient = redis.createClient({ url: process.env.REDIS_URL });
+      const subClient = pubClient.duplicate();
+      await Promise.all([pubClient.connect(), subClient.connect()]);
+      io.adapter(redisAdapter.createAdapter(pubClient, subClient));
+      console.log('[Cluster] ✅ Socket.IO Redis adapter — события между машинами');
+      return true;
+    }
+    console.warn('[Cluster] ⚠️ REDIS_URL задан, но @socket.io/redis-adapter не установлен — события только внутри машины');
+  }
+
+  if (clusterWorker) {
+    io.adapter(createIpcAdapter());
+    console.log(`[Cluster] ✅ IPC adapter — воркер ${process.pid}`);
+    return true;
+  }
+
+  return false;
+}
+
+module.exports = { IpcClusterAdapter, createIpcAdapter, setupAdapterPrimary, setupSocketAdapter };
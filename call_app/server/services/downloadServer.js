@@ -0,0 +1,189 @@
+// services/downloadServer.js - v8.13 (conditional, range-aware file responses)
+
+/**
+ * ═══════════════════════════════════════════════════════════
+ * DownloadServer v8.13 - ОТДАЧА APK И МЕДИА С ДОКАЧКОЙ
+ * ═══════════════════════════════════════════════════════════
+ *
+ * В день релиза сотни клиентов одновременно тянут APK целиком, а
+ * оборванная загрузка начиналась с нуля.
+ *
+ * - Сильный ETag (sha256 содержимого) + If-None-Match → 304
+ * - Range: bytes=a-b / a- / -n → 206; If-Range (ETag или дата) —
+ *   докачка, только если файл не сменился, иначе 200 целиком.
+ *   Несколько диапазонов сразу — отдаём весь файл (RFC 9110 допускает)
+ * - Файл идёт в сокет через fs.createReadStream без буферизации в JS;
+ *   Cache-Control: no-transform — compression() такие ответы не трогает
+ * - DownloadLimiter: не больше maxConcurrent одновременных потоков,
+ *   сверх — 503 + Retry-After (клиент докачает с того же места)
+ */
+
+const crypto = require('crypto');
+const fs = require('fs');
+const path = require('path');
+const { pipeline } = require('stream');
+
+const STREAM_HIGH_WATER_MARK = 256 * 1024;
+
+class DownloadLimiter {
+  constructor(name, { maxConcurrent = 64, retryAfterSec = 5 } = {}) {
+    this.name = name;
+    this.maxConcurrent = maxConcurrent;
+    this.retryAfterSec = retryAfterSec;
+    this.active = 0;
+    this.counters = { served: 0, rejected: 0, partial: 0, notModified: 0, bytes: 0 };
+  }
+
+  /**
+   * Занять слот до закрытия ответа; false — лимит исчерпан
+   */
+  tryAcquire(res) {
+    if (this.active >= this.maxConcurrent) {
+      this.counters.rejected++;
+      return false;
+    }
+    this.active++;
+    res.once('close', () => { this.active--; });
+    return true;
+  }
+
+  getStats() {
+    return { active: this.active, maxConcurrent: this.maxConcurrent, ...this.counters };
+  }
+}
+
+/**
+ * Range → { start, end } | 'unsatisfiable' | null (заголовка нет / не разобран /
+ * несколько диапазонов — отдаём весь файл)
+ */
+function parseRange(header, size) {
+  if (!header) return null;
+  const match = /^bytes=(\d*)-(\d*)$/.exec(header.trim());
+  if (!match || (match[1] === '' && match[2] === '')) return null;
+
+  let start;
+  let end;
+  if (match[1] === '') {
+    // bytes=-n — последние n байт
+    const suffix = parseInt(match[2], 10);
+    if (suffix === 0) return 'unsatisfiable';
+    start = Math.max(0, size - suffix);
+    end = size - 1;
+  } else {
+    start = parseInt(match[1], 10);
+    end = match[2] === '' ? size - 1 : Math.min(parseInt(match[2], 10), size - 1);
+  }
+
+  if (start >= size || start > end) return 'unsatisfiable';
+  return { start, end };
+}
+
+function etagMatches(header, etag) {
+  if (!header) return false;
+  if (header.trim() === '*') return true;
+  return header.split(',').some((tag) => tag.trim().replace(/^W\//, '') === etag);
+}
+
+/**
+ * If-Range: докачка допустима, только если валидатор совпадает.
+ * Сравнение ETag — строгое (слабые не годятся), дата — с точностью до секунды.
+ */
+function rangeStillValid(req, file) {
+  const ifRange = req.headers['if-range'];
+  if (!ifRange) return true;
+  if (ifRange.startsWith('"') || ifRange.startsWith('W/')) {
+    return ifRange.trim() === file.etag;
+  }
+  const since = Date.parse(ifRange);
+  return !Number.isNaN(since) && Math.floor(file.mtime.getTime() / 1000) * 1000 <= since;
+}
+
+/**
+ * file: { path, size, mtime, etag, contentType? }
+ * options: { limiter, cacheControl, downloadName? }
+ */
+function sendFile(req, res, file, { limiter, cacheControl, downloadName } = {}) {
+  res.setHeader('ETag', file.etag);
+  res.setHeader('Last-Modified', file.mtime.toUTCString());
+  res.setHeader('Accept-Ranges', 'bytes');
+  res.setHeader('Cache-Control', cacheControl || 'public, max-age=0, must-revalidate, no-transform');
+
+  if (etagMatches(req.headers['if-none-match'], file.etag)) {
+    if (limiter) limiter.counters.notModified++;
+    return res.status(304).end();
+  }
+
+  let range = rangeStillValid(req, file) ? parseRange(req.headers.range, file.size) : null;
+  if (range === 'unsatisfiable') {
+    res.setHeader('Content-Range', `bytes */${file.size}`);
+    return res.status(416).end();
+  }
+  if (range && range.start === 0 && range.end === file.size - 1) {
+    range = null;
+  }
+
+  if (limiter && !limiter.tryAcquire(res)) {
+    res.setHeader('Retry-After', String(limiter.retryAfterSec));
+    return res.status(503).send('Сервер загружен, повторите позже');
+  }
+
+  if (downloadName) {
+    res.attachment(downloadName);
+  }
+  if (file.contentType) {
+    res.setHeader('Content-Type', file.contentType);
+  } else {
+    res.type(path.extname(file.path));
+  }
+
+  const start = range ? range.start : 0;
+  const end = range ? range.end : file.size - 1;
+  const length = file.size === 0 ? 0 : end - start + 1;
+
+  if (range) {
+    res.status(206);
+    res.setHeader('Content-Range', `bytes ${start}-${end}/${file.size}`);
+  }
+  res.setHeader('Content-Length', String(length));
+
+  if (req.method === 'HEAD' || length === 0) {
+    return res.end();
+  }
+
+  const stream = fs.createReadStream(file.path, { start, end, highWaterMark: STREAM_HIGH_WATER_MARK });
+
+  // Файл могли удалить между stat и открытием — пока заголовки не ушли, это 404
+  stream.once('error', (error) => {
+    if (!res.headersSent) {
+      res.removeHeader('Content-Range');
+      res.removeHeader('Content-Length');
+      res.removeHeader('Content-Disposition');
+      res.status(error.code === 'ENOENT' ? 404 : 500).type('text').send('Файл недоступен');
+    }
+  });
+
+  stream.once('open', () => {
+    pipeline(stream, res, (error) => {
+      if (!limiter) return;
+      if (error) return; // клиент оборвал загрузку — докачает по Range
+      limiter.counters.served++;
+      if (range) limiter.counters.partial++;
+      limiter.counters.bytes += length;
+    });
+  });
+}
+
+/**
+ * sha256 файла потоком (для сильного ETag APK)
+ */
+function hashFile(filePath) {
+  return new Promise((resolve, reject) => {
+    const hash = crypto.createHash('sha256');
+    fs.createReadStream(filePath, { highWaterMark: STREAM_HIGH_WATER_MARK })
+      .on('data', (chunk) => hash.update(chunk))
+      .on('error', reject)
+      .on('end', () => resolve(hash.digest('hex')));
+  });
+}
+
+module.exports = { DownloadLimiter, sendFile, parseRange, hashFile };
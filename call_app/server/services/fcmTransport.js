@@ -0,0 +1,65 @@
+// services/fcmTransport.js - v8.8 (FCM transports for PushQueue)
+
+/**
+ * Транспорт PushQueue: send(message) → messageId,
+ * sendEach(messages) → { responses: [{ success, messageId, error }] }
+ * (форма BatchResponse firebase-admin).
+ *
+ *   createAdminTransport — настоящий FCM через firebase-admin
+ *   createHttpTransport  — локальный фейковый FCM (FCM_FAKE_URL,
+ *                          npm run fake:fcm) для нагрузочных и ручных тестов
+ */
+
+function createAdminTransport(admin) {
+  return {
+    kind: 'firebase-admin',
+    send: (message) => admin.messaging().send(message),
+    sendEach: (messages) => admin.messaging().sendEach(messages),
+  };
+}
+
+function toError(payload, status) {
+  const error = new Error((payload && payload.message) || `HTTP ${status}`);
+  error.code = (payload && payload.code) || (status >= 500 ? 'messaging/server-unavailable' : 'messaging/unknown-error');
+  return error;
+}
+
+function createHttpTransport(baseUrl) {
+  const url = baseUrl.replace(/\/$/, '');
+
+  async function post(path, body) {
+    let response;
+    try {
+      response = await fetch(`${url}${path}`, {
+        method: 'POST',
+        headers: { 'Content-Type': 'application/json' },
+        body: JSON.stringify(body),
+      });
+    } catch (e) {
+      const error = new Error(e.message);
+      error.code = 'app/network-error';
+      throw error;
+    }
+
+    const payload = await response.json().catch(() => null);
+    if (!response.ok) {
+      throw toError(payload && payload.error, response.status);
+    }
+    return payload;
+  }
+
+  return {
+    kind: 'http',
+    send: async (message) => (await post('/send', { message })).name,
+    sendEach: async (messages) => {
+      const { responses } = await post('/sendEach', { messages });
+      return {
+        responses: responses.map((r) => (r.success
+          ? { success: true, messageId: r.name }
+          : { success: false, error: toError(r.error, 500) })),
+      };
+    },
+  };
+}
+
+module.exports = { createAdminTransport, createHttpTransport };
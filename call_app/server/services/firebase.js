@@ -1,6 +1,9 @@
 // services/firebase.js - v8.0 DATA-ONLY FIX
+// v8.8: отправка через PushQueue (приоритеты, пакеты, повторы, чистка токенов)
 const admin = require('firebase-admin');
 const path = require('path');
+const PushQueue = require('./pushQueue');
+const { createAdminTransport, createHttpTransport } = require('./fcmTransport');
 
 /**
  * ═══════════════════════════════════════════════════════════
@@ -23,12 +26,35 @@ const path = require('path');
  * background, killed). The native Java service creates proper notifications.
  *
  * Логирование, обработка ошибок и multicast — сохранены из v7.2.1.
+ *
+ * v8.8: send* больше не ходят в FCM сами — кладут сообщение в PushQueue
+ * и ждут результата. Обработчики сокетов, которым результат не нужен
+ * (сообщения, пропущенные, отмена), не ждут вовсе.
  */
 
 class FirebaseService {
   constructor() {
     this.initialized = false;
     this.enabled = process.env.ENABLE_PUSH_NOTIFICATIONS !== 'false';
+    this.queue = null;
+    this.invalidTokenHandler = null;
+  }
+
+  /**
+   * Токен, который FCM назвал мёртвым (server.js → User.clearFCMToken)
+   */
+  setInvalidTokenHandler(handler) {
+    this.invalidTokenHandler = handler;
+  }
+
+  startQueue(transport) {
+    this.queue = new PushQueue(transport, {
+      onInvalidToken: (token) => {
+        console.warn(`[Firebase] 🧹 Токен ${token.substring(0, 20)}... не зарегистрирован — очистка`);
+        return this.invalidTokenHandler ? this.invalidTokenHandler(token) : null;
+      },
+    });
+    console.log(`[Firebase] Очередь push: транспорт ${transport.kind}, concurrency ${this.queue.concurrency}, пакет до ${this.queue.batchSize}`);
   }
 
   /**
@@ -45,6 +71,14 @@ class FirebaseService {
       return false;
     }
 
+    // [v8.8] Локальный фейковый FCM (scripts/fakeFcm.js) — без ключа сервиса
+    if (process.env.FCM_FAKE_URL) {
+      this.startQueue(createHttpTransport(process.env.FCM_FAKE_URL));
+      this.initialized = true;
+      console.log(`[Firebase] ⚠️ Фейковый FCM: ${process.env.FCM_FAKE_URL}`);
+      return true;
+    }
+
     try {
       console.log('═══════════════════════════════════════');
       console.log('[Firebase] ИНИЦИАЛИЗАЦИЯ');
@@ -61,6 +95,7 @@ class FirebaseService {
         credential: admin.credential.cert(serviceAccount),
       });
 
+      this.startQueue(createAdminTransport(admin));
       this.initialized = true;
       
       console.log('[Firebase] ✅ Инициализирован успешно');
@@ -105,7 +140,7 @@ class FirebaseService {
    * background, killed). MyFirebaseMessagingService создаёт правильный
    * notification с full-screen intent и action buttons.
    */
-  async sendIncomingCallPush(fcmToken, fromUsername, isVideo, callId) {
+  async sendIncomingCallPush(fcmToken, fromUsername, isVideo, callId, ringTimeoutMs = 0) {
     if (!this.isReady()) {
       console.warn('[Firebase] Сервис не готов, push не отправлен');
       return null;
@@ -140,6 +175,8 @@ class FirebaseService {
           isVideo: isVideo.toString(),
           callId: callId || '',
           timestamp: Date.now().toString(),
+          // Сколько сервер будет звонить — столько живут уведомление и экран звонка
+          ringTimeoutMs: String(ringTimeoutMs || 0),
         },
  
         android: {
@@ -174,7 +211,7 @@ class FirebaseService {
         },
       };
  
-      const response = await admin.messaging().send(message);
+      const response = await this.queue.push('incoming_call', message);
  
       console.log('[Firebase] Push о звонке отправлен УСПЕШНО');
       console.log('[Firebase] Response ID:', response);
@@ -253,7 +290,7 @@ class FirebaseService {
         },
       };
 
-      const response = await admin.messaging().send(payload);
+      const response = await this.queue.push('message', payload);
       
       console.log('[Firebase] ✅ Push о сообщении отправлен');
       console.log('[Firebase] Response:', response);
@@ -327,7 +364,7 @@ class FirebaseService {
         },
       };
 
-      const response = await admin.messaging().send(message);
+      const response = await this.queue.push('missed_call', message);
       
       console.log('[Firebase] ✅ Уведомление о пропущенном отправлено');
       console.log('[Firebase] Response:', response);
@@ -382,7 +419,7 @@ class FirebaseService {
         },
       };
 
-      const response = await admin.messaging().send(message);
+      const response = await this.queue.push('call_cancelled', message);
       console.log('[Firebase] ✅ Уведомление об отмене отправлено');
       return response;
     } catch (error) {
@@ -414,7 +451,7 @@ class FirebaseService {
       console.error('═══════════════════════════════════════');
       console.error('[Firebase] ❌ НЕВАЛИДНЫЙ FCM ТОКЕН');
       console.error('[Firebase] Токен:', fcmToken ? fcmToken.substring(0, 20) + '...' : 'N/A');
-      console.error('[Firebase] ⚠️ Токен устарел — нужно удалить из БД при следующем логине');
+      console.error('[Firebase] ⚠️ Токен устарел — очередь уже удалила его из БД');
       console.error('═══════════════════════════════════════');
       // Return a special marker so callers can distinguish invalid-token from
       // transient errors and skip re-trying with the same token.
@@ -531,6 +568,7 @@ class FirebaseService {
       initialized: this.initialized,
       enabled: this.enabled,
       ready: this.isReady(),
+      queue: this.queue ? this.queue.getMetrics() : null,
     };
   }
 }
@@ -0,0 +1,14 @@
+// services/latencyStats.js - v8.10 (percentiles for pool/queue metrics)
+
+/**
+ * Сводка выборки задержек для getMetrics() (PasswordPool, PushQueue):
+ * p50 / p95 / max и размер выборки; пустая выборка — null
+ */
+function summarize(samples) {
+  if (samples.length === 0) return null;
+  const sorted = [...samples].sort((a, b) => a - b);
+  const at = (q) => sorted[Math.min(sorted.length - 1, Math.floor(q * sorted.length))];
+  return { p50: at(0.5), p95: at(0.95), max: sorted[sorted.length - 1], samples: sorted.length };
+}
+
+module.exports = { summarize };
@@ -0,0 +1,186 @@
+// services/mediaStore.js - v8.12 (content-addressed media storage for /upload/media)
+
+/**
+ * ═══════════════════════════════════════════════════════════
+ * MediaStore v8.12 - ХРАНЕНИЕ МЕДИА ПО ХЭШУ СОДЕРЖИМОГО
+ * ═══════════════════════════════════════════════════════════
+ *
+ * Раньше каждый upload — файл со случайным именем: мем, пересланный
+ * 200 раз, лежал на диске 200 раз.
+ *
+ * - Storage engine для multer: sha256 считается на лету, пока файл
+ *   пишется во временный каталог (без повторного чтения с диска)
+ * - Итоговое имя — media/<hh>/<sha256>.<ext>; такой файл уже есть —
+ *   временный удаляется, клиент получает существующий URL
+ * - Имя определяется содержимым и никогда не переиспользуется, поэтому
+ *   /media раздаётся как immutable с годовым кэшем
+ * - Превью: media/thumb/<hh>/<sha256>.jpg (services/thumbnailQueue.js)
+ *
+ * Файлы, загруженные до v8.12 (media/<timestamp>_<random>.<ext>),
+ * продолжают раздаваться по старым URL.
+ */
+
+const crypto = require('crypto');
+const fs = require('fs');
+const path = require('path');
+const { Transform, pipeline } = require('stream');
+
+const MIME_EXTENSIONS = {
+  'image/jpeg': '.jpg',
+  'image/jpg': '.jpg',
+  'image/png': '.png',
+  'image/gif': '.gif',
+  'image/webp': '.webp',
+  'video/mp4': '.mp4',
+  'video/quicktime': '.mov',
+  'video/webm': '.webm',
+  'video/3gpp': '.3gp',
+  'video/x-msvideo': '.avi',
+};
+
+// /media/<hh>/<sha256>.<ext> — всё, что загружено через MediaStore
+const CONTENT_URL_RE = /^\/media\/([0-9a-f]{2})\/([0-9a-f]{64})\.[a-z0-9]+$/;
+
+// [v8.13] То же плюс превью /media/thumb/<hh>/<sha256>.jpg — для отдачи с Range
+const SERVED_URL_RE = /^\/media\/(thumb\/)?([0-9a-f]{2})\/([0-9a-f]{64})\.[a-z0-9]+$/;
+
+/**
+ * Расширение по MIME (одинаковое содержимое с разными именами
+ * файлов у клиентов даёт один и тот же файл на диске)
+ */
+function extensionFor(file) {
+  const byMime = MIME_EXTENSIONS[(file.mimetype || '').toLowerCase()];
+  if (byMime) return byMime;
+  const ext = path.extname(file.originalname || '').toLowerCase();
+  return /^\.[a-z0-9]{1,5}$/.test(ext) ? ext : '.bin';
+}
+
+class MediaStore {
+  constructor(mediaDir) {
+    this.mediaDir = mediaDir;
+    this.tmpDir = path.join(path.dirname(mediaDir), 'media-tmp');
+    this.thumbDir = path.join(mediaDir, 'thumb');
+    fs.mkdirSync(this.tmpDir, { recursive: true });
+    fs.mkdirSync(this.thumbDir, { recursive: true });
+
+    this.stats = { stored: 0, deduped: 0, bytesStored: 0, bytesSaved: 0 };
+  }
+
+  // ─────────────────────────────────────────────────────────
+  // multer StorageEngine
+  // ─────────────────────────────────────────────────────────
+
+  _handleFile(req, file, cb) {
+    const tempPath = path.join(this.tmpDir, `${Date.now()}_${crypto.randomBytes(8).toString('hex')}`);
+    const hash = crypto.createHash('sha256');
+    let size = 0;
+    let truncated = false;
+
+    const hashTap = new Transform({
+      transform(chunk, encoding, done) {
+        hash.update(chunk);
+        size += chunk.length;
+        done(null, chunk);
+      },
+    });
+
+    // Превышен limits.fileSize — multer сам вернёт LIMIT_FILE_SIZE,
+    // обрезанный файл под хэш-именем сохранять нельзя
+    file.stream.on('limit', () => { truncated = true; });
+
+    pipeline(file.stream, hashTap, fs.createWriteStream(tempPath), async (error) => {
+      if (error || truncated) {
+        await fs.promises.unlink(tempPath).catch(() => {});
+        return cb(error || null, { size });
+      }
+
+      try {
+        const digest = hash.digest('hex');
+        const shard = digest.slice(0, 2);
+        const filename = `${shard}/${digest}${extensionFor(file)}`;
+        const finalPath = path.join(this.mediaDir, filename);
+
+        const deduped = await fs.promises.access(finalPath).then(() => true, () => false);
+        if (deduped) {
+          await fs.promises.unlink(tempPath);
+          this.stats.deduped++;
+          this.stats.bytesSaved += size;
+        } else {
+          await fs.promises.mkdir(path.dirname(finalPath), { recursive: true });
+          // rename атомарен: параллельная загрузка того же файла просто
+          // перезапишет его идентичным содержимым
+          await fs.promises.rename(tempPath, finalPath);
+          this.stats.stored++;
+          this.stats.bytesStored += size;
+        }
+
+        cb(null, { filename, path: finalPath, size, hash: digest, deduped });
+      } catch (finalizeError) {
+        await fs.promises.unlink(tempPath).catch(() => {});
+        cb(finalizeError);
+      }
+    });
+  }
+
+  _removeFile(req, file, cb) {
+    // Файл под хэш-именем может принадлежать другим сообщениям — не удаляем
+    cb(null);
+  }
+
+  // ─────────────────────────────────────────────────────────
+  // Пути и URL
+  // ─────────────────────────────────────────────────────────
+
+  mediaUrlFor(filename) {
+    return `/media/${filename}`;
+  }
+
+  thumbnailPathFor(hash) {
+    return path.join(this.thumbDir, hash.slice(0, 2), `${hash}.jpg`);
+  }
+
+  thumbnailUrlFor(hash) {
+    return `/media/thumb/${hash.slice(0, 2)}/${hash}.jpg`;
+  }
+
+  /**
+   * sha256 из URL, выданного MediaStore; null для старых и внешних URL
+   */
+  hashFromUrl(mediaUrl) {
+    const match = typeof mediaUrl === 'string' ? CONTENT_URL_RE.exec(mediaUrl) : null;
+    return match ? match[2] : null;
+  }
+
+  /**
+   * [v8.13] Описание файла для downloadServer.sendFile. ETag — хэш
+   * содержимого, stat нужен только для размера. null — не наш URL или нет файла.
+   */
+  async describe(urlPath) {
+    const match = SERVED_URL_RE.exec(urlPath);
+    if (!match || match[3].slice(0, 2) !== match[2]) return null;
+
+    const filePath = path.join(this.mediaDir, urlPath.slice('/media/'.length));
+    try {
+      const stat = await fs.promises.stat(filePath);
+      if (!stat.isFile()) return null;
+      return {
+        path: filePath,
+        size: stat.size,
+        mtime: stat.mtime,
+        etag: match[1] ? `"thumb-${match[3]}"` : `"${match[3]}"`,
+      };
+    } catch (error) {
+      return null;
+    }
+  }
+
+  async hasThumbnail(hash) {
+    return fs.promises.access(this.thumbnailPathFor(hash)).then(() => true, () => false);
+  }
+
+  getStats() {
+    return { ...this.stats };
+  }
+}
+
+module.exports = { MediaStore, extensionFor };
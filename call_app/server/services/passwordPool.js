@@ -0,0 +1,174 @@
+// services/passwordPool.js - v8.10 (fixed-size worker_threads pool for bcrypt)
+
+/**
+ * ═══════════════════════════════════════════════════════════
+ * PasswordPool v8.10 - BCRYPT В ОТДЕЛЬНЫХ ПОТОКАХ
+ * ═══════════════════════════════════════════════════════════
+ *
+ * pre('save') и comparePassword вызывали bcrypt в процессе сервера:
+ * асинхронный bcrypt занимает общий libuv threadpool (4 потока на всё —
+ * fs загрузок, dns, zlib compression), всплеск логинов после аварии
+ * выстраивал в очередь за собой всё остальное, и сигналинг звонков
+ * заметно запаздывал.
+ *
+ * - Фиксированное число потоков (PASSWORD_POOL_SIZE; по умолчанию
+ *   min(4, ядра/2), в кластере — делённое на число воркеров), запускаются лениво
+ * - Ограниченная очередь (PASSWORD_POOL_QUEUE): переполнение — сразу
+ *   ошибка code=POOL_SATURATED, клиент получает «сервер перегружен»,
+ *   а не ждёт десятки секунд
+ * - Упавший поток перезапускается, его задача завершается ошибкой
+ * - Метрики: занятость, очередь, отказы, ожидание/выполнение (p95)
+ *
+ * Бенчмарк задержки event loop с пулом и без: npm run bench:password
+ */
+
+const os = require('os');
+const path = require('path');
+const { Worker } = require('worker_threads');
+const { summarize } = require('./latencyStats');
+
+const WORKER_PATH = path.join(__dirname, 'passwordWorker.js');
+const TIMING_SAMPLES = 500;
+
+const cpuCount = typeof os.availableParallelism === 'function' ? os.availableParallelism() : os.cpus().length;
+// Пул — на процесс: в кластере (cluster.js) половина ядер делится между воркерами,
+// иначе N воркеров × min(4, ядра/2) потоков переподписывают CPU
+const clusterWorkers = parseInt(process.env.SECURECALL_CLUSTER_WORKERS) || 1;
+const defaultSize = Math.max(1, Math.min(4, Math.floor(cpuCount / 2 / clusterWorkers)));
+
+class PasswordPool {
+  constructor({
+    size = parseInt(process.env.PASSWORD_POOL_SIZE) || defaultSize,
+    maxQueue = parseInt(process.env.PASSWORD_POOL_QUEUE) || 256,
+  } = {}) {
+    this.size = size;
+    this.maxQueue = maxQueue;
+    this.workers = []; // { worker, task }
+    this.queue = [];
+    this.nextId = 1;
+
+    this.counters = { completed: 0, failed: 0, rejected: 0, restarts: 0 };
+    this.waitSamples = [];
+    this.runSamples = [];
+  }
+
+  hash(password, rounds = 10) {
+    return this.run({ op: 'hash', password, rounds });
+  }
+
+  compare(password, hash) {
+    return this.run({ op: 'compare', password, hash });
+  }
+
+  run(payload) {
+    return new Promise((resolve, reject) => {
+      if (this.queue.length >= this.maxQueue) {
+        this.counters.rejected++;
+        const error = new Error('Сервер перегружен, повторите попытку');
+        error.code = 'POOL_SATURATED';
+        reject(error);
+        return;
+      }
+
+      this.queue.push({ id: this.nextId++, payload, resolve, reject, queuedAt: Date.now() });
+      this.dispatch();
+    });
+  }
+
+  dispatch() {
+    while (this.queue.length > 0) {
+      const slot = this.idleSlot();
+      if (!slot) return;
+
+      const task = this.queue.shift();
+      task.startedAt = Date.now();
+      record(this.waitSamples, task.startedAt - task.queuedAt);
+
+      slot.task = task;
+      slot.worker.ref();
+      slot.worker.postMessage({ id: task.id, ...task.payload });
+    }
+  }
+
+  idleSlot() {
+    const idle = this.workers.find((slot) => !slot.task);
+    if (idle) return idle;
+    if (this.workers.length < this.size) return this.spawn();
+    return null;
+  }
+
+  spawn() {
+    const slot = { worker: new Worker(WORKER_PATH), task: null };
+
+    slot.worker.on('message', ({ id, result, error }) => {
+      const task = slot.task;
+      if (!task || task.id !== id) return;
+      this.finish(slot, error ? new Error(error) : null, result);
+    });
+
+    slot.worker.on('error', (error) => {
+      console.error('[PasswordPool] ❌ Ошибка потока:', error.message);
+    });
+
+    slot.worker.on('exit', (code) => {
+      this.workers = this.workers.filter((s) => s !== slot);
+      if (slot.task) {
+        this.finish(slot, new Error(`поток bcrypt завершился (code=${code})`));
+      }
+      if (code !== 0) {
+        this.counters.restarts++;
+      }
+      this.dispatch();
+    });
+
+    // Простаивающий пул не держит процесс (скрипты, тесты)
+    slot.worker.unref();
+    this.workers.push(slot);
+    return slot;
+  }
+
+  finish(slot, error, result) {
+    const task = slot.task;
+    slot.task = null;
+    slot.worker.unref();
+    record(this.runSamples, Date.now() - task.startedAt);
+
+    if (error) {
+      this.counters.failed++;
+      task.reject(error);
+    } else {
+      this.counters.completed++;
+      task.resolve(result);
+    }
+    this.dispatch();
+  }
+
+  getMetrics() {
+    const busy = this.workers.filter((slot) => slot.task).length;
+    return {
+      size: this.size,
+      threads: this.workers.length,
+      busy,
+      saturation: this.size ? busy / this.size : 0,
+      queued: this.queue.length,
+      maxQueue: this.maxQueue,
+      ...this.counters,
+      waitMs: summarize(this.waitSamples),
+      runMs: summarize(this.runSamples),
+    };
+  }
+
+  async close() {
+    const workers = this.workers;
+    this.workers = [];
+    await Promise.all(workers.map((slot) => slot.worker.terminate()));
+  }
+}
+
+function record(samples, value) {
+  samples.push(value);
+  if (samples.length > TIMING_SAMPLES) samples.shift();
+}
+
+module.exports = new PasswordPool();
+module.exports.PasswordPool = PasswordPool;
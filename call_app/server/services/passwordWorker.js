@@ -0,0 +1,24 @@
+// services/passwordWorker.js - v8.10 (bcrypt inside a dedicated worker thread)
+//
+// Поток пула passwordPool.js. Синхронные hashSync/compareSync здесь
+// намеренно: асинхронный bcrypt снова ушёл бы в общий libuv threadpool
+// (fs, dns.lookup, zlib), от которого пул и изолирует.
+
+const { parentPort } = require('worker_threads');
+const bcrypt = require('bcrypt');
+
+parentPort.on('message', ({ id, op, password, hash, rounds }) => {
+  try {
+    let result;
+    if (op === 'hash') {
+      result = bcrypt.hashSync(password, rounds);
+    } else if (op === 'compare') {
+      result = bcrypt.compareSync(password, hash);
+    } else {
+      throw new Error(`неизвестная операция ${op}`);
+    }
+    parentPort.postMessage({ id, result });
+  } catch (error) {
+    parentPort.postMessage({ id, error: error.message });
+  }
+});
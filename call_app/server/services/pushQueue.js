@@ -0,0 +1,251 @@
+// services/pushQueue.js - v8.8 (prioritized, batched, retrying FCM dispatch)
+
+/**
+ * ═══════════════════════════════════════════════════════════
+ * PushQueue v8.8 - ОЧЕРЕДЬ ОТПРАВКИ PUSH
+ * ═══════════════════════════════════════════════════════════
+ *
+ * Раньше каждый push — отдельный await admin.messaging().send() прямо в
+ * обработчике сокета: всплеск сообщений держал обработчики на сетевых
+ * round-trip к FCM, временные ошибки просто логировались.
+ *
+ * - Приоритеты: звонки (incoming_call, call_cancelled) всегда раньше
+ *   сообщений; один слот concurrency зарезервирован под звонки, так что
+ *   шторм сообщений не увеличивает задержку пробуждения
+ * - Пакеты: message / missed_call, накопившиеся к моменту освобождения
+ *   слота, уходят одним transport.sendEach (до batchSize сообщений)
+ * - Повторы: временные ошибки FCM — экспоненциальная задержка с джиттером
+ * - Мёртвые токены (not-registered / invalid) — onInvalidToken(token)
+ * - Метрики: глубина очередей, в полёте, задержка enqueue→результат (p50/p95)
+ *
+ * Транспорт: { send(message), sendEach(messages) } — firebase-admin или
+ * HTTP к локальному фейковому FCM (services/fcmTransport.js).
+ */
+
+const { summarize } = require('./latencyStats');
+
+const CALL = 'call';
+const NORMAL = 'normal';
+
+const TYPE_PRIORITY = {
+  incoming_call: CALL,
+  call_cancelled: CALL,
+  message: NORMAL,
+  missed_call: NORMAL,
+};
+
+// Повторять имеет смысл только то, что FCM сам считает временным
+const TRANSIENT_CODES = new Set([
+  'messaging/internal-error',
+  'messaging/server-unavailable',
+  'messaging/unavailable',
+  'messaging/quota-exceeded',
+  'messaging/message-rate-exceeded',
+  'messaging/device-message-rate-exceeded',
+  'app/network-error',
+  'app/network-timeout',
+]);
+
+const INVALID_TOKEN_CODES = new Set([
+  'messaging/registration-token-not-registered',
+  'messaging/invalid-registration-token',
+]);
+
+const LATENCY_SAMPLES = 500;
+
+class PushQueue {
+  constructor(transport, {
+    concurrency = parseInt(process.env.PUSH_CONCURRENCY) || 8,
+    batchSize = parseInt(process.env.PUSH_BATCH_SIZE) || 100,
+    maxRetries = { [CALL]: 2, [NORMAL]: 5 },
+    baseDelayMs = { [CALL]: 250, [NORMAL]: 1000 },
+    maxDelayMs = 30000,
+    onInvalidToken = null,
+  } = {}) {
+    this.transport = transport;
+    this.concurrency = Math.max(1, concurrency);
+    this.batchSize = Math.min(Math.max(1, batchSize), 500); // лимит FCM sendEach
+    this.maxRetries = maxRetries;
+    this.baseDelayMs = baseDelayMs;
+    this.maxDelayMs = maxDelayMs;
+    this.onInvalidToken = onInvalidToken;
+
+    this.queues = { [CALL]: [], [NORMAL]: [] };
+    this.inFlight = { [CALL]: 0, [NORMAL]: 0 };
+    this.retryPending = 0;
+    this.scheduled = false;
+
+    this.counters = {
+      enqueued: 0,
+      sent: 0,
+      failed: 0,
+      retried: 0,
+      invalidTokens: 0,
+      batches: 0,
+      batchedMessages: 0,
+    };
+    this.latency = { [CALL]: [], [NORMAL]: [] };
+  }
+
+  /**
+   * Поставить push в очередь. Промис — messageId FCM или reject с
+   * последней ошибкой (после повторов). type — data.type сообщения.
+   */
+  push(type, message) {
+    return new Promise((resolve, reject) => {
+      const priority = TYPE_PRIORITY[type] || NORMAL;
+      this.queues[priority].push({
+        type,
+        priority,
+        message,
+        token: message.token,
+        attempts: 0,
+        enqueuedAt: Date.now(),
+        resolve,
+        reject,
+      });
+      this.counters.enqueued++;
+      this.schedule();
+    });
+  }
+
+  // Все push одного тика — в одну выборку (отсюда и пакеты)
+  schedule() {
+    if (this.scheduled) return;
+    this.scheduled = true;
+    setImmediate(() => {
+      this.scheduled = false;
+      this.drain();
+    });
+  }
+
+  totalInFlight() {
+    return this.inFlight[CALL] + this.inFlight[NORMAL];
+  }
+
+  drain() {
+    const calls = this.queues[CALL];
+    while (calls.length > 0 && this.totalInFlight() < this.concurrency) {
+      this.runSingle(calls.shift());
+    }
+
+    // Один слот всегда свободен для звонков
+    const normalLimit = this.concurrency > 1 ? this.concurrency - 1 : 1;
+    const normal = this.queues[NORMAL];
+    while (normal.length > 0 &&
+           this.totalInFlight() < this.concurrency &&
+           this.inFlight[NORMAL] < normalLimit) {
+      this.runBatch(normal.splice(0, this.batchSize));
+    }
+  }
+
+  async runSingle(job) {
+    this.inFlight[job.priority]++;
+    try {
+      const messageId = await this.transport.send(job.message);
+      this.succeed(job, messageId);
+    } catch (error) {
+      this.fail(job, error);
+    } finally {
+      this.inFlight[job.priority]--;
+      this.schedule();
+    }
+  }
+
+  async runBatch(jobs) {
+    if (jobs.length === 1) {
+      return this.runSingle(jobs[0]);
+    }
+
+    this.inFlight[NORMAL]++;
+    this.counters.batches++;
+    this.counters.batchedMessages += jobs.length;
+    try {
+      const result = await this.transport.sendEach(jobs.map((job) => job.message));
+      result.responses.forEach((response, index) => {
+        if (response.success) {
+          this.succeed(jobs[index], response.messageId);
+        } else {
+          this.fail(jobs[index], response.error);
+        }
+      });
+    } catch (error) {
+      // Пакет не ушёл целиком — решение о повторе по каждому сообщению
+      jobs.forEach((job) => this.fail(job, error));
+    } finally {
+      this.inFlight[NORMAL]--;
+      this.schedule();
+    }
+  }
+
+  succeed(job, messageId) {
+    this.counters.sent++;
+    this.recordLatency(job);
+    job.resolve(messageId);
+  }
+
+  fail(job, error) {
+    const code = error && error.code;
+
+    if (INVALID_TOKEN_CODES.has(code)) {
+      this.counters.invalidTokens++;
+      this.counters.failed++;
+      this.recordLatency(job);
+      if (this.onInvalidToken) {
+        Promise.resolve()
+          .then(() => this.onInvalidToken(job.token))
+          .catch((e) => console.error('[PushQueue] onInvalidToken ошибка:', e.message));
+      }
+      job.reject(error);
+      return;
+    }
+
+    if (TRANSIENT_CODES.has(code) && job.attempts < this.maxRetries[job.priority]) {
+      job.attempts++;
+      this.counters.retried++;
+      this.retryPending++;
+
+      const base = this.baseDelayMs[job.priority] * Math.pow(2, job.attempts - 1);
+      const delay = Math.min(this.maxDelayMs, base) * (0.5 + Math.random() / 2);
+      console.warn(`[PushQueue] ⚠️ ${job.type}: ${code} — повтор ${job.attempts}/${this.maxRetries[job.priority]} через ${Math.round(delay)} мс`);
+
+      setTimeout(() => {
+        this.retryPending--;
+        this.queues[job.priority].push(job);
+        this.schedule();
+      }, delay);
+      return;
+    }
+
+    this.counters.failed++;
+    this.recordLatency(job);
+    job.reject(error || new Error('push не доставлен'));
+  }
+
+  recordLatency(job) {
+    const samples = this.latency[job.priority];
+    samples.push(Date.now() - job.enqueuedAt);
+    if (samples.length > LATENCY_SAMPLES) {
+      samples.shift();
+    }
+  }
+
+  getMetrics() {
+    return {
+      depth: {
+        call: this.queues[CALL].length,
+        normal: this.queues[NORMAL].length,
+        retryPending: this.retryPending,
+      },
+      inFlight: { call: this.inFlight[CALL], normal: this.inFlight[NORMAL] },
+      concurrency: this.concurrency,
+      ...this.counters,
+      latencyMs: {
+        call: summarize(this.latency[CALL]),
+        normal: summarize(this.latency[NORMAL]),
+      },
+    };
+  }
+}
+
+module.exports = PushQueue;
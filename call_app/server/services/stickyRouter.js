@@ -0,0 +1,116 @@
+// services/stickyRouter.js - v8.7 (sticky connection routing for cluster mode)
+
+/**
+ * ═══════════════════════════════════════════════════════════
+ * Sticky Router v8.7 - ПРИВЯЗКА КЛИЕНТА К ВОРКЕРУ
+ * ═══════════════════════════════════════════════════════════
+ *
+ * Engine.io-сессия живёт в одном процессе: HTTP long-polling запросы и
+ * апгрейд до websocket с тем же sid обязаны попасть в тот же воркер.
+ *
+ * Primary слушает порт сам (net.Server), читает первый пакет соединения,
+ * достаёт sid из строки запроса и передаёт сокет воркеру-владельцу
+ * (worker.send с handle). Новое соединение без sid — воркеру с наименьшим
+ * числом engine.io-клиентов. Воркеры сообщают об открытии/закрытии sid.
+ *
+ * Express-маршруты (/health, админка, загрузки) идут тем же путём —
+ * их обслуживает любой воркер.
+ */
+
+const STICKY_SOURCE = '_sc_sticky';
+const SID_PATTERN = /[?&]sid=([^&\s]+)/;
+
+function parseSid(buffer) {
+  const head = buffer.toString('latin1', 0, Math.min(buffer.length, 2048));
+  const requestLine = head.substring(0, head.indexOf('\r\n'));
+  const match = SID_PATTERN.exec(requestLine);
+  return match ? match[1] : null;
+}
+
+/**
+ * Primary: распределять соединения netServer по воркерам cluster
+ */
+function setupStickyPrimary(cluster, netServer) {
+  const workerBySid = new Map(); // sid -> worker.id
+  const clientCounts = new Map(); // worker.id -> число engine.io-клиентов
+  let roundRobin = 0;
+
+  function pickWorker() {
+    const workers = Object.values(cluster.workers).filter((w) => w && w.isConnected());
+    if (workers.length === 0) return null;
+
+    roundRobin = (roundRobin + 1) % workers.length;
+    let best = workers[roundRobin];
+    for (const worker of workers) {
+      if ((clientCounts.get(worker.id) || 0) < (clientCounts.get(best.id) || 0)) {
+        best = worker;
+      }
+    }
+    return best;
+  }
+
+  cluster.on('message', (worker, message) => {
+    if (!message || message.source !== STICKY_SOURCE) return;
+
+    if (message.type === 'open') {
+      workerBySid.set(message.sid, worker.id);
+      clientCounts.set(worker.id, (clientCounts.get(worker.id) || 0) + 1);
+    } else if (message.type === 'close') {
+      if (workerBySid.delete(message.sid)) {
+        clientCounts.set(worker.id, Math.max(0, (clientCounts.get(worker.id) || 0) - 1));
+      }
+    }
+  });
+
+  cluster.on('exit', (worker) => {
+    clientCounts.delete(worker.id);
+    for (const [sid, workerId] of workerBySid.entries()) {
+      if (workerId === worker.id) workerBySid.delete(sid);
+    }
+  });
+
+  netServer.on('connection', (socket) => {
+    socket.on('error', () => socket.destroy());
+
+    socket.once('data', (buffer) => {
+      socket.pause();
+
+      const sid = parseSid(buffer);
+      const owner = sid ? cluster.workers[workerBySid.get(sid)] : null;
+      const worker = owner && owner.isConnected() ? owner : pickWorker();
+      if (!worker) {
+        socket.destroy();
+        return;
+      }
+
+      worker.send({ source: STICKY_SOURCE, type: 'connection', data: buffer }, socket, (error) => {
+        if (error) socket.destroy();
+      });
+    });
+  });
+}
+
+/**
+ * Воркер: принимать переданные primary соединения в httpServer
+ */
+function setupStickyWorker(httpServer, io) {
+  process.on('message', (message, handle) => {
+    if (!message || message.source !== STICKY_SOURCE || message.type !== 'connection' || !handle) return;
+
+    httpServer.emit('connection', handle);
+    // Первый пакет уже прочитан primary — отдаём его HTTP-парсеру
+    handle.emit('data', Buffer.from(message.data));
+    handle.resume();
+  });
+
+  io.engine.on('connection', (client) => {
+    process.send({ source: STICKY_SOURCE, type: 'open', sid: client.id });
+    client.once('close', () => {
+      if (process.connected) {
+        process.send({ source: STICKY_SOURCE, type: 'close', sid: client.id });
+      }
+    });
+  });
+}
+
+module.exports = { setupStickyPrimary, setupStickyWorker };
@@ -0,0 +1,181 @@
+// services/thumbnailQueue.js - v8.12 (bounded thumbnail/preview generation)
+
+/**
+ * ═══════════════════════════════════════════════════════════
+ * ThumbnailQueue v8.12 - ПРЕВЬЮ ДЛЯ ПУЗЫРЕЙ ЧАТА
+ * ═══════════════════════════════════════════════════════════
+ *
+ * ChatScreen рисовал пузыри по полноразмерным фото и видео. Превью
+ * (JPEG до MEDIA_THUMB_SIZE px по ширине) генерируются после ответа на
+ * upload, вне обработчика запроса:
+ *
+ * - Ограниченный пул: MEDIA_THUMB_CONCURRENCY процессов ffmpeg
+ *   одновременно (по умолчанию 2), очередь до MEDIA_THUMB_QUEUE задач;
+ *   переполнение — задача отбрасывается (превью не будет, клиент
+ *   покажет оригинал), загрузка не ждёт и не падает
+ * - Одна задача на хэш: повторная загрузка того же файла не запускает
+ *   второй ffmpeg, готовое превью не генерируется заново
+ * - Видео: кадр из фильтра thumbnail (репрезентативный среди первых)
+ * - ffmpeg — внешний бинарник (FFMPEG_PATH, по умолчанию из PATH);
+ *   без него превью просто отключаются, один раз с предупреждением в лог
+ */
+
+const fs = require('fs');
+const path = require('path');
+const { spawn } = require('child_process');
+
+class ThumbnailQueue {
+  constructor(mediaStore, {
+    concurrency = parseInt(process.env.MEDIA_THUMB_CONCURRENCY) || 2,
+    maxQueue = parseInt(process.env.MEDIA_THUMB_QUEUE) || 200,
+    width = parseInt(process.env.MEDIA_THUMB_SIZE) || 320,
+    timeoutMs = parseInt(process.env.MEDIA_THUMB_TIMEOUT_MS) || 15000,
+    ffmpegPath = process.env.FFMPEG_PATH || 'ffmpeg',
+  } = {}) {
+    this.mediaStore = mediaStore;
+    this.concurrency = concurrency;
+    this.maxQueue = maxQueue;
+    this.width = width;
+    this.timeoutMs = timeoutMs;
+    this.ffmpegPath = ffmpegPath;
+
+    this.available = true;
+    this.queue = [];
+    this.running = 0;
+    this.pending = new Map(); // hash -> Promise<boolean>
+    this.counters = { completed: 0, failed: 0, dropped: 0, skipped: 0 };
+  }
+
+  /**
+   * Поставить превью в очередь. Promise<boolean> — готово ли превью;
+   * никогда не отклоняется.
+   */
+  enqueue({ hash, sourcePath, isVideo }) {
+    if (!this.available) {
+      this.counters.skipped++;
+      return Promise.resolve(false);
+    }
+    if (this.pending.has(hash)) {
+      return this.pending.get(hash);
+    }
+    if (this.queue.length >= this.maxQueue) {
+      this.counters.dropped++;
+      console.warn(`[Thumbnails] ⚠️ Очередь заполнена (${this.maxQueue}), превью ${hash.slice(0, 12)} пропущено`);
+      return Promise.resolve(false);
+    }
+
+    const promise = new Promise((resolve) => {
+      this.queue.push({ hash, sourcePath, isVideo, resolve });
+    }).finally(() => this.pending.delete(hash));
+
+    this.pending.set(hash, promise);
+    this.drain();
+    return promise;
+  }
+
+  /**
+   * Дождаться превью, если оно генерируется в этом процессе, не дольше timeoutMs
+   */
+  async waitFor(hash, timeoutMs) {
+    const pending = this.pending.get(hash);
+    if (!pending) return false;
+    let timer;
+    const timeout = new Promise((resolve) => { timer = setTimeout(resolve, timeoutMs, false); });
+    try {
+      return await Promise.race([pending, timeout]);
+    } finally {
+      clearTimeout(timer);
+    }
+  }
+
+  drain() {
+    while (this.running < this.concurrency && this.queue.length > 0) {
+      const job = this.queue.shift();
+      this.running++;
+      this.run(job)
+        .catch((error) => {
+          console.error(`[Thumbnails] ❌ Превью ${job.hash.slice(0, 12)}:`, error.message);
+          return false;
+        })
+        .then((ok) => {
+          this.counters[ok ? 'completed' : 'failed']++;
+          job.resolve(ok);
+        })
+        .finally(() => {
+          this.running--;
+          this.drain();
+        });
+    }
+  }
+
+  async run({ hash, sourcePath, isVideo }) {
+    const target = this.mediaStore.thumbnailPathFor(hash);
+    if (await this.mediaStore.hasThumbnail(hash)) return true;
+
+    await fs.promises.mkdir(path.dirname(target), { recursive: true });
+    const tempTarget = `${target}.${process.pid}.tmp.jpg`;
+
+    const filter = isVideo
+      ? `thumbnail,scale='min(${this.width},iw)':-2`
+      : `scale='min(${this.width},iw)':-2`;
+    const args = ['-hide_banner', '-loglevel', 'error', '-y', '-i', sourcePath,
+      '-vf', filter, '-frames:v', '1', '-q:v', '5', tempTarget];
+
+    const ok = await this.ffmpeg(args);
+    if (!ok) {
+      await fs.promises.unlink(tempTarget).catch(() => {});
+      return false;
+    }
+    await fs.promises.rename(tempTarget, target);
+    return true;
+  }
+
+  ffmpeg(args) {
+    return new Promise((resolve) => {
+      let stderr = '';
+      let settled = false;
+      const child = spawn(this.ffmpegPath, args, { stdio: ['ignore', 'ignore', 'pipe'] });
+      const timer = setTimeout(() => child.kill('SIGKILL'), this.timeoutMs);
+
+      child.stderr.on('data', (chunk) => {
+        if (stderr.length < 2000) stderr += chunk;
+      });
+
+      child.on('error', (error) => {
+        clearTimeout(timer);
+        if (settled) return;
+        settled = true;
+        if (error.code === 'ENOENT') {
+          this.available = false;
+          console.warn(`[Thumbnails] ⚠️ ffmpeg не найден (${this.ffmpegPath}) — превью отключены`);
+        } else {
+          console.error('[Thumbnails] ❌ Ошибка запуска ffmpeg:', error.message);
+        }
+        resolve(false);
+      });
+
+      child.on('close', (code, signal) => {
+        clearTimeout(timer);
+        if (settled) return;
+        settled = true;
+        if (code !== 0) {
+          console.error(`[Thumbnails] ❌ ffmpeg завершился (code=${code}, signal=${signal}): ${stderr.trim()}`);
+        }
+        resolve(code === 0);
+      });
+    });
+  }
+
+  getStats() {
+    return {
+      available: this.available,
+      running: this.running,
+      queued: this.queue.length,
+      concurrency: this.concurrency,
+      maxQueue: this.maxQueue,
+      ...this.counters,
+    };
+  }
+}
+
+module.exports = { ThumbnailQueue };
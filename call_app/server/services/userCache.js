@@ -0,0 +1,127 @@
+// services/userCache.js - v8.9 (bounded LRU of user records for socket hot paths)
+
+/**
+ * ═══════════════════════════════════════════════════════════
+ * UserCache v8.9 - LRU ЗАПИСЕЙ ПОЛЬЗОВАТЕЛЕЙ
+ * ═══════════════════════════════════════════════════════════
+ *
+ * Горячие пути сокетов (оффлайн-ветки call / send_message, auth_token на
+ * каждом переподключении) раньше читали Mongo на каждое событие. Здесь —
+ * ограниченный LRU с TTL по username:
+ *   { username, tokenHash, fcmToken, platform, isAdmin, isBanned, banReason }
+ *
+ * Токен сессии хранится только как sha256 — дамп памяти не даёт токенов.
+ *
+ * Инвалидация: updateFCMToken / clearFCMToken / banUser / unbanUser /
+ * logout / удаление аккаунта. В кластере invalidate рассылается остальным
+ * воркерам (setBroadcaster → io.serverSideEmit), TTL ограничивает
+ * устаревание для изменений в обход этих путей.
+ *
+ * USER_CACHE_SIZE (по умолчанию 10000), USER_CACHE_TTL_MS (5 минут).
+ */
+
+const crypto = require('crypto');
+
+function hashToken(token) {
+  return crypto.createHash('sha256').update(String(token)).digest('hex');
+}
+
+class UserCache {
+  constructor({
+    maxEntries = parseInt(process.env.USER_CACHE_SIZE) || 10000,
+    ttlMs = parseInt(process.env.USER_CACHE_TTL_MS) || 5 * 60 * 1000,
+  } = {}) {
+    this.maxEntries = maxEntries;
+    this.ttlMs = ttlMs;
+    this.entries = new Map(); // username -> { record, expiresAt } (порядок Map = LRU)
+    this.broadcaster = null;
+    this.stats = { hits: 0, misses: 0, evictions: 0, invalidations: 0 };
+  }
+
+  /**
+   * Запись из документа/lean-объекта User (поле token → tokenHash)
+   */
+  static toRecord(user) {
+    return {
+      username: user.username,
+      tokenHash: user.token ? hashToken(user.token) : null,
+      fcmToken: user.fcmToken || null,
+      platform: user.platform || null,
+      isAdmin: !!user.isAdmin,
+      isBanned: !!user.isBanned,
+      banReason: user.banReason || null,
+    };
+  }
+
+  get(username) {
+    const entry = this.entries.get(username);
+    if (!entry) {
+      this.stats.misses++;
+      return null;
+    }
+    if (Date.now() > entry.expiresAt) {
+      this.entries.delete(username);
+      this.stats.misses++;
+      return null;
+    }
+    // Свежий доступ — в конец очереди вытеснения
+    this.entries.delete(username);
+    this.entries.set(username, entry);
+    this.stats.hits++;
+    return entry.record;
+  }
+
+  set(user) {
+    const record = UserCache.toRecord(user);
+    this.entries.delete(record.username);
+    this.entries.set(record.username, { record, expiresAt: Date.now() + this.ttlMs });
+
+    while (this.entries.size > this.maxEntries) {
+      this.entries.delete(this.entries.keys().next().value);
+      this.stats.evictions++;
+    }
+    return record;
+  }
+
+  /**
+   * Токен совпадает с закэшированным хэшем (сравнение за постоянное время)
+   */
+  matchesToken(record, token) {
+    if (!record || !record.tokenHash || !token) return false;
+    const expected = Buffer.from(record.tokenHash, 'hex');
+    const actual = Buffer.from(hashToken(token), 'hex');
+    return expected.length === actual.length && crypto.timingSafeEqual(expected, actual);
+  }
+
+  /**
+   * Сбросить запись. remote — пришло от другого воркера, дальше не рассылаем.
+   */
+  invalidate(username, { remote = false } = {}) {
+    if (!username) return;
+    if (this.entries.delete(username)) {
+      this.stats.invalidations++;
+    }
+    if (!remote && this.broadcaster) {
+      this.broadcaster(username);
+    }
+  }
+
+  invalidateFCMToken(fcmToken) {
+    for (const [username, entry] of this.entries.entries()) {
+      if (entry.record.fcmToken === fcmToken) {
+        this.invalidate(username);
+      }
+    }
+  }
+
+  setBroadcaster(broadcaster) {
+    this.broadcaster = broadcaster;
+  }
+
+  getStats() {
+    return { size: this.entries.size, maxEntries: this.maxEntries, ...this.stats };
+  }
+}
+
+module.exports = new UserCache();
+module.exports.UserCache = UserCache;
@@ -1,15 +1,45 @@
 // socketHandlers.js - Socket.IO event handlers (extracted from server.js)
-// Version: v8.2.0
+// Version: v8.7.0
+// [v8.7] Состояние маршрутизации — через общий слой state/ (память / IPC / Redis),
+// события — io.to(socketId), чтобы адаптер доставлял их на другие воркеры.
 
 const crypto = require('crypto');
+const os = require('os');
+const userCache = require('./services/userCache');
+
+// [v8.7] Процесс-владелец сессии. Сессии процессов, которых больше нет
+// (рестарт с RedisStateStore, упавшая машина), снимает reapDeadSessions
+const INSTANCE_ID = `${os.hostname()}:${process.pid}:${crypto.randomBytes(4).toString('hex')}`;
+const SESSION_REAP_INTERVAL_MS = 60 * 1000;
+const INSTANCE_PING_TIMEOUT_MS = 3000;
+
+// [v8.11] Возможности сервера в register/login/auth_success — клиент шлёт
+// пачки 'ice_candidates', только если сервер их объявил (иначе ice_candidate)
+const SERVER_FEATURES = ['ice_candidates'];
+
+// [v8.11] Предел кандидатов в одной пачке ice_candidates; клиент (v14.8)
+// делит пачки сам, больше — отклоняется с ошибкой
+const ICE_BATCH_MAX = 50;
+
+// [v8.12] Сколько send_message ждёт превью, которое ещё генерируется
+const THUMBNAIL_WAIT_MS = 1000;
 
 /**
  * Initialize all Socket.IO event handlers
  * @param {Object} io - Socket.IO server instance
- * @param {Object} deps - Dependencies { activeSessions, onlineUsers, activeCalls, CALL_TIMEOUT_MS, User, Message, firebaseService }
+ * @param {Object} deps - Dependencies { state, clustered, CALL_TIMEOUT_MS, User, Message, Conversation, firebaseService, mediaStore, thumbnailQueue }
  */
 function initSocketHandlers(io, deps) {
-  const { activeSessions, onlineUsers, activeCalls, CALL_TIMEOUT_MS, User, Message, firebaseService } = deps;
+  const { state, clustered = false, CALL_TIMEOUT_MS, User, Message, Conversation, firebaseService, mediaStore, thumbnailQueue } = deps;
+
+  // [v8.7] Таймеры звонков не сериализуются — живут в воркере, создавшем звонок.
+  // Срабатывание проверяет статус в общем сторе (updateCall ifStatus), так что
+  // звонок, принятый на другом воркере, таймаут уже не завершит.
+  const callTimers = new Map(); // callId -> timeoutId
+
+  // [v8.7] Звонок в ringing/push_sent/calling старше этого — его таймер
+  // пропал вместе с процессом (push_sent ждёт CALL_TIMEOUT_MS * 2)
+  const STALE_CALL_MS = CALL_TIMEOUT_MS * 2;
 
   // ═══════════════════════════════════════════════════════════════════════════
   // ВСПОМОГАТЕЛЬНЫЕ ФУНКЦИИ
@@ -27,35 +57,153 @@ function initSocketHandlers(io, deps) {
     return `call_${Date.now()}_${crypto.randomBytes(8).toString('hex')}`;
   }
 
-  async function disconnectPreviousSession(username, currentSocketId) {
-    const existingSocketId = onlineUsers.get(username);
+  // [v8.7] Сессия своего сокета кэшируется в socket.data — проверка авторизации
+  // на каждом событии без похода в общий стор. Стор — индекс для других воркеров.
+  function getSession(socket) {
+    return socket.data.session || null;
+  }
+
+  async function bindSession(socket, user, features) {
+    const session = {
+      username: user.username,
+      token: user.token,
+      isAdmin: user.isAdmin,
+      loginTime: new Date(),
+      owner: INSTANCE_ID,
+      // [v8.11] Возможности клиента (например 'ice_candidates') — старые клиенты не присылают
+      features: Array.isArray(features) ? features.filter((f) => typeof f === 'string').slice(0, 16) : [],
+    };
+    socket.data.session = session;
+    await state.setSession(socket.id, session);
+    await state.setUserSocket(user.username, socket.id);
+    return session;
+  }
+
+  /**
+   * Сокет жив? Локальный — проверка connected, чужой воркер — fetchSockets
+   * через адаптер (в одном процессе для чужого id сразу вернёт пусто).
+   */
+  async function isSocketAlive(socketId) {
+    const local = io.sockets.sockets.get(socketId);
+    if (local) return local.connected;
+    try {
+      const remote = await io.in(socketId).fetchSockets();
+      return remote.length > 0;
+    } catch (error) {
+      console.error(`[Server] ❌ fetchSockets(${socketId}):`, error.message);
+      return false;
+    }
+  }
+
+  async function emitToUser(username, event, data) {
+    const socketId = await state.getUserSocket(username);
+    if (socketId) {
+      io.to(socketId).emit(event, data);
+    }
+    return socketId;
+  }
+
+  /**
+   * [v8.12] thumbnailUrl для медиа, загруженного через MediaStore, определяет
+   * сервер (готовое превью или null — клиент покажет оригинал). Для старых
+   * и внешних URL остаётся то, что прислал клиент.
+   */
+  async function resolveThumbnailUrl(mediaUrl, clientThumbnailUrl) {
+    const hash = mediaStore ? mediaStore.hashFromUrl(mediaUrl) : null;
+    if (!hash) return clientThumbnailUrl || null;
+
+    const ready = (await mediaStore.hasThumbnail(hash))
+      || (thumbnailQueue && await thumbnailQueue.waitFor(hash, THUMBNAIL_WAIT_MS));
+    return ready ? mediaStore.thumbnailUrlFor(hash) : null;
+  }
+
+  /**
+   * [v8.12] Превью догенерировалось позже THUMBNAIL_WAIT_MS (или в другом
+   * воркере): дописать thumbnailUrl в сообщения и прислать обоим участникам
+   * message_updated. Вызывается из upload по готовности превью и из
+   * send_message, если превью успело появиться после resolveThumbnailUrl.
+   */
+  async function backfillThumbnail(mediaUrl) {
+    const hash = mediaStore ? mediaStore.hashFromUrl(mediaUrl) : null;
+    if (!hash) return 0;
+
+    const thumbnailUrl = mediaStore.thumbnailUrlFor(hash);
+    const updated = await Message.attachThumbnail(mediaUrl, thumbnailUrl);
+    for (const msg of updated) {
+      const payload = { messageId: msg.messageId, from: msg.from, to: msg.to, thumbnailUrl };
+      await emitToUser(msg.from, 'message_updated', payload);
+      await emitToUser(msg.to, 'message_updated', payload);
+    }
+    if (updated.length > 0) {
+      console.log(`[Thumbnails] 🖼️ Превью ${hash.slice(0, 12)} дописано в ${updated.length} сообщ.`);
+    }
+    return updated.length;
+  }
+
+  function clearCallTimer(callId) {
+    const timeoutId = callTimers.get(callId);
+    if (timeoutId) {
+      clearTimeout(timeoutId);
+      callTimers.delete(callId);
+    }
+  }
+
+  /**
+   * Таймаут звонка: срабатывает, только если звонок всё ещё в одном из statuses
+   */
+  function scheduleCallTimeout(callId, statuses, delayMs, onTimeout) {
+    clearCallTimer(callId);
+    const timeoutId = setTimeout(async () => {
+      callTimers.delete(callId);
+      try {
+        const call = await state.updateCall(callId, { status: 'timeout' }, { ifStatus: statuses });
+        if (!call) return;
+        await onTimeout(call);
+        await state.deleteCall(callId);
+      } catch (error) {
+        console.error(`[CallTimeout] ❌ Ошибка таймаута ${callId}:`, error);
+      }
+    }, delayMs);
+    callTimers.set(callId, timeoutId);
+  }
+
+  /**
+   * [v8.15] features нового сокета: 'native_standby' — нативный SignalingClient
+   * (фоновый сервис того же устройства). Старый сокет получает reason, чтобы JS
+   * забрал сессию обратно, а не выходил из аккаунта.
+   */
+  async function disconnectPreviousSession(username, currentSocketId, features = []) {
+    const existingSocketId = await state.getUserSocket(username);
 
     if (existingSocketId && existingSocketId !== currentSocketId) {
-      const existingSocket = io.sockets.sockets.get(existingSocketId);
+      console.log(`[Server] Отключаем старую сессию ${existingSocketId} для ${username} (новая: ${currentSocketId})`);
 
+      const existingSocket = io.sockets.sockets.get(existingSocketId);
       if (existingSocket) {
-        console.log(`[Server] Отключаем старую сессию ${existingSocketId} для ${username} (новая: ${currentSocketId})`);
-        existingSocket.emit('force_disconnect', {
-          message: 'Вход выполнен с другого устройства'
-        });
-        setTimeout(() => {
-          try { existingSocket.disconnect(); } catch (e) { /* ignore */ }
-        }, 500);
+        existingSocket.data.session = null;
       }
-
-      activeSessions.delete(existingSocketId);
+      const byNative = Array.isArray(features) && features.includes('native_standby');
+      io.to(existingSocketId).emit('force_disconnect', {
+        message: 'Вход выполнен с другого устройства',
+        reason: byNative ? 'native_standby' : 'other_device',
+      });
+      setTimeout(() => {
+        try { io.in(existingSocketId).disconnectSockets(); } catch (e) { /* ignore */ }
+      }, 500);
+
+      await state.deleteSession(existingSocketId);
     }
     if (existingSocketId) {
-      onlineUsers.delete(username);
+      await state.deleteUserSocket(username, existingSocketId);
     }
   }
 
-  async function broadcastUsersList() {
+  async function refreshLocalUsersLists() {
     try {
-      for (const [socketId, session] of activeSessions.entries()) {
-        const socket = io.sockets.sockets.get(socketId);
+      for (const socket of io.sockets.sockets.values()) {
+        const session = getSession(socket);
 
-        if (socket) {
+        if (session) {
           const users = await User.getAllUsers(session.username, true);
           socket.emit('users_list', users);
         }
@@ -65,14 +213,58 @@ function initSocketHandlers(io, deps) {
     }
   }
 
-  function checkPendingCallsForUser(socket, username) {
-    for (const [callId, call] of activeCalls.entries()) {
-      if (call.to === username && (call.status === 'ringing' || call.status === 'push_sent' || call.status === 'calling')) {
-        console.log(`[${socket.id}] 📞 Re-sending pending incoming_call to ${username} (callId: ${callId})`);
+  // [v8.7] Каждый воркер рассылает список своим сокетам — запрос к БД
+  // делает тот процесс, которому принадлежит сокет
+  async function broadcastUsersList() {
+    if (clustered) {
+      io.serverSideEmit('users_list_changed');
+    }
+    await refreshLocalUsersLists();
+  }
+
+  if (clustered) {
+    io.on('users_list_changed', () => {
+      refreshLocalUsersLists();
+    });
+
+    // [v8.7] Перекличка процессов для reapDeadSessions
+    io.on('instance_ping', (ack) => {
+      if (typeof ack === 'function') ack(INSTANCE_ID);
+    });
+
+    // [v8.9] Инвалидация кэша пользователей — на всех воркерах
+    userCache.setBroadcaster((username) => io.serverSideEmit('user_cache_invalidate', username));
+    io.on('user_cache_invalidate', (username) => {
+      userCache.invalidate(username, { remote: true });
+    });
+  }
+
+  // Сколько сервер звонит: онлайн — CALL_TIMEOUT_MS, через push — вдвое дольше
+  function ringWindowMs(call) {
+    return call.status === 'ringing' ? CALL_TIMEOUT_MS : CALL_TIMEOUT_MS * 2;
+  }
+
+  function isRingingCall(call) {
+    return call.status === 'ringing' || call.status === 'push_sent' || call.status === 'calling';
+  }
+
+  async function checkPendingCallsForUser(socket, username) {
+    const calls = await state.listCalls();
+    for (const call of calls) {
+      if (call.to === username && isRingingCall(call)) {
+        // [v8.7] Таймер такого звонка умер с процессом — не звоним «призраком»
+        if (Date.now() - (call.timestamp || 0) > STALE_CALL_MS) {
+          console.log(`[${socket.id}] 🧹 Устаревший звонок ${call.callId} (${call.from} → ${call.to}) — удаляем`);
+          await state.deleteCall(call.callId);
+          continue;
+        }
+        console.log(`[${socket.id}] 📞 Re-sending pending incoming_call to ${username} (callId: ${call.callId})`);
         socket.emit('incoming_call', {
-          callId,
+          callId: call.callId,
           from: call.from,
           isVideo: call.isVideo,
+          // [v8.7] Остаток окна звонка — нативный экран не должен закрыться раньше сервера
+          ringTimeoutMs: Math.max(0, ringWindowMs(call) - (Date.now() - (call.timestamp || 0))),
         });
       }
     }
@@ -129,16 +321,21 @@ function initSocketHandlers(io, deps) {
       console.log(`Видео: ${isVideo}`);
       console.log('═══════════════════════════════════════');
 
-      await Message.createMissedCallNotification(fromUsername, toUsername, isVideo);
+      const missedMessage = await Message.createMissedCallNotification(fromUsername, toUsername, isVideo);
+      // [v8.6] Сводка переписки: превью + непрочитанное у получателя
+      if (missedMessage) {
+        await Conversation.recordMessage(missedMessage);
+      }
 
-      const targetUser = await User.findOne({ username: toUsername });
+      const targetUser = await User.getCached(toUsername);
       if (targetUser && targetUser.fcmToken && firebaseService.isReady()) {
-        await firebaseService.sendMissedCallNotification(
+        // [v8.8] В очередь push без ожидания — таймер/disconnect не ждут FCM
+        firebaseService.sendMissedCallNotification(
           targetUser.fcmToken,
           fromUsername,
           isVideo
         );
-        console.log('[MissedCall] ✅ Push уведомление отправлено');
+        console.log('[MissedCall] ✅ Push уведомление поставлено в очередь');
       } else {
         console.log('[MissedCall] ⚠️ Push не отправлен (нет токена или Firebase не готов)');
       }
@@ -158,19 +355,37 @@ function initSocketHandlers(io, deps) {
 
     // ═══════════════════════════════════════════════════════════════════════
     // [v8.2] HEARTBEAT: ответ на клиентский ping
-    // Клиент отправляет 'ping' каждые 10с, сервер отвечает 'pong'.
     // Клиент отслеживает _lastPongTime и при возврате из фона проверяет
     // свежесть — если pong старый, форсирует переподключение.
+    //
+    // [v8.3] АДАПТИВНЫЙ ИНТЕРВАЛ: клиент подбирает интервал ping под NAT-таймаут
+    // сети. В pong сервер возвращает:
+    //   serverTime — время сервера
+    //   idleMs     — сколько соединение молчало (входящие пакеты, включая
+    //                engine.io pong) до этого ping; null для первого пакета.
+    // Если pong пришёл после idleMs ≈ интервалу пробы — интервал безопасен.
     // ═══════════════════════════════════════════════════════════════════════
+    let lastInboundAt = 0;
+    let prevInboundAt = 0;
+    socket.conn.on('packet', () => {
+      prevInboundAt = lastInboundAt;
+      lastInboundAt = Date.now();
+    });
+
     socket.on('ping', (data) => {
-      socket.emit('pong', { timestamp: data?.timestamp || Date.now() });
+      const now = Date.now();
+      socket.emit('pong', {
+        timestamp: data?.timestamp || now,
+        serverTime: now,
+        idleMs: prevInboundAt ? now - prevInboundAt : null,
+      });
     });
 
     // ═══════════════════════════════════════════════════════════════════════
     // РЕГИСТРАЦИЯ И АВТОРИЗАЦИЯ
     // ═══════════════════════════════════════════════════════════════════════
 
-    socket.on('register', async ({ username, password }) => {
+    socket.on('register', async ({ username, password, features }) => {
       try {
         if (!username || !password) {
           return socket.emit('register_error', { message: 'Укажите имя и пароль' });
@@ -191,18 +406,13 @@ function initSocketHandlers(io, deps) {
         });
         await user.save();
 
-        activeSessions.set(socket.id, {
-          username: user.username,
-          token: user.token,
-          isAdmin: user.isAdmin,
-          loginTime: new Date(),
-        });
-        onlineUsers.set(user.username, socket.id);
+        await bindSession(socket, user, features);
 
         socket.emit('register_success', {
           username: user.username,
           token: user.token,
           isAdmin: user.isAdmin,
+          features: SERVER_FEATURES,
         });
 
         broadcastUserOnline(user.username);
@@ -210,12 +420,17 @@ function initSocketHandlers(io, deps) {
 
         console.log(`[${socket.id}] ✅ Регистрация: ${username}`);
       } catch (error) {
+        // [v8.10] Пул bcrypt переполнен — отказ сразу, клиент может повторить
+        if (error.code === 'POOL_SATURATED') {
+          console.warn(`[${socket.id}] ⚠️ Регистрация отклонена: пул паролей переполнен`);
+          return socket.emit('register_error', { message: error.message, code: error.code });
+        }
         console.error(`[${socket.id}] ❌ Ошибка регистрации:`, error);
         socket.emit('register_error', { message: 'Ошибка сервера' });
       }
     });
 
-    socket.on('login', async ({ username, password }) => {
+    socket.on('login', async ({ username, password, features }) => {
       try {
         const user = await User.findByCredentials(username, password);
 
@@ -228,36 +443,36 @@ function initSocketHandlers(io, deps) {
         await disconnectPreviousSession(username, socket.id);
         await User.setOnlineStatus(username, true);
 
-        activeSessions.set(socket.id, {
-          username: user.username,
-          token: user.token,
-          isAdmin: user.isAdmin,
-          loginTime: new Date(),
-        });
-        onlineUsers.set(user.username, socket.id);
+        await bindSession(socket, user, features);
 
         socket.emit('login_success', {
           username: user.username,
           token: user.token,
           isAdmin: user.isAdmin,
+          features: SERVER_FEATURES,
         });
 
         broadcastUserOnline(user.username);
         await broadcastUsersList();
 
-        checkPendingCallsForUser(socket, user.username);
+        await checkPendingCallsForUser(socket, user.username);
         deliverPendingMessages(socket, user.username);
 
         console.log(`[${socket.id}] ✅ Вход: ${username} (Админ: ${user.isAdmin})`);
       } catch (error) {
+        if (error.code === 'POOL_SATURATED') {
+          console.warn(`[${socket.id}] ⚠️ Вход отклонён: пул паролей переполнен`);
+          return socket.emit('login_error', { message: error.message, code: error.code });
+        }
         console.error(`[${socket.id}] ❌ Ошибка входа:`, error);
         socket.emit('login_error', { message: error.message });
       }
     });
 
-    socket.on('auth_token', async ({ username, token }) => {
+    socket.on('auth_token', async ({ username, token, features }) => {
       try {
-        const user = await User.findByToken(username, token);
+        // [v8.9] Шторм переподключений после деплоя — из памяти, не из БД
+        const user = await User.findByTokenCached(username, token);
 
         if (user.isBanned) {
           return socket.emit('auth_error', {
@@ -265,26 +480,23 @@ function initSocketHandlers(io, deps) {
           });
         }
 
-        await disconnectPreviousSession(username, socket.id);
+        await disconnectPreviousSession(username, socket.id, features);
         await User.setOnlineStatus(username, true);
 
-        activeSessions.set(socket.id, {
-          username: user.username,
-          token: user.token,
-          isAdmin: user.isAdmin,
-          loginTime: new Date(),
-        });
-        onlineUsers.set(user.username, socket.id);
+        await bindSession(socket, user, features);
 
         socket.emit('auth_success', {
           username: user.username,
           isAdmin: user.isAdmin,
+          features: SERVER_FEATURES,
+          // [v8.15] Нативный клиент сверяет часы (возраст push о звонке)
+          serverTime: Date.now(),
         });
 
         broadcastUserOnline(user.username);
         await broadcastUsersList();
 
-        checkPendingCallsForUser(socket, user.username);
+        await checkPendingCallsForUser(socket, user.username);
         deliverPendingMessages(socket, user.username);
 
         console.log(`[${socket.id}] ✅ Авторизация токеном: ${username} (Админ: ${user.isAdmin})`);
@@ -296,6 +508,12 @@ function initSocketHandlers(io, deps) {
 
     socket.on('register_fcm_token', async ({ username, fcmToken, platform }) => {
       try {
+        // [v8.9] Клиент шлёт токен на каждом входе — запись только при изменении
+        const cached = await User.getCached(username);
+        if (cached && cached.fcmToken === fcmToken && cached.platform === (platform || null)) {
+          console.log(`[${socket.id}] FCM токен ${username} не изменился — запись пропущена`);
+          return;
+        }
         await User.updateFCMToken(username, fcmToken, platform);
         console.log(`[${socket.id}] ✅ FCM токен обновлен для ${username} (${platform})`);
       } catch (error) {
@@ -304,11 +522,13 @@ function initSocketHandlers(io, deps) {
     });
 
     socket.on('logout', async () => {
-      const session = activeSessions.get(socket.id);
+      const session = getSession(socket);
       if (session) {
+        socket.data.session = null;
+        User.invalidateCache(session.username);
         await User.setOnlineStatus(session.username, false);
-        onlineUsers.delete(session.username);
-        activeSessions.delete(socket.id);
+        await state.deleteUserSocket(session.username, socket.id);
+        await state.deleteSession(socket.id);
         broadcastUserOffline(session.username);
         await broadcastUsersList();
         console.log(`[${socket.id}] 👋 Выход: ${session.username}`);
@@ -316,7 +536,7 @@ function initSocketHandlers(io, deps) {
     });
 
     socket.on('get_users', async ({ includeOffline = true } = {}) => {
-      const session = activeSessions.get(socket.id);
+      const session = getSession(socket);
       if (!session) {
         return socket.emit('error', { message: 'Не авторизован' });
       }
@@ -335,7 +555,7 @@ function initSocketHandlers(io, deps) {
     // ═══════════════════════════════════════════════════════════════════════
 
     socket.on('call', async ({ to, isVideo }) => {
-      const session = activeSessions.get(socket.id);
+      const session = getSession(socket);
       if (!session) {
         return socket.emit('error', { message: 'Не авторизован' });
       }
@@ -350,9 +570,8 @@ function initSocketHandlers(io, deps) {
       console.log(`Видео: ${isVideo}`);
       console.log('═══════════════════════════════════════');
 
-      const targetSocketId = onlineUsers.get(to);
-      const targetSocket = targetSocketId ? io.sockets.sockets.get(targetSocketId) : null;
-      const isOnlineAndConnected = !!(targetSocket && targetSocket.connected);
+      const targetSocketId = await state.getUserSocket(to);
+      const isOnlineAndConnected = targetSocketId ? await isSocketAlive(targetSocketId) : false;
 
       const callData = {
         callId,
@@ -366,49 +585,39 @@ function initSocketHandlers(io, deps) {
       if (isOnlineAndConnected) {
         console.log(`[${socket.id}] ✅ ${to} онлайн (connected=true), отправка incoming_call`);
 
-        targetSocket.emit('incoming_call', {
+        // [v8.7] Звонок в сторе до incoming_call: accept_call может прийти на другой воркер
+        callData.status = 'ringing';
+        await state.setCall(callId, callData);
+
+        io.to(targetSocketId).emit('incoming_call', {
           callId,
           from: session.username,
-          isVideo: isVideo
+          isVideo: isVideo,
+          ringTimeoutMs: CALL_TIMEOUT_MS
         });
 
-        callData.status = 'ringing';
         socket.emit('call_initiated', { callId, to });
 
-        const timeoutId = setTimeout(async () => {
-          const call = activeCalls.get(callId);
-
-          if (call && call.status === 'ringing') {
-            console.log(`[CallTimeout] ТАЙМАУТ ЗВОНКА: ${callId}`);
-
-            await sendMissedCallNotification(call.to, call.from, call.isVideo);
-
-            const callerSocket = io.sockets.sockets.get(socket.id);
-            if (callerSocket) {
-              callerSocket.emit('call_timeout', {
-                to: call.to,
-                message: 'Абонент не ответил'
-              });
-            }
+        scheduleCallTimeout(callId, ['ringing'], CALL_TIMEOUT_MS, async (call) => {
+          console.log(`[CallTimeout] ТАЙМАУТ ЗВОНКА: ${callId}`);
 
-            const recipientSocket = io.sockets.sockets.get(targetSocketId);
-            if (recipientSocket) {
-              recipientSocket.emit('call_timeout', {
-                from: call.from
-              });
-            }
+          await sendMissedCallNotification(call.to, call.from, call.isVideo);
 
-            activeCalls.delete(callId);
-          }
-        }, CALL_TIMEOUT_MS);
+          io.to(socket.id).emit('call_timeout', {
+            to: call.to,
+            message: 'Абонент не ответил'
+          });
 
-        callData.timeoutId = timeoutId;
+          io.to(targetSocketId).emit('call_timeout', {
+            from: call.from
+          });
+        });
 
       } else {
         if (targetSocketId && !isOnlineAndConnected) {
           console.log(`[${socket.id}] ⚠️ ${to} stale socket — чистим и уходим на FCM`);
-          onlineUsers.delete(to);
-          activeSessions.delete(targetSocketId);
+          await state.deleteUserSocket(to, targetSocketId);
+          await state.deleteSession(targetSocketId);
           User.setOnlineStatus(to, false).catch(e =>
             console.error(`[${socket.id}] Ошибка обновления статуса ${to}:`, e.message)
           );
@@ -416,11 +625,15 @@ function initSocketHandlers(io, deps) {
           console.log(`[${socket.id}] 🔴 ${to} оффлайн, отправка Wake-Up Push`);
         }
 
+        // Звонок виден checkPendingCallsForUser, пока push в пути
+        await state.setCall(callId, callData);
+
         try {
-          const targetUser = await User.findOne({ username: to });
+          const targetUser = await User.getCached(to);
 
           if (!targetUser) {
             console.log(`[${socket.id}] ❌ Пользователь ${to} не найден`);
+            await state.deleteCall(callId);
             return socket.emit('call_failed', {
               to,
               message: 'Пользователь не найден'
@@ -434,7 +647,8 @@ function initSocketHandlers(io, deps) {
               targetUser.fcmToken,
               session.username,
               isVideo,
-              callId
+              callId,
+              CALL_TIMEOUT_MS * 2
             );
 
             if (pushResult) {
@@ -446,31 +660,22 @@ function initSocketHandlers(io, deps) {
                 message: 'Абонент не в сети, пробуждаем устройство...'
               });
 
-              callData.status = 'push_sent';
+              // Пока шёл push, звонок мог быть принят или отменён — статус не откатываем
+              await state.updateCall(callId, { status: 'push_sent' }, { ifStatus: ['calling'] });
 
-              const timeoutId = setTimeout(async () => {
-                const call = activeCalls.get(callId);
+              scheduleCallTimeout(callId, ['push_sent', 'calling'], CALL_TIMEOUT_MS * 2, async (call) => {
+                console.log(`[CallTimeout] ОФФЛАЙН/FCM ЗВОНОК НЕ ОТВЕЧЕН - ${callId}`);
 
-                if (call && (call.status === 'push_sent' || call.status === 'calling')) {
-                  console.log(`[CallTimeout] ОФФЛАЙН/FCM ЗВОНОК НЕ ОТВЕЧЕН - ${callId}`);
+                await sendMissedCallNotification(call.to, call.from, call.isVideo);
 
-                  await sendMissedCallNotification(call.to, call.from, call.isVideo);
-
-                  const callerSocket = io.sockets.sockets.get(socket.id);
-                  if (callerSocket) {
-                    callerSocket.emit('call_timeout', {
-                      to: call.to,
-                      message: 'Абонент недоступен'
-                    });
-                  }
-
-                  activeCalls.delete(callId);
-                }
-              }, CALL_TIMEOUT_MS * 2);
-
-              callData.timeoutId = timeoutId;
+                io.to(socket.id).emit('call_timeout', {
+                  to: call.to,
+                  message: 'Абонент недоступен'
+                });
+              });
             } else {
               console.log(`[${socket.id}] ❌ Не удалось отправить push`);
+              await state.deleteCall(callId);
               socket.emit('call_failed', {
                 to,
                 message: 'Не удалось доставить уведомление'
@@ -478,6 +683,7 @@ function initSocketHandlers(io, deps) {
             }
           } else {
             console.log(`[${socket.id}] ⚠️ FCM токен отсутствует или Firebase не готов`);
+            await state.deleteCall(callId);
             socket.emit('call_failed', {
               to,
               message: 'Пользователь оффлайн и недоступен для звонка',
@@ -486,77 +692,63 @@ function initSocketHandlers(io, deps) {
           }
         } catch (error) {
           console.error(`[${socket.id}] ❌ Ошибка обработки звонка:`, error);
+          await state.deleteCall(callId).catch(() => {});
           socket.emit('call_failed', { to, message: 'Ошибка сервера' });
         }
       }
 
-      activeCalls.set(callId, callData);
-      console.log(`[${socket.id}] Активных звонков: ${activeCalls.size}`);
+      console.log(`[${socket.id}] Активных звонков: ${await state.countCalls()}`);
     });
 
-    socket.on('accept_call', ({ from, callId }) => {
-      const session = activeSessions.get(socket.id);
+    socket.on('accept_call', async ({ from, callId }) => {
+      const session = getSession(socket);
       if (!session) return;
 
       console.log(`[${socket.id}] ✅ ${session.username} принял звонок от ${from}`);
 
       let resolvedCallId = callId;
+      const answer = { status: 'answered', answeredAt: Date.now() };
 
-      if (resolvedCallId && activeCalls.has(resolvedCallId)) {
-        const call = activeCalls.get(resolvedCallId);
-        if (call.timeoutId) { clearTimeout(call.timeoutId); call.timeoutId = null; }
-        call.status = 'answered';
-        call.answeredAt = Date.now();
+      const call = resolvedCallId ? await state.updateCall(resolvedCallId, answer) : null;
+      if (call) {
+        clearCallTimer(resolvedCallId);
         console.log(`[${socket.id}] Время ответа: ${call.answeredAt - call.timestamp}ms`);
       } else {
-        for (const [cid, call] of activeCalls.entries()) {
-          if (call.from === from && call.to === session.username) {
-            if (call.timeoutId) { clearTimeout(call.timeoutId); call.timeoutId = null; }
-            call.status = 'answered';
-            call.answeredAt = Date.now();
-            resolvedCallId = cid;
-            break;
-          }
+        const calls = await state.listCalls();
+        const match = calls.find((c) => c.from === from && c.to === session.username);
+        if (match) {
+          await state.updateCall(match.callId, answer);
+          clearCallTimer(match.callId);
+          resolvedCallId = match.callId;
         }
       }
 
-      const callerSocketId = onlineUsers.get(from);
+      const callerSocketId = await state.getUserSocket(from);
       if (!callerSocketId) return;
 
       socket.emit('cancel_call_notification');
 
-      const callerSocket = io.sockets.sockets.get(callerSocketId);
-      if (callerSocket) {
-        callerSocket.emit('call_accepted', { by: session.username, callId: resolvedCallId });
-      }
+      io.to(callerSocketId).emit('call_accepted', { by: session.username, callId: resolvedCallId });
     });
 
-    socket.on('reject_call', ({ from, callId }) => {
-      const session = activeSessions.get(socket.id);
+    socket.on('reject_call', async ({ from, callId }) => {
+      const session = getSession(socket);
       if (!session) return;
 
       console.log(`[${socket.id}] ❌ ${session.username} отклонил звонок от ${from}`);
 
       socket.emit('cancel_call_notification');
 
-      if (callId && activeCalls.has(callId)) {
-        const call = activeCalls.get(callId);
-        if (call.timeoutId) { clearTimeout(call.timeoutId); }
-        call.status = 'rejected';
-        setTimeout(() => { activeCalls.delete(callId); }, 5000);
+      if (callId && await state.updateCall(callId, { status: 'rejected' })) {
+        clearCallTimer(callId);
+        setTimeout(() => { state.deleteCall(callId).catch(() => {}); }, 5000);
       }
 
-      const callerSocketId = onlineUsers.get(from);
-      if (callerSocketId) {
-        const callerSocket = io.sockets.sockets.get(callerSocketId);
-        if (callerSocket) {
-          callerSocket.emit('call_rejected', { by: session.username });
-        }
-      }
+      await emitToUser(from, 'call_rejected', { by: session.username });
     });
 
-    socket.on('end_call', ({ callId, to }) => {
-      const session = activeSessions.get(socket.id);
+    socket.on('end_call', async ({ callId, to }) => {
+      const session = getSession(socket);
       if (!session) return;
 
       console.log(`[${socket.id}] ${session.username} завершил звонок`);
@@ -564,67 +756,55 @@ function initSocketHandlers(io, deps) {
 
       let peerUsername = to;
 
-      if (callId && activeCalls.has(callId)) {
-        const call = activeCalls.get(callId);
-        if (call.timeoutId) { clearTimeout(call.timeoutId); }
-        call.status = 'ended';
-        call.endedAt = Date.now();
+      const call = callId ? await state.getCall(callId) : null;
+      if (call) {
+        clearCallTimer(callId);
+        const endedAt = Date.now();
         peerUsername = peerUsername || (call.from === session.username ? call.to : call.from);
 
         if (call.answeredAt) {
-          const duration = call.endedAt - call.answeredAt;
+          const duration = endedAt - call.answeredAt;
           console.log(`[${socket.id}] Длительность звонка: ${Math.round(duration / 1000)}с`);
         }
-        activeCalls.delete(callId);
+        await state.deleteCall(callId);
       } else {
-        for (const [cid, call] of activeCalls.entries()) {
-          if (call.from === session.username || call.to === session.username) {
-            peerUsername = peerUsername || (call.from === session.username ? call.to : call.from);
-            if (call.timeoutId) clearTimeout(call.timeoutId);
-            activeCalls.delete(cid);
-            break;
-          }
+        const calls = await state.listCalls();
+        const match = calls.find((c) => c.from === session.username || c.to === session.username);
+        if (match) {
+          peerUsername = peerUsername || (match.from === session.username ? match.to : match.from);
+          clearCallTimer(match.callId);
+          await state.deleteCall(match.callId);
         }
       }
 
       if (peerUsername) {
-        const peerSocketId = onlineUsers.get(peerUsername);
-        if (peerSocketId) {
-          const peerSocket = io.sockets.sockets.get(peerSocketId);
-          if (peerSocket) {
-            peerSocket.emit('call_ended', { by: session.username });
-          }
-        }
+        await emitToUser(peerUsername, 'call_ended', { by: session.username });
       }
     });
 
     socket.on('cancel_call', async ({ to, callId }) => {
-      const session = activeSessions.get(socket.id);
+      const session = getSession(socket);
       if (!session) return;
 
       console.log(`[${socket.id}] ${session.username} отменил звонок для ${to}`);
 
       let call = null;
-      if (callId && activeCalls.has(callId)) {
-        call = activeCalls.get(callId);
-        if (call.timeoutId) { clearTimeout(call.timeoutId); }
-        call.status = 'cancelled';
+      if (callId) {
+        call = await state.updateCall(callId, { status: 'cancelled' });
+        if (call) clearCallTimer(callId);
       }
 
-      const targetSocketId = onlineUsers.get(to);
+      const targetSocketId = await state.getUserSocket(to);
 
       if (targetSocketId) {
-        const targetSocket = io.sockets.sockets.get(targetSocketId);
-        if (targetSocket) {
-          targetSocket.emit('call_cancelled', { from: session.username });
+        io.to(targetSocketId).emit('call_cancelled', { from: session.username });
 
-          const targetUser = await User.findOne({ username: to });
-          if (targetUser && targetUser.fcmToken && firebaseService.isReady()) {
-            await firebaseService.sendCallCancelledNotification(
-              targetUser.fcmToken,
-              session.username
-            );
-          }
+        const targetUser = await User.getCached(to);
+        if (targetUser && targetUser.fcmToken && firebaseService.isReady()) {
+          firebaseService.sendCallCancelledNotification(
+            targetUser.fcmToken,
+            session.username
+          );
         }
       } else {
         console.log(`[${socket.id}] Отправка missed call для ${to}`);
@@ -632,7 +812,7 @@ function initSocketHandlers(io, deps) {
       }
 
       if (callId) {
-        activeCalls.delete(callId);
+        await state.deleteCall(callId);
       }
     });
 
@@ -641,7 +821,7 @@ function initSocketHandlers(io, deps) {
     // ═══════════════════════════════════════════════════════════════════════
 
     socket.on('send_message', async ({ to, message, timestamp, mediaUrl, mediaType, fileName, fileSize, thumbnailUrl }) => {
-      const session = activeSessions.get(socket.id);
+      const session = getSession(socket);
       if (!session) {
         return socket.emit('error', { message: 'Не авторизован' });
       }
@@ -660,6 +840,7 @@ function initSocketHandlers(io, deps) {
 
         // [v8.2] Media message support
         if (mediaUrl) {
+          thumbnailUrl = await resolveThumbnailUrl(mediaUrl, thumbnailUrl);
           msgData.mediaUrl = mediaUrl;
           msgData.mediaType = mediaType || 'image';
           msgData.thumbnailUrl = thumbnailUrl || null;
@@ -669,13 +850,14 @@ function initSocketHandlers(io, deps) {
         }
 
         const newMessage = await Message.create(msgData);
+        // [v8.6] Сводка переписок обновляется атомарно ($set/$inc), без агрегаций
+        Conversation.recordMessage(newMessage);
 
-        const targetSocketId = onlineUsers.get(to);
-        const targetSocket_msg = targetSocketId ? io.sockets.sockets.get(targetSocketId) : null;
-        const isRecipientOnline = !!(targetSocket_msg && targetSocket_msg.connected);
+        const targetSocketId = await state.getUserSocket(to);
+        const isRecipientOnline = targetSocketId ? await isSocketAlive(targetSocketId) : false;
 
         if (isRecipientOnline) {
-          targetSocket_msg.emit('new_message', {
+          io.to(targetSocketId).emit('new_message', {
             from: session.username,
             message: message || '',
             timestamp: newMessage.timestamp,
@@ -695,14 +877,14 @@ function initSocketHandlers(io, deps) {
         } else {
           if (targetSocketId && !isRecipientOnline) {
             console.log(`[${socket.id}] ⚠️ ${to} stale socket в send_message — чистим`);
-            onlineUsers.delete(to);
-            activeSessions.delete(targetSocketId);
+            await state.deleteUserSocket(to, targetSocketId);
+            await state.deleteSession(targetSocketId);
             User.setOnlineStatus(to, false).catch(() => {});
           }
-          // Offline — send FCM push
-          const targetUser = await User.findOne({ username: to });
+          // Offline — send FCM push ([v8.8] через очередь, message_sent не ждёт FCM)
+          const targetUser = await User.getCached(to);
           if (targetUser && targetUser.fcmToken && firebaseService.isReady()) {
-            await firebaseService.sendMessageNotification(
+            firebaseService.sendMessageNotification(
               targetUser.fcmToken,
               session.username,
               message || (mediaType === 'video' ? 'Видео' : 'Фото'),
@@ -723,110 +905,178 @@ function initSocketHandlers(io, deps) {
         });
 
         console.log(`[${socket.id}] 💬 ${session.username} → ${to}: "${(message || '').substring(0, 30)}${mediaUrl ? ' [media]' : ''}"`);
+
+        // [v8.12] Превью появилось между resolveThumbnailUrl и Message.create —
+        // upload уже не найдёт это сообщение, дописываем здесь
+        const hash = mediaUrl && !thumbnailUrl && mediaStore ? mediaStore.hashFromUrl(mediaUrl) : null;
+        if (hash && await mediaStore.hasThumbnail(hash)) {
+          await backfillThumbnail(mediaUrl);
+        }
       } catch (error) {
         console.error(`[${socket.id}] ❌ Ошибка отправки сообщения:`, error);
         socket.emit('error', { message: 'Ошибка отправки сообщения' });
       }
     });
 
-    socket.on('get_messages', async ({ withUser, limit = 100 }) => {
-      const session = activeSessions.get(socket.id);
+    // [v8.4] sinceTimestamp/sinceMessageId — курсор клиентского кэша:
+    // вернуть только изменения (новые сообщения + смена read/delivered).
+    // Без курсора или при переполнении — полная история, как раньше.
+    // [v8.5] before: { timestamp, messageId } — страница старше курсора
+    // (прокрутка вверх) → 'message_history_page' с nextCursor.
+    socket.on('get_messages', async ({ withUser, limit = 100, sinceTimestamp, sinceMessageId, before }) => {
+      const session = getSession(socket);
       if (!session) return;
 
       try {
-        const messages = await Message.getHistory(
-          session.username,
+        if (before) {
+          const page = await Message.getHistoryPage(session.username, withUser, {
+            before,
+            limit: Math.min(limit, 100),
+          });
+          socket.emit('message_history_page', {
+            withUser,
+            messages: page.messages,
+            before,
+            nextCursor: page.nextCursor,
+          });
+          return;
+        }
+
+        if (sinceTimestamp) {
+          const delta = await Message.getHistorySince(
+            session.username,
+            withUser,
+            { sinceTimestamp, sinceMessageId },
+            Math.min(limit, 100)
+          );
+          if (!delta.overflow) {
+            socket.emit('message_history', {
+              withUser,
+              messages: delta.messages,
+              delta: true,
+              cursor: delta.cursor,
+            });
+            return;
+          }
+        }
+
+        // Курсор полной выборки — время до запроса: всё изменённое позже придёт дельтой
+        const cursor = { sinceTimestamp: Date.now(), sinceMessageId: null };
+        const page = await Message.getHistoryPage(session.username, withUser, {
+          limit: Math.min(limit, 100),
+        });
+        socket.emit('message_history', {
           withUser,
-          Math.min(limit, 100)
-        );
-        socket.emit('message_history', { withUser, messages });
+          messages: page.messages,
+          delta: false,
+          cursor,
+          nextCursor: page.nextCursor,
+        });
       } catch (error) {
         console.error(`[${socket.id}] ❌ Ошибка получения истории:`, error);
-        socket.emit('message_history', { withUser, messages: [] });
+        if (before) {
+          socket.emit('message_history_page', { withUser, messages: [], before, nextCursor: null });
+        } else {
+          // delta: true — пустой ответ не должен стирать клиентский кэш
+          socket.emit('message_history', { withUser, messages: [], delta: true });
+        }
       }
     });
 
     // [v8.2] mark_read now notifies the sender in real-time
     socket.on('mark_read', async ({ from, messageId }) => {
-      const session = activeSessions.get(socket.id);
+      const session = getSession(socket);
       if (!session) return;
 
       const result = await Message.markAsRead(from, session.username, messageId);
 
+      // [v8.6] Счётчик непрочитанных в сводке переписки
+      if (result) {
+        await Conversation.markRead(session.username, from, result.modifiedCount, !messageId);
+      }
+
       // Notify the sender that their messages were read
       if (result && result.modifiedCount > 0) {
-        const senderSocketId = onlineUsers.get(from);
-        if (senderSocketId) {
-          const senderSocket = io.sockets.sockets.get(senderSocketId);
-          if (senderSocket && senderSocket.connected) {
-            senderSocket.emit('messages_read', {
-              by: session.username,
-              messageId: messageId || null,
-              count: result.modifiedCount,
-            });
-          }
-        }
+        await emitToUser(from, 'messages_read', {
+          by: session.username,
+          messageId: messageId || null,
+          count: result.modifiedCount,
+        });
       }
     });
 
     socket.on('get_unread_count', async () => {
-      const session = activeSessions.get(socket.id);
+      const session = getSession(socket);
       if (!session) return;
 
-      const unread = await Message.getUnreadCount(session.username);
+      // [v8.6] Из сводок переписок — O(переписок), а не агрегация по сообщениям
+      const unread = await Conversation.getUnreadCount(session.username);
       socket.emit('unread_count', { unread });
     });
 
-    socket.on('typing', ({ to, isTyping }) => {
-      const session = activeSessions.get(socket.id);
+    // [v8.6] Главный экран: превью последнего сообщения + непрочитанные
+    socket.on('get_conversations', async ({ limit = 200 } = {}) => {
+      const session = getSession(socket);
       if (!session) return;
 
-      const targetSocketId = onlineUsers.get(to);
-      if (targetSocketId) {
-        const targetSocket = io.sockets.sockets.get(targetSocketId);
-        if (targetSocket) {
-          targetSocket.emit('typing', { from: session.username, isTyping });
-        }
-      }
+      const conversations = await Conversation.getForUser(session.username, limit);
+      socket.emit('conversations', { conversations });
+    });
+
+    socket.on('typing', async ({ to, isTyping }) => {
+      const session = getSession(socket);
+      if (!session) return;
+
+      await emitToUser(to, 'typing', { from: session.username, isTyping });
     });
 
     // ═══════════════════════════════════════════════════════════════════════
     // WEBRTC СИГНАЛИНГ
     // ═══════════════════════════════════════════════════════════════════════
 
-    socket.on('webrtc_offer', ({ to, offer }) => {
-      const session = activeSessions.get(socket.id);
-      const targetSocketId = onlineUsers.get(to);
+    socket.on('webrtc_offer', async ({ to, offer }) => {
+      const session = getSession(socket);
+      if (!session) return;
 
-      if (session && targetSocketId) {
-        const targetSocket = io.sockets.sockets.get(targetSocketId);
-        if (targetSocket) {
-          targetSocket.emit('webrtc_offer', { from: session.username, offer });
-        }
-      }
+      await emitToUser(to, 'webrtc_offer', { from: session.username, offer });
     });
 
-    socket.on('webrtc_answer', ({ to, answer }) => {
-      const session = activeSessions.get(socket.id);
-      const targetSocketId = onlineUsers.get(to);
+    socket.on('webrtc_answer', async ({ to, answer }) => {
+      const session = getSession(socket);
+      if (!session) return;
 
-      if (session && targetSocketId) {
-        const targetSocket = io.sockets.sockets.get(targetSocketId);
-        if (targetSocket) {
-          targetSocket.emit('webrtc_answer', { from: session.username, answer });
-        }
-      }
+      await emitToUser(to, 'webrtc_answer', { from: session.username, answer });
     });
 
-    socket.on('ice_candidate', ({ to, candidate }) => {
-      const session = activeSessions.get(socket.id);
-      const targetSocketId = onlineUsers.get(to);
+    socket.on('ice_candidate', async ({ to, candidate }) => {
+      const session = getSession(socket);
+      if (!session) return;
 
-      if (session && targetSocketId) {
-        const targetSocket = io.sockets.sockets.get(targetSocketId);
-        if (targetSocket) {
-          targetSocket.emit('ice_candidate', { from: session.username, candidate });
-        }
+      await emitToUser(to, 'ice_candidate', { from: session.username, candidate });
+    });
+
+    // [v8.11] Пачка ICE кандидатов одним фреймом. Получателю без поддержки
+    // 'ice_candidates' (старая версия приложения) пачка раскладывается
+    // обратно в отдельные ice_candidate.
+    socket.on('ice_candidates', async ({ to, candidates }) => {
+      const session = getSession(socket);
+      if (!session || !Array.isArray(candidates) || candidates.length === 0) return;
+
+      if (candidates.length > ICE_BATCH_MAX) {
+        console.warn(`[${socket.id}] ⚠️ ice_candidates от ${session.username}: ${candidates.length} > ${ICE_BATCH_MAX} — отклонено`);
+        return socket.emit('error', { message: `Слишком много ICE кандидатов в пачке (максимум ${ICE_BATCH_MAX})` });
+      }
+
+      const socketId = await state.getUserSocket(to);
+      if (!socketId) return;
+
+      const peerSession = await state.getSession(socketId);
+      if (peerSession && (peerSession.features || []).includes('ice_candidates')) {
+        io.to(socketId).emit('ice_candidates', { from: session.username, candidates });
+        return;
+      }
+      for (const candidate of candidates) {
+        io.to(socketId).emit('ice_candidate', { from: session.username, candidate });
       }
     });
 
@@ -835,7 +1085,7 @@ function initSocketHandlers(io, deps) {
     // ═══════════════════════════════════════════════════════════════════════
 
     socket.on('delete_my_account', async () => {
-      const session = activeSessions.get(socket.id);
+      const session = getSession(socket);
       if (!session) {
         return socket.emit('error', { message: 'Не авторизован' });
       }
@@ -844,17 +1094,21 @@ function initSocketHandlers(io, deps) {
         console.log(`[${socket.id}] ${session.username} удаляет свой аккаунт`);
 
         await User.deleteOne({ username: session.username });
+        User.invalidateCache(session.username);
         await Message.deleteMany({
           $or: [
             { from: session.username },
             { to: session.username }
           ]
         });
+        // [v8.6] Сводки переписок — как при удалении из админки
+        await Conversation.deleteForUser(session.username);
 
         socket.emit('account_deleted', { username: session.username });
 
-        onlineUsers.delete(session.username);
-        activeSessions.delete(socket.id);
+        socket.data.session = null;
+        await state.deleteUserSocket(session.username, socket.id);
+        await state.deleteSession(socket.id);
         socket.disconnect();
 
         console.log(`[${socket.id}] ✅ Аккаунт ${session.username} удален`);
@@ -869,57 +1123,153 @@ function initSocketHandlers(io, deps) {
     // ═══════════════════════════════════════════════════════════════════════
 
     socket.on('disconnect', async () => {
-      const session = activeSessions.get(socket.id);
+      const session = getSession(socket);
+      socket.data.session = null;
 
-      if (session) {
-        for (const [callId, call] of activeCalls.entries()) {
-          if (call.from === session.username || call.to === session.username) {
-            if (call.timeoutId) {
-              clearTimeout(call.timeoutId);
-            }
+      // Сессию уже сняли (вход с другого устройства, бан, удаление) — звонки
+      // и онлайн-статус принадлежат новой сессии
+      if (!session || !(await state.deleteSession(socket.id))) return;
 
-            if (call.status === 'ringing' || call.status === 'calling' || call.status === 'push_sent') {
-              console.log(`[${socket.id}] Обработка незавершённого звонка при отключении: ${call.from} → ${call.to}`);
-
-              await sendMissedCallNotification(call.to, call.from, call.isVideo);
-
-              if (call.from !== session.username) {
-                const callerSocketId = onlineUsers.get(call.from);
-                if (callerSocketId) {
-                  const callerSocket = io.sockets.sockets.get(callerSocketId);
-                  if (callerSocket && callerSocket.connected) {
-                    callerSocket.emit('call_timeout', {
-                      to: call.to,
-                      message: 'Абонент недоступен'
-                    });
-                  }
-                }
-              }
-            }
+      const calls = await state.listCalls();
+      for (const call of calls) {
+        if (call.from === session.username || call.to === session.username) {
+          clearCallTimer(call.callId);
 
-            activeCalls.delete(callId);
-          }
-        }
+          if (call.status === 'ringing' || call.status === 'calling' || call.status === 'push_sent') {
+            console.log(`[${socket.id}] Обработка незавершённого звонка при отключении: ${call.from} → ${call.to}`);
+
+            await sendMissedCallNotification(call.to, call.from, call.isVideo);
 
-        // [FIX A] Race condition guard
-        activeSessions.delete(socket.id);
+            if (call.from !== session.username) {
+              await emitToUser(call.from, 'call_timeout', {
+                to: call.to,
+                message: 'Абонент недоступен'
+              });
+            }
+          }
 
-        const isStillOurSocket = onlineUsers.get(session.username) === socket.id;
-        if (isStillOurSocket) {
-          onlineUsers.delete(session.username);
-          await User.setOnlineStatus(session.username, false);
-          broadcastUserOffline(session.username);
-          await broadcastUsersList();
-        } else {
-          console.log(`[${socket.id}] ⚡ ${session.username} уже переподключился — пропускаем cleanup`);
+          await state.deleteCall(call.callId);
         }
+      }
 
-        console.log(`[${socket.id}] 👋 ${session.username} отключился`);
+      // [FIX A] Race condition guard — [v8.7] атомарно: удалить, только если
+      // пользователь всё ещё на этом сокете (мог переподключиться на другой воркер)
+      const isStillOurSocket = await state.deleteUserSocket(session.username, socket.id);
+      if (isStillOurSocket) {
+        await User.setOnlineStatus(session.username, false);
+        broadcastUserOffline(session.username);
+        await broadcastUsersList();
+      } else {
+        console.log(`[${socket.id}] ⚡ ${session.username} уже переподключился — пропускаем cleanup`);
       }
+
+      console.log(`[${socket.id}] 👋 ${session.username} отключился`);
     });
   });
 
-  return { generateToken };
+  // ═══════════════════════════════════════════════════════════════════════
+  // [v8.7] УБОРКА ЗА УМЕРШИМИ ПРОЦЕССАМИ
+  // ═══════════════════════════════════════════════════════════════════════
+
+  /**
+   * INSTANCE_ID всех живых процессов; null — кто-то не ответил за таймаут
+   * (тогда ничего не снимаем: лучше лишняя запись, чем живой пользователь offline)
+   */
+  async function liveInstances() {
+    const live = new Set([INSTANCE_ID]);
+    if (!clustered) return live;
+    try {
+      const responses = await io.timeout(INSTANCE_PING_TIMEOUT_MS).serverSideEmitWithAck('instance_ping');
+      responses.forEach((id) => live.add(id));
+      return live;
+    } catch (error) {
+      console.warn('[Reaper] ⚠️ Не все процессы ответили на перекличку — пропускаем:', error.message);
+      return null;
+    }
+  }
+
+  /**
+   * Сессии и онлайн-записи, чей процесс умер, и звонки, чьи таймеры умерли
+   * вместе с ним. IpcStateStore снимает сессии упавшего воркера сразу;
+   * здесь — рестарт с RedisStateStore и падение целой машины.
+   */
+  async function reapDeadSessions() {
+    const live = await liveInstances();
+    if (!live) return;
+
+    let reapedSessions = 0;
+    const wentOffline = [];
+    for (const { socketId, session } of await state.listSessions()) {
+      // Сессии до v8.7 без owner — проверяем сам сокет через адаптер
+      const alive = session.owner ? live.has(session.owner) : await isSocketAlive(socketId);
+      if (alive) continue;
+      await state.deleteSession(socketId);
+      reapedSessions++;
+      if (session.username && await state.deleteUserSocket(session.username, socketId)) {
+        wentOffline.push(session.username);
+      }
+    }
+
+    // Онлайн-запись без сессии — сокет давно закрыт
+    for (const { username, socketId } of await state.listUserSockets()) {
+      if (await state.getSession(socketId)) continue;
+      if (await state.deleteUserSocket(username, socketId)) {
+        wentOffline.push(username);
+      }
+    }
+
+    // Запас в CALL_TIMEOUT_MS: живой таймер push_sent должен успеть сработать сам
+    let reapedCalls = 0;
+    for (const call of await state.listCalls()) {
+      if (isRingingCall(call) && Date.now() - (call.timestamp || 0) > STALE_CALL_MS + CALL_TIMEOUT_MS) {
+        clearCallTimer(call.callId);
+        await state.deleteCall(call.callId);
+        reapedCalls++;
+      }
+    }
+
+    for (const username of wentOffline) {
+      await User.setOnlineStatus(username, false).catch(() => {});
+      broadcastUserOffline(username);
+    }
+    if (wentOffline.length > 0) {
+      await broadcastUsersList();
+    }
+    if (reapedSessions > 0 || wentOffline.length > 0 || reapedCalls > 0) {
+      console.log(`[Reaper] 🧹 Снято сессий: ${reapedSessions}, онлайн-записей: ${wentOffline.length}, звонков: ${reapedCalls}`);
+    }
+  }
+
+  const reapTimer = setInterval(() => {
+    reapDeadSessions().catch((error) => {
+      console.error('[Reaper] ❌ Ошибка уборки:', error.message);
+    });
+  }, SESSION_REAP_INTERVAL_MS);
+  reapTimer.unref();
+
+  /**
+   * [v8.7] Остановка процесса: таймеры звонков и сессии своих сокетов.
+   * Чужие воркеры/машины не трогаем — их пользователи остаются онлайн.
+   */
+  async function shutdown() {
+    clearInterval(reapTimer);
+    for (const timeoutId of callTimers.values()) {
+      clearTimeout(timeoutId);
+    }
+    callTimers.clear();
+
+    for (const socket of io.sockets.sockets.values()) {
+      const session = getSession(socket);
+      if (!session) continue;
+      socket.data.session = null;
+      await state.deleteSession(socket.id);
+      if (await state.deleteUserSocket(session.username, socket.id)) {
+        await User.setOnlineStatus(session.username, false);
+      }
+    }
+  }
+
+  return { generateToken, shutdown, backfillThumbnail };
 }
 
 module.exports = { initSocketHandlers };
@@ -0,0 +1,143 @@
+// state/IpcStateStore.js - v8.7 (cluster workers share the primary's state over IPC)
+
+/**
+ * ═══════════════════════════════════════════════════════════
+ * IpcStateStore v8.7 - ОБЩЕЕ СОСТОЯНИЕ ВОРКЕРОВ ЧЕРЕЗ PRIMARY
+ * ═══════════════════════════════════════════════════════════
+ *
+ * Кластер на одной машине без внешних зависимостей: primary держит
+ * MemoryStateStore, воркеры обращаются к нему запросом/ответом по IPC
+ * (process.send). Операции O(1) по Map — primary не становится узким
+ * местом, задержка — десятки микросекунд.
+ *
+ * Primary помнит, какой воркер создал сессию: при падении воркера его
+ * сессии и онлайн-записи удаляются, чтобы маршрутизация не вела в пустоту.
+ *
+ * Для нескольких машин — RedisStateStore (REDIS_URL).
+ */
+
+const STATE_SOURCE = '_sc_state';
+const REQUEST_TIMEOUT_MS = 5000;
+
+// Методы хранилища, доступные воркерам
+const OPERATIONS = new Set([
+  'setSession', 'getSession', 'deleteSession', 'countSessions', 'listSessions',
+  'setUserSocket', 'getUserSocket', 'deleteUserSocket', 'listOnlineUsers', 'listUserSockets', 'countOnlineUsers',
+  'setCall', 'getCall', 'updateCall', 'deleteCall', 'listCalls', 'countCalls',
+  'setAdminSession', 'getAdminSession', 'deleteAdminSession',
+]);
+
+class IpcStateStore {
+  constructor() {
+    this.kind = 'ipc';
+    this.nextId = 1;
+    this.pending = new Map(); // id -> { resolve, reject, timer }
+
+    this.onMessage = (message) => {
+      if (!message || message.source !== STATE_SOURCE || !message.id) return;
+      const request = this.pending.get(message.id);
+      if (!request) return;
+
+      this.pending.delete(message.id);
+      clearTimeout(request.timer);
+      if (message.error) {
+        request.reject(new Error(message.error));
+      } else {
+        request.resolve(message.result);
+      }
+    };
+    process.on('message', this.onMessage);
+
+    OPERATIONS.forEach((op) => {
+      this[op] = (...args) => this.request(op, args);
+    });
+  }
+
+  async connect() {
+    if (typeof process.send !== 'function') {
+      throw new Error('IpcStateStore работает только в воркере кластера');
+    }
+    return this;
+  }
+
+  async close() {
+    process.removeListener('message', this.onMessage);
+    for (const request of this.pending.values()) {
+      clearTimeout(request.timer);
+      request.reject(new Error('IpcStateStore закрыт'));
+    }
+    this.pending.clear();
+  }
+
+  request(op, args) {
+    return new Promise((resolve, reject) => {
+      const id = this.nextId++;
+      const timer = setTimeout(() => {
+        this.pending.delete(id);
+        reject(new Error(`IpcStateStore: нет ответа на ${op} за ${REQUEST_TIMEOUT_MS} мс`));
+      }, REQUEST_TIMEOUT_MS);
+
+      this.pending.set(id, { resolve, reject, timer });
+      process.send({ source: STATE_SOURCE, id, op, args });
+    });
+  }
+}
+
+/**
+ * Primary: обслуживать запросы воркеров из store (обычно MemoryStateStore)
+ */
+function serveStateStore(cluster, store) {
+  const ownedSessions = new Map(); // workerId -> Set(socketId)
+
+  cluster.on('message', async (worker, message) => {
+    if (!message || message.source !== STATE_SOURCE) return;
+    const { id, op, args = [] } = message;
+
+    let reply;
+    try {
+      if (!OPERATIONS.has(op)) {
+        throw new Error(`неизвестная операция ${op}`);
+      }
+      const result = await store[op](...args);
+      trackOwnership(ownedSessions, worker.id, op, args[0]);
+      reply = { source: STATE_SOURCE, id, result: result === undefined ? null : result };
+    } catch (error) {
+      console.error(`[StateStore] ${op} ошибка:`, error.message);
+      reply = { source: STATE_SOURCE, id, error: error.message };
+    }
+
+    if (worker.isConnected()) {
+      worker.send(reply);
+    }
+  });
+
+  cluster.on('exit', async (worker) => {
+    const socketIds = ownedSessions.get(worker.id);
+    ownedSessions.delete(worker.id);
+    if (!socketIds || socketIds.size === 0) return;
+
+    let released = 0;
+    for (const socketId of socketIds) {
+      const session = await store.getSession(socketId);
+      await store.deleteSession(socketId);
+      if (session && await store.deleteUserSocket(session.username, socketId)) {
+        released++;
+      }
+    }
+    console.log(`[StateStore] Воркер ${worker.id} завершён — снято сессий: ${socketIds.size}, онлайн-записей: ${released}`);
+  });
+}
+
+function trackOwnership(ownedSessions, workerId, op, socketId) {
+  if (op === 'setSession') {
+    if (!ownedSessions.has(workerId)) ownedSessions.set(workerId, new Set());
+    ownedSessions.get(workerId).add(socketId);
+  } else if (op === 'deleteSession') {
+    // Чужую сессию может снять другой воркер (вход с другого устройства)
+    for (const owned of ownedSessions.values()) {
+      owned.delete(socketId);
+    }
+  }
+}
+
+module.exports = { IpcStateStore, serveStateStore };
@@ -0,0 +1,158 @@
+// state/MemoryStateStore.js - v8.7 (in-process state for a single node)
+
+/**
+ * ═══════════════════════════════════════════════════════════
+ * MemoryStateStore v8.7 - СОСТОЯНИЕ МАРШРУТИЗАЦИИ В ПАМЯТИ
+ * ═══════════════════════════════════════════════════════════
+ *
+ * Те же Map, что раньше жили в server.js (activeSessions, onlineUsers,
+ * activeCalls, adminSessions), за асинхронным интерфейсом хранилища.
+ * Один процесс — режим по умолчанию; в кластере этот же объект держит
+ * primary и обслуживает воркеров по IPC (IpcStateStore).
+ *
+ * Интерфейс общий для всех реализаций (Memory / Ipc / Redis):
+ *   сессии сокетов      setSession / getSession / deleteSession / countSessions /
+ *                       listSessions
+ *   онлайн-пользователи setUserSocket / getUserSocket / deleteUserSocket /
+ *                       listOnlineUsers / listUserSockets / countOnlineUsers
+ *   звонки              setCall / getCall / updateCall / deleteCall /
+ *                       listCalls / countCalls
+ *   админ-сессии        setAdminSession / getAdminSession / deleteAdminSession
+ *
+ * Значения — простые JSON-объекты: таймеры и сокеты здесь не хранятся.
+ */
+
+class MemoryStateStore {
+  constructor() {
+    this.kind = 'memory';
+    this.sessions = new Map(); // socketId -> { username, token, isAdmin, loginTime }
+    this.onlineUsers = new Map(); // username -> socketId
+    this.calls = new Map(); // callId -> { callId, from, to, isVideo, timestamp, status, ... }
+    this.adminSessions = new Map(); // sessionId -> { authenticated, username, timestamp, expiresAt }
+  }
+
+  async connect() {
+    return this;
+  }
+
+  async close() {}
+
+  // ═══════════════════════════════════════════════════════════
+  // СЕССИИ СОКЕТОВ
+  // ═══════════════════════════════════════════════════════════
+
+  async setSession(socketId, session) {
+    this.sessions.set(socketId, session);
+  }
+
+  async getSession(socketId) {
+    return this.sessions.get(socketId) || null;
+  }
+
+  async deleteSession(socketId) {
+    return this.sessions.delete(socketId);
+  }
+
+  async countSessions() {
+    return this.sessions.size;
+  }
+
+  async listSessions() {
+    return Array.from(this.sessions, ([socketId, session]) => ({ socketId, session }));
+  }
+
+  // ═══════════════════════════════════════════════════════════
+  // ОНЛАЙН-ПОЛЬЗОВАТЕЛИ
+  // ═══════════════════════════════════════════════════════════
+
+  async setUserSocket(username, socketId) {
+    this.onlineUsers.set(username, socketId);
+  }
+
+  async getUserSocket(username) {
+    return this.onlineUsers.get(username) || null;
+  }
+
+  /**
+   * socketId задан — удалить, только если пользователь всё ещё на этом сокете
+   * (переподключение на другом воркере не должно стираться старым disconnect)
+   */
+  async deleteUserSocket(username, socketId = null) {
+    if (socketId && this.onlineUsers.get(username) !== socketId) return false;
+    return this.onlineUsers.delete(username);
+  }
+
+  async listOnlineUsers() {
+    return Array.from(this.onlineUsers.keys());
+  }
+
+  async listUserSockets() {
+    return Array.from(this.onlineUsers, ([username, socketId]) => ({ username, socketId }));
+  }
+
+  async countOnlineUsers() {
+    return this.onlineUsers.size;
+  }
+
+  // ═══════════════════════════════════════════════════════════
+  // ЗВОНКИ
+  // ═══════════════════════════════════════════════════════════
+
+  async setCall(callId, call) {
+    this.calls.set(callId, { ...call, callId });
+  }
+
+  async getCall(callId) {
+    return this.calls.get(callId) || null;
+  }
+
+  /**
+   * Атомарно дополнить звонок полями patch. ifStatus — список статусов,
+   * из которых переход разрешён (таймаут не должен перетереть 'answered').
+   * Возвращает обновлённый звонок или null.
+   */
+  async updateCall(callId, patch, { ifStatus = null } = {}) {
+    const call = this.calls.get(callId);
+    if (!call) return null;
+    if (ifStatus && !ifStatus.includes(call.status)) return null;
+    const updated = { ...call, ...patch };
+    this.calls.set(callId, updated);
+    return updated;
+  }
+
+  async deleteCall(callId) {
+    return this.calls.delete(callId);
+  }
+
+  async listCalls() {
+    return Array.from(this.calls.values());
+  }
+
+  async countCalls() {
+    return this.calls.size;
+  }
+
+  // ═══════════════════════════════════════════════════════════
+  // АДМИН-СЕССИИ
+  // ═══════════════════════════════════════════════════════════
+
+  async setAdminSession(sessionId, session, ttlMs) {
+    this.adminSessions.set(sessionId, { ...session, expiresAt: Date.now() + ttlMs });
+  }
+
+  async getAdminSession(sessionId) {
+    const session = this.adminSessions.get(sessionId);
+    if (!session) return null;
+    if (Date.now() > session.expiresAt) {
+      this.adminSessions.delete(sessionId);
+      return null;
+    }
+    return session;
+  }
+
+  async deleteAdminSession(sessionId) {
+    return this.adminSessions.delete(sessionId);
+  }
+}
+
+module.exports = MemoryStateStore;
@@ -0,0 +1,206 @@
+// state/RedisStateStore.js - v8.7 (networked state for multi-host deployments)
+
+/**
+ * ═══════════════════════════════════════════════════════════
+ * RedisStateStore v8.7 - ОБЩЕЕ СОСТОЯНИЕ НА НЕСКОЛЬКО МАШИН
+ * ═══════════════════════════════════════════════════════════
+ *
+ * Включается переменной REDIS_URL. Пакет redis не входит в обязательные
+ * зависимости: npm install redis (и @socket.io/redis-adapter для
+ * доставки событий между машинами).
+ *
+ * Раскладка ключей (префикс REDIS_PREFIX, по умолчанию "securecall:"):
+ *   sessions      HASH socketId -> JSON сессии
+ *   online        HASH username -> socketId
+ *   calls         HASH callId   -> JSON звонка
+ *   admin:<id>    STRING JSON с PX = TTL
+ *
+ * Условные операции (deleteUserSocket, updateCall с ifStatus) — Lua,
+ * атомарно относительно других воркеров и машин. Состояние переживает
+ * перезапуск сервера: звонки и онлайн-записи не теряются.
+ * Записи процессов, которых больше нет, снимает reapDeadSessions
+ * (socketHandlers.js) по полю owner сессии.
+ */
+
+// Удалить username, только если он всё ещё указывает на этот сокет
+const DELETE_IF_EQUALS = `
+if redis.call('HGET', KEYS[1], ARGV[1]) == ARGV[2] then
+  return redis.call('HDEL', KEYS[1], ARGV[1])
+end
+return 0`;
+
+// Слить patch в звонок; ARGV[3] — JSON-список разрешённых статусов или ""
+const UPDATE_CALL = `
+local raw = redis.call('HGET', KEYS[1], ARGV[1])
+if not raw then return false end
+local call = cjson.decode(raw)
+if ARGV[3] ~= '' then
+  local allowed = false
+  for _, status in ipairs(cjson.decode(ARGV[3])) do
+    if call.status == status then allowed = true end
+  end
+  if not allowed then return false end
+end
+for key, value in pairs(cjson.decode(ARGV[2])) do
+  call[key] = value
+end
+local encoded = cjson.encode(call)
+redis.call('HSET', KEYS[1], ARGV[1], encoded)
+return encoded`;
+
+class RedisStateStore {
+  constructor(url, { prefix = process.env.REDIS_PREFIX || 'securecall:' } = {}) {
+    let redis;
+    try {
+      redis = require('redis');
+    } catch (error) {
+      throw new Error('REDIS_URL задан, но пакет redis не установлен (npm install redis)');
+    }
+
+    this.kind = 'redis';
+    this.url = url;
+    this.client = redis.createClient({ url });
+    this.client.on('error', (error) => {
+      console.error('[StateStore] Redis ошибка:', error.message);
+    });
+    this.keys = {
+      sessions: `${prefix}sessions`,
+      online: `${prefix}online`,
+      calls: `${prefix}calls`,
+      admin: (sessionId) => `${prefix}admin:${sessionId}`,
+    };
+    this.ready = null;
+  }
+
+  connect() {
+    if (!this.ready) {
+      this.ready = this.client.connect().then(() => {
+        console.log(`[StateStore] ✅ Redis подключен: ${this.url.replace(/\/\/.*@/, '//***@')}`);
+        return this;
+      });
+    }
+    return this.ready;
+  }
+
+  async close() {
+    if (this.client.isOpen) {
+      await this.client.quit();
+    }
+  }
+
+  // ═══════════════════════════════════════════════════════════
+  // СЕССИИ СОКЕТОВ
+  // ═══════════════════════════════════════════════════════════
+
+  async setSession(socketId, session) {
+    await this.client.hSet(this.keys.sessions, socketId, JSON.stringify(session));
+  }
+
+  async getSession(socketId) {
+    const raw = await this.client.hGet(this.keys.sessions, socketId);
+    return raw ? JSON.parse(raw) : null;
+  }
+
+  async deleteSession(socketId) {
+    return (await this.client.hDel(this.keys.sessions, socketId)) > 0;
+  }
+
+  async countSessions() {
+    return this.client.hLen(this.keys.sessions);
+  }
+
+  async listSessions() {
+    const all = await this.client.hGetAll(this.keys.sessions);
+    return Object.entries(all).map(([socketId, raw]) => ({ socketId, session: JSON.parse(raw) }));
+  }
+
+  // ═══════════════════════════════════════════════════════════
+  // ОНЛАЙН-ПОЛЬЗОВАТЕЛИ
+  // ═══════════════════════════════════════════════════════════
+
+  async setUserSocket(username, socketId) {
+    await this.client.hSet(this.keys.online, username, socketId);
+  }
+
+  async getUserSocket(username) {
+    return (await this.client.hGet(this.keys.online, username)) || null;
+  }
+
+  async deleteUserSocket(username, socketId = null) {
+    if (!socketId) {
+      return (await this.client.hDel(this.keys.online, username)) > 0;
+    }
+    const removed = await this.client.eval(DELETE_IF_EQUALS, {
+      keys: [this.keys.online],
+      arguments: [username, socketId],
+    });
+    return removed > 0;
+  }
+
+  async listOnlineUsers() {
+    return this.client.hKeys(this.keys.online);
+  }
+
+  async listUserSockets() {
+    const all = await this.client.hGetAll(this.keys.online);
+    return Object.entries(all).map(([username, socketId]) => ({ username, socketId }));
+  }
+
+  async countOnlineUsers() {
+    return this.client.hLen(this.keys.online);
+  }
+
+  // ═══════════════════════════════════════════════════════════
+  // ЗВОНКИ
+  // ═══════════════════════════════════════════════════════════
+
+  async setCall(callId, call) {
+    await this.client.hSet(this.keys.calls, callId, JSON.stringify({ ...call, callId }));
+  }
+
+  async getCall(callId) {
+    const raw = await this.client.hGet(this.keys.calls, callId);
+    return raw ? JSON.parse(raw) : null;
+  }
+
+  async updateCall(callId, patch, { ifStatus = null } = {}) {
+    const raw = await this.client.eval(UPDATE_CALL, {
+      keys: [this.keys.calls],
+      arguments: [callId, JSON.stringify(patch), ifStatus ? JSON.stringify(ifStatus) : ''],
+    });
+    return raw ? JSON.parse(raw) : null;
+  }
+
+  async deleteCall(callId) {
+    return (await this.client.hDel(this.keys.calls, callId)) > 0;
+  }
+
+  async listCalls() {
+    const all = await this.client.hGetAll(this.keys.calls);
+    return Object.values(all).map((raw) => JSON.parse(raw));
+  }
+
+  async countCalls() {
+    return this.client.hLen(this.keys.calls);
+  }
+
+  // ═══════════════════════════════════════════════════════════
+  // АДМИН-СЕССИИ
+  // ═══════════════════════════════════════════════════════════
+
+  async setAdminSession(sessionId, session, ttlMs) {
+    const value = JSON.stringify({ ...session, expiresAt: Date.now() + ttlMs });
+    await this.client.set(this.keys.admin(sessionId), value, { PX: ttlMs });
+  }
+
+  async getAdminSession(sessionId) {
+    const raw = await this.client.get(this.keys.admin(sessionId));
+    return raw ? JSON.parse(raw) : null;
+  }
+
+  async deleteAdminSession(sessionId) {
+    return (await this.client.del(this.keys.admin(sessionId))) > 0;
+  }
+}
+
+module.exports = RedisStateStore;
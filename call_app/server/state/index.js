@@ -0,0 +1,35 @@
+// state/index.js - v8.7 (shared state layer selection)
+
+/**
+ * Выбор хранилища состояния маршрутизации:
+ *   REDIS_URL задан          → RedisStateStore (несколько машин, переживает рестарт)
+ *   воркер npm run start:cluster → IpcStateStore (состояние у primary)
+ *   иначе                    → MemoryStateStore (один процесс, как раньше)
+ */
+
+const MemoryStateStore = require('./MemoryStateStore');
+const { IpcStateStore, serveStateStore } = require('./IpcStateStore');
+
+// Выставляется primary в cluster.js — чужие кластер-менеджеры (pm2) не в счёт
+function isClusterWorker() {
+  return process.env.SECURECALL_CLUSTER_WORKER === '1' && typeof process.send === 'function';
+}
+
+function createStateStore() {
+  if (process.env.REDIS_URL) {
+    const RedisStateStore = require('./RedisStateStore');
+    return new RedisStateStore(process.env.REDIS_URL);
+  }
+  if (isClusterWorker()) {
+    return new IpcStateStore();
+  }
+  return new MemoryStateStore();
+}
+
+module.exports = {
+  createStateStore,
+  isClusterWorker,
+  serveStateStore,
+  MemoryStateStore,
+  IpcStateStore,
+};
@@ -17,6 +17,9 @@ import {name as appName} from './app.json';
 // Register Headless JS Task for incoming calls when app is killed
 import './src/IncomingCallHeadlessTask';
 
+// Register Headless JS Task started by ReactRuntimeKeeper after background warm-up
+import './src/RuntimeWarmupHeadlessTask';
+
 console.log('╔════════════════════════════════════════╗');
 console.log('║  INDEX.JS v3.0 - ФИНАЛ                ║');
 console.log('╚════════════════════════════════════════╝');
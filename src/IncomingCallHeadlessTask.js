@@ -1,13 +1,14 @@
 import {AppRegistry} from 'react-native';
 import AsyncStorage from '@react-native-async-storage/async-storage';
 import SocketService from './services/SocketService';
+import WebRTCService from './services/WebRTCService';
 
 /**
  * IncomingCallTask — Headless JS Task that runs when FCM delivers
  * an incoming_call push while the app is killed.
  *
  * Purpose:
- *  1. Read saved credentials from AsyncStorage
+ *  1. Read saved credentials (sync NativeStorage, AsyncStorage fallback)
  *  2. Connect to the Socket.IO server
  *  3. Authenticate with token
  *  4. Save a pendingIncomingCall marker so the UI knows the socket is ready
@@ -17,18 +18,18 @@ import SocketService from './services/SocketService';
  * the socket is already connected and authenticated — acceptCall() works immediately.
  */
 const IncomingCallTask = async taskData => {
-  const {from, callId, isVideo} = taskData;
+  const {from, callId, isVideo, ringTimeoutMs} = taskData;
 
   console.log('[HeadlessTask] Started for call from:', from, 'callId:', callId);
 
   try {
-    const username = await AsyncStorage.getItem('username');
-    const token = await AsyncStorage.getItem('token');
+    const credentials = await SocketService.getSavedCredentials();
 
-    if (!username || !token) {
+    if (!credentials) {
       console.log('[HeadlessTask] No credentials found — task finished');
       return;
     }
+    const {username, token} = credentials;
 
     // Connect and authenticate
     if (!SocketService.isConnected()) {
@@ -43,6 +44,9 @@ const IncomingCallTask = async taskData => {
 
     console.log('[HeadlessTask] Socket ready for call acceptance');
 
+    // [v14.11] Warm up the peer connection while ringing (no camera/mic yet)
+    WebRTCService.prewarm({callId, from, isVideo: !!isVideo, ringTimeoutMs: ringTimeoutMs || 0});
+
     // Save pending call info so the UI can detect pre-established connection
     await AsyncStorage.setItem(
       'pendingIncomingCall',
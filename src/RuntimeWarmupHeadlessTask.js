@@ -0,0 +1,45 @@
+import {AppRegistry} from 'react-native';
+import SocketService from './services/SocketService';
+
+/**
+ * RuntimeWarmupTask — Headless JS Task started by ReactRuntimeKeeper right
+ * after ConnectionForegroundService has warmed up the React instance.
+ *
+ * Purpose:
+ *  1. Read saved credentials (sync NativeStorage, AsyncStorage fallback)
+ *  2. Connect + authenticate SocketService (the session moves from the native
+ *     SignalingClient to JS via ConnectionService.attachJsSession)
+ *
+ * The task finishes right after authentication — the socket lives on in the
+ * SocketService singleton for as long as the React context (keep-warm window).
+ * IncomingCallTask and MainActivity then run in this same context.
+ */
+const RuntimeWarmupTask = async () => {
+  console.log('[WarmupTask] Started');
+
+  try {
+    const credentials = await SocketService.getSavedCredentials();
+
+    if (!credentials) {
+      console.log('[WarmupTask] No credentials found — task finished');
+      return;
+    }
+    const {username, token} = credentials;
+
+    if (!SocketService.isConnected()) {
+      console.log('[WarmupTask] Connecting to server...');
+      await SocketService.connect();
+    }
+
+    if (SocketService.getConnectionState() !== 'AUTHENTICATED') {
+      console.log('[WarmupTask] Authenticating...');
+      await SocketService.authenticateWithToken(username, token);
+    }
+
+    console.log('[WarmupTask] Runtime warm, socket authenticated');
+  } catch (error) {
+    console.error('[WarmupTask] Error:', error.message);
+  }
+};
+
+AppRegistry.registerHeadlessTask('RuntimeWarmupTask', () => RuntimeWarmupTask);
@@ -12,6 +12,7 @@ import {RTCView} from 'react-native-webrtc';
 import SocketService from '../services/SocketService';
 import WebRTCService from '../services/WebRTCService';
 import NotificationService from '../services/NotificationService';
+import ConnectionService from '../services/ConnectionService';
 
 const {width, height} = Dimensions.get('window');
 
@@ -53,6 +54,8 @@ export default function CallScreen({route, navigation}) {
   const callIdRef = useRef(initialCallId || null);
   // [FIX] callStateRef to avoid stale closures in WebRTC/ICE callbacks
   const callStateRef = useRef('initializing');
+  // Telecom 'end' приходит в подписку из mount-эффекта — нужен актуальный handleEndCall
+  const handleEndCallRef = useRef(null);
 
   // Helper: update callState + ref atomically, never downgrade from 'connected'
   const updateCallState = (newState) => {
@@ -79,6 +82,17 @@ export default function CallScreen({route, navigation}) {
     // Отменить уведомления
     NotificationService.cancelAllNotifications();
 
+    // Wake lock режима CALL (CPU + low-latency Wi-Fi) — только на время звонка
+    // (заодно переводит Telecom-соединение входящего звонка в active)
+    ConnectionService.setCallActive(true);
+
+    // Отбой с Bluetooth-гарнитуры / системного UI (Telecom)
+    const unsubscribeCallAction = ConnectionService.onCallAction(event => {
+      if (event?.action !== 'end') return;
+      if (event.callId && callIdRef.current && event.callId !== callIdRef.current) return;
+      handleEndCallRef.current?.();
+    });
+
     // Инициализация
     initialize();
 
@@ -96,6 +110,7 @@ export default function CallScreen({route, navigation}) {
     return () => {
       console.log('CallScreen v8.0: РАЗМОНТИРОВАНИЕ');
       isMountedRef.current = false;
+      unsubscribeCallAction();
       cleanup();
     };
   }, []);
@@ -107,10 +122,18 @@ export default function CallScreen({route, navigation}) {
     try {
       console.log('CallScreen v8.0: ИНИЦИАЛИЗАЦИЯ');
 
+      // [v14.11] Принимающий: отсчёт таймингов после ответа (прогрев — SocketService)
+      if (!isCaller) {
+        WebRTCService.markCallAccepted(callIdRef.current);
+      }
+
       // 1. Загрузить ICE/TURN конфигурацию с сервера (Signal-style)
+      // [v14.10] Непросроченный кэш (JS или нативный prefetch с push) — без сети
       console.log('→ Шаг 1: Загрузка ICE конфигурации...');
-      await WebRTCService.fetchIceServers();
-      if (!isMountedRef.current) return;
+      if (!WebRTCService.getCachedIceServers()) {
+        await WebRTCService.fetchIceServers();
+        if (!isMountedRef.current) return;
+      }
       console.log('✓ Шаг 1: ICE конфигурация загружена');
 
       // 2. Получить локальный поток
@@ -121,8 +144,9 @@ export default function CallScreen({route, navigation}) {
       console.log('✓ Шаг 2: Медиа получено');
 
       // 3. Создать PeerConnection
+      // [v14.11] Принимающий забирает PeerConnection, прогретый пока звонил
       console.log('→ Шаг 3: Создание PeerConnection...');
-      WebRTCService.createPeerConnection();
+      WebRTCService.createPeerConnection({callId: isCaller ? null : callIdRef.current});
       console.log('✓ Шаг 3: PeerConnection создан');
 
       // 4. Настроить слушателей
@@ -279,6 +303,7 @@ export default function CallScreen({route, navigation}) {
     // WebRTC события
     WebRTCService.on('remoteStream', handleRemoteStream);
     WebRTCService.on('iceCandidate', handleLocalIceCandidate);
+    WebRTCService.on('iceGatheringComplete', handleIceGatheringComplete);
     WebRTCService.on('iceConnectionStateChange', handleIceStateChange);
     WebRTCService.on('connectionStateChange', handleConnectionStateChange);
 
@@ -287,6 +312,7 @@ export default function CallScreen({route, navigation}) {
     SocketService.on('webrtc_offer', handleOffer);
     SocketService.on('webrtc_answer', handleAnswer);
     SocketService.on('ice_candidate', handleRemoteIceCandidate);
+    SocketService.on('ice_candidates', handleRemoteIceCandidates);
     SocketService.on('call_rejected', handleCallRejected);
     SocketService.on('call_ended', handleCallEnded);
     SocketService.on('call_cancelled', handleCallCancelled);
@@ -299,6 +325,7 @@ export default function CallScreen({route, navigation}) {
   const cleanupListeners = () => {
     WebRTCService.off('remoteStream', handleRemoteStream);
     WebRTCService.off('iceCandidate', handleLocalIceCandidate);
+    WebRTCService.off('iceGatheringComplete', handleIceGatheringComplete);
     WebRTCService.off('iceConnectionStateChange', handleIceStateChange);
     WebRTCService.off('connectionStateChange', handleConnectionStateChange);
 
@@ -306,6 +333,7 @@ export default function CallScreen({route, navigation}) {
     SocketService.off('webrtc_offer', handleOffer);
     SocketService.off('webrtc_answer', handleAnswer);
     SocketService.off('ice_candidate', handleRemoteIceCandidate);
+    SocketService.off('ice_candidates', handleRemoteIceCandidates);
     SocketService.off('call_rejected', handleCallRejected);
     SocketService.off('call_ended', handleCallEnded);
     SocketService.off('call_cancelled', handleCallCancelled);
@@ -338,8 +366,13 @@ export default function CallScreen({route, navigation}) {
     startCallTimer();
   };
 
+  // [v14.8] Local candidates are batched (ice_candidates) instead of one frame each
   const handleLocalIceCandidate = candidate => {
-    SocketService.sendIceCandidate(peer, candidate);
+    SocketService.queueIceCandidate(peer, candidate);
+  };
+
+  const handleIceGatheringComplete = () => {
+    SocketService.flushIceCandidates(peer);
   };
 
   const handleIceStateChange = state => {
@@ -433,6 +466,16 @@ export default function CallScreen({route, navigation}) {
     }
   };
 
+  const handleRemoteIceCandidates = async data => {
+    if (data.from !== peer) return;
+
+    try {
+      await WebRTCService.addIceCandidates(data.candidates);
+    } catch (error) {
+      console.warn('⚠️ Ошибка добавления ICE:', error.message);
+    }
+  };
+
   const handleCallRejected = data => {
     if (!isMountedRef.current) return;
     console.log('✗ Звонок отклонён');
@@ -483,6 +526,7 @@ export default function CallScreen({route, navigation}) {
     cleanup();
     navigation.goBack();
   };
+  handleEndCallRef.current = handleEndCall;
 
   const cleanup = () => {
     if (isCleanedUpRef.current) return;
@@ -499,7 +543,9 @@ export default function CallScreen({route, navigation}) {
     }
 
     cleanupListeners();
+    SocketService.flushIceCandidates(peer, true);
     WebRTCService.cleanup();
+    ConnectionService.setCallActive(false);
 
     if (isMountedRef.current) {
       setLocalStream(null);
@@ -16,6 +16,8 @@ import {
   Dimensions,
 } from 'react-native';
 import SocketService from '../services/SocketService';
+import MessageStore from '../services/MessageStore';
+import CallNotificationModule from '../specs/NativeCallNotificationModule';
 import {SERVER_URL} from '../config/server.config';
 import {useTheme} from '../theme/ThemeContext';
 
@@ -69,6 +71,36 @@ function parseMessageText(text) {
   return parts.length > 0 ? parts : [{type: 'text', value: text}];
 }
 
+function toChatMessage(msg, username) {
+  return {
+    id: msg.id || msg.messageId || msg.timestamp?.toString() || Math.random().toString(),
+    from: msg.from,
+    to: msg.to,
+    message: msg.message,
+    timestamp: msg.timestamp,
+    isMine: msg.from === username,
+    delivered: msg.delivered || false,
+    read: msg.read || false,
+    mediaUrl: msg.mediaUrl || null,
+    mediaType: msg.mediaType || null,
+    thumbnailUrl: msg.thumbnailUrl || null,
+    fileName: msg.fileName || null,
+    fileSize: msg.fileSize || null,
+  };
+}
+
+/**
+ * [v14.5] Delta from the server on top of what is on screen: replace by id,
+ * newest first (inverted list)
+ */
+function mergeMessages(current, incoming) {
+  const byId = new Map(current.map(msg => [msg.id, msg]));
+  incoming.forEach(msg => byId.set(msg.id, {...byId.get(msg.id), ...msg}));
+  return Array.from(byId.values()).sort(
+    (a, b) => new Date(b.timestamp).getTime() - new Date(a.timestamp).getTime(),
+  );
+}
+
 export default function ChatScreen({route, navigation}) {
   const {username, targetUser} = route.params;
   const {colors, isDark} = useTheme();
@@ -78,26 +110,31 @@ export default function ChatScreen({route, navigation}) {
   const [isConnected, setIsConnected] = useState(true);
   const [isLoadingHistory, setIsLoadingHistory] = useState(true);
   const [isUploading, setIsUploading] = useState(false);
+  const [isLoadingOlder, setIsLoadingOlder] = useState(false);
 
   const flatListRef = useRef(null);
   const typingTimeoutRef = useRef(null);
   const isMountedRef = useRef(true);
+  const historyReceivedRef = useRef(false);
+  // [v14.6] Keyset pagination: null — older messages exhausted
+  const nextCursorRef = useRef(undefined);
+  const loadingOlderRef = useRef(false);
+  const messagesRef = useRef([]);
+  messagesRef.current = messages;
 
   useEffect(() => {
     console.log('[ChatScreen v10.0] Открыт чат с:', targetUser);
 
     isMountedRef.current = true;
+    historyReceivedRef.current = false;
+    nextCursorRef.current = undefined;
+    loadingOlderRef.current = false;
 
-    if (!SocketService.isConnected()) {
-      console.error('[ChatScreen] Нет подключения к серверу');
-      Alert.alert('Ошибка', 'Нет подключения к серверу.', [
-        {text: 'OK', onPress: () => navigation.goBack()},
-      ]);
-      return;
-    }
-
-    SocketService.getMessageHistory(targetUser);
     setupSocketListeners();
+    loadHistory();
+
+    // Чат открыт — убрать склеенное уведомление о сообщениях от собеседника
+    CallNotificationModule?.clearMessageNotifications(targetUser);
 
     const checkConnection = setInterval(() => {
       const connected = SocketService.isConnected();
@@ -118,22 +155,26 @@ export default function ChatScreen({route, navigation}) {
 
   const setupSocketListeners = () => {
     SocketService.on('message_history', handleMessageHistory);
+    SocketService.on('message_history_page', handleMessageHistoryPage);
     SocketService.on('new_message', handleNewMessage);
     SocketService.on('typing', handleTyping);
     SocketService.on('message_sent', handleMessageSent);
     SocketService.on('messages_read', handleMessagesRead);
     SocketService.on('message_delivered', handleMessageDelivered);
+    SocketService.on('message_updated', handleMessageUpdated);
     SocketService.on('disconnect', handleDisconnect);
     SocketService.on('connect', handleReconnect);
   };
 
   const cleanupSocketListeners = () => {
     SocketService.off('message_history', handleMessageHistory);
+    SocketService.off('message_history_page', handleMessageHistoryPage);
     SocketService.off('new_message', handleNewMessage);
     SocketService.off('typing', handleTyping);
     SocketService.off('message_sent', handleMessageSent);
     SocketService.off('messages_read', handleMessagesRead);
     SocketService.off('message_delivered', handleMessageDelivered);
+    SocketService.off('message_updated', handleMessageUpdated);
     SocketService.off('disconnect', handleDisconnect);
     SocketService.off('connect', handleReconnect);
   };
@@ -141,43 +182,107 @@ export default function ChatScreen({route, navigation}) {
   const handleDisconnect = () => {
     if (isMountedRef.current) {
       setIsConnected(false);
+      // Ответ на запрос страницы потерян вместе с сокетом
+      loadingOlderRef.current = false;
+      setIsLoadingOlder(false);
     }
   };
 
   const handleReconnect = () => {
     if (isMountedRef.current) {
       setIsConnected(true);
-      SocketService.getMessageHistory(targetUser);
+      requestHistory(true);
+    }
+  };
+
+  /**
+   * [v14.5] Render the cached conversation immediately, then ask the server
+   * only for what changed since the last sync
+   */
+  const loadHistory = async () => {
+    const cached = await MessageStore.getMessages(username, targetUser);
+    if (!isMountedRef.current) return;
+
+    if (cached.length > 0 && !historyReceivedRef.current) {
+      console.log('[ChatScreen] Из кэша:', cached.length, 'сообщений');
+      // Живые сообщения, пришедшие до чтения кэша, не теряем
+      setMessages(prev => mergeMessages(cached.map(msg => toChatMessage(msg, username)), prev));
+      setIsLoadingHistory(false);
+    }
+
+    if (!SocketService.isConnected()) {
+      setIsConnected(false);
+      if (cached.length === 0) {
+        console.error('[ChatScreen] Нет подключения к серверу');
+        Alert.alert('Ошибка', 'Нет подключения к серверу.', [
+          {text: 'OK', onPress: () => navigation.goBack()},
+        ]);
+      }
+      return;
     }
+
+    requestHistory(cached.length > 0);
+  };
+
+  const requestHistory = async hasCache => {
+    // Без кэша курсор бесполезен — нужна полная история
+    const cursor = hasCache ? await MessageStore.getSyncCursor(username, targetUser) : null;
+    if (!isMountedRef.current) return;
+    SocketService.getMessageHistory(targetUser, 100, cursor);
   };
 
   const handleMessageHistory = data => {
     if (!isMountedRef.current) return;
 
     if (data.withUser === targetUser) {
-      console.log('[ChatScreen] Получена история:', data.messages.length, 'сообщений');
-
-      const formattedMessages = data.messages.map(msg => ({
-        id: msg.id || msg.messageId || msg.timestamp?.toString() || Math.random().toString(),
-        from: msg.from,
-        to: msg.to,
-        message: msg.message,
-        timestamp: msg.timestamp,
-        isMine: msg.from === username,
-        delivered: msg.delivered || false,
-        read: msg.read || false,
-        mediaUrl: msg.mediaUrl || null,
-        mediaType: msg.mediaType || null,
-        thumbnailUrl: msg.thumbnailUrl || null,
-        fileName: msg.fileName || null,
-        fileSize: msg.fileSize || null,
-      }));
-
-      setMessages(formattedMessages);
+      console.log('[ChatScreen] Получена история:', data.messages.length, 'сообщений', data.delta ? '(дельта)' : '');
+
+      const formattedMessages = data.messages.map(msg => toChatMessage(msg, username));
+
+      historyReceivedRef.current = true;
+      if (data.delta) {
+        setMessages(prev => mergeMessages(prev, formattedMessages));
+      } else {
+        setMessages(formattedMessages);
+        // Старый сервер nextCursor не присылает — пагинация от самого старого сообщения
+        nextCursorRef.current = data.nextCursor;
+      }
       setIsLoadingHistory(false);
     }
   };
 
+  /**
+   * [v14.6] FlatList onEndReached (inverted — top of the chat): next page
+   * older than the oldest message on screen
+   */
+  const loadOlderMessages = () => {
+    if (loadingOlderRef.current || nextCursorRef.current === null) return;
+
+    const current = messagesRef.current;
+    const oldest = current[current.length - 1];
+    if (!oldest) return;
+
+    const before = nextCursorRef.current || {
+      timestamp: new Date(oldest.timestamp).getTime(),
+      messageId: oldest.id,
+    };
+    if (!SocketService.getOlderMessages(targetUser, before)) return;
+
+    loadingOlderRef.current = true;
+    setIsLoadingOlder(true);
+  };
+
+  const handleMessageHistoryPage = data => {
+    if (!isMountedRef.current || data.withUser !== targetUser) return;
+
+    console.log('[ChatScreen] Старые сообщения:', data.messages.length);
+    const formattedMessages = data.messages.map(msg => toChatMessage(msg, username));
+    setMessages(prev => mergeMessages(prev, formattedMessages));
+    nextCursorRef.current = data.nextCursor ?? null;
+    loadingOlderRef.current = false;
+    setIsLoadingOlder(false);
+  };
+
   const handleNewMessage = data => {
     if (!isMountedRef.current) return;
 
@@ -268,6 +373,18 @@ export default function ChatScreen({route, navigation}) {
     }
   };
 
+  // [v14.12] Server attached a thumbnail that wasn't ready at send time
+  const handleMessageUpdated = data => {
+    if (!isMountedRef.current || !data.messageId) return;
+    if (data.from !== targetUser && data.to !== targetUser) return;
+
+    setMessages(prev =>
+      prev.map(msg =>
+        msg.id === data.messageId ? {...msg, thumbnailUrl: data.thumbnailUrl || null} : msg
+      )
+    );
+  };
+
   const sendMessage = () => {
     if (!inputText.trim()) return;
 
@@ -484,16 +601,24 @@ export default function ChatScreen({route, navigation}) {
   const renderMediaPreview = (item) => {
     if (!item.mediaUrl) return null;
 
-    const fullUrl = item.mediaUrl.startsWith('http')
-      ? item.mediaUrl
-      : `${SERVER_URL}${item.mediaUrl}`;
+    const toAbsolute = url => (url.startsWith('http') ? url : `${SERVER_URL}${url}`);
+    const fullUrl = toAbsolute(item.mediaUrl);
+    // [v14.9] Bubbles render the server-made thumbnail; the original loads only on tap
+    const previewUrl = item.thumbnailUrl ? toAbsolute(item.thumbnailUrl) : null;
 
     if (item.mediaType === 'video') {
       return (
         <TouchableOpacity
           style={styles.mediaContainer}
           onPress={() => openLink(fullUrl)}>
-          <View style={styles.videoPlaceholder}>
+          {previewUrl && (
+            <Image
+              source={{uri: previewUrl}}
+              style={StyleSheet.absoluteFill}
+              resizeMode="cover"
+            />
+          )}
+          <View style={[styles.videoPlaceholder, previewUrl && styles.videoOverlay]}>
             <Text style={styles.videoPlayIcon}>▶</Text>
             <Text style={styles.videoLabel}>Видео</Text>
             {item.fileSize && (
@@ -512,7 +637,7 @@ export default function ChatScreen({route, navigation}) {
         style={styles.mediaContainer}
         onPress={() => openLink(fullUrl)}>
         <Image
-          source={{uri: fullUrl}}
+          source={{uri: previewUrl || fullUrl}}
           style={styles.mediaImage}
           resizeMode="cover"
         />
@@ -623,6 +748,13 @@ export default function ChatScreen({route, navigation}) {
           inverted={true}
           contentContainerStyle={styles.messagesList}
           showsVerticalScrollIndicator={false}
+          onEndReached={loadOlderMessages}
+          onEndReachedThreshold={0.3}
+          ListFooterComponent={
+            isLoadingOlder ? (
+              <ActivityIndicator style={styles.olderLoader} size="small" color={colors.primary} />
+            ) : null
+          }
         />
       )}
 
@@ -722,6 +854,9 @@ const styles = StyleSheet.create({
     padding: 15,
     paddingBottom: 10,
   },
+  olderLoader: {
+    paddingVertical: 12,
+  },
   messageContainer: {
     marginBottom: 10,
   },
@@ -814,6 +949,9 @@ const styles = StyleSheet.create({
     justifyContent: 'center',
     alignItems: 'center',
   },
+  videoOverlay: {
+    backgroundColor: 'rgba(0, 0, 0, 0.35)',
+  },
   videoPlayIcon: {
     fontSize: 40,
     color: '#fff',
@@ -10,12 +10,14 @@ import {
   ActivityIndicator,
   AppState,
   DeviceEventEmitter,
-  NativeModules,
 } from 'react-native';
 import AsyncStorage from '@react-native-async-storage/async-storage';
 import {getFCMToken} from '../services/FCMService';
 import SocketService from '../services/SocketService';
 import ConnectionService from '../services/ConnectionService';
+import MessageStore from '../services/MessageStore';
+import CallNotificationModule from '../specs/NativeCallNotificationModule';
+import CallTrace from '../specs/NativeCallTrace';
 import {useTheme} from '../theme/ThemeContext';
 
 /**
@@ -29,17 +31,36 @@ import {useTheme} from '../theme/ThemeContext';
  * - Улучшенная обработка ошибок
  */
 
+/**
+ * [v14.7] Local cache vs server summary: newer last message wins; on a tie
+ * the server entry (authoritative unread count)
+ */
+function mergeConversations(local, server) {
+  const merged = {...local};
+  Object.keys(server).forEach(peer => {
+    const cached = local[peer];
+    const cachedAt = cached ? new Date(cached.lastMessage?.timestamp).getTime() || 0 : 0;
+    const serverAt = new Date(server[peer].lastMessage?.timestamp).getTime() || 0;
+    merged[peer] = cachedAt > serverAt ? cached : server[peer];
+  });
+  return merged;
+}
+
 export default function HomeScreen({route, navigation}) {
   const {username, token, isAdmin = false} = route.params;
   const {colors, isDark} = useTheme();
 
   const [users, setUsers] = useState([]);
+  // [v14.5] peer → {lastMessage, unread} из локального кэша сообщений
+  const [conversations, setConversations] = useState({});
   const [connectionStatus, setConnectionStatus] = useState('connected');
   const [isLoading, setIsLoading] = useState(true);
   const [reconnectAttempts, setReconnectAttempts] = useState(0);
 
   const isLoggingOut = useRef(false);
   const isMountedRef = useRef(true);
+  const localConversationsRef = useRef({});
+  const serverConversationsRef = useRef({});
   const appState = useRef(AppState.currentState);
 
   useEffect(() => {
@@ -53,6 +74,14 @@ export default function HomeScreen({route, navigation}) {
     // Запросить список пользователей
     SocketService.getUsers(true);
 
+    // Превью переписок — сразу из кэша, затем сводка с сервера
+    loadConversations();
+    SocketService.getConversations();
+    const unsubscribeFocus = navigation.addListener('focus', () => {
+      loadConversations();
+      SocketService.getConversations();
+    });
+
     // Регистрация FCM токена
     registerFCMToken();
 
@@ -64,9 +93,32 @@ export default function HomeScreen({route, navigation}) {
       cleanupSocketListeners();
       cleanupDeviceEventListeners();
       subscription.remove();
+      unsubscribeFocus();
     };
   }, []);
 
+  const loadConversations = async () => {
+    const list = await MessageStore.getConversations(username);
+    if (!isMountedRef.current) return;
+    const byPeer = {};
+    list.forEach(item => {
+      byPeer[item.peer] = item;
+    });
+    localConversationsRef.current = byPeer;
+    setConversations(mergeConversations(byPeer, serverConversationsRef.current));
+  };
+
+  // [v14.7] Conversation summaries from the server (one indexed query)
+  const handleConversations = data => {
+    if (!isMountedRef.current || !Array.isArray(data?.conversations)) return;
+    const byPeer = {};
+    data.conversations.forEach(item => {
+      byPeer[item.peer] = item;
+    });
+    serverConversationsRef.current = byPeer;
+    setConversations(mergeConversations(localConversationsRef.current, byPeer));
+  };
+
   /**
    * Регистрация FCM токена для push-уведомлений
    */
@@ -102,11 +154,14 @@ export default function HomeScreen({route, navigation}) {
     console.log('╚══════════════════════════════════════════════╝');
     console.log('[HomeScreen] Intent data:', JSON.stringify(data));
 
+    // Трассировка пути входящего звонка (CallTrace ring buffer)
+    CallTrace?.mark('js_incoming_call', data?.callId || '');
+
     if (data && data.from) {
       // Пользователь тапнул на уведомление / fullScreenIntent поднял Activity.
       // Здесь отменяем уведомление — оно уже выполнило своё назначение.
-      const {CallNotificationModule} = NativeModules;
       if (CallNotificationModule) {
+        // Синхронный (JSI) — без очереди bridge на пути accept
         CallNotificationModule.cancelIncomingCallNotification();
         console.log('[HomeScreen] ✅ Нативное уведомление отменено (intent)');
       }
@@ -165,6 +220,8 @@ export default function HomeScreen({route, navigation}) {
   const setupSocketListeners = () => {
     console.log('[HomeScreen] ✅ setupSocketListeners — подписка на incoming_call');
     SocketService.on('users_list', handleUsersList);
+    SocketService.on('new_message', loadConversations);
+    SocketService.on('conversations', handleConversations);
     SocketService.on('user_online', handleUserOnline);
     SocketService.on('user_offline', handleUserOffline);
     SocketService.on('incoming_call', handleIncomingCall);
@@ -177,6 +234,8 @@ export default function HomeScreen({route, navigation}) {
   const cleanupSocketListeners = () => {
     console.log('[HomeScreen] ⚠️ cleanupSocketListeners — ОТПИСКА от incoming_call (компонент размонтируется)');
     SocketService.off('users_list', handleUsersList);
+    SocketService.off('new_message', loadConversations);
+    SocketService.off('conversations', handleConversations);
     SocketService.off('user_online', handleUserOnline);
     SocketService.off('user_offline', handleUserOffline);
     SocketService.off('incoming_call', handleIncomingCall);
@@ -223,6 +282,8 @@ export default function HomeScreen({route, navigation}) {
     console.log('[HomeScreen] AppState:', AppState.currentState);
     console.log('[HomeScreen] isMounted:', isMountedRef.current);
 
+    CallTrace?.mark('js_incoming_call', data?.callId || '');
+
     // ═══════════════════════════════════════════════════════════
     // КРИТИЧЕСКОЕ ИСПРАВЛЕНИЕ Android 15:
     //
@@ -259,7 +320,6 @@ export default function HomeScreen({route, navigation}) {
     }
 
     // Приложение видимо — отменяем превентивное уведомление и навигируем
-    const {CallNotificationModule} = NativeModules;
     if (CallNotificationModule) {
       CallNotificationModule.cancelIncomingCallNotification();
       console.log('[HomeScreen] ✅ Нативное уведомление отменено (app active)');
@@ -310,6 +370,7 @@ export default function HomeScreen({route, navigation}) {
     setConnectionStatus('connected');
     setReconnectAttempts(0);
     SocketService.getUsers(true);
+    SocketService.getConversations();
   };
 
   /**
@@ -399,6 +460,7 @@ export default function HomeScreen({route, navigation}) {
 
   const renderUser = ({item}) => {
     const isOnline = item.isOnline || item.online;
+    const conversation = conversations[item.username];
 
     return (
       <View style={[styles.userCard, {backgroundColor: colors.card}]}>
@@ -421,6 +483,18 @@ export default function HomeScreen({route, navigation}) {
               ]}>
               {isOnline ? '● В сети' : '○ Не в сети'}
             </Text>
+            {conversation && (
+              <Text
+                numberOfLines={1}
+                style={[
+                  styles.preview,
+                  {color: conversation.unread > 0 ? colors.text : colors.textHint},
+                ]}>
+                {conversation.unread > 0 ? `(${conversation.unread}) ` : ''}
+                {conversation.lastMessage.from === username ? 'Вы: ' : ''}
+                {conversation.lastMessage.message}
+              </Text>
+            )}
           </View>
         </View>
 
@@ -651,6 +725,10 @@ const styles = StyleSheet.create({
     fontSize: 14,
     marginTop: 2,
   },
+  preview: {
+    fontSize: 13,
+    marginTop: 2,
+  },
   statusOnline: {
     color: '#4CAF50',
   },
@@ -11,6 +11,7 @@ import {
 } from 'react-native';
 import SocketService from '../services/SocketService';
 import NotificationService from '../services/NotificationService';
+import ConnectionService from '../services/ConnectionService';
 
 const {width} = Dimensions.get('window');
 
@@ -37,6 +38,8 @@ export default function IncomingCallScreen({route, navigation}) {
   const [connectionStatus, setConnectionStatus] = useState(null);
 
   const isMountedRef = useRef(true);
+  // Ответ/отклонение из Telecom (гарнитура, часы) — актуальные обработчики
+  const callActionRef = useRef({});
   const scaleAnim = useRef(new Animated.Value(0)).current;
   const pulseAnim = useRef(new Animated.Value(1)).current;
 
@@ -76,6 +79,19 @@ export default function IncomingCallScreen({route, navigation}) {
     SocketService.on('webrtc_offer', handleOffer);
     SocketService.on('call_cancelled', handleCallCancelled);
     SocketService.on('call_timeout', handleCallTimeout);
+
+    // Telecom: действие, сделанное до загрузки JS, и действия во время показа экрана
+    const runCallAction = action => {
+      if (action === 'answer') callActionRef.current.accept?.();
+      else if (action === 'reject') callActionRef.current.reject?.();
+    };
+    ConnectionService.consumePendingCallAction(callId).then(runCallAction);
+    const unsubscribeCallAction = ConnectionService.onCallAction(event => {
+      if (!isMountedRef.current) return;
+      if (event?.callId && callId && event.callId !== callId) return;
+      ConnectionService.consumePendingCallAction(callId);
+      runCallAction(event?.action);
+    });
  
     // Back button
     const backHandler = BackHandler.addEventListener(
@@ -91,6 +107,7 @@ export default function IncomingCallScreen({route, navigation}) {
       SocketService.off('webrtc_offer', handleOffer);
       SocketService.off('call_cancelled', handleCallCancelled);
       SocketService.off('call_timeout', handleCallTimeout);
+      unsubscribeCallAction();
       scaleAnim.stopAnimation();
       pulseAnim.stopAnimation();
     };
@@ -112,6 +129,7 @@ export default function IncomingCallScreen({route, navigation}) {
     if (data.from === from) {
       console.log('Call cancelled by caller');
       NotificationService.cancelAllNotifications();
+      ConnectionService.endTelecomCall(callId, true);
       navigation.goBack();
     }
   };
@@ -122,6 +140,7 @@ export default function IncomingCallScreen({route, navigation}) {
     if (data.from === from) {
       console.log('Call timed out from server');
       NotificationService.cancelAllNotifications();
+      ConnectionService.endTelecomCall(callId, true);
       navigation.goBack();
     }
   };
@@ -195,6 +214,7 @@ export default function IncomingCallScreen({route, navigation}) {
 
     try {
       await NotificationService.cancelAllNotifications();
+      ConnectionService.endTelecomCall(callId);
       SocketService.rejectCall(from, callId);
       navigation.goBack();
     } catch (error) {
@@ -203,6 +223,8 @@ export default function IncomingCallScreen({route, navigation}) {
     }
   };
 
+  callActionRef.current = {accept: handleAccept, reject: handleReject};
+
   return (
     <View style={styles.container}>
       <StatusBar barStyle="light-content" backgroundColor="#000" />
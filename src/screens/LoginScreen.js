@@ -16,6 +16,7 @@ import {
 import AsyncStorage from '@react-native-async-storage/async-storage';
 import SocketService from '../services/SocketService';
 import ConnectionService from '../services/ConnectionService';
+import CallNotificationModule from '../specs/NativeCallNotificationModule';
 import {useTheme} from '../theme/ThemeContext';
 
 /**
@@ -87,8 +88,7 @@ export default function LoginScreen({navigation}) {
   const requestFullScreenIntentPermission = async () => {
     if (Platform.Version < 34) return true;
     try {
-      const {CallNotificationModule} = NativeModules;
-      if (CallNotificationModule && CallNotificationModule.canUseFullScreenIntent) {
+      if (CallNotificationModule) {
         const canUse = await CallNotificationModule.canUseFullScreenIntent();
         if (canUse) return true;
         Alert.alert(
@@ -1,6 +1,6 @@
-import {NativeModules, Platform} from 'react-native';
-
-const {ConnectionService} = NativeModules;
+import {DeviceEventEmitter, Platform} from 'react-native';
+// Codegen spec: модуль создаётся лениво при первом обращении
+import ConnectionService from '../specs/NativeConnectionService';
 
 /**
  * ConnectionServiceHelper - обертка для управления Foreground Service
@@ -50,6 +50,147 @@ class ConnectionServiceHelper {
     }
   }
 
+  /**
+   * JS-сокет авторизован — нативный SignalingClient передаёт ему сессию
+   * и не переподключается, пока жив React-контекст
+   */
+  attachJsSession() {
+    if (Platform.OS !== 'android' || !ConnectionService?.attachJsSession) {
+      return;
+    }
+
+    try {
+      ConnectionService.attachJsSession();
+    } catch (error) {
+      console.error('[ConnectionService] ❌ Ошибка attachJsSession:', error);
+    }
+  }
+
+  /**
+   * JS-сокет потерял сессию — нативный SignalingClient снова подключается
+   */
+  detachJsSession() {
+    if (Platform.OS !== 'android' || !ConnectionService?.detachJsSession) {
+      return;
+    }
+
+    try {
+      ConnectionService.detachJsSession();
+    } catch (error) {
+      console.error('[ConnectionService] ❌ Ошибка detachJsSession:', error);
+    }
+  }
+
+  /**
+   * Держать CPU короткое окно (reconnect, heartbeat, сигналинг)
+   */
+  holdWakeWindow(reason, durationMs) {
+    if (Platform.OS !== 'android' || !ConnectionService?.holdWakeWindow) {
+      return;
+    }
+    ConnectionService.holdWakeWindow(reason, durationMs);
+  }
+
+  /**
+   * Активный звонок — CPU + low-latency Wi-Fi lock
+   */
+  setCallActive(active) {
+    if (Platform.OS !== 'android' || !ConnectionService?.setCallActive) {
+      return;
+    }
+    ConnectionService.setCallActive(!!active);
+  }
+
+  /**
+   * Время удержания wake lock по режимам
+   */
+  async getWakeLockStats() {
+    if (Platform.OS !== 'android') {
+      return null;
+    }
+
+    try {
+      return await ConnectionService.getWakeLockStats();
+    } catch (error) {
+      console.error('[ConnectionService] ❌ Ошибка getWakeLockStats:', error);
+      return null;
+    }
+  }
+
+  /**
+   * Telecom: звонок отклонён / отменён в приложении — снять системное соединение
+   * missed=true — звонящий отменил / таймаут
+   */
+  endTelecomCall(callId, missed = false) {
+    if (Platform.OS !== 'android' || !ConnectionService?.endTelecomCall) {
+      return;
+    }
+    ConnectionService.endTelecomCall(callId || '', !!missed);
+  }
+
+  /**
+   * Telecom: действие из системного UI (гарнитура, часы) до загрузки JS
+   * @returns {'answer'|'reject'|null}
+   */
+  async consumePendingCallAction(callId) {
+    if (Platform.OS !== 'android' || !ConnectionService?.consumePendingCallAction) {
+      return null;
+    }
+
+    try {
+      return await ConnectionService.consumePendingCallAction(callId || '');
+    } catch (error) {
+      console.error('[ConnectionService] ❌ Ошибка consumePendingCallAction:', error);
+      return null;
+    }
+  }
+
+  /**
+   * Telecom: подписка на ответ/отклонение/завершение из системы
+   * handler({action: 'answer'|'reject'|'end', from, isVideo, callId})
+   * @returns {Function} отписка
+   */
+  onCallAction(handler) {
+    if (Platform.OS !== 'android') {
+      return () => {};
+    }
+    const subscription = DeviceEventEmitter.addListener('callConnectionAction', handler);
+    return () => subscription.remove();
+  }
+
+  /**
+   * Handle текущей default network (NetworkMonitor), null — неизвестно
+   */
+  async getNetworkHandle() {
+    if (Platform.OS !== 'android' || !ConnectionService?.getNetworkHandle) {
+      return null;
+    }
+
+    try {
+      const handle = await ConnectionService.getNetworkHandle();
+      return handle || null;
+    } catch (error) {
+      console.error('[ConnectionService] ❌ Ошибка getNetworkHandle:', error);
+      return null;
+    }
+  }
+
+  /**
+   * Keep-warm окно тёплого React-инстанса в мс (0 — не прогревать в фоне)
+   */
+  async setReactKeepWarm(keepWarmMs) {
+    if (Platform.OS !== 'android') {
+      return true;
+    }
+
+    try {
+      return await ConnectionService.setReactKeepWarm(keepWarmMs);
+    } catch (error) {
+      console.error('[ConnectionService] ❌ Ошибка setReactKeepWarm:', error);
+      return false;
+    }
+  }
+
   /**
    * Проверить, запущен ли сервис
    */
@@ -65,6 +206,16 @@ class ConnectionServiceHelper {
       return false;
     }
   }
+
+  /**
+   * Синхронная проверка (JSI) — сервис создан в процессе приложения
+   */
+  isRunningSync() {
+    if (Platform.OS !== 'android' || !ConnectionService?.isRunningSync) {
+      return false;
+    }
+    return ConnectionService.isRunningSync();
+  }
 }
 
 export default new ConnectionServiceHelper();
@@ -13,9 +13,45 @@ class ConnectionServiceHelper {
     return true;
   }
 
+  attachJsSession() {
+    // Нет нативного клиента на desktop
+  }
+
+  detachJsSession() {}
+
+  holdWakeWindow() {}
+
+  setCallActive() {}
+
+  async getWakeLockStats() {
+    return null;
+  }
+
+  endTelecomCall() {}
+
+  async consumePendingCallAction() {
+    return null;
+  }
+
+  onCallAction() {
+    return () => {};
+  }
+
+  async getNetworkHandle() {
+    return null;
+  }
+
+  async setReactKeepWarm() {
+    return true;
+  }
+
   async isRunning() {
     return true; // Always "running" on desktop
   }
+
+  isRunningSync() {
+    return true;
+  }
 }
 
 export default new ConnectionServiceHelper();
@@ -0,0 +1,231 @@
+import AsyncStorage from '@react-native-async-storage/async-storage';
+
+/**
+ * [v14.3] Adaptive heartbeat controller — NAT-timeout probing per network.
+ *
+ * Fixed 10s app pings + socket.io's own ping doubled radio wake-ups and still
+ * lost sockets on carriers with short NAT timeouts. Instead, for every network
+ * (networkHandle from NetworkMonitor) we:
+ *  - start at MIN_INTERVAL_MS;
+ *  - after SUCCESSES_TO_GROW pongs that arrived after a full idle gap,
+ *    probe a longer interval (× GROWTH_FACTOR, capped below a known failure);
+ *  - on a dead connection at the probe interval, remember it as the ceiling
+ *    and fall back to the longest interval that was proven safe.
+ *
+ * socket.io's engine heartbeat (server pingInterval) already refreshes NAT;
+ * once a network is proven safe at that interval, app pings pause entirely.
+ *
+ * Profiles persist in AsyncStorage so a known Wi-Fi / carrier starts from its
+ * learned interval after app restart.
+ */
+
+const STORAGE_KEY = 'keepaliveProfiles';
+
+const MIN_INTERVAL_MS = 10000;
+const MAX_INTERVAL_MS = 240000;
+const GROWTH_FACTOR = 1.5;
+const SUCCESSES_TO_GROW = 3;
+// Probe never goes above this fraction of a known failed interval
+const CEILING_MARGIN = 0.8;
+// A failure ceiling is forgotten after a day — NAT tables change
+const CEILING_TTL_MS = 24 * 60 * 60 * 1000;
+const MAX_PROFILES = 16;
+
+const DEFAULT_KEY = 'default';
+
+// Server pingInterval (call_app/server/server.js) — used when the engine
+// doesn't expose the handshake value
+const SERVER_PING_INTERVAL_MS = 25000;
+
+/**
+ * pingInterval from the engine.io handshake. engine.io-client 6.x keeps it
+ * private (_pingInterval); older builds exposed pingInterval.
+ */
+export function engineHeartbeatMs(engine) {
+  const ms = engine?.pingInterval ?? engine?._pingInterval;
+  return typeof ms === 'number' && ms > 0 ? ms : SERVER_PING_INTERVAL_MS;
+}
+
+class KeepaliveController {
+  constructor() {
+    this.profiles = {};
+    this.networkKey = DEFAULT_KEY;
+    this._loaded = false;
+    this._lastPingAt = 0;
+    this._engineIntervalMs = 0;
+  }
+
+  async load() {
+    if (this._loaded) return;
+    this._loaded = true;
+    try {
+      const raw = await AsyncStorage.getItem(STORAGE_KEY);
+      if (raw) {
+        this.profiles = JSON.parse(raw) || {};
+      }
+    } catch (error) {
+      console.warn('[KeepaliveController] Failed to load profiles:', error.message);
+    }
+  }
+
+  /**
+   * Switch to the profile of the current default network
+   */
+  setNetwork(networkHandle) {
+    const key = networkHandle ? String(networkHandle) : DEFAULT_KEY;
+    if (key === this.networkKey) return;
+    this.networkKey = key;
+    const profile = this._profile();
+    console.log(`[KeepaliveController] Network ${key}: interval ${profile.probeMs}ms (safe ${profile.safeMs}ms)`);
+  }
+
+  /**
+   * Engine.IO pingInterval from the handshake (server-driven heartbeat)
+   */
+  setEngineInterval(ms) {
+    this._engineIntervalMs = ms > 0 ? ms : 0;
+  }
+
+  /**
+   * Heartbeat of the connected engine.io-client socket (after its handshake)
+   */
+  setEngine(engine) {
+    this.setEngineInterval(engineHeartbeatMs(engine));
+  }
+
+  getEngineInterval() {
+    return this._engineIntervalMs;
+  }
+
+  /**
+   * Current idle interval before the next app-level ping
+   */
+  getInterval() {
+    const probeMs = this._profile().probeMs;
+    return this._engineIntervalMs ? Math.min(probeMs, this._engineIntervalMs) : probeMs;
+  }
+
+  /**
+   * false — network is safe at the engine heartbeat interval, app ping is redundant
+   */
+  shouldAppPing() {
+    return !this._engineIntervalMs || this._profile().probeMs < this._engineIntervalMs;
+  }
+
+  /**
+   * Pong staleness threshold for health checks (two missed pings + RTT slack)
+   */
+  getStaleThreshold() {
+    return this.getInterval() * 2 + 5000;
+  }
+
+  onPingSent() {
+    this._lastPingAt = Date.now();
+  }
+
+  /**
+   * Pong received. data.idleMs — inbound silence before this ping as seen by
+   * the server: proves the connection survived that much idle time.
+   */
+  onPong(data) {
+    const profile = this._profile();
+    const idleMs = typeof data?.idleMs === 'number' ? data.idleMs : null;
+
+    // First ping on a socket has no idle gap — nothing learned
+    if (idleMs === null || idleMs < profile.probeMs * 0.9) return;
+
+    profile.safeMs = Math.max(profile.safeMs, Math.min(idleMs, profile.probeMs));
+    profile.successes += 1;
+
+    if (profile.successes >= SUCCESSES_TO_GROW) {
+      const ceiling = this._ceiling(profile);
+      const next = Math.min(Math.round(profile.probeMs * GROWTH_FACTOR), ceiling);
+      if (next > profile.probeMs) {
+        console.log(`[KeepaliveController] ${this.networkKey}: ${profile.probeMs}ms safe → probing ${next}ms`);
+        profile.probeMs = next;
+      }
+      profile.successes = 0;
+    }
+    profile.updatedAt = Date.now();
+    this._save();
+  }
+
+  /**
+   * Connection died while idle. Counted as a NAT timeout only when the
+   * silence reached the probe interval; other drops don't move the interval.
+   * Silence far beyond the interval means JS timers were frozen (Doze) —
+   * that says nothing about the NAT either.
+   */
+  onConnectionLost(reason) {
+    if (reason !== 'ping timeout' && reason !== 'transport close' && reason !== 'stale pong') {
+      return;
+    }
+    const profile = this._profile();
+    const silentMs = this._lastPingAt ? Date.now() - this._lastPingAt : 0;
+    if (silentMs < profile.probeMs * 0.9 || silentMs > profile.probeMs * 3) return;
+
+    const failedMs = profile.probeMs;
+    profile.failures += 1;
+    profile.failedMs = profile.failedMs ? Math.min(profile.failedMs, failedMs) : failedMs;
+    profile.failedAt = Date.now();
+    profile.successes = 0;
+    // Back off to the proven interval; if the proven one failed too — halve it
+    profile.probeMs = profile.safeMs < failedMs
+      ? profile.safeMs
+      : Math.max(MIN_INTERVAL_MS, Math.round(failedMs / 2));
+    profile.safeMs = Math.min(profile.safeMs, profile.probeMs);
+    profile.updatedAt = Date.now();
+
+    console.log(`[KeepaliveController] ⚠️ ${this.networkKey}: lost at ${failedMs}ms idle (${reason}) → ${profile.probeMs}ms`);
+    this._save();
+  }
+
+  getStats() {
+    return {networkKey: this.networkKey, ...this._profile()};
+  }
+
+  _profile() {
+    let profile = this.profiles[this.networkKey];
+    if (!profile) {
+      profile = {
+        probeMs: MIN_INTERVAL_MS,
+        safeMs: MIN_INTERVAL_MS,
+        successes: 0,
+        failures: 0,
+        failedMs: 0,
+        failedAt: 0,
+        updatedAt: Date.now(),
+      };
+      this.profiles[this.networkKey] = profile;
+      this._trimProfiles();
+    }
+    return profile;
+  }
+
+  _ceiling(profile) {
+    if (profile.failedMs && Date.now() - profile.failedAt < CEILING_TTL_MS) {
+      return Math.max(MIN_INTERVAL_MS, Math.round(profile.failedMs * CEILING_MARGIN));
+    }
+    // Beyond the engine heartbeat there is nothing to probe
+    return this._engineIntervalMs || MAX_INTERVAL_MS;
+  }
+
+  _trimProfiles() {
+    const keys = Object.keys(this.profiles);
+    if (keys.length <= MAX_PROFILES) return;
+    keys
+      .sort((a, b) => this.profiles[a].updatedAt - this.profiles[b].updatedAt)
+      .slice(0, keys.length - MAX_PROFILES)
+      .forEach((key) => {
+        if (key !== this.networkKey) delete this.profiles[key];
+      });
+  }
+
+  _save() {
+    AsyncStorage.setItem(STORAGE_KEY, JSON.stringify(this.profiles)).catch((error) => {
+      console.warn('[KeepaliveController] Failed to save profiles:', error.message);
+    });
+  }
+}
+
+export default new KeepaliveController();
@@ -0,0 +1,116 @@
+import NativeMessageStore from '../specs/NativeMessageStore';
+
+/**
+ * [v14.5] On-device message cache (SQLite, android/.../MessageStore.java).
+ *
+ * ChatScreen renders a conversation from here before the server answers;
+ * get_messages then carries the sync cursor and the server returns only
+ * messages created or re-stated (read/delivered) after it.
+ *
+ * The cursor advances only on a get_messages response — live new_message /
+ * message_sent are cached without moving it, so anything missed while
+ * offline still arrives with the next delta.
+ */
+
+function toTimestamp(value) {
+  if (typeof value === 'number') return value;
+  const ms = value ? new Date(value).getTime() : NaN;
+  return Number.isNaN(ms) ? Date.now() : ms;
+}
+
+/**
+ * Flat record the native store understands (server docs carry _id, __v, Dates)
+ */
+function normalize(msg) {
+  return {
+    messageId: msg.messageId || msg.id || null,
+    from: msg.from,
+    to: msg.to,
+    message: msg.message || '',
+    type: msg.type || (msg.mediaUrl ? 'media' : 'text'),
+    timestamp: toTimestamp(msg.timestamp),
+    read: !!msg.read,
+    delivered: !!msg.delivered,
+    mediaUrl: msg.mediaUrl || null,
+    mediaType: msg.mediaType || null,
+    thumbnailUrl: msg.thumbnailUrl || null,
+    fileName: msg.fileName || null,
+    fileSize: typeof msg.fileSize === 'number' ? msg.fileSize : null,
+  };
+}
+
+class MessageStore {
+  isAvailable() {
+    return !!NativeMessageStore;
+  }
+
+  async getMessages(owner, peer, limit = 100) {
+    if (!NativeMessageStore || !owner || !peer) return [];
+    try {
+      return await NativeMessageStore.getMessages(owner, peer, limit);
+    } catch (error) {
+      console.warn('[MessageStore] getMessages failed:', error.message);
+      return [];
+    }
+  }
+
+  async getSyncCursor(owner, peer) {
+    if (!NativeMessageStore || !owner || !peer) return null;
+    try {
+      return await NativeMessageStore.getSyncCursor(owner, peer);
+    } catch (error) {
+      console.warn('[MessageStore] getSyncCursor failed:', error.message);
+      return null;
+    }
+  }
+
+  async getConversations(owner) {
+    if (!NativeMessageStore || !owner) return [];
+    try {
+      return await NativeMessageStore.getConversations(owner);
+    } catch (error) {
+      console.warn('[MessageStore] getConversations failed:', error.message);
+      return [];
+    }
+  }
+
+  /**
+   * message_history payload: {withUser, messages, delta, cursor}
+   */
+  async applyHistory(owner, data) {
+    if (!NativeMessageStore || !owner || !data?.withUser) return 0;
+    try {
+      const messages = (data.messages || []).map(normalize).filter(m => m.messageId);
+      return await NativeMessageStore.applyHistory(
+        owner,
+        data.withUser,
+        messages,
+        !!data.delta,
+        data.cursor || null,
+      );
+    } catch (error) {
+      console.warn('[MessageStore] applyHistory failed:', error.message);
+      return 0;
+    }
+  }
+
+  saveMessage(owner, peer, msg) {
+    if (!NativeMessageStore || !owner || !peer) return;
+    const record = normalize(msg);
+    if (record.messageId) {
+      NativeMessageStore.saveMessage(owner, peer, record);
+    }
+  }
+
+  markRead(owner, peer, fromUser) {
+    if (!NativeMessageStore || !owner || !peer) return;
+    NativeMessageStore.markRead(owner, peer, fromUser);
+  }
+
+  markDelivered(owner, messageId) {
+    if (!NativeMessageStore || !owner || !messageId) return;
+    NativeMessageStore.markDelivered(owner, messageId);
+  }
+}
+
+export default new MessageStore();
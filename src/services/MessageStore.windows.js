@@ -0,0 +1,34 @@
+/**
+ * MessageStore for Windows — no on-device cache yet.
+ * get_messages goes without a cursor, so the server returns full history.
+ */
+
+class MessageStore {
+  isAvailable() {
+    return false;
+  }
+
+  async getMessages() {
+    return [];
+  }
+
+  async getSyncCursor() {
+    return null;
+  }
+
+  async getConversations() {
+    return [];
+  }
+
+  async applyHistory() {
+    return 0;
+  }
+
+  saveMessage() {}
+
+  markRead() {}
+
+  markDelivered() {}
+}
+
+export default new MessageStore();
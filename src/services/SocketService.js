@@ -1,9 +1,15 @@
 import io from 'socket.io-client';
 import AsyncStorage from '@react-native-async-storage/async-storage';
 import {SERVER_URL} from '../config/server.config';
-import {AppState, NativeModules, Platform} from 'react-native';
+import ConnectionService from './ConnectionService';
+import KeepaliveController from './KeepaliveController';
+import MessageStore from './MessageStore';
+import WebRTCService from './WebRTCService';
+import {AppState, DeviceEventEmitter, Platform} from 'react-native';
 
-const {NativeStorage} = NativeModules;
+// Codegen specs: модули создаются лениво при первом обращении
+import NativeStorage from '../specs/NativeStorage';
+import CallNotificationModule from '../specs/NativeCallNotificationModule';
 
 /**
  * ═══════════════════════════════════════════════════════════
@@ -32,11 +38,25 @@ const STATE = {
   AUTHENTICATED: 'AUTHENTICATED',
 };
 
+// [v14.8] Announced on login/register/auth_token — the server only sends
+// batched 'ice_candidates' to sessions that listed it. The server announces its
+// own in *_success.features; older servers don't know 'ice_candidates' at all
+const CLIENT_FEATURES = ['ice_candidates'];
+
+// [v14.8] Local ICE candidates gathered within this window go out as one frame
+const ICE_BATCH_DELAY_MS = 20;
+// [v14.8] Server limit per 'ice_candidates' frame (ICE_BATCH_MAX) — larger batches are split
+const ICE_BATCH_MAX = 50;
+
+// [v14.1] JS socket out of AUTHENTICATED this long — the native SignalingClient
+// takes the session back so calls keep arriving over a socket instead of FCM
+const JS_SESSION_RELEASE_GRACE_MS = 10000;
+
 class SocketService {
   constructor() {
     this.socket = null;
     this.listeners = new Map();
-    this.keepaliveInterval = null;
+    this.keepaliveTimer = null;
     this.isManualDisconnect = false;
 
     // State machine
@@ -57,11 +77,29 @@ class SocketService {
     this._lastPongTime = Date.now();
     this._healthCheckTimer = null;
     this._disconnectedSafetyTimer = null;
+    this._jsSessionReleaseTimer = null;
 
     // [v14.0] Periodic health probe — prevents silent TCP death (~1h problem)
     this._periodicHealthInterval = null;
 
+    // [v14.2] Default network identity from native NetworkCallback
+    this.networkHandle = null;
+    this._networkReconnectInFlight = false;
+
+    // [v14.3] Adaptive heartbeat — interval learned per network
+    KeepaliveController.load();
+
     AppState.addEventListener('change', this.handleAppStateChange);
+    DeviceEventEmitter.addListener('networkChanged', this._handleNetworkChanged);
+
+    // [v14.4] Decline from the native ringing screen / Telecom while JS owns the session
+    this._lastRejectedCallId = null;
+    DeviceEventEmitter.addListener('callConnectionAction', this._handleCallConnectionAction);
+
+    // [v14.8] Outgoing ICE batches: peer -> {candidates, timer}
+    this._iceOutbox = new Map();
+    // [v14.8] Features from the last *_success (reset on every new connection)
+    this.serverFeatures = [];
   }
 
   _setState(newState) {
@@ -71,6 +109,14 @@ class SocketService {
       this.connectionState = newState;
       this.notifyListeners('connection_state', newState);
 
+      // [v14.1] JS владеет сессией — нативный SignalingClient уходит в ожидание
+      if (newState === STATE.AUTHENTICATED) {
+        this._clearJsSessionReleaseTimer();
+        ConnectionService.attachJsSession();
+      } else if (prev === STATE.AUTHENTICATED) {
+        this._startJsSessionReleaseTimer();
+      }
+
       // [v13.0] Safety net: if we enter DISCONNECTED, start a timer.
       // If we're still disconnected after 15s (socket.io auto-reconnect hasn't
       // succeeded), force a full reconnect cycle.
@@ -100,6 +146,27 @@ class SocketService {
     }
   }
 
+  // [v14.1] Hand the session back to the native client if JS doesn't recover it.
+  // Not after logout or a kick from another device — the native client would
+  // log back in with the same credentials.
+  _startJsSessionReleaseTimer() {
+    this._clearJsSessionReleaseTimer();
+    this._jsSessionReleaseTimer = setTimeout(() => {
+      this._jsSessionReleaseTimer = null;
+      if (this.connectionState === STATE.AUTHENTICATED) return;
+      if (!this.shouldAutoReconnect || this.isManualDisconnect) return;
+      console.log(`[SocketService] 🔓 No JS session for ${JS_SESSION_RELEASE_GRACE_MS}ms — native client takes over`);
+      ConnectionService.detachJsSession();
+    }, JS_SESSION_RELEASE_GRACE_MS);
+  }
+
+  _clearJsSessionReleaseTimer() {
+    if (this._jsSessionReleaseTimer) {
+      clearTimeout(this._jsSessionReleaseTimer);
+      this._jsSessionReleaseTimer = null;
+    }
+  }
+
   // [v13.0] Force a complete reconnect — destroy old socket, create new one
   async _forceFullReconnect() {
     if (this.isManualDisconnect || !this.shouldAutoReconnect) return;
@@ -107,6 +174,9 @@ class SocketService {
 
     console.log('[SocketService] 🔄 Force full reconnect...');
 
+    // [v14.1] CPU не должен уснуть посреди reconnect + auth
+    ConnectionService.holdWakeWindow('reconnect', 15000);
+
     // Destroy old socket completely
     if (this.socket) {
       try {
@@ -128,6 +198,60 @@ class SocketService {
     }
   }
 
+  /**
+   * [v14.2] Network change pushed by ConnectionForegroundService (NetworkCallback).
+   * A real switch (Wi-Fi → LTE, new networkHandle) triggers ONE immediate reconnect
+   * with reset backoff instead of waiting for socket.io timers / the 15s safety net.
+   * A flap of the same network while authenticated is ignored.
+   */
+  _handleNetworkChanged = async (info) => {
+    if (!info) return;
+
+    const prevHandle = this.networkHandle;
+    if (info.event === 'available') {
+      this.networkHandle = info.networkHandle;
+      KeepaliveController.setNetwork(info.networkHandle);
+    } else if (info.event === 'lost' && info.networkHandle === this.networkHandle) {
+      this.networkHandle = null;
+    }
+    this.notifyListeners('network_changed', info);
+
+    if (info.event !== 'available') return;
+    if (!this.shouldAutoReconnect || this.isManualDisconnect) return;
+
+    const isSwitch = info.isSwitch || (prevHandle !== null && prevHandle !== info.networkHandle);
+    if (!isSwitch && this.connectionState === STATE.AUTHENTICATED) {
+      console.log('[SocketService] Network flap on same network — socket kept');
+      return;
+    }
+    if (this._networkReconnectInFlight) return;
+
+    console.log(`[SocketService] 📶 Network ${isSwitch ? 'switch' : 'back'} (${info.transport}) — immediate reconnect`);
+    this.reconnectBackoff = 1000;
+    if (this.reconnectTimer) {
+      clearTimeout(this.reconnectTimer);
+      this.reconnectTimer = null;
+    }
+    this._clearDisconnectedSafetyTimer();
+
+    this._networkReconnectInFlight = true;
+    try {
+      await this._forceFullReconnect();
+    } finally {
+      this._networkReconnectInFlight = false;
+    }
+  };
+
+  /**
+   * [v14.4] Native reject (IncomingCallActivity / Bluetooth) — native socket is
+   * suspended while JS is attached, so reject_call goes out from here.
+   */
+  _handleCallConnectionAction = (event) => {
+    if (event?.action !== 'reject' || !event.from) return;
+    if (this.connectionState !== STATE.AUTHENTICATED) return;
+    this.rejectCall(event.from, event.callId || null);
+  };
+
   /**
    * Handle app state changes
    */
@@ -141,11 +265,12 @@ class SocketService {
       // [v14.0] Proactive health check on resume:
       // - If pong was >25s ago, force reconnect (timers were frozen)
       // - If socket reports connected but pong is stale, TCP is dead
+      // [v14.3] Threshold follows the adaptive keepalive interval
       if (this.socket?.connected) {
         const timeSinceLastPong = Date.now() - this._lastPongTime;
         console.log(`[SocketService] Health check: lastPong ${timeSinceLastPong}ms ago`);
 
-        if (timeSinceLastPong > 25000) {
+        if (timeSinceLastPong > Math.max(25000, KeepaliveController.getStaleThreshold())) {
           console.log('[SocketService] Stale connection detected — forcing full reconnect');
           this._forceFullReconnect();
           return;
@@ -205,7 +330,7 @@ class SocketService {
         timeout: 10000,
         // Must match server-side pingTimeout/pingInterval.
         pingTimeout: 20000,
-        pingInterval: 10000,
+        pingInterval: 25000,
         autoConnect: true,
         forceNew: false,
       });
@@ -253,7 +378,10 @@ class SocketService {
       console.log('[SocketService] shouldAutoReconnect:', this.shouldAutoReconnect);
       console.log('[SocketService] savedUsername:', this.savedUsername || 'НЕТ');
       this._setState(STATE.CONNECTED);
+      this.serverFeatures = [];
       this._lastPongTime = Date.now(); // Reset pong timer on connect
+      // [v14.3] Server-driven engine heartbeat caps the adaptive app ping
+      KeepaliveController.setEngine(this.socket?.io?.engine);
       this.reconnectBackoff = 1000; // Reset backoff
       this.notifyListeners('connect');
 
@@ -287,6 +415,7 @@ class SocketService {
       this.isAuthenticating = false;
       this._setState(STATE.DISCONNECTED);
       this.notifyListeners('disconnect', reason);
+      KeepaliveController.onConnectionLost(reason);
 
       // [v13.0] Handle ALL disconnect reasons, not just 'io server disconnect'.
       // socket.io auto-reconnects for transport issues, but NOT for 'io server disconnect'.
@@ -328,15 +457,26 @@ class SocketService {
       console.error('[SocketService] Connect error:', error.message);
     });
 
+    // [v14.3] Engine.IO ping from server also proves the connection is alive —
+    // app pings may be paused when the engine heartbeat alone keeps NAT open
+    this.socket.io.off('ping', this._onEnginePing);
+    this.socket.io.on('ping', this._onEnginePing);
+
     // [v13.0] Server heartbeat ACK
     this.socket.on('pong', (data) => {
       this._lastPongTime = Date.now();
+      // [v14.3] idleMs from server → learn the safe interval for this network
+      KeepaliveController.onPong(data);
       // Optionally: calculate round-trip time
       if (data && data.timestamp) {
         const rtt = Date.now() - data.timestamp;
         if (rtt > 5000) {
           console.log(`[SocketService] ⚠️ High RTT: ${rtt}ms`);
         }
+        // [v14.9] Server clock offset — call push age is judged on the server's clock
+        if (data.serverTime && CallNotificationModule?.reportServerTime) {
+          CallNotificationModule.reportServerTime(data.serverTime, rtt);
+        }
       }
     });
 
@@ -353,7 +493,17 @@ class SocketService {
       console.log('[SocketService] isVideo:', data.isVideo);
       console.log('[SocketService] AppState.currentState:', appCurrentState);
       console.log('[SocketService] JS-слушателей incoming_call:', listenerCount);
-      console.log('[SocketService] CallNotificationModule:', NativeModules.CallNotificationModule ? 'ЕСТЬ' : 'NULL ❌');
+      console.log('[SocketService] CallNotificationModule:', CallNotificationModule ? 'ЕСТЬ' : 'NULL ❌');
+
+      // [v14.10] ICE config loads while ringing, off the accept path
+      WebRTCService.prefetchIceServers();
+      // [v14.11] Peer connection + ICE gathering while ringing; camera/mic stay closed until accept
+      WebRTCService.prewarm({
+        callId: data.callId,
+        from: data.from,
+        isVideo: !!data.isVideo,
+        ringTimeoutMs: data.ringTimeoutMs || 0,
+      });
 
       const needsNativeNotification = appCurrentState !== 'active' || listenerCount === 0;
 
@@ -361,7 +511,6 @@ class SocketService {
         `(appState=${appCurrentState}, listeners=${listenerCount})`);
 
       if (needsNativeNotification) {
-        const CallNotificationModule = NativeModules.CallNotificationModule;
         if (CallNotificationModule) {
           try {
             CallNotificationModule.showIncomingCallNotification(
@@ -387,15 +536,20 @@ class SocketService {
 
     // All other events
     this.socket.on('users_list', data => this.notifyListeners('users_list', data));
+    this.socket.on('conversations', data => this.notifyListeners('conversations', data));
     this.socket.on('user_online', data => this.notifyListeners('user_online', data));
     this.socket.on('user_offline', data => this.notifyListeners('user_offline', data));
     this.socket.on('webrtc_offer', data => this.notifyListeners('webrtc_offer', data));
     this.socket.on('webrtc_answer', data => this.notifyListeners('webrtc_answer', data));
     this.socket.on('ice_candidate', data => this.notifyListeners('ice_candidate', data));
+    this.socket.on('ice_candidates', data => this.notifyListeners('ice_candidates', data));
     this.socket.on('call_accepted', data => this.notifyListeners('call_accepted', data));
     this.socket.on('call_rejected', data => this.notifyListeners('call_rejected', data));
     this.socket.on('call_ended', data => this.notifyListeners('call_ended', data));
-    this.socket.on('call_cancelled', data => this.notifyListeners('call_cancelled', data));
+    this.socket.on('call_cancelled', data => {
+      WebRTCService.discardWarmup('call_cancelled');
+      this.notifyListeners('call_cancelled', data);
+    });
     this.socket.on('call_failed', data => this.notifyListeners('call_failed', data));
     this.socket.on('call_initiated', data => {
       console.log('[SocketService] call_initiated, callId:', data.callId);
@@ -403,22 +557,55 @@ class SocketService {
     });
     this.socket.on('call_timeout', data => {
       console.log('[SocketService] call_timeout');
+      WebRTCService.discardWarmup('call_timeout');
       this.notifyListeners('call_timeout', data);
     });
     this.socket.on('call_ringing_offline', data => {
       console.log('[SocketService] call_ringing_offline, callId:', data.callId);
       this.notifyListeners('call_ringing_offline', data);
     });
-    this.socket.on('new_message', data => this.notifyListeners('new_message', data));
-    this.socket.on('message_sent', data => this.notifyListeners('message_sent', data));
-    this.socket.on('message_history', data => this.notifyListeners('message_history', data));
+    // [v14.5] Messages are mirrored into the on-device cache (MessageStore)
+    this.socket.on('new_message', data => {
+      MessageStore.saveMessage(this.savedUsername, data.from, {...data, to: this.savedUsername});
+      this.notifyListeners('new_message', data);
+    });
+    this.socket.on('message_sent', data => {
+      MessageStore.saveMessage(this.savedUsername, data.to, {...data, from: this.savedUsername});
+      this.notifyListeners('message_sent', data);
+    });
+    this.socket.on('message_history', data => {
+      MessageStore.applyHistory(this.savedUsername, data);
+      this.notifyListeners('message_history', data);
+    });
+    // [v14.6] Older page (scroll back) — cached without moving the sync cursor
+    this.socket.on('message_history_page', data => {
+      MessageStore.applyHistory(this.savedUsername, {...data, delta: true, cursor: null});
+      this.notifyListeners('message_history_page', data);
+    });
+    // [v14.12] Thumbnail finished after the message was sent; the cache picks it
+    // up with the next history delta (updatedAt moved on the server)
+    this.socket.on('message_updated', data => this.notifyListeners('message_updated', data));
     this.socket.on('typing', data => this.notifyListeners('typing', data));
 
     // [v13.0] Read receipt events
-    this.socket.on('messages_read', data => this.notifyListeners('messages_read', data));
-    this.socket.on('message_delivered', data => this.notifyListeners('message_delivered', data));
+    this.socket.on('messages_read', data => {
+      MessageStore.markRead(this.savedUsername, data.by, this.savedUsername);
+      this.notifyListeners('messages_read', data);
+    });
+    this.socket.on('message_delivered', data => {
+      MessageStore.markDelivered(this.savedUsername, data.messageId);
+      this.notifyListeners('message_delivered', data);
+    });
 
     this.socket.on('force_disconnect', data => {
+      // [v14.1] The native client's auth landed after ours (it was already in
+      // flight when attachJsSession ran) — not a logout: the server drops this
+      // socket, the 'io server disconnect' path reconnects and re-auth kicks
+      // the native session back into standby
+      if (data?.reason === 'native_standby') {
+        console.log('[SocketService] force_disconnect by the native client — reclaiming the session');
+        return;
+      }
       // Server asked us to disconnect — don't auto-reconnect
       this.shouldAutoReconnect = false;
       this.notifyListeners('force_disconnect', data);
@@ -486,18 +673,38 @@ class SocketService {
     return true;
   }
 
+  _onEnginePing = () => {
+    this._lastPongTime = Date.now();
+  };
+
   /**
-   * Keepalive — sends application-level ping every 10s.
-   * Server responds with 'pong'. Client tracks _lastPongTime.
+   * Keepalive — application-level ping on an adaptive interval.
+   * [v14.3] Interval comes from KeepaliveController (per network, probed
+   * against NAT timeout); paused while the engine heartbeat alone is enough.
+   * Server responds with 'pong' {timestamp, serverTime, idleMs}.
    */
   startKeepalive() {
     this.stopKeepalive();
 
-    this.keepaliveInterval = setInterval(() => {
-      if (this.socket?.connected) {
+    if (this.networkHandle === null) {
+      ConnectionService.getNetworkHandle().then((handle) => {
+        if (this.networkHandle === null && handle) {
+          this.networkHandle = handle;
+          KeepaliveController.setNetwork(handle);
+        }
+      });
+    }
+
+    const tick = () => {
+      if (this.socket?.connected && KeepaliveController.shouldAppPing()) {
+        // [v14.1] Короткое окно, чтобы успеть получить pong
+        ConnectionService.holdWakeWindow('heartbeat', 3000);
         this.socket.emit('ping', {timestamp: Date.now()});
+        KeepaliveController.onPingSent();
       }
-    }, 10000);
+      this.keepaliveTimer = setTimeout(tick, KeepaliveController.getInterval());
+    };
+    this.keepaliveTimer = setTimeout(tick, KeepaliveController.getInterval());
 
     // [v14.0] Periodic health probe every 5 minutes.
     // Detects silently dead TCP connections that socket.io's built-in
@@ -507,9 +714,10 @@ class SocketService {
 
       if (this.socket?.connected) {
         const timeSinceLastPong = Date.now() - this._lastPongTime;
-        if (timeSinceLastPong > 60000) {
+        if (timeSinceLastPong > Math.max(60000, KeepaliveController.getStaleThreshold())) {
           // No pong for >60s — connection is dead, force reconnect
           console.log(`[SocketService] Health probe: pong stale (${Math.round(timeSinceLastPong / 1000)}s) — forcing reconnect`);
+          KeepaliveController.onConnectionLost('stale pong');
           this._forceFullReconnect();
         }
       } else if (this.connectionState === STATE.DISCONNECTED) {
@@ -523,9 +731,9 @@ class SocketService {
   }
 
   stopKeepalive() {
-    if (this.keepaliveInterval) {
-      clearInterval(this.keepaliveInterval);
-      this.keepaliveInterval = null;
+    if (this.keepaliveTimer) {
+      clearTimeout(this.keepaliveTimer);
+      this.keepaliveTimer = null;
     }
     if (this._periodicHealthInterval) {
       clearInterval(this._periodicHealthInterval);
@@ -579,7 +787,7 @@ class SocketService {
    */
   async register(username, password) {
     return new Promise((resolve, reject) => {
-      this.socket.emit('register', {username, password});
+      this.socket.emit('register', {username, password, features: CLIENT_FEATURES});
 
       const timeout = setTimeout(() => {
         reject(new Error('Таймаут регистрации'));
@@ -591,6 +799,7 @@ class SocketService {
         this.savedUsername = data.username;
         this.savedToken = data.token;
         this.shouldAutoReconnect = true;
+        this.serverFeatures = Array.isArray(data?.features) ? data.features : [];
         this._setState(STATE.AUTHENTICATED);
 
         await AsyncStorage.setItem('username', data.username);
@@ -620,7 +829,7 @@ class SocketService {
    */
   async login(username, password) {
     return new Promise((resolve, reject) => {
-      this.socket.emit('login', {username, password});
+      this.socket.emit('login', {username, password, features: CLIENT_FEATURES});
 
       const timeout = setTimeout(() => {
         reject(new Error('Таймаут входа'));
@@ -632,6 +841,7 @@ class SocketService {
         this.savedUsername = data.username;
         this.savedToken = data.token;
         this.shouldAutoReconnect = true;
+        this.serverFeatures = Array.isArray(data?.features) ? data.features : [];
         this._setState(STATE.AUTHENTICATED);
 
         await AsyncStorage.setItem('username', data.username);
@@ -691,7 +901,7 @@ class SocketService {
         return;
       }
 
-      this.socket.emit('auth_token', {username, token});
+      this.socket.emit('auth_token', {username, token, features: CLIENT_FEATURES});
 
       const cleanup = () => {
         clearTimeout(authTimeout);
@@ -724,6 +934,7 @@ class SocketService {
         this.savedUsername = username;
         this.savedToken = token;
         this.shouldAutoReconnect = true;
+        this.serverFeatures = Array.isArray(data?.features) ? data.features : [];
         this._setState(STATE.AUTHENTICATED);
 
         // Flush pending FCM token if any
@@ -767,6 +978,24 @@ class SocketService {
     }
   }
 
+  /**
+   * [v14.4] Saved credentials: sync JSI read from NativeStorage first
+   * (no AsyncStorage round-trip on the headless call path), AsyncStorage fallback
+   */
+  async getSavedCredentials() {
+    try {
+      const creds = NativeStorage?.getCredentials();
+      if (creds?.username && creds?.token) {
+        return creds;
+      }
+    } catch (e) {
+      console.warn('[SocketService] NativeStorage read failed:', e.message);
+    }
+    const username = await AsyncStorage.getItem('username');
+    const token = await AsyncStorage.getItem('token');
+    return username && token ? {username, token} : null;
+  }
+
   logout() {
     if (this.socket?.connected) {
       this.socket.emit('logout');
@@ -811,11 +1040,21 @@ class SocketService {
   }
 
   rejectCall(from, callId) {
+    // [v14.11] Warm-up goes away even if the reject frame can't be sent
+    WebRTCService.discardWarmup('rejected', callId || null);
+
     if (!this.socket?.connected) {
       console.error('[SocketService] Not connected');
       return false;
     }
 
+    // [v14.4] Native screen and IncomingCallScreen may both reject the same call
+    if (callId && this._lastRejectedCallId === callId) {
+      console.log('[SocketService] Call already rejected, callId:', callId);
+      return true;
+    }
+    this._lastRejectedCallId = callId || null;
+
     this.socket.emit('reject_call', {from, callId});
     console.log('[SocketService] -> Call rejected');
     return true;
@@ -877,6 +1116,51 @@ class SocketService {
     return true;
   }
 
+  /**
+   * [v14.8] Buffer a local ICE candidate; everything gathered within
+   * ICE_BATCH_DELAY_MS is relayed as a single 'ice_candidates' frame.
+   * A server that didn't announce 'ice_candidates' gets one ice_candidate each.
+   */
+  queueIceCandidate(to, candidate) {
+    if (!this.serverFeatures.includes('ice_candidates')) {
+      return this.sendIceCandidate(to, candidate);
+    }
+    let entry = this._iceOutbox.get(to);
+    if (!entry) {
+      entry = {candidates: [], timer: null};
+      this._iceOutbox.set(to, entry);
+    }
+    entry.candidates.push(candidate);
+    if (!entry.timer) {
+      entry.timer = setTimeout(() => this.flushIceCandidates(to), ICE_BATCH_DELAY_MS);
+    }
+  }
+
+  /**
+   * [v14.8] Send buffered candidates now (end-of-candidates, or call teardown
+   * with discard=true to drop them)
+   */
+  flushIceCandidates(to, discard = false) {
+    const entry = this._iceOutbox.get(to);
+    if (!entry) return false;
+
+    clearTimeout(entry.timer);
+    this._iceOutbox.delete(to);
+    if (discard || entry.candidates.length === 0 || !this.socket?.connected) {
+      return false;
+    }
+
+    // Reconnected to an older server while the batch was buffered
+    if (!this.serverFeatures.includes('ice_candidates')) {
+      entry.candidates.forEach(candidate => this.sendIceCandidate(to, candidate));
+      return true;
+    }
+    for (let i = 0; i < entry.candidates.length; i += ICE_BATCH_MAX) {
+      this.socket.emit('ice_candidates', {to, candidates: entry.candidates.slice(i, i + ICE_BATCH_MAX)});
+    }
+    return true;
+  }
+
   // ═══════════════════════════════════════════════════════════
   // USERS
   // ═══════════════════════════════════════════════════════════
@@ -890,6 +1174,18 @@ class SocketService {
     return true;
   }
 
+  /**
+   * [v14.7] Conversation summaries (last message + unread) → 'conversations'
+   */
+  getConversations() {
+    if (!this.socket?.connected) {
+      return false;
+    }
+
+    this.socket.emit('get_conversations', {});
+    return true;
+  }
+
   // ═══════════════════════════════════════════════════════════
   // MESSAGES
   // ═══════════════════════════════════════════════════════════
@@ -937,14 +1233,37 @@ class SocketService {
     }
   }
 
-  getMessageHistory(withUser, limit = 100) {
+  /**
+   * [v14.5] cursor ({sinceTimestamp, sinceMessageId} from MessageStore) —
+   * server answers with a delta instead of the full history
+   */
+  getMessageHistory(withUser, limit = 100, cursor = null) {
     if (!this.socket?.connected) {
       console.warn('[SocketService] Not connected - cannot get history');
       return false;
     }
 
-    this.socket.emit('get_messages', {withUser, limit});
-    console.log('[SocketService] -> Message history request:', withUser);
+    const request = {withUser, limit};
+    if (cursor?.sinceTimestamp) {
+      request.sinceTimestamp = cursor.sinceTimestamp;
+      request.sinceMessageId = cursor.sinceMessageId || null;
+    }
+    this.socket.emit('get_messages', request);
+    console.log('[SocketService] -> Message history request:', withUser, cursor ? '(delta)' : '');
+    return true;
+  }
+
+  /**
+   * [v14.6] Keyset page older than before ({timestamp, messageId}) →
+   * 'message_history_page' {withUser, messages, nextCursor}
+   */
+  getOlderMessages(withUser, before, limit = 50) {
+    if (!this.socket?.connected || !before) {
+      return false;
+    }
+
+    this.socket.emit('get_messages', {withUser, limit, before});
+    console.log('[SocketService] -> Older messages request:', withUser);
     return true;
   }
 
@@ -958,6 +1277,7 @@ class SocketService {
     }
 
     this.socket.emit('mark_read', {from, messageId});
+    MessageStore.markRead(this.savedUsername, from, from);
     return true;
   }
 
@@ -5,6 +5,8 @@ import {
   mediaDevices,
 } from 'react-native-webrtc';
 import {SERVER_URL} from '../config/server.config';
+import NativeStorage from '../specs/NativeStorage';
+import CallTrace from '../specs/NativeCallTrace';
 
 // Fallback ICE серверы (STUN-только, используются если сервер недоступен)
 const DEFAULT_ICE_SERVERS = [
@@ -13,6 +15,18 @@ const DEFAULT_ICE_SERVERS = [
   {urls: 'stun:stun2.l.google.com:19302'},
 ];
 
+// [v14.10] Совпадает с IceConfigCache.MIN_REMAINING_MS (Java): конфиг ближе
+// к истечению запрашивается заново — звонок не переживёт свои TURN credentials
+const ICE_CONFIG_MIN_REMAINING_MS = 60 * 60 * 1000;
+const ICE_CONFIG_FETCH_TIMEOUT_MS = 5000;
+
+// [v14.11] Прогретый PeerConnection живёт не дольше окна звонка плюс запас.
+// Окно приходит с incoming_call (ringTimeoutMs); без него — самое длинное окно
+// сервера: CALL_TIMEOUT_MS (45 сек) для онлайн, × 2 (90 сек) для push_sent.
+// Обычно прогрев снимают раньше — call_cancelled / call_timeout / reject
+const WARMUP_DEFAULT_RING_MS = 90000;
+const WARMUP_MARGIN_MS = 5000;
+
 const BASE_CONFIGURATION = {
   iceCandidatePoolSize: 10,
   iceTransportPolicy: 'all',
@@ -59,33 +73,226 @@ class WebRTCService {
 
     // ICE конфигурация (загружается с сервера Signal-style)
     this.iceServers = null;
+    // [v14.10] Срок действия iceServers (мс); 0 — fallback, не кэшируется
+    this.iceServersExpiresAt = 0;
+    this._iceFetchPromise = null;
+
+    // [v14.11] Прогрев на время звонка: { callId, from, isVideo, pc, startedAt, readyAt, iceSource, timer }
+    this._warmup = null;
+    // [v14.11] Тайминги после ответа (только принимающая сторона)
+    this._callTiming = null;
+  }
+
+  /**
+   * [v14.10] Непросроченная ICE конфигурация без сети: память JS, затем
+   * NativeKvStore (нативный prefetch с push входящего звонка). null — нет.
+   */
+  getCachedIceServers() {
+    if (this.iceServers && Date.now() + ICE_CONFIG_MIN_REMAINING_MS < this.iceServersExpiresAt) {
+      return this.iceServers;
+    }
+
+    try {
+      const json = NativeStorage?.getIceConfig();
+      if (json) {
+        const config = JSON.parse(json);
+        if (this._acceptConfig(config)) {
+          console.log('WebRTC v10.0: ICE конфигурация из нативного кэша');
+          return this.iceServers;
+        }
+      }
+    } catch (error) {
+      console.warn('WebRTC v10.0: Нативный ICE кэш недоступен:', error.message);
+    }
+    return null;
+  }
+
+  _acceptConfig(config) {
+    const expiresAt = config.expiresAt || (config.ttl ? Date.now() + config.ttl * 1000 : 0);
+    if (!config.iceServers || config.iceServers.length === 0) return false;
+    if (Date.now() + ICE_CONFIG_MIN_REMAINING_MS >= expiresAt) return false;
+
+    this.iceServers = config.iceServers;
+    this.iceServersExpiresAt = expiresAt;
+    return true;
   }
 
   /**
    * Signal-inspired: загрузка ICE/TURN конфигурации с сервера
    * Сервер генерирует временные HMAC-credentials для TURN (как Signal)
+   * [v14.10] Годный кэш возвращается без запроса; загруженный конфиг
+   * сохраняется в NativeKvStore до expiresAt
    */
   async fetchIceServers() {
+    const cached = this.getCachedIceServers();
+    if (cached) return cached;
+
+    if (!this._iceFetchPromise) {
+      this._iceFetchPromise = this._loadIceServers().finally(() => {
+        this._iceFetchPromise = null;
+      });
+    }
+    return this._iceFetchPromise;
+  }
+
+  /**
+   * [v14.10] Фоновая загрузка (входящий звонок ещё звонит) — к ответу
+   * конфиг уже в кэше
+   */
+  prefetchIceServers() {
+    if (this.getCachedIceServers()) return;
+    this.fetchIceServers().catch(() => {});
+  }
+
+  async _loadIceServers() {
+    const controller = new AbortController();
+    const timeout = setTimeout(() => controller.abort(), ICE_CONFIG_FETCH_TIMEOUT_MS);
     try {
       const response = await fetch(`${SERVER_URL}/webrtc-config`, {
         method: 'GET',
         headers: {'Accept': 'application/json'},
         // Таймаут 5 секунд — не блокируем звонок
+        signal: controller.signal,
       });
       if (!response.ok) throw new Error(`HTTP ${response.status}`);
       const config = await response.json();
+      if (this._acceptConfig(config)) {
+        console.log('WebRTC v10.0: ICE серверы загружены с сервера:', this.iceServers.length);
+        NativeStorage?.saveIceConfig(JSON.stringify(config), this.iceServersExpiresAt).catch(() => {});
+        return this.iceServers;
+      }
       if (config.iceServers && config.iceServers.length > 0) {
+        // Сервер без ttl/expiresAt (до v8.14) — на этот звонок, без кэша
         this.iceServers = config.iceServers;
-        console.log('WebRTC v10.0: ICE серверы загружены с сервера:', this.iceServers.length);
+        this.iceServersExpiresAt = 0;
         return this.iceServers;
       }
     } catch (error) {
       console.warn('WebRTC v10.0: Не удалось загрузить ICE конфигурацию, используем fallback:', error.message);
+    } finally {
+      clearTimeout(timeout);
     }
     this.iceServers = DEFAULT_ICE_SERVERS;
+    this.iceServersExpiresAt = 0;
     return this.iceServers;
   }
 
+  // ═══════════════════════════════════════
+  // [v14.11] Прогрев во время звонка
+  // ═══════════════════════════════════════
+
+  /**
+   * [v14.11] Пока звонит входящий: создать PeerConnection и начать сбор ICE
+   * (iceCandidatePoolSize) с уже загруженной конфигурацией. Камера и микрофон
+   * НЕ открываются — треки добавляются только после ответа (createPeerConnection).
+   * Повторный вызов для того же callId ничего не делает.
+   * ringTimeoutMs — сколько сервер будет звонить (0 — неизвестно).
+   */
+  async prewarm({callId, from = null, isVideo = false, ringTimeoutMs = 0} = {}) {
+    if (!callId) return;
+    if (this.peerConnection) {
+      console.log('♨️ Прогрев пропущен — уже идёт звонок');
+      return;
+    }
+    if (this._warmup?.callId === callId) return;
+    this.discardWarmup('replaced');
+
+    const warmup = {callId, from, isVideo, pc: null, startedAt: Date.now(), readyAt: 0, iceSource: 'cache', timer: null};
+    const ringMs = ringTimeoutMs > 0 ? ringTimeoutMs : WARMUP_DEFAULT_RING_MS;
+    warmup.timer = setTimeout(() => this.discardWarmup('expired', callId), ringMs + WARMUP_MARGIN_MS);
+    this._warmup = warmup;
+    CallTrace?.mark('warmup_started', callId);
+
+    try {
+      let iceServers = this.getCachedIceServers();
+      if (!iceServers) {
+        warmup.iceSource = 'network';
+        iceServers = await this.fetchIceServers();
+      }
+      // Пока грузился конфиг, звонок могли отклонить или принять
+      if (this._warmup !== warmup || this.peerConnection) return;
+
+      warmup.pc = new RTCPeerConnection({...BASE_CONFIGURATION, iceServers});
+      warmup.readyAt = Date.now();
+      CallTrace?.mark('warmup_ready', callId);
+      console.log(`♨️ PeerConnection прогрет за ${warmup.readyAt - warmup.startedAt} мс (ICE: ${warmup.iceSource})`);
+    } catch (error) {
+      console.warn('⚠️ Прогрев не удался:', error.message);
+      if (this._warmup === warmup) this.discardWarmup('error');
+    }
+  }
+
+  /**
+   * [v14.11] Снять прогрев: отклонён, отменён, таймаут. callId — только если
+   * прогрев для этого звонка; без callId — любой.
+   */
+  discardWarmup(reason, callId = null) {
+    const warmup = this._warmup;
+    if (!warmup || (callId && warmup.callId !== callId)) return;
+
+    this._warmup = null;
+    clearTimeout(warmup.timer);
+    if (warmup.pc) {
+      try {
+        warmup.pc.close();
+      } catch (e) {
+        // Игнорируем ошибки закрытия
+      }
+    }
+    console.log(`♨️ Прогрев снят (${reason}), callId: ${warmup.callId}`);
+  }
+
+  /**
+   * Забрать прогретый PeerConnection для принятого звонка; чужой или
+   * недостроенный прогрев закрывается
+   */
+  _takeWarmup(callId) {
+    const warmup = this._warmup;
+    if (!warmup) return null;
+    if (!callId || warmup.callId !== callId || !warmup.pc || warmup.pc.signalingState === 'closed') {
+      this.discardWarmup('mismatch');
+      return null;
+    }
+    this._warmup = null;
+    clearTimeout(warmup.timer);
+    return warmup;
+  }
+
+  /**
+   * [v14.11] Пользователь принял звонок — начало отсчёта таймингов после ответа
+   */
+  markCallAccepted(callId) {
+    const warmup = this._warmup?.callId === callId && this._warmup.pc ? this._warmup : null;
+    this._callTiming = {
+      callId,
+      acceptedAt: Date.now(),
+      warm: !!warmup,
+      warmReadyMs: warmup ? warmup.readyAt - warmup.startedAt : null,
+      ringingMs: warmup ? Date.now() - warmup.startedAt : null,
+      iceSource: warmup ? warmup.iceSource : null,
+      marks: {},
+    };
+    CallTrace?.mark('call_accepted', callId || '');
+  }
+
+  _markTiming(point) {
+    const timing = this._callTiming;
+    if (!timing || timing.marks[point] !== undefined) return;
+    timing.marks[point] = Date.now() - timing.acceptedAt;
+    CallTrace?.mark(point, timing.callId || '');
+
+    if (point === 'ice_connected') {
+      const m = timing.marks;
+      console.log(
+        `⏱ Звонок ${timing.callId}: прогрев=${timing.warm ? 'да' : 'нет'}` +
+        (timing.warm ? ` (pc за ${timing.warmReadyMs} мс, ICE: ${timing.iceSource}, звонил ${timing.ringingMs} мс)` : '') +
+        ` | после ответа: медиа ${m.accept_local_media ?? '-'} мс, pc ${m.accept_pc_ready ?? '-'} мс,` +
+        ` answer ${m.answer_created ?? '-'} мс, ICE ${m.ice_connected} мс`,
+      );
+      this._callTiming = null;
+    }
+  }
+
   /**
    * Получение локального медиа потока
    */
@@ -118,6 +325,7 @@ class WebRTCService {
       console.log('  Аудио треков:', this.localStream.getAudioTracks().length);
       console.log('  Видео треков:', this.localStream.getVideoTracks().length);
 
+      this._markTiming('accept_local_media');
       this._emit('localStream', this.localStream);
       return this.localStream;
     } catch (error) {
@@ -128,11 +336,14 @@ class WebRTCService {
 
   /**
    * Создание PeerConnection с Signal-style ICE конфигурацией
+   * [v14.11] callId принятого звонка — берётся прогретый PeerConnection (prewarm)
    */
-  createPeerConnection() {
+  createPeerConnection({callId = null} = {}) {
     console.log('WebRTC v10.0: СОЗДАНИЕ PEER CONNECTION');
 
     try {
+      const warmup = this._takeWarmup(callId);
+
       // Очистить предыдущее соединение если есть
       if (this.peerConnection) {
         console.log('⚠️ Закрываем старое соединение');
@@ -151,28 +362,30 @@ class WebRTCService {
       this.remoteDescriptionSet = false;
       this.reconnectAttempts = 0;
 
-      // Используем загруженные с сервера ICE серверы (включая TURN если настроен)
-      const iceServers = this.iceServers || DEFAULT_ICE_SERVERS;
-      const configuration = {...BASE_CONFIGURATION, iceServers};
+      if (warmup) {
+        // ICE кандидаты уже собираются с момента звонка
+        this.peerConnection = warmup.pc;
+        console.log(`♨️ Используем прогретый PeerConnection (прогрет ${Date.now() - warmup.startedAt} мс назад)`);
+      } else {
+        // Используем загруженные с сервера ICE серверы (включая TURN если настроен)
+        const iceServers = this.iceServers || this.getCachedIceServers() || DEFAULT_ICE_SERVERS;
+        const configuration = {...BASE_CONFIGURATION, iceServers};
 
-      console.log('→ ICE серверов:', iceServers.length,
-        iceServers.some(s => s.urls?.toString().startsWith('turn')) ? '(включая TURN)' : '(только STUN)');
+        console.log('→ ICE серверов:', iceServers.length,
+          iceServers.some(s => s.urls?.toString().startsWith('turn')) ? '(включая TURN)' : '(только STUN)');
 
-      this.peerConnection = new RTCPeerConnection(configuration);
+        this.peerConnection = new RTCPeerConnection(configuration);
+      }
 
       // Добавить локальные треки
-      if (this.localStream) {
-        this.localStream.getTracks().forEach(track => {
-          this.peerConnection.addTrack(track, this.localStream);
-          console.log('→ Трек добавлен:', track.kind);
-        });
-      }
+      this._attachLocalTracks();
 
       // Настроить обработчики
       this.setupHandlers();
 
       // Таймаут на установку соединения (60 секунд)
       this.startConnectionTimeout();
+      this._markTiming('accept_pc_ready');
 
       console.log('✅ PeerConnection создан (v10.0)');
     } catch (error) {
@@ -181,6 +394,28 @@ class WebRTCService {
     }
   }
 
+  /**
+   * [v14.11] Локальные треки в PeerConnection: sender того же вида уже есть —
+   * replaceTrack (без пересогласования), иначе addTrack
+   */
+  _attachLocalTracks() {
+    if (!this.localStream || !this.peerConnection) return;
+
+    const senders = this.peerConnection.getSenders();
+    this.localStream.getTracks().forEach(track => {
+      const sender = senders.find(s => s.track && s.track.kind === track.kind);
+      if (sender) {
+        sender.replaceTrack(track).catch(error => {
+          console.warn('⚠️ replaceTrack не удался:', error.message);
+        });
+        console.log('→ Трек заменён:', track.kind);
+      } else {
+        this.peerConnection.addTrack(track, this.localStream);
+        console.log('→ Трек добавлен:', track.kind);
+      }
+    });
+  }
+
   /**
    * Настройка обработчиков событий
    */
@@ -205,6 +440,8 @@ class WebRTCService {
         this._emit('iceCandidate', event.candidate);
       } else {
         console.log('→ Все ICE candidates собраны');
+        // [v14.8] end-of-candidates — сигнал отправить накопленную пачку сразу
+        this._emit('iceGatheringComplete');
       }
     };
 
@@ -221,6 +458,7 @@ class WebRTCService {
         case 'completed':
           console.log('✅ ICE соединение установлено');
           this.reconnectAttempts = 0;
+          this._markTiming('ice_connected');
           this.clearConnectionTimeout();
           break;
 
@@ -331,6 +569,7 @@ class WebRTCService {
       await this.peerConnection.setLocalDescription(answer);
 
       console.log('✅ Answer создан и установлен');
+      this._markTiming('answer_created');
 
       // Обработать очередь ICE кандидатов
       await this._processIceCandidatesQueue();
@@ -403,6 +642,33 @@ class WebRTCService {
     }
   }
 
+  /**
+   * [v14.8] Добавление пачки ICE candidates (событие ice_candidates):
+   * все кандидаты уходят в PeerConnection за один проход, без await на каждый
+   */
+  async addIceCandidates(candidates) {
+    if (!Array.isArray(candidates) || candidates.length === 0) return;
+
+    if (!this.peerConnection) {
+      console.warn(`⚠️ PeerConnection не создан, пропущено ICE candidates: ${candidates.length}`);
+      return;
+    }
+
+    if (!this.peerConnection.remoteDescription) {
+      this.iceCandidatesQueue.push(...candidates);
+      return;
+    }
+
+    const pc = this.peerConnection;
+    await Promise.all(
+      candidates.map(candidate =>
+        pc.addIceCandidate(new RTCIceCandidate(candidate)).catch(() => {
+          // Некоторые кандидаты могут быть невалидными — это нормально
+        }),
+      ),
+    );
+  }
+
   /**
    * Обработка очереди ICE candidates
    */
@@ -414,9 +680,7 @@ class WebRTCService {
     const candidates = [...this.iceCandidatesQueue];
     this.iceCandidatesQueue = [];
 
-    for (const candidate of candidates) {
-      await this.addIceCandidate(candidate);
-    }
+    await this.addIceCandidates(candidates);
 
     console.log('✅ Очередь ICE candidates обработана');
   }
@@ -537,9 +801,13 @@ class WebRTCService {
     this.isAnswerReceived = false;
     this.remoteDescriptionSet = false;
     this.reconnectAttempts = 0;
+    this._callTiming = null;
 
-    // Сбрасываем iceServers чтобы следующий звонок заново запросил конфиг с сервера
-    this.iceServers = null;
+    // [v14.10] iceServers не сбрасываем: конфиг с expiresAt переиспользуется
+    // следующим звонком; fallback / конфиг без срока — запросить заново
+    if (!this.iceServersExpiresAt) {
+      this.iceServers = null;
+    }
 
     console.log('✅ Очистка завершена (v10.0)');
   }
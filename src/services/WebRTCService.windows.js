@@ -18,11 +18,21 @@ class WebRTCService {
     return [];
   }
 
+  getCachedIceServers() {
+    return null;
+  }
+
+  prefetchIceServers() {}
+
+  async prewarm(_options) {}
+  discardWarmup(_reason, _callId) {}
+  markCallAccepted(_callId) {}
+
   async getLocalStream(_isVideo) {
     throw new Error('Audio/video calls are not supported on Windows yet');
   }
 
-  createPeerConnection() {
+  createPeerConnection(_options) {
     throw new Error('WebRTC is not supported on Windows');
   }
 
@@ -36,6 +46,7 @@ class WebRTCService {
 
   async setRemoteAnswer(_answer) {}
   async addIceCandidate(_candidate) {}
+  async addIceCandidates(_candidates) {}
 
   switchCamera() {}
   toggleMicrophone(_enabled) {}
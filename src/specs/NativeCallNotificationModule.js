@@ -0,0 +1,24 @@
+/**
+ * @flow strict-local
+ *
+ * Codegen spec: CallNotificationModule (android/.../CallNotificationModule.java)
+ * Модуль создаётся лениво — при первом обращении.
+ * Синхронные методы (JSI) — на горячем пути accept/decline.
+ */
+
+import type {TurboModule} from 'react-native';
+import {TurboModuleRegistry} from 'react-native';
+
+export interface Spec extends TurboModule {
+  +showIncomingCallNotification: (from: string, isVideo: boolean, callId: string) => void;
+  +updateIncomingCallNotification: (callId: string, text: string) => void;
+  // sync
+  +cancelIncomingCallNotification: () => boolean;
+  +clearMessageNotifications: (from: string) => void;
+  +getCallPushStats: () => Promise<{|accepted: number, duplicates: number, stale: number|}>;
+  +reportServerTime: (serverTimeMs: number, rttMs: number) => void;
+  +canUseFullScreenIntent: () => Promise<boolean>;
+  +openFullScreenIntentSettings: () => Promise<boolean>;
+}
+
+export default (TurboModuleRegistry.get<Spec>('CallNotificationModule'): ?Spec);
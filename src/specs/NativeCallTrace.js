@@ -0,0 +1,18 @@
+/**
+ * @flow strict-local
+ *
+ * Codegen spec: CallTrace (android/.../CallTraceModule.java)
+ * Модуль создаётся лениво — при первом обращении.
+ */
+
+import type {TurboModule} from 'react-native';
+import {TurboModuleRegistry} from 'react-native';
+
+export interface Spec extends TurboModule {
+  +mark: (point: string, callId: string) => void;
+  +getSummary: () => Promise<Object>;
+  +exportRaw: () => Promise<string>;
+  +clear: () => Promise<boolean>;
+}
+
+export default (TurboModuleRegistry.get<Spec>('CallTrace'): ?Spec);
@@ -0,0 +1,36 @@
+/**
+ * @flow strict-local
+ *
+ * Codegen spec: ConnectionService (android/.../ConnectionServiceModule.java)
+ * Модуль создаётся лениво — при первом обращении.
+ */
+
+import type {TurboModule} from 'react-native';
+import {TurboModuleRegistry} from 'react-native';
+
+export interface Spec extends TurboModule {
+  +start: () => Promise<boolean>;
+  +stop: () => Promise<boolean>;
+  +attachJsSession: () => void;
+  +detachJsSession: () => void;
+  +holdWakeWindow: (reason: string, durationMs: number) => void;
+  +setCallActive: (active: boolean) => void;
+  +getWakeLockStats: () => Promise<{|
+    mode: string,
+    noneMs: number,
+    windowMs: number,
+    callMs: number,
+    windowCount: number,
+    callCount: number,
+  |}>;
+  +getNetworkHandle: () => Promise<number>;
+  +endTelecomCall: (callId: string, missed: boolean) => void;
+  +consumePendingCallAction: (callId: string) => Promise<?string>;
+  +setReactKeepWarm: (keepWarmMs: number) => Promise<boolean>;
+  +getReactKeepWarm: () => Promise<number>;
+  +isRunning: () => Promise<boolean>;
+  // sync — без binder-вызова ActivityManager
+  +isRunningSync: () => boolean;
+}
+
+export default (TurboModuleRegistry.get<Spec>('ConnectionService'): ?Spec);
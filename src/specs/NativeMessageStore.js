@@ -0,0 +1,27 @@
+/**
+ * @flow strict-local
+ *
+ * Codegen spec: MessageStore (android/.../MessageStoreModule.java)
+ * Модуль создаётся лениво — при первом обращении.
+ */
+
+import type {TurboModule} from 'react-native';
+import {TurboModuleRegistry} from 'react-native';
+
+export interface Spec extends TurboModule {
+  +getMessages: (owner: string, peer: string, limit: number) => Promise<Array<Object>>;
+  +getSyncCursor: (owner: string, peer: string) => Promise<?Object>;
+  +getConversations: (owner: string) => Promise<Array<Object>>;
+  +applyHistory: (
+    owner: string,
+    peer: string,
+    messages: Array<Object>,
+    delta: boolean,
+    cursor: ?Object,
+  ) => Promise<number>;
+  +saveMessage: (owner: string, peer: string, message: Object) => void;
+  +markRead: (owner: string, peer: string, fromUser: string) => void;
+  +markDelivered: (owner: string, messageId: string) => void;
+}
+
+export default (TurboModuleRegistry.get<Spec>('MessageStore'): ?Spec);
@@ -0,0 +1,22 @@
+/**
+ * @flow strict-local
+ *
+ * Codegen spec: NativeStorage (android/.../NativeStorageModule.java)
+ * Модуль создаётся лениво — при первом обращении.
+ */
+
+import type {TurboModule} from 'react-native';
+import {TurboModuleRegistry} from 'react-native';
+
+export interface Spec extends TurboModule {
+  +saveCredentials: (username: string, token: string) => Promise<boolean>;
+  // sync — headless-задачи звонка читают credentials без AsyncStorage
+  +getCredentials: () => ?{|username: string, token: string|};
+  +saveFcmToken: (fcmToken: string) => Promise<boolean>;
+  // sync — непросроченный ICE/TURN конфиг (JSON /webrtc-config) или null
+  +getIceConfig: () => ?string;
+  +saveIceConfig: (json: string, expiresAt: number) => Promise<boolean>;
+  +clearCredentials: () => Promise<boolean>;
+}
+
+export default (TurboModuleRegistry.get<Spec>('NativeStorage'): ?Spec);